@@ -22,6 +22,8 @@ abstract class SARIFGenerator {
     private static final String SARIF_DESC = 'SARIF_InterestingRelation.csv'
     /** The name of the output file. */
     private static final String SARIF_OUT = 'doop.sarif'
+    /** The name of the Doop relation that maps compact method ids to signatures. */
+    private static final String COMPACT_METHOD_IDS = 'CompactMethodId.csv'
     /** The prefix to use for placeholders in messages. */
     private static final String PLACEHOLDER_PRE = '@@'
     /** If true, the processor only parses the input (used for debugging or
@@ -78,6 +80,7 @@ abstract class SARIFGenerator {
         File sarifDesc = new File(db, SARIF_DESC)
         if (!sarifDesc.exists())
             return false
+        Map<String, String> compactMethodIds = readCompactMethodIds()
         for (String line : sarifDesc.readLines()) {
             String[] parts = line.tokenize('\t')
             if (parts.length != 6)
@@ -93,7 +96,7 @@ abstract class SARIFGenerator {
             }
             Map<String, List<String[]>> relLines = new HashMap<>()
             for (String relLine : rel.readLines()) {
-                String[] relParts = relLine.tokenize('\t')
+                String[] relParts = relLine.tokenize('\t').collect { String part -> expandCompactId(part, compactMethodIds) } as String[]
                 try {
                     String doopId = relParts[rm.doopIdPosition]
                     relLines.computeIfAbsent(doopId, { new ArrayList<String[]>()}).add(relParts)
@@ -110,6 +113,38 @@ abstract class SARIFGenerator {
         return !(allMetadata.empty)
     }
 
+    /**
+     * Reads the compact method ids of the database (if the facts were
+     * generated in compact ids mode).
+     * @return   a map from compact method ids to method signatures
+     */
+    private Map<String, String> readCompactMethodIds() {
+        Map<String, String> ids = new HashMap<>()
+        File idsFile = new File(db, COMPACT_METHOD_IDS)
+        if (idsFile.exists())
+            for (String line : idsFile.readLines()) {
+                String[] parts = line.tokenize('\t')
+                if (parts.length == 2)
+                    ids.put(parts[0], parts[1])
+            }
+        return ids
+    }
+
+    /**
+     * Translates an id that starts with a compact method id (such as
+     * "#1f/new A/0") to its readable form, which the parsed code elements use.
+     * @param doopId             the id
+     * @param compactMethodIds   the compact method ids
+     * @return                   the readable id
+     */
+    private static String expandCompactId(String doopId, Map<String, String> compactMethodIds) {
+        if (compactMethodIds.isEmpty() || !doopId.startsWith('#'))
+            return doopId
+        int slash = doopId.indexOf('/')
+        String method = compactMethodIds.get(slash < 0 ? doopId : doopId.substring(0, slash))
+        return method == null ? doopId : method + (slash < 0 ? '' : doopId.substring(slash))
+    }
+
     /**
      * Generates the SARIF file.
      * @param results   the list of analysis results
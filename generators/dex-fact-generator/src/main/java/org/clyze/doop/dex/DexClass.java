@@ -0,0 +1,17 @@
+package org.clyze.doop.dex;
+
+import com.android.tools.smali.dexlib2.dexbacked.DexBackedClassDef;
+
+/**
+ * A class to process, with the .dex entry that contains it (classes
+ * of all .dex entries are processed together).
+ */
+class DexClass {
+    final DexBackedClassDef def;
+    final DexInput input;
+
+    DexClass(DexBackedClassDef def, DexInput input) {
+        this.def = def;
+        this.input = input;
+    }
+}
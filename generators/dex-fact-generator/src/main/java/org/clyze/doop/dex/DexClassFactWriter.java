@@ -40,7 +40,7 @@ class DexClassFactWriter extends JavaFactWriter {
     public void generateFacts(DexBackedClassDef dexClass, String className,
                               DexParameters dexParams, Map<String, MethodSig> cachedMethodDescriptors) {
         if (dexParams.isApplicationClass(className))
-            _db.add(APP_CLASS, className);
+            _db.row(APP_CLASS).col(className).end();
 
         for (DexBackedMethod dexMethod : dexClass.getMethods()) {
             DexMethodFactWriter mWriter = new DexMethodFactWriter(dexMethod, _db, dexParams, cachedMethodDescriptors);
@@ -53,7 +53,7 @@ class DexClassFactWriter extends JavaFactWriter {
         writeClassOrInterfaceType(dexClass, className);
 
         for (DexBackedAnnotation annotation : dexClass.getAnnotations())
-            _db.add(TYPE_ANNOTATION, className, TypeUtils.raiseTypeId(annotation.getType()));
+            _db.row(TYPE_ANNOTATION).col(className).col(TypeUtils.raiseTypeId(annotation.getType())).end();
     }
 
     private void writeClassOrInterfaceType(ClassDef dexClass, String className) {
@@ -64,32 +64,32 @@ class DexClassFactWriter extends JavaFactWriter {
             else
                 writeClassModifier(className, flag.toString());
         if (isInterface)
-            _db.add(INTERFACE_TYPE, className);
+            _db.row(INTERFACE_TYPE).col(className).end();
         else
-            _db.add(CLASS_TYPE, className);
+            _db.row(CLASS_TYPE).col(className).end();
 
         String dexSuper = dexClass.getSuperclass();
         if (dexSuper != null) {
             this.superClass = TypeUtils.raiseTypeId(dexSuper);
-            _db.add(DIRECT_SUPER_CLASS, className, superClass);
+            _db.row(DIRECT_SUPER_CLASS).col(className).col(superClass).end();
         } else
             logError(logger, "ERROR: no super class found for " + className);
 
         for (String intf : dexClass.getInterfaces())
-            _db.add(DIRECT_SUPER_IFACE, className, TypeUtils.raiseTypeId(intf));
+            _db.row(DIRECT_SUPER_IFACE).col(className).col(TypeUtils.raiseTypeId(intf)).end();
     }
 
     private void writeField(Field fieldRef) {
         FieldInfo fi = new DexFieldInfo(fieldRef);
         String fieldId = fi.getFieldId();
         String fieldType = fi.type;
-        _db.add(FIELD_SIGNATURE, fieldId, fi.definingClass, fi.name, fieldType);
+        _db.row(FIELD_SIGNATURE).col(fieldId).col(fi.definingClass).col(fi.name).col(fieldType).end();
         EncodedValue e = fieldRef.getInitialValue();
         if (e != null) {
             InitialValue initialValue = new InitialValue(e);
             String val = initialValue.value;
             if (val != null) {
-                _db.add(FIELD_INITIAL_VALUE, fieldId, val);
+                _db.row(FIELD_INITIAL_VALUE).col(fieldId).col(val).end();
                 if (initialValue.type == InitialValue.IVType.NUMBER) {
                     if (fieldType.equals("int") || fieldType.equals("long"))
                         writeNumConstantRaw(val, fieldType);
@@ -100,10 +100,10 @@ class DexClassFactWriter extends JavaFactWriter {
 
         AccessFlags[] flags = AccessFlags.getAccessFlagsForField(fieldRef.getAccessFlags());
         for (AccessFlags f : flags)
-            _db.add(FIELD_MODIFIER, f.toString(), fieldId);
+            _db.row(FIELD_MODIFIER).col(f.toString()).col(fieldId).end();
 
         for (Annotation annotation : fieldRef.getAnnotations())
-            _db.add(FIELD_ANNOTATION, fieldId, TypeUtils.raiseTypeId(annotation.getType()));
+            _db.row(FIELD_ANNOTATION).col(fieldId).col(TypeUtils.raiseTypeId(annotation.getType())).end();
 
         definedFields.add(fi);
     }
@@ -1,74 +1,119 @@
 package org.clyze.doop.dex;
 
+import java.util.Collection;
 import java.util.Map;
+import java.util.Set;
 import org.clyze.doop.common.BasicJavaSupport;
 import org.clyze.doop.common.CHA;
+import org.clyze.doop.common.ClassFactCache;
 import org.clyze.doop.common.Database;
 import org.clyze.doop.common.Driver;
+import org.clyze.doop.common.FieldInfo;
+import org.clyze.doop.common.FieldOp;
 import org.clyze.utils.TypeUtils;
-import com.android.tools.smali.dexlib2.dexbacked.DexBackedClassDef;
 
-class DexDriver extends Driver<DexBackedClassDef> {
+class DexDriver extends Driver<DexClass> {
     private final Database db;
     private final BasicJavaSupport java;
     private final DexParameters dexParams;
     private final Map<String, MethodSig> cachedMethodDescriptors;
     private final CHA cha;
-    private final String dexEntry;
-    private final String apkName;
+    private final ClassFactCache classFactCache;
     @SuppressWarnings("FieldCanBeLocal")
     private final boolean moreStrings;
 
     /**
-     * Generates a driver for the parallel fact generation of a single
-     * .dex entry in an .apk. A new driver should be generated for
-     * each .dex entry.
+     * Generates a driver for the parallel fact generation of the
+     * classes of all .dex entries, so that the classes of all entries
+     * share the same pool of threads.
      *
      * @param totalClasses              the total number of classes
      * @param cores                     the number of CPU cores
      * @param db                        the database object
      * @param dexParams                 the front-end parameters
-     * @param dexEntry                  the .dex entry ("classes.dex")
-     * @param apkName                   the .apk name ("app.apk")
      * @param cha                       the global CHA object
      * @param moreStrings               enable extraction of more strings
      * @param java                      the Java support object
      * @param cachedMethodDescriptors   the cache of method descriptors
+     * @param classFactCache            the cache of class facts (or null)
      */
     DexDriver(int totalClasses, Integer cores,
               Database db,
-              DexParameters dexParams, String dexEntry,
-              String apkName, CHA cha,
+              DexParameters dexParams, CHA cha,
               boolean moreStrings,
-              BasicJavaSupport java, Map<String, MethodSig> cachedMethodDescriptors) {
+              BasicJavaSupport java, Map<String, MethodSig> cachedMethodDescriptors,
+              ClassFactCache classFactCache) {
         super(totalClasses, cores);
         this.db = db;
         this.dexParams = dexParams;
-        this.dexEntry = dexEntry;
-        this.apkName = apkName;
         this.cha = cha;
         this.moreStrings = moreStrings;
         this.java = java;
         this.cachedMethodDescriptors = cachedMethodDescriptors;
+        this.classFactCache = classFactCache;
+    }
+
+    @Override
+    protected long estimateSize(DexClass dexClass) {
+        return dexClass.def.getSize();
     }
 
     @Override
     protected Runnable getFactGenRunnable() {
+        // Capture the current group, the field is reset after submission.
+        Set<DexClass> classGroup = _tmpClassGroup;
         return () -> {
-            for (DexBackedClassDef dexClass : _tmpClassGroup) {
-                String className = TypeUtils.raiseTypeId(dexClass.getType());
-                java.getArtifactScanner().registerArtifactClass(apkName, className, dexEntry, dexClass.getSize());
+            for (DexClass dexClass : classGroup) {
+                long classStart = System.nanoTime();
+                DexInput input = dexClass.input;
+                String className = TypeUtils.raiseTypeId(dexClass.def.getType());
+                java.getArtifactScanner().registerArtifactClass(input.apkName, className, input.dexEntry, dexClass.def.getSize());
                 DexClassFactWriter classWriter = new DexClassFactWriter(db, dexParams);
-                classWriter.generateFacts(dexClass, className, dexParams, cachedMethodDescriptors);
-                cha.registerDefinedMethods(classWriter.definedMethods);
-                cha.queueFieldOps(classWriter.fieldOps);
-                if (classWriter.superClass != null)
-                    cha.registerSuperClass(className, classWriter.superClass);
-                cha.registerDefinedClassFields(className, classWriter.definedFields);
+                // Classes are not hashed individually (their data is spread
+                // over the sections of the .dex entry), so cached facts are
+                // keyed by the hash of the whole entry.
+                ClassFactCache classFactCache = input.dexHash == null ? null : this.classFactCache;
+                String cacheKey = classFactCache == null ? null : classFactCache.key(className, input.dexHash, String.valueOf(dexParams.isApplicationClass(className)));
+                ClassFactCache.Fragment cached = cacheKey == null ? null : classFactCache.load(cacheKey);
+                if (cached != null) {
+                    classFactCache.replay(cached, classWriter);
+                    registerClass(className, cached.definedMethods, cached.superClass, cached.definedFields, cached.fieldOps);
+                } else {
+                    ClassFactCache.Fragment fragment = cacheKey == null ? null : classFactCache.startRecording(classWriter);
+                    try {
+                        classWriter.generateFacts(dexClass.def, className, dexParams, cachedMethodDescriptors);
+                    } finally {
+                        if (fragment != null)
+                            classFactCache.stopRecording(classWriter);
+                    }
+                    if (fragment != null) {
+                        fragment.definedMethods.addAll(classWriter.definedMethods);
+                        fragment.superClass = classWriter.superClass;
+                        fragment.definedFields.addAll(classWriter.definedFields);
+                        fragment.fieldOps.addAll(classWriter.fieldOps);
+                        classFactCache.store(cacheKey, fragment);
+                    }
+                    registerClass(className, classWriter.definedMethods, classWriter.superClass, classWriter.definedFields, classWriter.fieldOps);
+                }
+                getStats().recordClass(className, System.nanoTime() - classStart);
             }
         };
     }
 
+    /**
+     * Register the data of a class that the CHA needs. Field operations
+     * may be written here, so this must happen after recording the
+     * facts of the class (these facts are resolved again in every run).
+     */
+    private void registerClass(String className, Collection<String> definedMethods, String superClass,
+                               Collection<FieldInfo> definedFields, Collection<FieldOp> fieldOps) {
+        cha.registerDefinedMethods(definedMethods);
+        if (superClass != null)
+            cha.registerSuperClass(className, superClass);
+        cha.registerDefinedClassFields(className, definedFields);
+        cha.queueFieldOps(db, fieldOps);
+    }
+
     @Override
     protected Runnable getIRGenRunnable() {
         throw new RuntimeException("Parallel IR generation is not supported.");
@@ -7,6 +7,9 @@ import com.android.tools.smali.dexlib2.dexbacked.reference.DexBackedFieldReferen
 import com.android.tools.smali.dexlib2.dexbacked.reference.DexBackedMethodReference;
 import com.android.tools.smali.dexlib2.dexbacked.reference.DexBackedTypeReference;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -14,38 +17,57 @@ class DexFactWriter extends JavaFactWriter {
 
     private final Map<String, MethodSig> cachedMethodDescriptors;
     private final CHA cha;
+    // Statistics shared by the drivers of all .dex entries.
+    private final FactGenStats stats = new FactGenStats();
+    private final ClassFactCache classFactCache;
 
     DexFactWriter(Database db, DexParameters params, CHA cha) {
         super(db, params);
         this.cha = cha;
         this.cachedMethodDescriptors = new ConcurrentHashMap<>();
+        this.classFactCache = params._classFactCacheDir == null ? null : new ClassFactCache(new File(params._classFactCacheDir), params._classFactOptions);
     }
 
     /**
-     * Generates facts for a .dex entry.
+     * Generates facts for .dex entries. The classes of all entries are
+     * processed by the same pool of threads, so that the work of small
+     * entries is balanced with that of large ones.
      * @param java         the Java support object
      * @param dexParams    the front-end parameters
-     * @param apkName      the name of the .apk input
-     * @param dexEntry     the name of the .dex entry to process
-     * @param dex          the data structure representing the .dex entry
+     * @param inputs       the .dex entries to process
      */
     public void generateFacts(BasicJavaSupport java, DexParameters dexParams,
-                              String apkName, String dexEntry, DexBackedDexFile dex)
+                              List<DexInput> inputs)
             throws DoopErrorCodeException {
-        int totalClasses = dex.getClasses().size();
-        DexDriver driver = new DexDriver(totalClasses, dexParams._cores, _db, dexParams, dexEntry, apkName, cha, _extractMoreStrings, java, cachedMethodDescriptors);
-        driver.generateInParallel(dex.getClasses());
+        List<DexClass> classes = new ArrayList<>();
+        for (DexInput input : inputs)
+            for (DexBackedClassDef classDef : input.dex.getClasses())
+                classes.add(new DexClass(classDef, input));
+        DexDriver driver = new DexDriver(classes.size(), dexParams._cores, _db, dexParams, cha, _extractMoreStrings, java, cachedMethodDescriptors, classFactCache);
+        driver.setStats(stats);
+        driver.generateInParallel(classes);
 
         // Register all field/type/method references found, to find phantoms later.
-        for (DexBackedFieldReference fieldRef : dex.getFieldSection())
-            cha.registerReferencedField(new DexFieldInfo(fieldRef));
-        for (DexBackedTypeReference typeRef : dex.getTypeReferences())
-            cha.registerReferencedType(TypeUtils.raiseTypeId(typeRef.getType()));
-        for (DexBackedMethodReference methRef : dex.getMethodSection())
-            cha.registerReferencedMethod(MethodFacts.methodId(methRef));
-
-        if (dex.getMethodHandleSection().size() > 0)
-            System.err.println("WARNING: Method handles are not yet supported.");
+        for (DexInput input : inputs) {
+            DexBackedDexFile dex = input.dex;
+            for (DexBackedFieldReference fieldRef : dex.getFieldSection())
+                cha.registerReferencedField(new DexFieldInfo(fieldRef));
+            for (DexBackedTypeReference typeRef : dex.getTypeReferences())
+                cha.registerReferencedType(TypeUtils.raiseTypeId(typeRef.getType()));
+            for (DexBackedMethodReference methRef : dex.getMethodSection())
+                cha.registerReferencedMethod(MethodFacts.methodId(methRef));
+
+            if (dex.getMethodHandleSection().size() > 0)
+                System.err.println("WARNING: Method handles are not yet supported (" + input.dexEntry + " in " + input.apkName + ").");
+        }
+    }
+
+    FactGenStats getStats() {
+        return stats;
+    }
+
+    ClassFactCache getClassFactCache() {
+        return classFactCache;
     }
 
 }
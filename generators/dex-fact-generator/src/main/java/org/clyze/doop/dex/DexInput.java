@@ -0,0 +1,21 @@
+package org.clyze.doop.dex;
+
+import com.android.tools.smali.dexlib2.dexbacked.DexBackedDexFile;
+
+/**
+ * A loaded .dex entry of an .apk input.
+ */
+class DexInput {
+    final String apkName;
+    final String dexEntry;
+    final DexBackedDexFile dex;
+    // The hash of the .dex entry (null to not reuse cached class facts).
+    final String dexHash;
+
+    DexInput(String apkName, String dexEntry, DexBackedDexFile dex, String dexHash) {
+        this.apkName = apkName;
+        this.dexEntry = dexEntry;
+        this.dex = dex;
+        this.dexHash = dexHash;
+    }
+}
@@ -7,6 +7,7 @@ import org.clyze.doop.common.CHA;
 import org.clyze.doop.common.Database;
 import org.clyze.doop.common.DoopErrorCodeException;
 import org.clyze.doop.common.Driver;
+import org.clyze.doop.common.PreprocessCache;
 import org.clyze.doop.common.android.AndroidSupport;
 import org.clyze.utils.JHelper;
 import com.android.tools.smali.dexlib2.Opcodes;
@@ -16,8 +17,17 @@ import com.android.tools.smali.dexlib2.iface.MultiDexContainer.DexEntry;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import static com.android.tools.smali.dexlib2.DexFileFactory.loadDexContainer;
 
@@ -44,7 +54,7 @@ public class DexInvoker {
 
         BasicJavaSupport java = new BasicJavaSupport(dexParams, new ArtifactScanner());
 
-        try (Database db = new Database(outDir)) {
+        try (Database db = new Database(outDir, true, dexParams._shardedFacts, dexParams._compressedFacts, dexParams._writerThreads)) {
             Set<String> tmpDirs = new HashSet<>();
             java.preprocessInputs(db, tmpDirs);
 
@@ -60,42 +70,56 @@ public class DexInvoker {
                 ex.printStackTrace();
             }
 
-            for (String apkName : dexParams.getAllInputs()) {
-                if (!apkName.endsWith(".apk")) {
-                    System.err.println("Input file is not an .apk file: " + apkName);
-                    continue;
-                }
+            // Load (and decompress) all .dex entries in parallel, then
+            // process all their classes in a single pool.
+            long time1 = System.currentTimeMillis();
+            int cores = dexParams._cores == null ? Runtime.getRuntime().availableProcessors() : dexParams._cores;
+            ExecutorService loader = Executors.newFixedThreadPool(cores);
+            List<DexInput> inputs = new ArrayList<>();
+            try {
+                List<Future<DexInput>> loading = new ArrayList<>();
+                for (String apkName : dexParams.getAllInputs()) {
+                    if (!apkName.endsWith(".apk")) {
+                        System.err.println("Input file is not an .apk file: " + apkName);
+                        continue;
+                    }
 
-                File apk = new File(apkName);
-                if (!apk.exists())
-                    throw new RuntimeException("APK does not exist: " + apkName);
-
-                try {
-                    Opcodes opcodes = Opcodes.getDefault();
-                    MultiDexContainer<? extends DexBackedDexFile> multiDex = loadDexContainer(apk, opcodes);
-                    long time1 = System.currentTimeMillis();
-                    for (String dexEntryName : multiDex.getDexEntryNames()) {
-                        DexEntry<? extends DexBackedDexFile> entry = multiDex.getEntry(dexEntryName);
-                        DexBackedDexFile dex = entry.getDexFile();
-                        if (dex != null) {
-                            System.out.println("Found dex file '" + dexEntryName + "' with " + dex.getClasses().size() + " classes in '" + apkName + "'");
-                            writer.generateFacts(java, dexParams, apk.getName(), dexEntryName, dex);
-                        } else
-                            throw new RuntimeException("Internal error: null .dex entry for " + dexEntryName);
+                    File apk = new File(apkName);
+                    if (!apk.exists())
+                        throw new RuntimeException("APK does not exist: " + apkName);
+
+                    try {
+                        Opcodes opcodes = Opcodes.getDefault();
+                        MultiDexContainer<? extends DexBackedDexFile> multiDex = loadDexContainer(apk, opcodes);
+                        boolean hash = writer.getClassFactCache() != null;
+                        for (String dexEntryName : multiDex.getDexEntryNames())
+                            loading.add(loader.submit(() -> loadDexEntry(apk, multiDex, dexEntryName, hash)));
+                    } catch (IOException e) {
+                        System.err.println("Error opening APK " + apkName);
+                        throw e;
                     }
-                    long time2 = System.currentTimeMillis();
-                    System.out.println("Dex processing time: " + ((time2 - time1) / 1000.0) + " sec");
-                } catch (IOException e) {
-                    System.err.println("Error opening APK " + apkName);
-                    throw e;
                 }
+                for (Future<DexInput> f : loading)
+                    inputs.add(f.get());
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                throw cause instanceof Exception ? (Exception) cause : ex;
+            } finally {
+                loader.shutdown();
             }
+            long time2 = System.currentTimeMillis();
+            System.out.println("Dex loading time: " + ((time2 - time1) / 1000.0) + " sec");
+            writer.generateFacts(java, dexParams, inputs);
+            System.out.println("Dex processing time: " + ((System.currentTimeMillis() - time2) / 1000.0) + " sec");
 
             if (dexParams._scanNativeCode)
 		ArtifactScanner.scanNativeCode(db, dexParams, null);
 
             writer.writeLastFacts(java);
             cha.conclude(db, writer, dexParams._reportPhantoms);
+            writer.getStats().writeTo(db);
+            if (writer.getClassFactCache() != null)
+                writer.getClassFactCache().printStats();
         } catch (Exception ex) {
             ex.printStackTrace();
             throw DoopErrorCodeException.error17(ex);
@@ -103,4 +127,44 @@ public class DexInvoker {
             Driver.waitForExecutorShutdown(java.getExecutor());
         }
     }
+
+    /**
+     * Load a .dex entry of an .apk.
+     *
+     * @param apk            the .apk
+     * @param multiDex       the .dex entries of the .apk
+     * @param dexEntryName   the name of the .dex entry
+     * @param hash           if true, also compute the hash of the entry
+     * @return               the loaded entry
+     * @throws IOException   if the entry cannot be read
+     */
+    private static DexInput loadDexEntry(File apk, MultiDexContainer<? extends DexBackedDexFile> multiDex,
+                                         String dexEntryName, boolean hash) throws IOException {
+        DexEntry<? extends DexBackedDexFile> entry = multiDex.getEntry(dexEntryName);
+        DexBackedDexFile dex = entry == null ? null : entry.getDexFile();
+        if (dex == null)
+            throw new RuntimeException("Internal error: null .dex entry for " + dexEntryName);
+        System.out.println("Found dex file '" + dexEntryName + "' with " + dex.getClasses().size() + " classes in '" + apk.getPath() + "'");
+        return new DexInput(apk.getName(), dexEntryName, dex, hash ? hashDexEntry(apk, dexEntryName) : null);
+    }
+
+    /**
+     * Compute the hash of a .dex entry of an .apk.
+     *
+     * @param apk            the .apk
+     * @param dexEntryName   the name of the .dex entry
+     * @return               the hash or null if the entry cannot be read
+     */
+    private static String hashDexEntry(File apk, String dexEntryName) {
+        try (ZipFile zip = new ZipFile(apk)) {
+            ZipEntry entry = zip.getEntry(dexEntryName);
+            if (entry != null)
+                try (InputStream is = zip.getInputStream(entry)) {
+                    return PreprocessCache.sha256(is);
+                }
+        } catch (IOException ex) {
+            System.err.println("WARNING: cannot hash " + dexEntryName + " in " + apk + ": " + ex.getMessage());
+        }
+        return null;
+    }
 }
@@ -7,6 +7,7 @@ import org.clyze.doop.common.FieldInfo;
 import org.clyze.doop.common.FieldOp;
 import org.clyze.doop.common.JavaFactWriter;
 import org.clyze.doop.common.JavaRepresentation;
+import org.clyze.doop.common.MethodArena;
 import org.clyze.doop.common.PredicateFile;
 import org.clyze.doop.common.SessionCounter;
 import com.android.tools.smali.dexlib2.AccessFlags;
@@ -56,11 +57,13 @@ class DexMethodFactWriter extends JavaFactWriter {
 
     private static final boolean debug = false;
     private final Logger logger = Logger.getLogger(getClass());
+    // The per-thread state that is reused across methods.
+    private static final ThreadLocal<MethodArena<SessionCounter>> arena = MethodArena.perThread(SessionCounter::new);
 
     // The following fields are needed to process the current method.
     private final DexBackedMethod m;
     private final Map<String, MethodSig> cachedMethodDescriptors;
-    private final SessionCounter counter = new SessionCounter();
+    private final SessionCounter counter;
     private final MethodFacts mf;
     private final String methId;
     private final NavigableMap<Integer, Integer> lineNumbers = new TreeMap<>();
@@ -73,7 +76,7 @@ class DexMethodFactWriter extends JavaFactWriter {
     // Address counter (16-bit code units).
     private int currentInstrAddr;
     // Map from address to instruction index.
-    private final Map<Integer, Integer> addressToIndex = new HashMap<>();
+    private final Map<Integer, Integer> addressToIndex;
 
     // The following fields hold state and are used to detect multi-instruction
     // patterns (e.g. move-result-after-invoke or filled array initialization).
@@ -103,11 +106,11 @@ class DexMethodFactWriter extends JavaFactWriter {
     // * SPARSE_SWITCH + SPARSE_SWITCH_PAYLOAD
     private final PatternManager<FirstInstructionEntry> pendingSwitchInfo = new PatternManager<>();
 
-    private final Collection<MoveExceptionInfo> exceptionMoves = new LinkedList<>();
+    private final Collection<MoveExceptionInfo> exceptionMoves;
 
     // Instructions that point to addresses that must be resolved.
-    private final Collection<RawGoto> gotos = new LinkedList<>();
-    private final Collection<RawGoto> ifs = new LinkedList<>();
+    private final Collection<RawGoto> gotos;
+    private final Collection<RawGoto> ifs;
 
     DexMethodFactWriter(DexBackedMethod dexMethod, Database _db, DexParameters params,
                         Map<String, MethodSig> cachedMethodDescriptors) {
@@ -115,6 +118,14 @@ class DexMethodFactWriter extends JavaFactWriter {
         this.m = dexMethod;
         this.cachedMethodDescriptors = cachedMethodDescriptors;
 
+        // Methods are processed one at a time by each thread.
+        MethodArena<SessionCounter> a = arena.get().reset();
+        this.counter = a.session();
+        this.addressToIndex = a.map();
+        this.exceptionMoves = a.list();
+        this.gotos = a.list();
+        this.ifs = a.list();
+
         this.mf = new MethodFacts(m);
         this.methId = mf.getMethodId();
 
@@ -149,7 +160,7 @@ class DexMethodFactWriter extends JavaFactWriter {
         }
 
         for (AccessFlags f : flags)
-            _db.add(METHOD_MODIFIER, f.toString(), methId);
+            _db.row(METHOD_MODIFIER).col(f.toString()).col(methId).end();
 
         int i = 0;
         for (MethodParameter param : m.getParameters()) {
@@ -159,7 +170,7 @@ class DexMethodFactWriter extends JavaFactWriter {
             String type = raiseTypeId(param.getType());
             writeFormalParam(methId, var, type, i);
             for (Annotation annot : param.getAnnotations())
-                _db.add(PARAM_ANNOTATION, methId, str(i), raiseTypeId(annot.getType()));
+                _db.row(PARAM_ANNOTATION).col(methId).col(i).col(raiseTypeId(annot.getType())).end();
             i++;
         }
 
@@ -171,7 +182,7 @@ class DexMethodFactWriter extends JavaFactWriter {
             writeNativeMethodId(methId, mf.declaringClass, mf.simpleName);
             if (!"void".equals(mf.retType)) {
                 String var = JavaRepresentation.nativeReturnVarOfMethod(methId);
-                _db.add(NATIVE_RETURN_VAR, var, methId);
+                _db.row(NATIVE_RETURN_VAR).col(var).col(methId).end();
                 writeLocal(var, mf.retType, methId);
             }
         }
@@ -269,7 +280,7 @@ class DexMethodFactWriter extends JavaFactWriter {
 
     private void resolveAndWriteBranches() {
         addressToIndex.forEach((addr, index) ->
-            _db.add(DEX_INSTR_ADDR_MAP, methId, str(index), str(addr)));
+            _db.row(DEX_INSTR_ADDR_MAP).col(methId).col(index).col(addr).end());
 
         for (RawGoto g : gotos) {
             Integer indexTo = addressToIndex.get(g.addrTo);
@@ -763,10 +774,12 @@ class DexMethodFactWriter extends JavaFactWriter {
                     valueType = "byte";
                 if (valueType != null)
                     writeNumConstantRaw(value, valueType);
-                _db.add(ARRAY_INITIAL_VALUE_FROM_CONST, insn, str(originalIndex), local(regDest), str(idx), value, heapId, methId);
+                _db.row(ARRAY_INITIAL_VALUE_FROM_CONST).col(insn).col(originalIndex).col(local(regDest))
+                    .col(idx).col(value).col(heapId).col(methId).end();
             }
         } catch (Exception ex) {
             logError(logger, "Error in array payload handling: " + ex.getMessage());
+            releaseRows();
         }
     }
 
@@ -818,7 +831,7 @@ class DexMethodFactWriter extends JavaFactWriter {
             case INVOKE_INTERFACE_RANGE:
             case INVOKE_SUPER_RANGE: {
                 String insn = this.objReturnInfo.insn;
-                _db.add(ASSIGN_RETURN_VALUE, insn, local(regDest));
+                _db.row(ASSIGN_RETURN_VALUE).col(insn).col(local(regDest)).end();
                 // Sanity check.
                 if (this.objReturnInfo.retType == null)
                     logWarn(logger, "WARNING: no return type in " + objReturnInfo);
@@ -842,7 +855,8 @@ class DexMethodFactWriter extends JavaFactWriter {
     private void writeInitialArrayValues(String insn, int regDest, int index,
                                          int[] argRegs, String heap) {
         for (int idx = 0; idx < argRegs.length; idx++)
-            _db.add(ARRAY_INITIAL_VALUE_FROM_LOCAL, insn, str(index), local(regDest), str(idx), local(argRegs[idx]), heap, methId);
+            _db.row(ARRAY_INITIAL_VALUE_FROM_LOCAL).col(insn).col(index).col(local(regDest)).col(idx)
+                .col(local(argRegs[idx])).col(heap).col(methId).end();
     }
 
     private void writeSwitchTargets(Instruction instr, PredicateFile predicateFile) {
@@ -850,14 +864,14 @@ class DexMethodFactWriter extends JavaFactWriter {
         String insn = instructionId("switch", entry.index);
         for (SwitchElement elem : ((SwitchPayload) instr).getSwitchElements()) {
             int branchAddr = entry.address + elem.getOffset();
-            _db.add(predicateFile, insn, str(elem.getKey()), str(branchAddr));
+            _db.row(predicateFile).col(insn).col(elem.getKey()).col(branchAddr).end();
         }
     }
 
     private void writeSwitchKey(Instruction instr, int index, PredicateFile predicateFile) {
         int testRegister = ((OneRegisterInstruction)instr).getRegisterA();
         String insn = instructionId("switch", index);
-        _db.add(predicateFile, insn, str(index), local(testRegister), methId);
+        _db.row(predicateFile).col(insn).col(index).col(local(testRegister)).col(methId).end();
         this.pendingSwitchInfo.registerFirstInstructionData(new FirstInstructionEntry(absoluteAddr((OffsetInstruction)instr), index));
     }
 
@@ -866,8 +880,8 @@ class DexMethodFactWriter extends JavaFactWriter {
         int arrayReg = tri.getRegisterB();
         int indexReg = tri.getRegisterC();
         String insn = instructionId("assign", index);
-        _db.add(predicateFile, insn, str(index), local(valReg), local(arrayReg), methId);
-        _db.add(ARRAY_INSN_INDEX, insn, local(indexReg));
+        _db.row(predicateFile).col(insn).col(index).col(local(valReg)).col(local(arrayReg)).col(methId).end();
+        _db.row(ARRAY_INSN_INDEX).col(insn).col(local(indexReg)).end();
     }
 
     private void writeBinopTwoRegPlusLit(TwoRegisterInstruction tri, Opcode op, int index) {
@@ -1002,14 +1016,14 @@ class DexMethodFactWriter extends JavaFactWriter {
         if (in_type == null || out_type == null)
             System.err.println("Cannot determine statement type for instruction " + insn + " (opcode: " + op + ")");
         else
-            _db.add(STATEMENT_TYPE, insn, in_type.toString(), out_type.toString());
+            _db.row(STATEMENT_TYPE).col(insn).col(in_type.toString()).col(out_type.toString()).end();
     }
 
     private void writeAssignCast(OneRegisterInstruction ori, ReferenceInstruction ri, int index) {
         int reg = ori.getRegisterA();
         String insn = instructionId("assign", index);
         String typeName = raiseTypeId(((DexBackedTypeReference)ri.getReference()).getType());
-        _db.add(ASSIGN_CAST, insn, str(index), local(reg), local(reg), typeName, methId);
+        _db.row(ASSIGN_CAST).col(insn).col(index).col(local(reg)).col(local(reg)).col(typeName).col(methId).end();
     }
 
     private void queueGoto(int index, int addrTo) {
@@ -1017,17 +1031,17 @@ class DexMethodFactWriter extends JavaFactWriter {
     }
 
     private void writeGoto(String insn, int indexTo, int index) {
-        _db.add(GOTO, insn, str(index), str(indexTo), methId);
+        _db.row(GOTO).col(insn).col(index).col(indexTo).col(methId).end();
     }
 
     private void writeExitMonitor(int registerA, int index) {
         String insn = instructionId("exit-monitor", index);
-        _db.add(EXIT_MONITOR, insn, str(index), local(registerA), methId);
+        _db.row(EXIT_MONITOR).col(insn).col(index).col(local(registerA)).col(methId).end();
     }
 
     private void writeEnterMonitor(int registerA, int index) {
         String insn = instructionId("enter-monitor", index);
-        _db.add(ENTER_MONITOR, insn, str(index), local(registerA), methId);
+        _db.row(ENTER_MONITOR).col(insn).col(index).col(local(registerA)).col(methId).end();
     }
 
     private void writeAssignUnop(TwoRegisterInstruction tri, int index, Opcode op) {
@@ -1046,7 +1060,7 @@ class DexMethodFactWriter extends JavaFactWriter {
     private void writeThrow(int reg, int index) {
         String name = str(reg);
         String insn = numberedInstructionId(methId, name, counter);
-        _db.add(THROW, insn, str(index), local(reg), methId);
+        _db.row(THROW).col(insn).col(index).col(local(reg)).col(methId).end();
     }
 
     private void writeAssignInstanceOf(TwoRegisterInstruction tri, ReferenceInstruction ri, int index) {
@@ -1054,7 +1068,7 @@ class DexMethodFactWriter extends JavaFactWriter {
         String to = local(tri.getRegisterA());
         String from = local(tri.getRegisterB());
         String className = raiseTypeId(((DexBackedTypeReference)ri.getReference()).getType());
-        _db.add(ASSIGN_INSTANCE_OF, insn, str(index), from, to, className, methId);
+        _db.row(ASSIGN_INSTANCE_OF).col(insn).col(index).col(from).col(to).col(className).col(methId).end();
     }
 
     private void writeAssignLocal(TwoRegisterInstruction tri, int index, Opcode op) {
@@ -1132,17 +1146,17 @@ class DexMethodFactWriter extends JavaFactWriter {
         writeClassHeap(heapId, className);
         String lineNo = strOfLineNo(findLineForInstructionIndex(index));
         int reg = ((OneRegisterInstruction)instr).getRegisterA();
-        _db.add(ASSIGN_HEAP_ALLOC, insn, str(index), heapId, local(reg), methId, lineNo);
+        _db.row(ASSIGN_HEAP_ALLOC).col(insn).col(index).col(heapId).col(local(reg)).col(methId).col(lineNo).end();
     }
 
     private void writeReturnVoid(int index) {
         String insn = instructionId("return-void", index);
-        _db.add(RETURN_VOID, insn, str(index), methId);
+        _db.row(RETURN_VOID).col(insn).col(index).col(methId).end();
     }
 
     private void writeReturn(int reg, int index) {
         String insn = instructionId("return", index);
-        _db.add(RETURN, insn, str(index), local(reg), methId);
+        _db.row(RETURN).col(insn).col(index).col(local(reg)).col(methId).end();
     }
 
     private void writeNewArray(Instruction instr, int index) {
@@ -1239,18 +1253,18 @@ class DexMethodFactWriter extends JavaFactWriter {
             writeActualParam(argStartPos + argPos, insn, local(argRegs[argPos]));
 
         if (lineNoInteger != null)
-            _db.add(METHOD_INV_LINE, insn, lineNo);
+            _db.row(METHOD_INV_LINE).col(insn).col(lineNo).end();
 
         switch (op) {
             case INVOKE_DIRECT:
             case INVOKE_DIRECT_RANGE:
                 if (base == null)
                     throw new RuntimeException("ERROR: no object return information in " + methId);
-                _db.add(SPECIAL_METHOD_INV, insn, str(index), mSig.sig, base, methId);
+                _db.row(SPECIAL_METHOD_INV).col(insn).col(index).col(mSig.sig).col(base).col(methId).end();
                 break;
             case INVOKE_STATIC:
             case INVOKE_STATIC_RANGE:
-                _db.add(STATIC_METHOD_INV, insn, str(index), mSig.sig, methId);
+                _db.row(STATIC_METHOD_INV).col(insn).col(index).col(mSig.sig).col(methId).end();
                 break;
             case INVOKE_VIRTUAL:
             case INVOKE_VIRTUAL_RANGE:
@@ -1258,13 +1272,13 @@ class DexMethodFactWriter extends JavaFactWriter {
             case INVOKE_INTERFACE_RANGE:
                 if (base == null)
                     throw new RuntimeException("ERROR: no object return information in " + methId);
-                _db.add(VIRTUAL_METHOD_INV, insn, str(index), mSig.sig, base, methId);
+                _db.row(VIRTUAL_METHOD_INV).col(insn).col(index).col(mSig.sig).col(base).col(methId).end();
                 break;
             case INVOKE_SUPER:
             case INVOKE_SUPER_RANGE:
                 if (base == null)
                     throw new RuntimeException("ERROR: no object return information in " + methId);
-                _db.add(SUPER_METHOD_INV, insn, str(index), mSig.sig, base, methId);
+                _db.row(SUPER_METHOD_INV).col(insn).col(index).col(mSig.sig).col(base).col(methId).end();
                 break;
             default:
                 throw new RuntimeException("Internal error: cannot handle invocation type " + op);
@@ -1276,7 +1290,7 @@ class DexMethodFactWriter extends JavaFactWriter {
         String insn = instructionId("assign", index);
         String lineNo = strOfLineNo(findLineForInstructionIndex(index));
         String var = local(reg);
-        _db.add(ASSIGN_HEAP_ALLOC, insn, str(index), heapId, var, methId, lineNo);
+        _db.row(ASSIGN_HEAP_ALLOC).col(insn).col(index).col(heapId).col(var).col(methId).col(lineNo).end();
 
         if (extractRegisterTypes)
             writeLocal(var, "java.lang.String", methId);
@@ -1295,13 +1309,13 @@ class DexMethodFactWriter extends JavaFactWriter {
     private String writeAssignHeapAllocation(int reg, String type, int index,
                                              String insn, boolean isEmptyArray) {
         String heap = JavaRepresentation.heapAllocId(methId, type, counter);
-        _db.add(NORMAL_HEAP, heap, type);
+        _db.row(NORMAL_HEAP).col(heap).col(type).end();
         String lineNo = strOfLineNo(findLineForInstructionIndex(index));
         String var = local(reg);
-        _db.add(ASSIGN_HEAP_ALLOC, insn, str(index), heap, var, methId, lineNo);
+        _db.row(ASSIGN_HEAP_ALLOC).col(insn).col(index).col(heap).col(var).col(methId).col(lineNo).end();
 
         if (isEmptyArray)
-            _db.add(EMPTY_ARRAY, heap);
+            _db.row(EMPTY_ARRAY).col(heap).end();
 
         if (extractRegisterTypes)
             writeLocal(var, type, methId);
@@ -1328,7 +1342,7 @@ class DexMethodFactWriter extends JavaFactWriter {
 
     private void writeAssignNumConstant(int reg, String constant, int index) {
         String insn = instructionId("assign", index);
-        _db.add(ASSIGN_NUM_CONST, insn, str(index), constant, local(reg), methId);
+        _db.row(ASSIGN_NUM_CONST).col(insn).col(index).col(constant).col(local(reg)).col(methId).end();
     }
 
     private MethodSig newOrCachedMethodSig(DexBackedMethodReference ref) {
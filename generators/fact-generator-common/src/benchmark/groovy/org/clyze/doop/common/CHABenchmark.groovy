@@ -0,0 +1,78 @@
+package org.clyze.doop.common
+
+import java.nio.file.Files
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import spock.lang.Specification
+
+/**
+ * Measures the throughput of the CHA accumulators when many fact
+ * generation threads append to them (as the Dex front end does), at
+ * the scale of a large Android app, and checks field resolution.
+ */
+class CHABenchmark extends Specification {
+    static final int THREADS = 8
+    static final int CLASSES = 20000
+    static final int METHODS_PER_CLASS = 20
+    static final int OPS_PER_CLASS = 50
+
+    def "Concurrent registerReferencedMethod/queueFieldOps"() {
+        given:
+        File dir = Files.createTempDirectory('cha-benchmark').toFile()
+        Database db = new Database(dir.canonicalPath)
+        CHA cha = new CHA()
+        // Half of the referenced fields are declared in a common superclass.
+        cha.registerDefinedClassFields('Base', (5..<10).collect { new FieldInfo('int', 'f' + it, 'Base') })
+        ExecutorService exec = Executors.newFixedThreadPool(THREADS)
+        List<Callable<Void>> tasks = (0..<THREADS).collect { int t ->
+            ({
+                for (int c = t; c < CLASSES; c += THREADS) {
+                    // Odd classes are registered after their field operations are queued.
+                    if (c % 2 == 0)
+                        registerClass(cha, 'C' + c)
+                    Collection<FieldOp> ops = new LinkedList<>()
+                    for (int i = 0; i < OPS_PER_CLASS; i++) {
+                        FieldInfo fi = new FieldInfo('int', 'f' + (i % 10), 'C' + c)
+                        cha.registerReferencedField(fi)
+                        ops.add(new FieldOp(PredicateFile.LOAD_INST_FIELD, 'i' + i, String.valueOf(i), 'a', 'b', fi, 'm'))
+                    }
+                    cha.queueFieldOps(db, ops)
+                    if (c % 2 == 1)
+                        registerClass(cha, 'C' + c)
+                    // Calls to the same methods repeat across classes.
+                    for (int m = 0; m < METHODS_PER_CLASS; m++)
+                        cha.registerReferencedMethod('<C' + ((c + m) % CLASSES) + ': void m' + m + '()>')
+                }
+                return null
+            } as Callable<Void>)
+        }
+
+        when:
+        long start = System.nanoTime()
+        exec.invokeAll(tasks).each { it.get() }
+        long elapsed = System.nanoTime() - start
+        exec.shutdown()
+        long calls = CLASSES * (OPS_PER_CLASS + METHODS_PER_CLASS + 1L)
+        println "CHA: ${calls} calls from ${THREADS} threads in ${elapsed / 1_000_000} ms (${(long) (calls * 1e9 / elapsed)} calls/sec)"
+
+        cha.writeFieldOps(db)
+        db.close()
+
+        then:
+        db.getRowCount(PredicateFile.LOAD_INST_FIELD) == CLASSES * OPS_PER_CLASS
+        cha.referencedMethods.size() == CLASSES * METHODS_PER_CLASS
+        cha.referencedFields.size() == CLASSES * 10
+        cha.phantomFields.isEmpty()
+        cha.earlyFieldOps.sum() >= (CLASSES / 2) * OPS_PER_CLASS
+        new File(dir, 'LoadInstanceField.facts').readLines().count { it.contains('<Base: int f5>') } == CLASSES * OPS_PER_CLASS / 10
+
+        cleanup:
+        dir?.deleteDir()
+    }
+
+    static void registerClass(CHA cha, String className) {
+        cha.registerSuperClass(className, 'Base')
+        cha.registerDefinedClassFields(className, (0..<5).collect { new FieldInfo('int', 'f' + it, className) })
+    }
+}
@@ -10,11 +10,18 @@ public class ArtifactEntry {
     public final String subArtifact;
     // Size of entry.
     public final int size;
+    // SHA-256 of the bytecode (if computed, see ArtifactScanner.setHashClasses()).
+    public final String hash;
 
     public ArtifactEntry(String className, String subArtifact, int size) {
+        this(className, subArtifact, size, null);
+    }
+
+    public ArtifactEntry(String className, String subArtifact, int size, String hash) {
         this.className = className;
         this.subArtifact = subArtifact;
         this.size = size;
+        this.hash = hash;
     }
 
     public static Set<String> toClassNames(Iterable<ArtifactEntry> s) {
@@ -1,18 +1,23 @@
 package org.clyze.doop.common;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.Consumer;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
-import java.util.zip.ZipInputStream;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.log4j.Logger;
@@ -41,6 +46,13 @@ public class ArtifactScanner {
     private final Map<String, Set<ArtifactEntry>> artifactToClassMap = new ConcurrentHashMap<>();
     private final Logger logger = Logger.getLogger(getClass());
     private final Set<GenericFieldInfo> genericFields = ConcurrentHashMap.newKeySet();
+    /** The bytecode hashes of classes (if enabled), by class name. */
+    private final Map<String, String> classHashes = new ConcurrentHashMap<>();
+    /** The sizes of the classes (in bytes), by class name. */
+    private final Map<String, Integer> classSizes = new ConcurrentHashMap<>();
+    /** Marks classes found more than once, with different bytecode. */
+    private static final String CONFLICTING_HASH = "";
+    private volatile boolean hashClasses = false;
 
     Set<GenericFieldInfo> getGenericFields() { return genericFields; }
 
@@ -48,6 +60,54 @@ public class ArtifactScanner {
         return artifactToClassMap;
     }
 
+    /**
+     * Enable computing the bytecode hashes of scanned classes (used to
+     * reuse the facts of unchanged classes).
+     *
+     * @param hashClasses   true to compute hashes
+     */
+    public void setHashClasses(boolean hashClasses) {
+        this.hashClasses = hashClasses;
+    }
+
+    public boolean hashesClasses() {
+        return hashClasses;
+    }
+
+    /**
+     * Returns the bytecode hash of a class.
+     *
+     * @param className   the class name
+     * @return            the hash or null if not known (or if different
+     *                    versions of the class were found)
+     */
+    public String getClassHash(String className) {
+        String hash = classHashes.get(className);
+        return CONFLICTING_HASH.equals(hash) ? null : hash;
+    }
+
+    /**
+     * Record the bytecode hash of a class.
+     *
+     * @param className   the class name
+     * @param hash        the hash
+     */
+    public void registerClassHash(String className, String hash) {
+        classHashes.merge(className, hash, (h1, h2) -> h1.equals(h2) ? h1 : CONFLICTING_HASH);
+    }
+
+    /**
+     * Returns the size of a class, as registered by
+     * registerArtifactClass(). If the class was found more than once,
+     * the largest size is returned.
+     *
+     * @param className   the class name
+     * @return            the size (in bytes) or -1 if not known
+     */
+    public int getClassSize(String className) {
+        return classSizes.getOrDefault(className, -1);
+    }
+
     /**
      * Registers a class with its container artifact.
      * @param artifact     the file name of the artifact containing the class
@@ -57,7 +117,8 @@ public class ArtifactScanner {
      */
     public void registerArtifactClass(String artifact, String className, String subArtifact, int size) {
         ArtifactEntry ae = new ArtifactEntry(className, subArtifact, size);
-        artifactToClassMap.computeIfAbsent(artifact, x -> new CopyOnWriteArraySet<>()).add(ae);
+        artifactToClassMap.computeIfAbsent(artifact, x -> ConcurrentHashMap.newKeySet()).add(ae);
+        classSizes.merge(className, size, Math::max);
     }
 
     /**
@@ -90,9 +151,28 @@ public class ArtifactScanner {
     }
 
     public void processClass(InputStream is, File f, Consumer<String> classProc) throws IOException {
-        String className = BytecodeUtil.getClassName(new ClassReader(is));
-        String artifact = f.getName();
-        registerArtifactClass(artifact, className, "-", IOUtils.toByteArray(is).length);
+        processClass(IOUtils.toByteArray(is), f.getName(), classProc, null);
+    }
+
+    /**
+     * Register a class, given its bytecode.
+     *
+     * @param bytes       the contents of the .class file
+     * @param artifact    the name of the artifact containing the class
+     * @param classProc   the processor for the class (takes class name)
+     * @param scanned     if not null, the registered entry is also added here
+     */
+    private void processClass(byte[] bytes, String artifact, Consumer<String> classProc,
+                              Collection<ArtifactEntry> scanned) {
+        String className = BytecodeUtil.getClassName(new ClassReader(bytes));
+        registerArtifactClass(artifact, className, "-", bytes.length);
+        String hash = null;
+        if (hashClasses) {
+            hash = PreprocessCache.hex(PreprocessCache.newDigest().digest(bytes));
+            registerClassHash(className, hash);
+        }
+        if (scanned != null)
+            scanned.add(new ArtifactEntry(className, "-", bytes.length, hash));
         if (classProc != null)
             classProc.accept(className);
 
@@ -106,7 +186,10 @@ public class ArtifactScanner {
 
     /**
      * Register archive (.class) entries and perform actions over
-     * other types of entries (if processors are not null).
+     * other types of entries (if processors are not null). The archive
+     * is read once, via its central directory, in the calling thread:
+     * archives are processed in parallel by their callers (so classProc
+     * must be thread-safe if it is shared between archives).
      *
      * @param input       the path of the input archive
      * @param classProc   the processor for .class entries (takes entry name)
@@ -114,27 +197,55 @@ public class ArtifactScanner {
      */
     public void processArchive(String input, Consumer<String> classProc,
                                EntryProcessor generalProc) throws IOException {
-        try (ZipInputStream zin = new ZipInputStream(new FileInputStream(input)); ZipFile zipFile = new ZipFile(input)) {
-            ZipEntry entry;
-            while ((entry = zin.getNextEntry()) != null) {
+        processArchive(input, classProc, generalProc, null);
+    }
+
+    /**
+     * Same as processArchive(input, classProc, generalProc), also
+     * returning the registered class entries.
+     *
+     * @param input       the path of the input archive
+     * @param classProc   the processor for .class entries (takes entry name)
+     * @param generalProc the general processor for all other entries
+     * @param scanned     if not null, a collection that receives the
+     *                    registered class entries
+     * @return            false if the archive could not be read fully
+     */
+    public boolean processArchive(String input, Consumer<String> classProc,
+                                  EntryProcessor generalProc,
+                                  Collection<ArtifactEntry> scanned) throws IOException {
+        try (ZipFile zipFile = new ZipFile(input)) {
+            String artifact = new File(zipFile.getName()).getName();
+            List<ZipEntry> classEntries = new ArrayList<>();
+            List<ZipEntry> otherEntries = new ArrayList<>();
+            for (Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements(); ) {
+                ZipEntry entry = entries.nextElement();
                 /* Skip directories */
                 if (entry.isDirectory())
                     continue;
+                if (entry.getName().toLowerCase().endsWith(".class"))
+                    classEntries.add(entry);
+                else
+                    otherEntries.add(entry);
+            }
 
-                String entryName = entry.getName().toLowerCase();
-                if (entryName.endsWith(".class")) {
-                    try {
-                        processClass(zipFile.getInputStream(entry), new File(zipFile.getName()), classProc);
-                    } catch (Exception ex) {
-                        ex.printStackTrace();
-                        System.err.println("Error while preprocessing entry \"" + entryName + "\", it will be ignored.");
-                    }
-                } else if (generalProc != null)
-                    generalProc.accept(zipFile, entry, entryName);
+            for (ZipEntry entry : classEntries) {
+                try (InputStream is = zipFile.getInputStream(entry)) {
+                    processClass(IOUtils.toByteArray(is), artifact, classProc, scanned);
+                } catch (Exception ex) {
+                    ex.printStackTrace();
+                    System.err.println("Error while preprocessing entry \"" + entry.getName().toLowerCase() + "\", it will be ignored.");
+                }
             }
+
+            if (generalProc != null)
+                for (ZipEntry entry : otherEntries)
+                    generalProc.accept(zipFile, entry, entry.getName().toLowerCase());
+            return true;
         } catch (Exception ex) {
             ex.printStackTrace();
             System.err.println("Error while processing archive " + input + ": " + ex.getMessage());
+            return false;
         }
     }
 
@@ -172,27 +283,96 @@ public class ArtifactScanner {
             analysisType = BUILTIN;
             System.out.println("No binary analysis type given, using default: " + analysisType.name());
         }
-        scanNativeInputs(dbc, analysisType, parameters._preciseNativeStrings, methodStrings, parameters.getInputs());
+        NativeScanCache cache = null;
+        if (parameters._nativeScanCacheDir != null) {
+            String options = analysisType.name() + ' ' + parameters._preciseNativeStrings;
+            try {
+                cache = new NativeScanCache(new File(parameters._nativeScanCacheDir), options, methodStrings);
+            } catch (IOException ex) {
+                System.err.println("WARNING: native scan cache disabled: " + ex.getMessage());
+            }
+        }
+        scanNativeInputs(db, dbc, analysisType, parameters._preciseNativeStrings, methodStrings, parameters.getInputs(), cache, parameters._cores);
+        if (cache != null)
+            cache.printStats();
     }
 
-    private static void scanNativeInputs(NativeDatabaseConsumer dbc,
+    /**
+     * Scan the native code of the inputs. The entries of all inputs
+     * are scanned in parallel, each by its own scanner; native
+     * libraries are looked up in the cache first (if not null).
+     */
+    private static void scanNativeInputs(Database db, NativeDatabaseConsumer dbc,
                                          BinaryAnalysis.AnalysisType binAnalysisType,
                                          boolean preciseNativeStrings,
                                          Set<String> methodStrings,
-                                         Iterable<String> inputs) {
+                                         Iterable<String> inputs,
+                                         NativeScanCache cache, Integer cores) {
         final boolean demangle = false;
         final boolean truncateAddresses = true;
-        final NativeScanner scanner = new NativeScanner(true, methodStrings);
 
-        EntryProcessor gProc = (file, entry, entryName) -> scanner.scanArchiveEntry(dbc, binAnalysisType, preciseNativeStrings, truncateAddresses, demangle, file, entry, entryName);
-        for (String input : inputs) {
-            System.out.println("Processing native code in input: " + input);
-            try {
-                (new ArtifactScanner()).processArchive(input, null, gProc);
-            } catch (IOException ex) {
-                ex.printStackTrace();
+        // Scanners are not shared between threads.
+        EntryProcessor gProc = (file, entry, entryName) -> {
+            NativeScanCache.Scan scan = (consumer, strings) -> new NativeScanner(true, strings).scanArchiveEntry(consumer, binAnalysisType, preciseNativeStrings, truncateAddresses, demangle, file, entry, entryName);
+            if (cache == null || !entryName.endsWith(".so"))
+                scan.run(dbc, methodStrings);
+            else
+                scanLibrary(cache, db, scan, file, entry);
+        };
+
+        int threads = cores == null ? Runtime.getRuntime().availableProcessors() : cores;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<ZipFile> archives = new ArrayList<>();
+        try {
+            List<Future<?>> scans = new ArrayList<>();
+            for (String input : inputs) {
+                System.out.println("Processing native code in input: " + input);
+                ZipFile zipFile;
+                try {
+                    zipFile = new ZipFile(input);
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                    continue;
+                }
+                archives.add(zipFile);
+                for (Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements(); ) {
+                    ZipEntry entry = entries.nextElement();
+                    String entryName = entry.getName().toLowerCase();
+                    if (entry.isDirectory() || entryName.endsWith(".class"))
+                        continue;
+                    scans.add(executor.submit(() -> {
+                        try {
+                            gProc.accept(zipFile, entry, entryName);
+                        } catch (Exception ex) {
+                            ex.printStackTrace();
+                            System.err.println("Error while scanning native code in entry " + entryName + " of " + input + ": " + ex.getMessage());
+                        }
+                    }));
+                }
             }
+            for (Future<?> f : scans)
+                f.get();
+        } catch (InterruptedException | ExecutionException ex) {
+            throw new RuntimeException("Native code scanning failed: " + ex.getMessage(), ex);
+        } finally {
+            executor.shutdownNow();
+            for (ZipFile zipFile : archives)
+                try {
+                    zipFile.close();
+                } catch (IOException ex) {
+                    System.err.println("WARNING: cannot close " + zipFile.getName() + ": " + ex.getMessage());
+                }
+        }
+    }
+
+    private static void scanLibrary(NativeScanCache cache, Database db, NativeScanCache.Scan scan,
+                                    ZipFile file, ZipEntry entry) throws IOException {
+        String key;
+        try (InputStream is = file.getInputStream(entry)) {
+            key = cache.key(is);
         }
+        if (!cache.replay(key, db))
+            cache.record(key, db, scan);
     }
 
     @FunctionalInterface
@@ -3,11 +3,16 @@ package org.clyze.doop.common;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * This class gathers Java-specific code (such as JAR handling).
@@ -37,33 +42,93 @@ public class BasicJavaSupport {
         return exec;
     }
 
+    /**
+     * Returns the number of threads of parallel steps (the --cores
+     * option or, if missing, the number of processors).
+     *
+     * @return the number of threads
+     */
+    public int getCores() {
+        return parameters._cores == null ? Runtime.getRuntime().availableProcessors() : parameters._cores;
+    }
+
     /**
      * Helper method to read classes and resources from input archives.
+     * All inputs (application, platform and dependency archives) are
+     * scanned concurrently.
      */
     public void preprocessInputs(Database db, Set<String> tmpDirs) throws IOException {
-        for (String filename : parameters.getInputs()) {
-            System.out.println("Preprocessing application: " + filename);
-            preprocessInput(db, tmpDirs, classesInApplicationJars, filename);
-        }
-        for (String filename : parameters.getPlatformLibs()) {
-            System.out.println("Preprocessing platform library: " + filename);
-            preprocessInput(db, tmpDirs, classesInLibraryJars, filename);
+        List<String> inputs = new ArrayList<>(parameters.getInputs());
+        List<String> platformLibs = new ArrayList<>(parameters.getPlatformLibs());
+        // WAR inputs are unpacked up front, since this changes the
+        // inputs and dependencies of the analysis.
+        if (hasWar(inputs) || hasWar(platformLibs) || hasWar(parameters.getDependencies())) {
+            System.out.println("Processing WAR inputs...");
+            parameters.processFatArchives(tmpDirs);
         }
-        for (String filename : parameters.getDependencies()) {
-            System.out.println("Preprocessing dependency: " + filename);
-            preprocessInput(db, tmpDirs, classesInDependencyJars, filename);
+        List<String> dependencies = new ArrayList<>(parameters.getDependencies());
+
+        int inputsCount = inputs.size() + platformLibs.size() + dependencies.size();
+        if (inputsCount == 0)
+            return;
+        PreprocessCache cache = parameters._preprocessCacheDir == null ? null : new PreprocessCache(new File(parameters._preprocessCacheDir));
+        // Class hashes are the keys of reusable class facts.
+        artScanner.setHashClasses(parameters._classFactCacheDir != null);
+        ExecutorService scanExec = Executors.newFixedThreadPool(Math.max(1, Math.min(getCores(), inputsCount)));
+        List<Future<?>> scans = new ArrayList<>(inputsCount);
+        try {
+            for (String filename : inputs)
+                scans.add(scanExec.submit(() -> {
+                    System.out.println("Preprocessing application: " + filename);
+                    preprocessInput(db, cache, classesInApplicationJars, filename);
+                    return null;
+                }));
+            for (String filename : platformLibs)
+                scans.add(scanExec.submit(() -> {
+                    System.out.println("Preprocessing platform library: " + filename);
+                    preprocessInput(db, cache, classesInLibraryJars, filename);
+                    return null;
+                }));
+            for (String filename : dependencies)
+                scans.add(scanExec.submit(() -> {
+                    System.out.println("Preprocessing dependency: " + filename);
+                    preprocessInput(db, cache, classesInDependencyJars, filename);
+                    return null;
+                }));
+            for (Future<?> scan : scans) {
+                try {
+                    scan.get();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(ex);
+                } catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    if (cause instanceof IOException)
+                        throw (IOException) cause;
+                    throw new RuntimeException(cause);
+                }
+            }
+        } finally {
+            scanExec.shutdownNow();
         }
     }
 
+    private static boolean hasWar(Collection<String> filenames) {
+        for (String filename : filenames)
+            if (filename.toLowerCase().endsWith(".war"))
+                return true;
+        return false;
+    }
+
     /**
      * Preprocess an input archive.
      *
      * @param db         the database object to use
-     * @param tmpDirs    the temporary directories set (for clean up)
+     * @param cache      the preprocessing cache (may be null)
      * @param classSet   appropriate set to add class names
      * @param filename   the input filename
      */
-    private void preprocessInput(Database db, Set<String> tmpDirs,
+    private void preprocessInput(Database db, PreprocessCache cache,
                                  Collection<String> classSet, String filename) throws IOException {
         String filenameL = filename.toLowerCase();
         boolean isAar = filenameL.endsWith(".aar");
@@ -73,28 +138,54 @@ public class BasicJavaSupport {
         boolean isClass = filenameL.endsWith(".class");
         boolean isApk = filenameL.endsWith(".apk");
 
+        boolean isArchive = isJar || isApk || isZip || isWar;
+        String cacheKey = null;
+        if (cache != null && isArchive) {
+            String kind = filenameL.substring(filenameL.lastIndexOf('.') + 1);
+            // Results with class hashes are kept apart from results without them.
+            if (artScanner.hashesClasses())
+                kind += ".hashed";
+            cacheKey = cache.key(new File(filename), kind);
+            PreprocessCache.Entry cached = cacheKey == null ? null : cache.load(cacheKey);
+            if (cached != null) {
+                System.out.println("Using cached preprocessing results for " + filename);
+                replay(db, cached, classSet, filename);
+                return;
+            }
+        }
+        PreprocessCache.Entry results = cacheKey == null ? null : new PreprocessCache.Entry();
+
         ArtifactScanner.EntryProcessor gProc = (jarFile, entry, entryName) -> {
-            if (entryName.endsWith(".properties"))
+            if (entryName.endsWith(".properties")) {
                 // Key by archive!entry, not just the archive: a jar routinely holds many
                 // .properties files (pom.properties, app config, per-profile copies) and
                 // keying by archive alone made them clobber each other in the map, so only
                 // one survived per jar (e.g. shopizer's config.cms.method was lost).
-                propertyProvider.addProperties(jarFile.getInputStream(entry), filename + "!" + entryName);
-            else if ((isJar || isAar || isZip || isWar) && entryName.endsWith(".xml")) {
+                Properties properties = propertyProvider.addProperties(jarFile.getInputStream(entry), filename + "!" + entryName);
+                if (results != null)
+                    results.properties.put(entryName, properties);
+            } else if ((isJar || isAar || isZip || isWar) && entryName.endsWith(".xml")) {
                 // We only handle .xml entries inside JAR archives here.
                 // APK archives may contain binary XML and need decoding.
-                File xmlTmpFile = ArtifactScanner.extractZipEntryAsFile("xml-file", jarFile, entry, entryName);
+                // Entries are parsed by this thread, since their facts may be recorded.
                 if (parameters._debug)
                     System.out.println("Processing XML entry (in " + filename + "): " + entryName);
-                XMLFactGenerator.processFile(xmlTmpFile, db, "", parameters._debug);
+                String xmlPath = new File(filename).getName() + "!/" + entry.getName();
+                XMLFactGenerator.processEntry(jarFile, entry, xmlPath, db, parameters._debug);
             }
         };
-        if (isWar) {
-            System.out.println("Processing WAR: " + filename);
-            // Process WAR inputs.
-            parameters.processFatArchives(tmpDirs);
-        }
-        if (isJar || isApk || isZip || isWar)
+        if (results != null) {
+            // XML facts are written by this thread, record them for the cache.
+            db.startRecording(results::record);
+            boolean complete;
+            try {
+                complete = artScanner.processArchive(filename, classSet::add, gProc, results.classes);
+            } finally {
+                db.stopRecording();
+            }
+            if (complete)
+                cache.store(cacheKey, results);
+        } else if (isArchive)
             artScanner.processArchive(filename, classSet::add, gProc);
         else if (isClass) {
             File f = new File(filename);
@@ -105,6 +196,27 @@ public class BasicJavaSupport {
             System.err.println("WARNING: artifact scanner skips " + filename);
     }
 
+    /**
+     * Replay the cached preprocessing results of an archive.
+     *
+     * @param db         the database object to use
+     * @param cached     the cached results
+     * @param classSet   appropriate set to add class names
+     * @param filename   the input filename
+     */
+    private void replay(Database db, PreprocessCache.Entry cached,
+                        Collection<String> classSet, String filename) {
+        String artifact = new File(filename).getName();
+        for (ArtifactEntry ae : cached.classes) {
+            artScanner.registerArtifactClass(artifact, ae.className, ae.subArtifact, ae.size);
+            if (ae.hash != null)
+                artScanner.registerClassHash(ae.className, ae.hash);
+            classSet.add(ae.className);
+        }
+        cached.properties.forEach((entryName, properties) -> propertyProvider.addProperties(filename + "!" + entryName, properties));
+        cached.replayRows(db);
+    }
+
     public PropertyProvider getPropertyProvider() {
         return propertyProvider;
     }
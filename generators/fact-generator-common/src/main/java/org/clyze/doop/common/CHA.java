@@ -3,13 +3,14 @@ package org.clyze.doop.common;
 import org.clyze.doop.common.Database;
 import org.clyze.utils.TypeUtils;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentSkipListSet;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 
 /**
@@ -21,19 +22,29 @@ import java.util.function.Consumer;
  * - Detection of phantom types/fields/methods.
  *
  * A single instance of this class should be used for whole-program fact generation.
+ *
+ * The register/queue methods are called concurrently by fact generation
+ * threads, so the data they accumulate is kept in concurrent sets (when
+ * only distinct elements matter) or lock-free queues (appends are O(1)).
  */
 public class CHA {
     // Type data.
-    private final Collection<String> referencedTypes = new CopyOnWriteArrayList<>();
+    private final Set<String> referencedTypes = ConcurrentHashMap.newKeySet();
     private final Map<String, String> classInfo = new ConcurrentHashMap<>();
     // Method data.
-    private final Collection<String> definedMethods = new CopyOnWriteArrayList<>();
-    private final Collection<String> referencedMethods = new CopyOnWriteArrayList<>();
-    // Field data.
-    private final Map<String, Collection<FieldInfo>> definedClassFields = new ConcurrentHashMap<>();
-    private final Collection<FieldOp> fieldOps = new CopyOnWriteArrayList<>();
-    private final Collection<FieldInfo> referencedFields = new CopyOnWriteArrayList<>();
-    private final List<String> phantomFields = new CopyOnWriteArrayList<>();
+    private final Set<String> definedMethods = ConcurrentHashMap.newKeySet();
+    private final Set<String> referencedMethods = ConcurrentHashMap.newKeySet();
+    // Field data: the names of the fields defined by each class.
+    private final Map<String, Set<String>> definedFieldNames = new ConcurrentHashMap<>();
+    // Memoized field resolution: "class.field" -> declaring class (or UNRESOLVED).
+    private final Map<String, String> declaringClasses = new ConcurrentHashMap<>();
+    private static final String UNRESOLVED = "";
+    // Field operations that could not be resolved when queued, in per-class batches.
+    private final Collection<Collection<FieldOp>> fieldOps = new ConcurrentLinkedQueue<>();
+    private final LongAdder earlyFieldOps = new LongAdder();
+    // Referenced fields, one per (unresolved) field id.
+    private final Map<String, FieldInfo> referencedFields = new ConcurrentHashMap<>();
+    private final Collection<String> phantomFields = new ConcurrentLinkedQueue<>();
 
     public void registerReferencedType(String id) {
         if (!id.endsWith("[]") && !TypeUtils.isPrimitiveType(id))
@@ -41,7 +52,8 @@ public class CHA {
     }
 
     public void registerReferencedField(FieldInfo fi) {
-        referencedFields.add(fi);
+        // Field infos with the same id resolve to the same declaring class.
+        referencedFields.putIfAbsent(fi.getFieldId(), fi);
     }
 
     public void registerDefinedMethods(Collection<String> methods) {
@@ -63,8 +75,84 @@ public class CHA {
             writeLambda.accept(set);
     }
 
-    public void queueFieldOps(Collection<FieldOp> ops) {
-        fieldOps.addAll(ops);
+    /**
+     * Write field operations. Operations whose field can already be
+     * resolved (because the classes from the referenced class up to the
+     * declaring class have been registered) are written immediately;
+     * the rest are queued, to be written when fact generation ends.
+     *
+     * @param db    the database object to use
+     * @param ops   the field operations (not to be modified after this call)
+     */
+    public void queueFieldOps(Database db, Collection<FieldOp> ops) {
+        Collection<FieldOp> pending = null;
+        for (FieldOp op : ops) {
+            FieldInfo fi = op.getFieldInfo();
+            String declaringClass = resolveIfKnown(fi.definingClass, fi.name);
+            if (declaringClass == null) {
+                if (pending == null)
+                    pending = new ArrayList<>();
+                pending.add(op);
+            } else {
+                op.writeToDb(db, JavaRepresentation.fieldId(declaringClass, fi.type, fi.name));
+                earlyFieldOps.increment();
+            }
+        }
+        if (pending != null)
+            fieldOps.add(pending);
+    }
+
+    /**
+     * Resolve a field using only the classes registered so far.
+     *
+     * @param className   the class used in the field reference
+     * @param fieldName   the field name
+     * @return            the declaring class or null, if this cannot be
+     *                    decided yet (some class in the chain is missing)
+     */
+    private String resolveIfKnown(String className, String fieldName) {
+        String key = className + '.' + fieldName;
+        String ret = declaringClasses.get(key);
+        if (ret != null)
+            return ret == UNRESOLVED ? null : ret;
+        String current = className;
+        while (true) {
+            Set<String> names = definedFieldNames.get(current);
+            if (names == null)
+                return null;
+            if (names.contains(fieldName))
+                break;
+            if ("java.lang.Object".equals(current) || (current = classInfo.get(current)) == null)
+                return null;
+        }
+        // Registered classes do not change, so this is final.
+        declaringClasses.put(key, current);
+        return current;
+    }
+
+    /**
+     * Find the class that declares a field: first the class itself, then
+     * its superclasses. This needs the whole class hierarchy and thus
+     * should be called after the whole program has been seen.
+     *
+     * @param className   the class used in the field reference
+     * @param fieldName   the field name
+     * @return            the declaring class or UNRESOLVED
+     */
+    private String resolve(String className, String fieldName) {
+        String key = className + '.' + fieldName;
+        String ret = declaringClasses.get(key);
+        if (ret == null) {
+            Set<String> names = definedFieldNames.get(className);
+            if (names != null && names.contains(fieldName))
+                ret = className;
+            else {
+                String superClass = "java.lang.Object".equals(className) ? null : classInfo.get(className);
+                ret = superClass == null ? UNRESOLVED : resolve(superClass, fieldName);
+            }
+            declaringClasses.put(key, ret);
+        }
+        return ret;
     }
 
     /**
@@ -74,28 +162,22 @@ public class CHA {
      * @param db    the database object to use
      */
     private void writeFieldOps(Database db) {
-        System.out.println("Resolving and writing field operations...");
+        System.out.println("Resolving and writing field operations (" + earlyFieldOps.sum() + " already written)...");
 
         Map<String, String> resolvedFields = new ConcurrentHashMap<>();
-        for (FieldInfo fi : referencedFields) {
+        referencedFields.values().parallelStream().forEach(fi -> {
             String fieldIdBefore = fi.getFieldId();
-            try {
-                fi.resolveDeclaringClass(definedClassFields, classInfo);
-                String fieldIdAfter = fi.getFieldId();
-                if (!fieldIdBefore.equals(fieldIdAfter)) {
-                    // System.out.println("Resolved: " + fieldIdBefore + " -> " + fieldIdAfter);
-                    // Sanity check: the id has not already been resolved to a different id.
-                    String existing = resolvedFields.get(fieldIdBefore);
-                    if ((existing != null) && (!existing.equals(fieldIdAfter)))
-                        System.err.println("WARNING: resolved " + fieldIdBefore + " to " + fieldIdAfter + ", overwriting existing: " + existing);
-                    resolvedFields.put(fieldIdBefore, fieldIdAfter);
-                }
-            } catch (FieldInfo.ResolveException ex) {
+            String declaringClass = resolve(fi.definingClass, fi.name);
+            if (declaringClass == UNRESOLVED)
                 phantomFields.add(fieldIdBefore);
+            else if (!declaringClass.equals(fi.definingClass)) {
+                fi.definingClass = declaringClass;
+                resolvedFields.put(fieldIdBefore, fi.getFieldId());
             }
-        }
+        });
         System.out.println("Resolved " + resolvedFields.size() + " field references.");
-        fieldOps.forEach(op -> op.writeToDb(db, resolvedFields));
+        fieldOps.parallelStream().forEach(ops -> ops.forEach(op -> op.writeToDb(db, resolvedFields)));
+        fieldOps.clear();
     }
 
     /**
@@ -129,12 +211,19 @@ public class CHA {
             throw new RuntimeException("Cannot set superclass of " + sub + " to " + sup + ", it already is " + sup0);
     }
 
+    /**
+     * Register the fields defined by a class. For field operations to be
+     * resolved early, the superclass of the class (if any) should be
+     * registered before its fields.
+     *
+     * @param className   the class name
+     * @param fis         the fields defined by the class
+     */
     public void registerDefinedClassFields(String className, Collection<FieldInfo> fis) {
-        Collection<FieldInfo> fields = definedClassFields.get(className);
-        if (fields == null) {
-            fields = new CopyOnWriteArrayList<>();
-            definedClassFields.put(className, fields);
-        }
-        fields.addAll(fis);
+        // The set is complete before it becomes visible to resolveIfKnown().
+        Set<String> names = ConcurrentHashMap.newKeySet();
+        for (FieldInfo fi : fis)
+            names.add(fi.name);
+        definedFieldNames.merge(className, names, (s1, s2) -> { s1.addAll(s2); return s1; });
     }
 }
@@ -0,0 +1,228 @@
+package org.clyze.doop.common;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.clyze.doop.common.FieldOp.readFieldInfo;
+import static org.clyze.doop.common.FieldOp.writeFieldInfo;
+import static org.clyze.doop.common.PredicateFile.METHOD;
+import static org.clyze.doop.common.PreprocessCache.readNullableString;
+import static org.clyze.doop.common.PreprocessCache.readString;
+import static org.clyze.doop.common.PreprocessCache.writeNullableString;
+import static org.clyze.doop.common.PreprocessCache.writeString;
+
+/**
+ * An on-disk cache of the facts of single classes, so that a run over
+ * a slightly changed program only generates facts for the classes
+ * that changed. The facts of a class are keyed by the hash of its
+ * bytecode, the options of the run and any other input they depend on
+ * (given by the front end); global steps (such as the CHA and phantom
+ * detection) are not cached and run again over all classes.
+ */
+public class ClassFactCache {
+    // Bump when the format or the contents of cached facts change.
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".class-facts.gz";
+
+    private final File dir;
+    private final String options;
+    private final AtomicInteger hits = new AtomicInteger(0);
+    private final AtomicInteger misses = new AtomicInteger(0);
+    private final AtomicInteger uncacheable = new AtomicInteger(0);
+
+    /**
+     * Create a cache object.
+     *
+     * @param dir       the cache directory (created if missing)
+     * @param options   the key of the options that affect the facts
+     */
+    public ClassFactCache(File dir, String options) {
+        this.dir = dir;
+        this.options = options;
+    }
+
+    /**
+     * Compute the cache key of the facts of a class.
+     *
+     * @param className   the class name
+     * @param parts       the inputs the facts depend on (such as the
+     *                    bytecode hash of the class)
+     * @return            the key
+     */
+    public String key(String className, String... parts) {
+        MessageDigest md = PreprocessCache.newDigest();
+        md.update((VERSION + "\0" + options + '\0' + className).getBytes(StandardCharsets.UTF_8));
+        for (String part : parts)
+            md.update(('\0' + part).getBytes(StandardCharsets.UTF_8));
+        return PreprocessCache.hex(md.digest());
+    }
+
+    /**
+     * Read the cached facts of a class.
+     *
+     * @param key   the cache key of the class
+     * @return      the facts or null if they are not in the cache
+     */
+    public Fragment load(String key) {
+        File f = new File(dir, key + SUFFIX);
+        if (!f.exists()) {
+            misses.incrementAndGet();
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(f))))) {
+            if (in.readInt() != VERSION) {
+                misses.incrementAndGet();
+                return null;
+            }
+            Fragment fragment = new Fragment();
+            fragment.rows.read(in);
+            for (int i = in.readInt(); i > 0; i--)
+                fragment.heapTypes.add(readString(in));
+            for (int i = in.readInt(); i > 0; i--)
+                fragment.definedMethods.add(readString(in));
+            fragment.superClass = readNullableString(in);
+            for (int i = in.readInt(); i > 0; i--)
+                fragment.definedFields.add(readFieldInfo(in));
+            for (int i = in.readInt(); i > 0; i--)
+                fragment.fieldOps.add(FieldOp.read(in));
+            hits.incrementAndGet();
+            return fragment;
+        } catch (IOException | IllegalArgumentException ex) {
+            // Unknown relations (from older versions) also end up here.
+            System.err.println("WARNING: ignoring invalid class facts cache entry " + f + ": " + ex.getMessage());
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Write the facts of a class to the cache (unless the fragment has
+     * been marked as uncacheable). The cache file is written under a
+     * temporary name first, so that concurrent runs never read partial
+     * facts.
+     *
+     * @param key        the cache key of the class
+     * @param fragment   the facts of the class
+     */
+    public void store(String key, Fragment fragment) {
+        if (!fragment.cacheable) {
+            uncacheable.incrementAndGet();
+            return;
+        }
+        File tmpFile = null;
+        try {
+            Files.createDirectories(dir.toPath());
+            tmpFile = File.createTempFile(key, ".tmp", dir);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tmpFile))))) {
+                out.writeInt(VERSION);
+                fragment.rows.write(out);
+                out.writeInt(fragment.heapTypes.size());
+                for (String t : fragment.heapTypes)
+                    writeString(out, t);
+                out.writeInt(fragment.definedMethods.size());
+                for (String m : fragment.definedMethods)
+                    writeString(out, m);
+                writeNullableString(out, fragment.superClass);
+                out.writeInt(fragment.definedFields.size());
+                for (FieldInfo fi : fragment.definedFields)
+                    writeFieldInfo(out, fi);
+                out.writeInt(fragment.fieldOps.size());
+                for (FieldOp op : fragment.fieldOps)
+                    op.write(out);
+            }
+            Files.move(tmpFile.toPath(), new File(dir, key + SUFFIX).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            System.err.println("WARNING: cannot write class facts cache entry " + key + ": " + ex.getMessage());
+            if (tmpFile != null && !tmpFile.delete())
+                tmpFile.deleteOnExit();
+        }
+    }
+
+    /**
+     * Start recording the facts written by the current thread.
+     *
+     * @param writer   the fact writer
+     * @return         the fragment that receives the facts
+     */
+    public Fragment startRecording(JavaFactWriter writer) {
+        Fragment fragment = new Fragment();
+        writer._db.startRecording(fragment.rows::record);
+        return fragment;
+    }
+
+    /**
+     * Stop recording the facts written by the current thread.
+     *
+     * @param writer   the fact writer
+     */
+    public void stopRecording(JavaFactWriter writer) {
+        writer._db.stopRecording();
+    }
+
+    /**
+     * Write the cached facts of a class. The method strings of the
+     * class are also registered, if the writer collects them (for the
+     * native code scanner).
+     *
+     * @param fragment   the facts of the class
+     * @param writer     the fact writer
+     */
+    public void replay(Fragment fragment, JavaFactWriter writer) {
+        fragment.rows.replay(writer._db);
+        Set<String> methodStrings = writer.getMethodStrings();
+        if (methodStrings != null)
+            fragment.rows.forEach(METHOD, row -> {
+                    // Columns: id, simple name, params, type, return type, JVM signature, arity.
+                    methodStrings.add(RecordedRows.column(row, 1));
+                    methodStrings.add(RecordedRows.column(row, 5));
+                });
+    }
+
+    public void printStats() {
+        System.out.println("Class facts cache: " + hits.get() + " hits, " + misses.get() + " misses, " + uncacheable.get() + " uncacheable classes.");
+    }
+
+    /**
+     * The facts of a class: the rows written while generating them
+     * and the class data that global steps need (front ends only fill
+     * the parts they use).
+     */
+    public static final class Fragment {
+        private final RecordedRows rows = new RecordedRows();
+        private boolean cacheable = true;
+        /** The types that appear in class constants of the class. */
+        public final Collection<String> heapTypes = new ArrayList<>();
+        /** The methods defined in the class (for the CHA). */
+        public final Collection<String> definedMethods = new ArrayList<>();
+        /** The superclass (for the CHA). */
+        public String superClass;
+        /** The fields defined in the class (for the CHA). */
+        public final Collection<FieldInfo> definedFields = new ArrayList<>();
+        /** The field operations of the class, to be resolved by the CHA. */
+        public final Collection<FieldOp> fieldOps = new ArrayList<>();
+
+        /**
+         * Do not cache these facts, since they depend on more than the
+         * class itself (for example, on phantom types).
+         */
+        public void markUncacheable() {
+            cacheable = false;
+        }
+    }
+}
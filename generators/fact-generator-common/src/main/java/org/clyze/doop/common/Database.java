@@ -1,21 +1,71 @@
 package org.clyze.doop.common;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
 import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.Flushable;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringReader;
 import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.Map;
 import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.io.FileUtils;
 
 public class Database implements Closeable, Flushable {
     private static final char SEP = '\t';
     private static final char EOL = '\n';
+    /** The suffix of plain-text facts files. */
+    public static final String FACTS_SUFFIX = ".facts";
+    /** The suffix of gzip-compressed facts files. */
+    public static final String COMPRESSED_FACTS_SUFFIX = ".facts.gz";
+    /** The directory (under the output directory) holding per-thread shards. */
+    private static final String SHARDS_DIR = ".shards";
+    /** The buffer size (in bytes) of each per-thread shard file. */
+    private static final int SHARD_BUFFER_SIZE = 1 << 16;
+    /** The size (in characters) of the per-relation blocks of a shard. */
+    private static final int SHARD_BLOCK_SIZE = 1 << 11;
 
     private final Map<PredicateFile, Writer> _writers;
     private final String directory;
+    // The suffix of the facts files written (compressed or not).
+    private final String suffix;
+    // Sharded mode: every thread writes to its own shard file, so that
+    // no lock is taken when writing facts. A shard is a sequence of
+    // relation-tagged blocks, so a thread keeps a single file open.
+    private final boolean sharded;
+    private final ThreadLocal<Shard> _shards;
+    private final Collection<Shard> _allShards = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger shardCounter = new AtomicInteger(0);
+    // Pipelined mode: rows are written by dedicated writer threads.
+    private final FactWriterPipeline pipeline;
+    // Number of rows written per relation (indexed by ordinal).
+    private final LongAdder[] _rowCounts = new LongAdder[PredicateFile.values().length];
+    // Per-thread reusable row buffers (see row()).
+    private final ThreadLocal<Row> _rows = ThreadLocal.withInitial(Row::new);
+    // Per-thread row recorders (see startRecording()), innermost first,
+    // and the number of threads that record rows.
+    private final ThreadLocal<Recorder> _recorders = new ThreadLocal<>();
+    private final AtomicInteger recordingThreads = new AtomicInteger(0);
 
     /**
      * Generate a database object, which can be used to write facts.
@@ -33,18 +83,70 @@ public class Database implements Closeable, Flushable {
      * @param initWriters   if false, no facts can be written (dummy database)
      */
     public Database(String directory, boolean initWriters) throws IOException {
+        this(directory, initWriters, false);
+    }
+
+    /**
+     * Generate a database object, which can be used to write facts.
+     *
+     * @param directory     the output directory
+     * @param initWriters   if false, no facts can be written (dummy database)
+     * @param sharded       if true, each thread writes to its own buffered
+     *                      shard file and shards are merged on close()
+     */
+    public Database(String directory, boolean initWriters, boolean sharded) throws IOException {
+        this(directory, initWriters, sharded, false);
+    }
+
+    /**
+     * Generate a database object, which can be used to write facts.
+     *
+     * @param directory     the output directory
+     * @param initWriters   if false, no facts can be written (dummy database)
+     * @param sharded       if true, each thread writes to its own buffered
+     *                      shard file and shards are merged on close()
+     * @param compressed    if true, facts are written to gzip-compressed
+     *                      ".facts.gz" files
+     */
+    public Database(String directory, boolean initWriters, boolean sharded, boolean compressed) throws IOException {
+        this(directory, initWriters, sharded, compressed, 0);
+    }
+
+    /**
+     * Generate a database object, which can be used to write facts.
+     *
+     * @param directory     the output directory
+     * @param initWriters   if false, no facts can be written (dummy database)
+     * @param sharded       if true, each thread writes to its own buffered
+     *                      shard file and shards are merged on close()
+     * @param compressed    if true, facts are written to gzip-compressed
+     *                      ".facts.gz" files
+     * @param writerThreads if positive, facts are written by this number of
+     *                      dedicated writer threads (overrides sharding)
+     */
+    public Database(String directory, boolean initWriters, boolean sharded, boolean compressed,
+                    int writerThreads) throws IOException {
         this.directory = directory;
+        this.suffix = compressed ? COMPRESSED_FACTS_SUFFIX : FACTS_SUFFIX;
+        for (int i = 0; i < _rowCounts.length; i++)
+            _rowCounts[i] = new LongAdder();
+        boolean pipelined = initWriters && writerThreads > 0;
+        if (pipelined && sharded)
+            System.err.println("WARNING: fact writer threads are used, ignoring sharding.");
+        this.sharded = initWriters && sharded && !pipelined;
+        this._shards = this.sharded ? new ThreadLocal<>() : null;
 
         if (!initWriters) {
             this._writers = null;
+            this.pipeline = null;
             return;
         }
 
         this._writers = new EnumMap<>(PredicateFile.class);
 
         for (PredicateFile predicateFile : EnumSet.allOf(PredicateFile.class)) {
-            _writers.put(predicateFile, predicateFile.getWriter(new File(directory), ".facts"));
-            File factsFile = new File(String.valueOf(Paths.get(directory, PredicateFile.valueOf(predicateFile.name()) + ".facts")));
+            _writers.put(predicateFile, predicateFile.getWriter(new File(directory), suffix));
+            File factsFile = new File(String.valueOf(Paths.get(directory, PredicateFile.valueOf(predicateFile.name()) + suffix)));
             // if (factsFile.exists()) {
             //     factsFile.delete();
             // }
@@ -53,79 +155,485 @@ public class Database implements Closeable, Flushable {
             }
         }
 
+        this.pipeline = pipelined ? new FactWriterPipeline(_writers, writerThreads) : null;
     }
 
     public String getDirectory() {
         return directory;
     }
 
+    /**
+     * Returns the number of rows written to a relation by this object.
+     *
+     * @param predicateFile   the relation
+     * @return                the number of rows
+     */
+    public long getRowCount(PredicateFile predicateFile) {
+        return _rowCounts[predicateFile.ordinal()].sum();
+    }
+
+    /**
+     * Returns the facts file of a relation in a facts directory. If a
+     * compressed facts file exists, it is preferred over a plain one.
+     *
+     * @param directory   the facts directory
+     * @param relation    the relation name (e.g. "Method")
+     * @return            the facts file (which may not exist)
+     */
+    public static File getFactsFile(File directory, String relation) {
+        File compressed = new File(directory, relation + COMPRESSED_FACTS_SUFFIX);
+        return compressed.exists() ? compressed : new File(directory, relation + FACTS_SUFFIX);
+    }
+
+    /**
+     * Returns true if the given file is a facts file (compressed or not).
+     *
+     * @param file   the file to check
+     * @return       true if the file name has a facts suffix
+     */
+    public static boolean isFactsFile(File file) {
+        String name = file.getName();
+        return name.endsWith(FACTS_SUFFIX) || name.endsWith(COMPRESSED_FACTS_SUFFIX);
+    }
+
+    /**
+     * Opens a facts file for reading, transparently decompressing it
+     * if it is a ".gz" file.
+     *
+     * @param factsFile   the facts file
+     * @return            a reader for the (uncompressed) facts
+     */
+    public static BufferedReader newFactsReader(File factsFile) throws IOException {
+        if (!factsFile.getName().endsWith(".gz"))
+            return Files.newBufferedReader(factsFile.toPath());
+        // An empty (just touched) compressed file contains no facts.
+        if (factsFile.length() == 0)
+            return new BufferedReader(new StringReader(""));
+        return new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(factsFile), 1 << 16)));
+    }
+
     @Override
     public void close() throws IOException {
+        if (pipeline != null)
+            pipeline.close();
         if (_writers != null)
             for (Writer w: _writers.values())
                 w.close();
+        if (sharded)
+            mergeShards();
     }
 
     @Override
     public void flush() throws IOException {
+        if (pipeline != null)
+            pipeline.flush();
         if (_writers != null)
             for (Writer w: _writers.values())
                 w.flush();
+        if (sharded)
+            for (Shard shard : _allShards)
+                shard.flush();
     }
 
-    private String addColumn(String column) {
-        // Quote some special characters.
-        final char SLASH = '\"';
-        final char EOL = '\n';
-        final char TAB = '\t';
-        if ((column.indexOf(SLASH) >= 0) ||
-            (column.indexOf(EOL)   >= 0) ||
-            (column.indexOf(TAB)   >= 0)) {
-            // Assume at most 5 special characters will be rewritten
-            // before updating the capacity.
-            StringBuilder sb = new StringBuilder(column.length() + 5);
-            for (char c : column.toCharArray())
-                switch (c) {
-                case SLASH:
-                    sb.append("\\\\\"");
-                    break;
-                case EOL:
-                    sb.append("\\\\n");
-                    break;
-                case TAB:
-                    sb.append("\\\\t");
-                    break;
-                default:
-                    sb.append(c);
+    private File getShardsDir() {
+        return new File(directory, SHARDS_DIR);
+    }
+
+    /**
+     * Returns the shard of the current thread, creating it on first use.
+     *
+     * @return   the shard
+     */
+    private Shard getShard() throws IOException {
+        Shard shard = _shards.get();
+        if (shard == null) {
+            File shardsDir = getShardsDir();
+            Files.createDirectories(shardsDir.toPath());
+            shard = new Shard(new File(shardsDir, String.valueOf(shardCounter.getAndIncrement())));
+            _shards.set(shard);
+            _allShards.add(shard);
+        }
+        return shard;
+    }
+
+    /**
+     * Closes all shards and appends the blocks of each relation to the
+     * relation's facts file. Row order is not preserved, which is fine
+     * for Datalog inputs. Assumes no more facts are written.
+     */
+    private void mergeShards() throws IOException {
+        for (Shard shard : _allShards)
+            shard.close();
+        _allShards.clear();
+
+        File shardsDir = getShardsDir();
+        File[] shards = shardsDir.listFiles();
+        if (shards != null) {
+            boolean compressed = suffix.equals(COMPRESSED_FACTS_SUFFIX);
+            PredicateFile[] predicateFiles = PredicateFile.values();
+            // Opened on first use; compressed facts get a new gzip member.
+            OutputStream[] outs = new OutputStream[predicateFiles.length];
+            byte[] block = new byte[SHARD_BLOCK_SIZE * 4];
+            try {
+                for (File shard : shards) {
+                    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(shard), SHARD_BUFFER_SIZE))) {
+                        int hi;
+                        while ((hi = in.read()) != -1) {
+                            int ordinal = (hi << 8) | in.readUnsignedByte();
+                            int size = in.readInt();
+                            if (size > block.length)
+                                block = new byte[size];
+                            in.readFully(block, 0, size);
+                            OutputStream out = outs[ordinal];
+                            if (out == null) {
+                                FileOutputStream fos = new FileOutputStream(new File(directory, predicateFiles[ordinal] + suffix), true);
+                                out = compressed ? new GZIPOutputStream(fos, SHARD_BUFFER_SIZE) : new BufferedOutputStream(fos, SHARD_BUFFER_SIZE);
+                                outs[ordinal] = out;
+                            }
+                            out.write(block, 0, size);
+                        }
+                    }
                 }
-            return sb.toString();
-        } else
-            return column;
+            } finally {
+                for (OutputStream out : outs)
+                    if (out != null)
+                        out.close();
+            }
+        }
+        FileUtils.deleteQuietly(shardsDir);
+    }
+
+    /**
+     * The shard file of a thread. Rows are gathered in a small buffer
+     * per relation and full buffers are written to the file as blocks
+     * of the form (relation ordinal: 2 bytes, size: 4 bytes, rows).
+     * Rows are encoded with the default charset, like the facts files.
+     */
+    private static final class Shard {
+        private static final Charset CHARSET = Charset.defaultCharset();
+        private final DataOutputStream out;
+        private final char[][] blocks = new char[PredicateFile.values().length][];
+        private final int[] lengths = new int[PredicateFile.values().length];
+
+        Shard(File file) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), SHARD_BUFFER_SIZE));
+        }
+
+        synchronized void write(PredicateFile predicateFile, char[] buf, int len) throws IOException {
+            int ordinal = predicateFile.ordinal();
+            char[] block = blocks[ordinal];
+            if (block == null) {
+                block = new char[SHARD_BLOCK_SIZE];
+                blocks[ordinal] = block;
+            }
+            if (lengths[ordinal] + len > block.length) {
+                writeBlock(ordinal);
+                // A row that does not fit in a block is a block by itself.
+                if (len > block.length) {
+                    writeBlock(ordinal, buf, len);
+                    return;
+                }
+            }
+            System.arraycopy(buf, 0, block, lengths[ordinal], len);
+            lengths[ordinal] += len;
+        }
+
+        private void writeBlock(int ordinal) throws IOException {
+            if (lengths[ordinal] > 0) {
+                writeBlock(ordinal, blocks[ordinal], lengths[ordinal]);
+                lengths[ordinal] = 0;
+            }
+        }
+
+        private void writeBlock(int ordinal, char[] buf, int len) throws IOException {
+            byte[] bytes = new String(buf, 0, len).getBytes(CHARSET);
+            out.writeShort(ordinal);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        synchronized void flush() throws IOException {
+            for (int ordinal = 0; ordinal < blocks.length; ordinal++)
+                writeBlock(ordinal);
+            out.flush();
+        }
+
+        synchronized void close() throws IOException {
+            flush();
+            out.close();
+        }
+    }
+
+    /**
+     * Start writing a row of a relation. Columns are escaped and encoded
+     * directly into a reusable per-thread buffer, so that writing a fact
+     * does not allocate intermediate strings. Example:
+     * {@code db.row(VAR_TYPE).col(var).col(type).end()}. A row may be
+     * started while another row of the same thread is still open (for
+     * example, when a column value is computed by a method that also
+     * writes facts).
+     *
+     * A row whose columns fail to be computed (because an exception
+     * is thrown) is released when a row that was started before it is
+     * finished, or by releaseRows().
+     *
+     * @param predicateFile   the relation to write
+     * @return                the row builder (must be finished with end())
+     */
+    public Row row(PredicateFile predicateFile) {
+        Row r = _rows.get();
+        while (r.busy) {
+            if (r.next == null)
+                r.next = new Row();
+            r = r.next;
+        }
+        r.start(predicateFile);
+        return r;
     }
 
     public void add(PredicateFile predicateFile, String arg, String... args) {
-        if (_writers == null)
+        // A dummy database still passes rows to recorders.
+        if (_writers == null && recordingThreads.get() == 0)
             return;
+        Row r = row(predicateFile);
         try {
-            // Estimate StringBuilder capacity.
-            int capacity = args.length + 1;
-            for (String arg0 : args)
-                capacity += arg0.length();
-
-            StringBuilder line = new StringBuilder(capacity);
-            line.append(addColumn(arg));
-            for (String col : args) {
-                line.append(SEP);
-                line.append(addColumn(col));
+            r.col(arg);
+            for (String col : args)
+                r.col(col);
+        } catch (RuntimeException ex) {
+            r.release();
+            throw ex;
+        }
+        r.end();
+    }
+
+    /**
+     * Release the rows of the current thread that were started but not
+     * finished, because an exception was thrown while their columns
+     * were computed. Front ends that recover from such exceptions call
+     * this outside of any row, so that abandoned rows are not kept.
+     */
+    public void releaseRows() {
+        _rows.get().release();
+    }
+
+    /**
+     * Also pass every row written by the current thread to a recorder,
+     * until stopRecording() is called. Rows are passed encoded, as they
+     * appear in the facts files, so that they can be written again
+     * with writeEncoded(). Recordings may be nested: rows are passed to
+     * all recorders of the thread.
+     *
+     * @param recorder   the consumer of (relation, encoded row) pairs
+     */
+    void startRecording(BiConsumer<PredicateFile, String> recorder) {
+        Recorder outer = _recorders.get();
+        if (outer == null)
+            recordingThreads.incrementAndGet();
+        _recorders.set(new Recorder(recorder, outer));
+    }
+
+    /**
+     * Stop the innermost recording of the current thread.
+     */
+    void stopRecording() {
+        Recorder r = _recorders.get();
+        if (r == null)
+            return;
+        if (r.outer != null)
+            _recorders.set(r.outer);
+        else {
+            _recorders.remove();
+            recordingThreads.decrementAndGet();
+        }
+    }
+
+    private static final class Recorder {
+        final BiConsumer<PredicateFile, String> recorder;
+        final Recorder outer;
+
+        Recorder(BiConsumer<PredicateFile, String> recorder, Recorder outer) {
+            this.recorder = recorder;
+            this.outer = outer;
+        }
+    }
+
+    /**
+     * Write a row that has already been encoded (for example, a row
+     * passed to a recorder by an earlier run).
+     *
+     * @param predicateFile   the relation of the row
+     * @param row             the encoded row (ending with a newline)
+     */
+    void writeEncoded(PredicateFile predicateFile, String row) {
+        write(predicateFile, row.toCharArray(), row.length());
+    }
+
+    private void write(PredicateFile predicateFile, char[] buf, int len) {
+        if (recordingThreads.get() > 0) {
+            Recorder r = _recorders.get();
+            if (r != null) {
+                String row = new String(buf, 0, len);
+                for (; r != null; r = r.outer)
+                    r.recorder.accept(predicateFile, row);
             }
-            line.append(EOL);
-            String strLine = line.toString();
-            Writer writer = _writers.get(predicateFile);
-            synchronized(predicateFile) {
-                writer.write(strLine);
+        }
+        if (_writers == null)
+            return;
+        _rowCounts[predicateFile.ordinal()].increment();
+        if (pipeline != null) {
+            pipeline.write(predicateFile, buf, len);
+            return;
+        }
+        try {
+            if (sharded)
+                getShard().write(predicateFile, buf, len);
+            else {
+                Writer writer = _writers.get(predicateFile);
+                synchronized(predicateFile) {
+                    writer.write(buf, 0, len);
+                }
             }
         } catch(IOException exc) {
             throw new RuntimeException(exc);
         }
     }
+
+    /**
+     * A reusable builder of a single fact row. Instances are confined
+     * to the thread that obtained them via {@link Database#row}.
+     */
+    public final class Row {
+        private char[] buf = new char[256];
+        private int len = 0;
+        private int columns = 0;
+        private PredicateFile predicateFile;
+        private boolean busy = false;
+        private Row next = null;
+
+        private Row() { }
+
+        private void start(PredicateFile predicateFile) {
+            this.predicateFile = predicateFile;
+            this.len = 0;
+            this.columns = 0;
+            this.busy = true;
+        }
+
+        private void ensureCapacity(int extra) {
+            int needed = len + extra;
+            if (needed > buf.length)
+                buf = Arrays.copyOf(buf, Math.max(needed, buf.length * 2));
+        }
+
+        private void separator() {
+            if (columns++ > 0) {
+                ensureCapacity(1);
+                buf[len++] = SEP;
+            }
+        }
+
+        /**
+         * Add a string column. Quotes, newlines and tabs are escaped.
+         *
+         * @param column   the column value
+         * @return         this row
+         */
+        public Row col(String column) {
+            separator();
+            int n = column.length();
+            ensureCapacity(n);
+            for (int i = 0; i < n; i++) {
+                char c = column.charAt(i);
+                switch (c) {
+                case '\"':
+                    escape('"');
+                    break;
+                case '\n':
+                    escape('n');
+                    break;
+                case '\t':
+                    escape('t');
+                    break;
+                default:
+                    ensureCapacity(1);
+                    buf[len++] = c;
+                }
+            }
+            return this;
+        }
+
+        private void escape(char c) {
+            ensureCapacity(3);
+            buf[len++] = '\\';
+            buf[len++] = '\\';
+            buf[len++] = c;
+        }
+
+        /**
+         * Add an integer column, without creating its string form.
+         *
+         * @param column   the column value
+         * @return         this row
+         */
+        public Row col(int column) {
+            return col((long) column);
+        }
+
+        /**
+         * Add a long integer column, without creating its string form.
+         *
+         * @param column   the column value
+         * @return         this row
+         */
+        public Row col(long column) {
+            separator();
+            // 20 characters are enough for Long.MIN_VALUE.
+            ensureCapacity(20);
+            if (column == 0) {
+                buf[len++] = '0';
+                return this;
+            }
+            boolean negative = column < 0;
+            if (negative)
+                buf[len++] = '-';
+            int startPos = len;
+            // Work on negative values so that Long.MIN_VALUE is handled.
+            long v = negative ? column : -column;
+            while (v != 0) {
+                buf[len++] = (char) ('0' - (v % 10));
+                v /= 10;
+            }
+            // Digits were produced in reverse order.
+            for (int i = startPos, j = len - 1; i < j; i++, j--) {
+                char tmp = buf[i];
+                buf[i] = buf[j];
+                buf[j] = tmp;
+            }
+            return this;
+        }
+
+        /**
+         * Finish the row and write it to its relation.
+         */
+        public void end() {
+            ensureCapacity(1);
+            buf[len++] = EOL;
+            try {
+                write(predicateFile, buf, len);
+            } finally {
+                release();
+            }
+        }
+
+        // Rows later in the chain were started after this one, so they
+        // are nested in it: if they are still busy, they were abandoned
+        // by an exception and are released too.
+        private void release() {
+            for (Row r = this; r != null && r.busy; r = r.next) {
+                r.busy = false;
+                r.predicateFile = null;
+            }
+        }
+    }
 }
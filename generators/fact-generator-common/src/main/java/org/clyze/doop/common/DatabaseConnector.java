@@ -1,13 +1,14 @@
 package org.clyze.doop.common;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.clyze.scanner.NativeDatabaseConsumer;
 
+/** Writes the facts of the native code scanner (thread-safe). */
 public class DatabaseConnector implements NativeDatabaseConsumer {
     private final Database db;
-    private final Map<String, PredicateFile> predicates = new HashMap<>();
+    private final Map<String, PredicateFile> predicates = new ConcurrentHashMap<>();
 
     public DatabaseConnector(Database db) {
         this.db = db;
@@ -1,37 +1,72 @@
 package org.clyze.doop.common;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Consumer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 /**
- * A driver for parallel fact generation.
+ * A driver for parallel fact generation. Classes are scheduled
+ * largest-first (using the size estimate of each front end) on a
+ * work-stealing pool that uses all requested cores: large classes
+ * are processed alone and early, while small classes are grouped
+ * together, so that no single group stalls the end of a run.
  * @param <C>    class type
  */
 public abstract class Driver<C> {
     private ExecutorService _executor;
     private final int _cores;
     protected Set<C> _tmpClassGroup;
-    private int _classCounter;
     private final int _totalClasses;
+    // The maximum number of classes in a group.
     private final int _classSplit = 80;
+    // The number of groups per core to aim for, so that work can
+    // be balanced between threads.
+    private static final int GROUPS_PER_CORE = 8;
+    // Seconds between progress reports.
+    private static final int PROGRESS_INTERVAL = 30;
     private int errors;
+    private FactGenStats _stats = new FactGenStats();
+    // Progress of the current run, in classes and estimated size.
+    private final AtomicLong _doneClasses = new AtomicLong(0);
+    private final AtomicLong _doneSize = new AtomicLong(0);
 
     protected Driver(int totalClasses, Integer cores) {
         this._totalClasses = totalClasses;
         this._cores = cores == null? Runtime.getRuntime().availableProcessors() : cores;
-        this._classCounter = 0;
         initTmpClassGroup();
 
         System.out.println("Fact generation cores: " + _cores);
     }
 
+    /**
+     * Returns the statistics object used to record per-class and
+     * per-method timings.
+     *
+     * @return    the statistics object of this driver
+     */
+    public FactGenStats getStats() {
+        return _stats;
+    }
+
+    /**
+     * Share a statistics object between drivers (for example, one
+     * driver per .dex entry).
+     *
+     * @param stats   the statistics object to use
+     */
+    public void setStats(FactGenStats stats) {
+        this._stats = stats;
+    }
+
     protected void initTmpClassGroup() {
         this._tmpClassGroup = Collections.newSetFromMap(new ConcurrentHashMap<>());
     }
@@ -45,12 +80,13 @@ public abstract class Driver<C> {
     }
 
     private void initExecutor() {
-        _classCounter = 0;
         initTmpClassGroup();
         errors = 0;
 
-        if (_cores > 2) {
-            _executor = new ThreadPoolExecutor(_cores /2, _cores, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+        if (_cores > 1) {
+            // A FIFO work-stealing pool: idle threads steal queued
+            // groups, in submission (largest-first) order.
+            _executor = Executors.newWorkStealingPool(_cores);
         } else {
             // No scheduling happens in the case of one core/thread. ("Tasks are
             // guaranteed to execute sequentially, and no more than one task will
@@ -59,10 +95,99 @@ public abstract class Driver<C> {
         }
     }
 
-    private void doInParallel(Iterable<? extends C> classesToProcess, Consumer<? super C> action) throws DoopErrorCodeException {
+    /**
+     * Estimates the work needed to process a class, such as the total
+     * size of its method bodies. Only relative values matter. The
+     * default estimate treats all classes as equal.
+     *
+     * @param c    the class
+     * @return     a non-negative size estimate
+     */
+    protected long estimateSize(C c) {
+        return 1;
+    }
+
+    private static final class SizedClass<C> {
+        final C c;
+        final long size;
+        SizedClass(C c, long size) {
+            this.c = c;
+            this.size = size;
+        }
+    }
+
+    private void doInParallel(Iterable<? extends C> classesToProcess, Supplier<Runnable> task) throws DoopErrorCodeException {
         initExecutor();
-        classesToProcess.forEach(action);
-        shutdownExecutor();
+
+        List<SizedClass<C>> classes = new ArrayList<>(_totalClasses);
+        long totalSize = 0;
+        for (C c : classesToProcess) {
+            // Every class costs something, even if it has no code.
+            long size = Math.max(estimateSize(c), 0) + 1;
+            classes.add(new SizedClass<>(c, size));
+            totalSize += size;
+        }
+        classes.sort(Comparator.comparingLong((SizedClass<C> sc) -> sc.size).reversed());
+
+        _doneClasses.set(0);
+        _doneSize.set(0);
+        ScheduledExecutorService progress = startProgressReports(classes.size(), totalSize);
+
+        // Groups are filled up to a target size, so a large class
+        // forms a group on its own.
+        long targetSize = Math.max(totalSize / ((long) _cores * GROUPS_PER_CORE), 1);
+        long groupSize = 0;
+        for (SizedClass<C> sc : classes) {
+            _tmpClassGroup.add(sc.c);
+            groupSize += sc.size;
+            if (groupSize >= targetSize || _tmpClassGroup.size() >= _classSplit) {
+                submitGroup(task.get(), _tmpClassGroup.size(), groupSize);
+                initTmpClassGroup();
+                groupSize = 0;
+            }
+        }
+        if (!_tmpClassGroup.isEmpty()) {
+            submitGroup(task.get(), _tmpClassGroup.size(), groupSize);
+            initTmpClassGroup();
+        }
+
+        try {
+            shutdownExecutor();
+        } finally {
+            progress.shutdownNow();
+        }
+    }
+
+    private void submitGroup(Runnable r, int groupClasses, long groupSize) {
+        _executor.execute(() -> {
+            try {
+                r.run();
+            } finally {
+                _doneClasses.addAndGet(groupClasses);
+                _doneSize.addAndGet(groupSize);
+            }
+        });
+    }
+
+    /**
+     * Periodically prints the number of processed classes and an ETA,
+     * estimated from the size of the classes processed so far.
+     */
+    private ScheduledExecutorService startProgressReports(int totalClasses, long totalSize) {
+        long startTime = System.nanoTime();
+        ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "fact-gen-progress");
+            t.setDaemon(true);
+            return t;
+        });
+        progress.scheduleAtFixedRate(() -> {
+            long doneSize = _doneSize.get();
+            long elapsed = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startTime);
+            String eta = doneSize == 0 ? "?" : ((long) (elapsed * ((double) (totalSize - doneSize) / doneSize))) + " sec";
+            System.out.println("Fact generation: " + _doneClasses.get() + "/" + totalClasses + " classes (" +
+                               (100 * doneSize / Math.max(totalSize, 1)) + "%), elapsed: " + elapsed + " sec, ETA: " + eta);
+        }, PROGRESS_INTERVAL, PROGRESS_INTERVAL, TimeUnit.SECONDS);
+        return progress;
     }
 
     public static void waitForExecutorShutdown(ExecutorService executor) throws DoopErrorCodeException {
@@ -84,37 +209,19 @@ public abstract class Driver<C> {
             // ignored (un-buildable) methods and continue.
             System.err.println("WARNING: fact generation ignored " + errors + " error(s) (un-buildable method bodies); continuing with the facts produced.");
         }
+        _stats.addErrors(errors);
         errors = 0;
     }
 
     public void generateInParallel(Iterable<? extends C> classesToProcess) throws DoopErrorCodeException {
-        doInParallel(classesToProcess, this::generate);
+        doInParallel(classesToProcess, this::getFactGenRunnable);
     }
 
     public void writeInParallel(Iterable<? extends C> classesToProcess) throws DoopErrorCodeException {
-        doInParallel(classesToProcess, this::write);
-    }
-
-    private void generate(C curClass) {
-        _classCounter++;
-        _tmpClassGroup.add(curClass);
-
-        if ((_classCounter % _classSplit == 0) || (_classCounter == _totalClasses)) {
-            _executor.execute(getFactGenRunnable());
-            initTmpClassGroup();
-        }
-    }
-
-    private void write(C curClass) {
-        _classCounter++;
-        _tmpClassGroup.add(curClass);
-
-        if ((_classCounter % _classSplit == 0) || (_classCounter == _totalClasses)) {
-            _executor.execute(getIRGenRunnable());
-            initTmpClassGroup();
-        }
+        doInParallel(classesToProcess, this::getIRGenRunnable);
     }
 
+    // Both methods must capture the current _tmpClassGroup.
     protected abstract Runnable getFactGenRunnable();
     protected abstract Runnable getIRGenRunnable();
 }
@@ -0,0 +1,274 @@
+package org.clyze.doop.common;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A long-lived fact generation server, so that consecutive analyses
+ * run their front end in a warm JVM (with the front end classes already
+ * loaded and compiled) instead of starting a new JVM for every run.
+ * The server listens on a loopback port and runs one job at a time.
+ *
+ * Since other local users can connect to the port, every request must
+ * start with a random token that the server writes to a file that only
+ * its owner can read (see {@link #tokenFile(int)}).
+ *
+ * The output of a job goes to its client: System.out and System.err
+ * are replaced once by streams that send the output of a thread to
+ * the job that started it (or to the daemon log, if that job has
+ * ended), so threads that outlive a job never write to the next client.
+ *
+ * Protocol (UTF-8 lines): the client sends the token, then the front
+ * end arguments, one per line, followed by an empty line. The server
+ * sends back the output of the job, followed by a status line (see
+ * {@link #STATUS}). Paths in the arguments are resolved against the
+ * working directory of the daemon, so clients send absolute paths.
+ * A client that does not send its request within a few seconds is
+ * disconnected.
+ */
+public final class FactGenDaemon {
+    /** The prefix of the last line of a job, followed by the job time and "ok" or the error. */
+    public static final String STATUS = "@fact-gen-daemon: ";
+    // The time (in milliseconds) a client has to send its request, so
+    // that a connection that sends nothing does not block the daemon.
+    private static final int REQUEST_TIMEOUT = 10_000;
+
+    /** A fact generation job (such as the main() method of a front end). */
+    public interface Job {
+        void run(String[] args) throws Exception;
+    }
+
+    // The output of the current job of a thread. Threads created by a
+    // job inherit it, so the output of job threads reaches its client.
+    private static final InheritableThreadLocal<JobOutput> jobOutput = new InheritableThreadLocal<>();
+
+    private FactGenDaemon() {}
+
+    /**
+     * Returns the file holding the token of the daemon of a port. The
+     * file is in a directory under the home directory of the user, so
+     * only the user that started the daemon can submit jobs to it.
+     *
+     * @param port    the loopback port of the daemon
+     * @return        the token file
+     */
+    public static File tokenFile(int port) {
+        return new File(new File(System.getProperty("user.home"), ".doop-fact-gen-daemon"), port + ".token");
+    }
+
+    private static String newToken(int port) throws IOException {
+        byte[] bytes = new byte[32];
+        new SecureRandom().nextBytes(bytes);
+        String token = PreprocessCache.hex(bytes);
+
+        Path file = tokenFile(port).toPath();
+        Path dir = file.getParent();
+        boolean posix = dir.getFileSystem().supportedFileAttributeViews().contains("posix");
+        if (posix) {
+            try {
+                Files.createDirectory(dir, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            } catch (FileAlreadyExistsException ignored) {
+                // Fix the permissions of an existing directory below.
+            }
+            Files.setPosixFilePermissions(dir, PosixFilePermissions.fromString("rwx------"));
+        } else
+            Files.createDirectories(dir);
+        // Write a private temporary file first, so that the token is
+        // never readable by others, not even for a moment.
+        Path tmp = posix ?
+            Files.createTempFile(dir, "token", ".tmp", PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------"))) :
+            Files.createTempFile(dir, "token", ".tmp");
+        Files.write(tmp, token.getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        file.toFile().deleteOnExit();
+        return token;
+    }
+
+    private static String readToken(int port) throws IOException {
+        try {
+            return new String(Files.readAllBytes(tokenFile(port).toPath()), StandardCharsets.UTF_8).trim();
+        } catch (NoSuchFileException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Serve jobs until the process is killed.
+     *
+     * @param port    the loopback port to listen on
+     * @param job     the job to run for each request
+     * @param reset   resets the global state of the front end between jobs
+     * @throws IOException if the server socket or the token file cannot be opened
+     */
+    public static void serve(int port, Job job, Runnable reset) throws IOException {
+        try (ServerSocket server = new ServerSocket(port, 0, InetAddress.getLoopbackAddress())) {
+            String token = newToken(port);
+            System.setOut(new PrintStream(new JobStream(System.out), true, "UTF-8"));
+            System.setErr(new PrintStream(new JobStream(System.err), true, "UTF-8"));
+            System.out.println("Fact generation daemon listening on " + server.getLocalSocketAddress() + ", token in " + tokenFile(port));
+            int jobId = 0;
+            while (true) {
+                try (Socket socket = server.accept()) {
+                    runJob(socket, ++jobId, token, job, reset);
+                } catch (IOException ex) {
+                    System.err.println("WARNING: fact generation job #" + jobId + " failed: " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    private static void runJob(Socket socket, int jobId, String token, Job job, Runnable reset) throws IOException {
+        socket.setSoTimeout(REQUEST_TIMEOUT);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        String clientToken = in.readLine();
+        if (clientToken == null || !MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), clientToken.getBytes(StandardCharsets.UTF_8))) {
+            socket.close();
+            throw new IOException("invalid token from " + socket.getRemoteSocketAddress());
+        }
+        List<String> args = new ArrayList<>();
+        String line;
+        while ((line = in.readLine()) != null && !line.isEmpty())
+            args.add(line);
+        // The job itself may run for long.
+        socket.setSoTimeout(0);
+
+        PrintStream out = new PrintStream(socket.getOutputStream(), true, "UTF-8");
+        JobOutput output = new JobOutput(out);
+        String status;
+        long start = System.currentTimeMillis();
+        jobOutput.set(output);
+        try {
+            reset.run();
+            job.run(args.toArray(new String[0]));
+            status = "ok";
+        } catch (Throwable t) {
+            t.printStackTrace();
+            status = String.valueOf(t).replace('\n', ' ');
+        } finally {
+            jobOutput.remove();
+            output.close();
+            // Do not keep the data of the job while idle.
+            reset.run();
+        }
+        long time = System.currentTimeMillis() - start;
+        System.out.println("Job #" + jobId + " finished in " + time + " ms: " + status);
+        out.println(STATUS + time + " " + status);
+        out.flush();
+    }
+
+    /** The output of a job, closed when the job ends. */
+    private static final class JobOutput {
+        private volatile PrintStream out;
+
+        JobOutput(PrintStream out) {
+            this.out = out;
+        }
+
+        void close() {
+            PrintStream out0 = out;
+            out = null;
+            out0.flush();
+        }
+    }
+
+    /**
+     * A standard stream that writes to the output of the job of the
+     * current thread, or to the original stream if there is none.
+     */
+    private static final class JobStream extends OutputStream {
+        private final PrintStream log;
+
+        JobStream(PrintStream log) {
+            this.log = log;
+        }
+
+        private PrintStream target() {
+            JobOutput output = jobOutput.get();
+            PrintStream out = output == null ? null : output.out;
+            return out == null ? log : out;
+        }
+
+        @Override
+        public void write(int b) {
+            target().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            target().write(b, off, len);
+        }
+
+        @Override
+        public void flush() {
+            target().flush();
+        }
+    }
+
+    /**
+     * Run a job in a daemon.
+     *
+     * @param port     the loopback port of the daemon
+     * @param args     the front end arguments
+     * @param output   receives the output lines of the job
+     * @return         the time of the job in the daemon (in milliseconds),
+     *                 or -1 if no daemon of the user listens on the port
+     * @throws IOException on communication error
+     * @throws RuntimeException if the job failed
+     */
+    public static long submit(int port, String[] args, Consumer<String> output) throws IOException {
+        String token = readToken(port);
+        if (token == null)
+            return -1;
+        Socket socket;
+        try {
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        } catch (ConnectException ex) {
+            return -1;
+        }
+        try {
+            Writer w = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+            w.write(token + '\n');
+            for (String arg : args)
+                w.write(arg + '\n');
+            w.write('\n');
+            w.flush();
+
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith(STATUS)) {
+                    String[] parts = line.substring(STATUS.length()).split(" ", 2);
+                    if (!parts[1].equals("ok"))
+                        throw new RuntimeException("Fact generation daemon job failed: " + parts[1]);
+                    return Long.parseLong(parts[0]);
+                }
+                output.accept(line);
+            }
+            throw new IOException("Fact generation daemon closed the connection before the end of the job");
+        } finally {
+            socket.close();
+        }
+    }
+}
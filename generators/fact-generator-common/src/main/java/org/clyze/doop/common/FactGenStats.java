@@ -0,0 +1,128 @@
+package org.clyze.doop.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics of a fact generation run: wall time per class and per
+ * method (keeping only the slowest ones), counts of processed
+ * elements and errors. Written to FactGen_Stats.csv, together with
+ * the number of rows written per relation. Like the other .csv files
+ * of Doop, columns are separated by tabs (method ids contain commas);
+ * the first row is a header and every other row has the same three
+ * columns: the statistic, the element it refers to and the value.
+ */
+public class FactGenStats {
+    public static final String STATS_FILE = "FactGen_Stats.csv";
+    /** The number of slowest classes/methods to report. */
+    private static final int TOP_N = 50;
+
+    private final Slowest slowestClasses = new Slowest();
+    private final Slowest slowestMethods = new Slowest();
+    private final LongAdder classes = new LongAdder();
+    private final LongAdder methods = new LongAdder();
+    private final LongAdder classNanos = new LongAdder();
+    private final AtomicInteger errors = new AtomicInteger(0);
+
+    /**
+     * Record the processing time of a class.
+     *
+     * @param className   the class name
+     * @param nanos       the elapsed wall time (in nanoseconds)
+     */
+    public void recordClass(String className, long nanos) {
+        classes.increment();
+        classNanos.add(nanos);
+        slowestClasses.offer(className, nanos);
+    }
+
+    /**
+     * Record the processing time of a method.
+     *
+     * @param methodId    the method id
+     * @param nanos       the elapsed wall time (in nanoseconds)
+     */
+    public void recordMethod(String methodId, long nanos) {
+        methods.increment();
+        slowestMethods.offer(methodId, nanos);
+    }
+
+    public void addErrors(int n) {
+        errors.addAndGet(n);
+    }
+
+    public int getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * Write the statistics to the output directory of a database.
+     *
+     * @param db     the database whose facts were generated
+     */
+    public void writeTo(Database db) {
+        File statsFile = new File(db.getDirectory(), STATS_FILE);
+        try (PrintWriter out = new PrintWriter(statsFile)) {
+            out.println("statistic\telement\tvalue");
+            out.println("count\tclasses\t" + classes.sum());
+            out.println("count\tmethods\t" + methods.sum());
+            out.println("count\terrors\t" + errors.get());
+            out.println("time (ms)\tclasses\t" + classNanos.sum() / 1_000_000);
+            for (PredicateFile predicateFile : EnumSet.allOf(PredicateFile.class)) {
+                long rows = db.getRowCount(predicateFile);
+                if (rows > 0)
+                    out.println("rows\t" + predicateFile + "\t" + rows);
+            }
+            for (Timing t : slowestClasses.sorted())
+                out.println("class time (ms)\t" + t.id + "\t" + t.nanos / 1_000_000);
+            for (Timing t : slowestMethods.sorted())
+                out.println("method time (ms)\t" + t.id + "\t" + t.nanos / 1_000_000);
+            System.out.println("Fact generation statistics: " + statsFile);
+        } catch (IOException ex) {
+            System.err.println("WARNING: could not write " + statsFile + ": " + ex.getMessage());
+        }
+    }
+
+    private static final class Timing {
+        final String id;
+        final long nanos;
+        Timing(String id, long nanos) {
+            this.id = id;
+            this.nanos = nanos;
+        }
+    }
+
+    /** Keeps the TOP_N slowest elements seen. */
+    private static final class Slowest {
+        private final PriorityQueue<Timing> heap = new PriorityQueue<>(Comparator.comparingLong((Timing t) -> t.nanos));
+        // The fastest time in a full heap: faster elements are
+        // rejected without taking the lock.
+        private volatile long threshold = 0;
+
+        void offer(String id, long nanos) {
+            if (nanos <= threshold)
+                return;
+            synchronized (this) {
+                heap.add(new Timing(id, nanos));
+                if (heap.size() > TOP_N) {
+                    heap.poll();
+                    threshold = heap.peek().nanos;
+                }
+            }
+        }
+
+        synchronized List<Timing> sorted() {
+            List<Timing> ret = new ArrayList<>(heap);
+            ret.sort(Comparator.comparingLong((Timing t) -> t.nanos).reversed());
+            return ret;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package org.clyze.doop.common;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Decouples fact generation from disk writes. Worker threads append
+ * encoded rows to per-thread, per-relation batches; full batches are
+ * handed to a small set of writer threads that own the facts files.
+ * Each relation is written by a single writer thread, so no locks are
+ * taken on the files. The queues are bounded: when the disk falls
+ * behind, workers block instead of buffering more facts in memory.
+ * If a writer thread fails, it keeps taking (and discarding) batches,
+ * so that workers never block; the failure is thrown by the next
+ * write(), flush() or close().
+ */
+final class FactWriterPipeline {
+    /** The size (in characters) of a relation batch. */
+    private static final int BATCH_SIZE = 8192;
+    /** The number of batches that can wait for a writer thread. */
+    private static final int QUEUE_CAPACITY = 64;
+    private static final PredicateFile[] RELATIONS = PredicateFile.values();
+
+    private final Map<PredicateFile, Writer> writers;
+    private final WriterThread[] threads;
+    private final ThreadLocal<Batches> _batches = ThreadLocal.withInitial(this::newBatches);
+    private final Collection<Batches> allBatches = new ConcurrentLinkedQueue<>();
+    private volatile Throwable failure = null;
+
+    /**
+     * Start the writer threads.
+     *
+     * @param writers    the writers of all relations
+     * @param nThreads   the number of writer threads
+     */
+    FactWriterPipeline(Map<PredicateFile, Writer> writers, int nThreads) {
+        this.writers = writers;
+        this.threads = new WriterThread[nThreads];
+        for (int i = 0; i < nThreads; i++) {
+            threads[i] = new WriterThread(i);
+            threads[i].start();
+        }
+    }
+
+    private Batches newBatches() {
+        Batches b = new Batches();
+        allBatches.add(b);
+        return b;
+    }
+
+    /**
+     * Queue a row for writing.
+     *
+     * @param predicateFile   the relation of the row
+     * @param buf             the encoded row
+     * @param len             the length of the row
+     */
+    void write(PredicateFile predicateFile, char[] buf, int len) {
+        if (failure != null)
+            throw new RuntimeException("Fact writer thread failed", failure);
+        Batches b = _batches.get();
+        int idx = predicateFile.ordinal();
+        synchronized (b) {
+            char[] batch = b.bufs[idx];
+            if (batch == null || b.lens[idx] + len > batch.length) {
+                if (batch != null)
+                    submit(new Batch(predicateFile, batch, b.lens[idx], null));
+                batch = b.bufs[idx] = new char[Math.max(BATCH_SIZE, len)];
+                b.lens[idx] = 0;
+            }
+            System.arraycopy(buf, 0, batch, b.lens[idx], len);
+            b.lens[idx] += len;
+        }
+    }
+
+    /**
+     * Write all queued rows and flush the facts files.
+     */
+    void flush() throws IOException {
+        for (Batches b : allBatches) {
+            synchronized (b) {
+                for (int idx = 0; idx < b.bufs.length; idx++) {
+                    if (b.lens[idx] > 0)
+                        submit(new Batch(RELATIONS[idx], b.bufs[idx], b.lens[idx], null));
+                    b.bufs[idx] = null;
+                    b.lens[idx] = 0;
+                }
+            }
+        }
+        CountDownLatch latch = new CountDownLatch(threads.length);
+        for (WriterThread t : threads)
+            put(t.queue, new Batch(null, null, 0, latch));
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        checkFailure();
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable t = failure;
+        if (t == null)
+            return;
+        if (t instanceof IOException)
+            throw new IOException("Fact writer thread failed: " + t.getMessage(), t);
+        if (t instanceof Error)
+            throw (Error) t;
+        throw new RuntimeException("Fact writer thread failed", t);
+    }
+
+    private void fail(Throwable t) {
+        // Keep the first failure.
+        if (failure == null)
+            failure = t;
+    }
+
+    /**
+     * Write all queued rows and stop the writer threads. The facts
+     * files are not closed.
+     */
+    void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            for (WriterThread t : threads)
+                put(t.queue, new Batch(null, null, 0, null));
+            for (WriterThread t : threads) {
+                try {
+                    t.join();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private void submit(Batch batch) {
+        put(threads[batch.predicateFile.ordinal() % threads.length].queue, batch);
+    }
+
+    // Blocks until there is space in the queue. Interruption does
+    // not drop the batch, the interrupt status is kept for the caller.
+    private static void put(BlockingQueue<Batch> queue, Batch batch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(batch);
+                break;
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /** The open batches of a worker thread, one per relation. */
+    private static final class Batches {
+        final char[][] bufs = new char[RELATIONS.length][];
+        final int[] lens = new int[RELATIONS.length];
+    }
+
+    /**
+     * A batch of rows. Batches with no relation are markers: a flush
+     * request (with a latch) or a stop request (without a latch).
+     */
+    private static final class Batch {
+        final PredicateFile predicateFile;
+        final char[] chars;
+        final int len;
+        final CountDownLatch latch;
+
+        Batch(PredicateFile predicateFile, char[] chars, int len, CountDownLatch latch) {
+            this.predicateFile = predicateFile;
+            this.chars = chars;
+            this.len = len;
+            this.latch = latch;
+        }
+    }
+
+    private final class WriterThread extends Thread {
+        final BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        private final int id;
+
+        WriterThread(int id) {
+            super("fact-writer-" + id);
+            this.id = id;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Batch batch;
+                try {
+                    batch = queue.take();
+                } catch (InterruptedException ex) {
+                    continue;
+                }
+                if (batch.predicateFile == null) {
+                    if (batch.latch == null)
+                        return;
+                    try {
+                        if (failure == null)
+                            flushOwnWriters();
+                    } catch (Throwable t) {
+                        fail(t);
+                    } finally {
+                        batch.latch.countDown();
+                    }
+                    continue;
+                }
+                // After a failure, batches are discarded.
+                if (failure == null) {
+                    try {
+                        writers.get(batch.predicateFile).write(batch.chars, 0, batch.len);
+                    } catch (Throwable t) {
+                        fail(t);
+                    }
+                }
+            }
+        }
+
+        private void flushOwnWriters() throws IOException {
+            for (int idx = id; idx < RELATIONS.length; idx += threads.length)
+                writers.get(RELATIONS[idx]).flush();
+        }
+    }
+}
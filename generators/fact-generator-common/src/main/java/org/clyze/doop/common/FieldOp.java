@@ -1,7 +1,15 @@
 package org.clyze.doop.common;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.Map;
 
+import static org.clyze.doop.common.PreprocessCache.readNullableString;
+import static org.clyze.doop.common.PreprocessCache.readString;
+import static org.clyze.doop.common.PreprocessCache.writeNullableString;
+import static org.clyze.doop.common.PreprocessCache.writeString;
+
 public class FieldOp {
     private final PredicateFile target;
     private final String insn;
@@ -35,12 +43,44 @@ public class FieldOp {
         this.methId = methId;
     }
 
+    FieldInfo getFieldInfo() {
+        return fieldInfo;
+    }
+
     void writeToDb(Database db, Map<String, String> resolvedFields) {
         String fieldId = fieldInfo.getFieldId();
-        String resolvedFieldId = resolvedFields.getOrDefault(fieldId, fieldId);
+        writeToDb(db, resolvedFields.getOrDefault(fieldId, fieldId));
+    }
+
+    void writeToDb(Database db, String resolvedFieldId) {
         if (localB != null)
-            db.add(target, insn, strIndex, localA, localB, resolvedFieldId, methId);
+            db.row(target).col(insn).col(strIndex).col(localA).col(localB).col(resolvedFieldId).col(methId).end();
         else
-            db.add(target, insn, strIndex, localA, resolvedFieldId, methId);
+            db.row(target).col(insn).col(strIndex).col(localA).col(resolvedFieldId).col(methId).end();
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        writeString(out, target.name());
+        writeString(out, insn);
+        writeString(out, strIndex);
+        writeString(out, localA);
+        writeNullableString(out, localB);
+        writeFieldInfo(out, fieldInfo);
+        writeString(out, methId);
+    }
+
+    static FieldOp read(DataInputStream in) throws IOException {
+        return new FieldOp(PredicateFile.valueOf(readString(in)), readString(in), readString(in),
+                           readString(in), readNullableString(in), readFieldInfo(in), readString(in));
+    }
+
+    static void writeFieldInfo(DataOutputStream out, FieldInfo fi) throws IOException {
+        writeString(out, fi.type);
+        writeString(out, fi.name);
+        writeNullableString(out, fi.definingClass);
+    }
+
+    static FieldInfo readFieldInfo(DataInputStream in) throws IOException {
+        return new FieldInfo(readString(in), readString(in), readNullableString(in));
     }
 }
@@ -0,0 +1,108 @@
+package org.clyze.doop.common;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.clyze.doop.common.PredicateFile.COMPACT_METHOD_ID;
+
+/**
+ * Assigns short ids to method signatures, to be used as the prefix of
+ * the ids of instructions, variables and heap allocations (instead of
+ * the full signature, which is repeated in almost every fact). Each
+ * assignment is written to CompactMethodId.facts, so that readable ids
+ * can be recovered from analysis results.
+ *
+ * Some methods keep readable ids, since the analysis logic refers to
+ * their variables or allocations by name.
+ */
+public class IdCompactor {
+    /** The first character of compact ids (readable ids start with '<'). */
+    public static final char PREFIX = '#';
+
+    private final Database db;
+    private final Set<String> readableMethods;
+    private final Map<String, String> prefixes = new ConcurrentHashMap<>();
+    private final AtomicInteger counter = new AtomicInteger(0);
+
+    /**
+     * Create a compactor.
+     *
+     * @param db                the database to record compact ids
+     * @param readableMethods   the methods that keep readable ids
+     */
+    public IdCompactor(Database db, Collection<String> readableMethods) {
+        this.db = db;
+        this.readableMethods = new HashSet<>(readableMethods);
+    }
+
+    /**
+     * Returns the prefix to use for the ids of the elements of a method.
+     *
+     * @param m   the method signature
+     * @return    the compact id of the method (or the signature itself,
+     *            for methods that keep readable ids)
+     */
+    public String methodPrefix(String m) {
+        String ret = prefixes.get(m);
+        if (ret != null)
+            return ret;
+        if (readableMethods.contains(m))
+            return m;
+        String id = PREFIX + Integer.toString(counter.getAndIncrement(), Character.MAX_RADIX);
+        ret = prefixes.putIfAbsent(m, id);
+        if (ret != null)
+            return ret;
+        db.row(COMPACT_METHOD_ID).col(id).col(m).end();
+        return id;
+    }
+
+    /**
+     * Continue the numbering of an earlier run that wrote to the same
+     * facts directory (when fact generation is restarted for more
+     * classes), so that new ids do not clash with existing ones and
+     * methods keep their ids.
+     *
+     * @throws IOException on read error
+     */
+    public void resume() throws IOException {
+        File factsFile = Database.getFactsFile(new File(db.getDirectory()), COMPACT_METHOD_ID.toString());
+        if (!factsFile.exists())
+            return;
+        int next = 0;
+        try (BufferedReader reader = Database.newFactsReader(factsFile)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                if (tab < 0)
+                    continue;
+                String id = line.substring(0, tab);
+                prefixes.put(line.substring(tab + 1), id);
+                next = Math.max(next, Integer.parseInt(id.substring(1), Character.MAX_RADIX) + 1);
+            }
+        }
+        counter.set(next);
+    }
+
+    /**
+     * Read the methods that keep readable ids (one signature per line).
+     *
+     * @param file   the file to read
+     * @return       the method signatures
+     * @throws IOException on read error
+     */
+    public static Collection<String> readMethods(File file) throws IOException {
+        Set<String> ret = new HashSet<>();
+        for (String line : Files.readAllLines(file.toPath()))
+            if (!line.isEmpty())
+                ret.add(line);
+        return ret;
+    }
+}
@@ -30,8 +30,7 @@ public class InstrInfo {
      * @param session      the session object
      */
     public InstrInfo(String methodId, String kind, SessionCounter session) {
-        // Use arbitrary new Object to increase instruction counter.
-        this(methodId, JavaRepresentation.instructionId(methodId, kind, session.nextNumber(kind)), session.calcInstructionIndex(new Object()));
+        this(methodId, JavaRepresentation.numberedInstructionId(methodId, kind, session), session.nextInstructionIndex());
     }
 
     @Override
@@ -42,6 +42,14 @@ public abstract class JavaFactWriter {
         return methodStrings;
     }
 
+    /**
+     * Release the rows abandoned by a fact generation error (see
+     * {@link Database#releaseRows()}).
+     */
+    public void releaseRows() {
+        _db.releaseRows();
+    }
+
     public static String str(int i) {
         return String.valueOf(i);
     }
@@ -55,8 +63,8 @@ public abstract class JavaFactWriter {
         else
             result = "<<HASH:" + raw.hashCode() + ">>";
 
-        _db.add(STRING_RAW, result, raw);
-        _db.add(STRING_CONST, result);
+        _db.row(STRING_RAW).col(result).col(raw).end();
+        _db.row(STRING_CONST).col(result).end();
 
         return result;
     }
@@ -70,12 +78,12 @@ public abstract class JavaFactWriter {
     }
 
     private void writeClassArtifact(String artifact, String className, String subArtifact, int size) {
-        _db.add(CLASS_ARTIFACT, artifact, className, subArtifact, str(size));
+        _db.row(CLASS_ARTIFACT).col(artifact).col(className).col(subArtifact).col(size).end();
     }
 
     private void writePackageArtifact(String artifact, Set<String> packageNames) {
         for (String packageName : packageNames) {
-            _db.add(PACKAGE_ARTIFACT, artifact, packageName);
+            _db.row(PACKAGE_ARTIFACT).col(artifact).col(packageName).end();
         }
     }
 
@@ -93,59 +101,59 @@ public abstract class JavaFactWriter {
         String pathId = writeStringConstant(path);
         String keyId = writeStringConstant(key);
         String valueId = writeStringConstant(value);
-        _db.add(PROPERTIES, pathId, keyId, valueId);
+        _db.row(PROPERTIES).col(pathId).col(keyId).col(valueId).end();
     }
 
     protected void writeMethodHandleConstant(String heap, String method,
                                              String retType, String paramTypes,
                                              int arity) {
-        _db.add(METHOD_HANDLE_CONSTANT, heap, method, retType, paramTypes, str(arity));
+        _db.row(METHOD_HANDLE_CONSTANT).col(heap).col(method).col(retType).col(paramTypes).col(arity).end();
     }
 
     protected void writeFormalParam(String methodId, String var, String type, int i) {
-        _db.add(FORMAL_PARAM, str(i), methodId, var);
+        _db.row(FORMAL_PARAM).col(i).col(methodId).col(var).end();
         writeLocal(var, type, methodId);
     }
 
     protected void writeThisVar(String methodId, String thisVar, String type) {
-        _db.add(THIS_VAR, methodId, thisVar);
+        _db.row(THIS_VAR).col(methodId).col(thisVar).end();
         writeLocal(thisVar, type, methodId);
     }
 
     public void writeApplication(String applicationName) {
-        _db.add(ANDROID_APPLICATION, applicationName);
+        _db.row(ANDROID_APPLICATION).col(applicationName).end();
     }
 
     public void writeActivity(String activity) {
-        _db.add(ACTIVITY, activity);
+        _db.row(ACTIVITY).col(activity).end();
     }
 
     public void writeService(String service) {
-        _db.add(SERVICE, service);
+        _db.row(SERVICE).col(service).end();
     }
 
     public void writeContentProvider(String contentProvider) {
-        _db.add(CONTENT_PROVIDER, contentProvider);
+        _db.row(CONTENT_PROVIDER).col(contentProvider).end();
     }
 
     public void writeBroadcastReceiver(String broadcastReceiver) {
-        _db.add(BROADCAST_RECEIVER, broadcastReceiver);
+        _db.row(BROADCAST_RECEIVER).col(broadcastReceiver).end();
     }
 
     public void writeAndroidCallbackMethodName(String callbackMethodName) {
-        _db.add(ANDROID_CALLBACK_METHOD_NAME, callbackMethodName);
+        _db.row(ANDROID_CALLBACK_METHOD_NAME).col(callbackMethodName).end();
     }
 
     public void writeLayoutControl(Integer id, String viewClassName, Integer parentID, String appRId, String androidRId) {
-        _db.add(LAYOUT_CONTROL, id.toString(), viewClassName, parentID.toString());
+        _db.row(LAYOUT_CONTROL).col(id).col(viewClassName).col(parentID).end();
     }
 
     public void writeSensitiveLayoutControl(Integer id, String viewClassName, Integer parentID) {
-        _db.add(SENSITIVE_LAYOUT_CONTROL, id.toString(), viewClassName, parentID.toString());
+        _db.row(SENSITIVE_LAYOUT_CONTROL).col(id).col(viewClassName).col(parentID).end();
     }
 
     public void writeNumConstantRaw(String val, String valType) {
-        _db.add(NUM_CONSTANT_RAW, val, valType);
+        _db.row(NUM_CONSTANT_RAW).col(val).col(valType).end();
     }
 
     /**
@@ -168,7 +176,7 @@ public abstract class JavaFactWriter {
             }
         }
 
-        generateFactsForXML(_db, java.xmlRoots, debug);
+        generateFactsForXML(_db, java.xmlRoots, debug, java.getCores());
     }
 
     /**
@@ -177,14 +185,15 @@ public abstract class JavaFactWriter {
      * @param db        the database object to use for output
      * @param xmlRoots  the root directories containing XML files
      * @param debug     debug flag
+     * @param cores     the number of threads to use
      */
     private void generateFactsForXML(Database db, Iterable<String> xmlRoots,
-                                     boolean debug) {
+                                     boolean debug, int cores) {
         // The output directory (the parent of the "decode" directories)
         String outDir = db.getDirectory();
         for (String xmlRoot : xmlRoots) {
             logger.info("Processing XML files in directory: " + xmlRoot);
-            XMLFactGenerator.processDir(new File(xmlRoot), db, outDir, debug);
+            XMLFactGenerator.processDir(new File(xmlRoot), db, outDir, debug, cores);
         }
     }
 
@@ -222,7 +231,7 @@ public abstract class JavaFactWriter {
     }
 
     protected void writeMethodDeclaresException(String methodId, String exceptionType) {
-        _db.add(METHOD_DECL_EXCEPTION, exceptionType, methodId);
+        _db.row(METHOD_DECL_EXCEPTION).col(exceptionType).col(methodId).end();
     }
 
     protected void writeGenericFields(Iterable<GenericFieldInfo> genericFields) {
@@ -238,91 +247,93 @@ public abstract class JavaFactWriter {
                     e.printStackTrace();
                 }
             }
-            _db.add(GENERIC_FIELD, "<" + fi.definingClass + ": " + fi.type + " " + fi.name + ">", fi.definingClass, fi.name, fi.type);
+            _db.row(GENERIC_FIELD).col("<" + fi.definingClass + ": " + fi.type + " " + fi.name + ">")
+                .col(fi.definingClass).col(fi.name).col(fi.type).end();
         }
     }
     //_db.add(GENERIC_FIELD_TYPE, fieldInfo.definingClass, fieldInfo.name,
 
 
     protected void writePhantomType(String t) {
-        _db.add(PHANTOM_TYPE, t);
+        _db.row(PHANTOM_TYPE).col(t).end();
     }
 
     protected void writePhantomMethod(String sig) {
-        _db.add(PHANTOM_METHOD, sig);
+        _db.row(PHANTOM_METHOD).col(sig).end();
     }
 
     protected void writeLocal(String local, String type, String method) {
-        _db.add(VAR_TYPE, local, type);
+        _db.row(VAR_TYPE).col(local).col(type).end();
         writeVarDeclaringMethod(local, method);
     }
 
     protected void writeVarDeclaringMethod(String local, String method) {
-        _db.add(VAR_DECLARING_METHOD, local, method);
+        _db.row(VAR_DECLARING_METHOD).col(local).col(method).end();
     }
 
     protected void writeArrayTypes(String arrayType, String componentType) {
-        _db.add(ARRAY_TYPE, arrayType);
-        _db.add(COMPONENT_TYPE, arrayType, componentType);
+        _db.row(ARRAY_TYPE).col(arrayType).end();
+        _db.row(COMPONENT_TYPE).col(arrayType).col(componentType).end();
     }
 
     protected void writeAssignUnop(String insn, int index, String local, String methId) {
-        _db.add(ASSIGN_UNOP, insn, str(index), local, methId);
+        _db.row(ASSIGN_UNOP).col(insn).col(index).col(local).col(methId).end();
     }
 
     protected void writeClassModifier(String c, String modifier) {
-        _db.add(CLASS_MODIFIER, modifier, c);
+        _db.row(CLASS_MODIFIER).col(modifier).col(c).end();
     }
 
     protected void writeOperatorAt(String insn, String op) {
-        _db.add(OPERATOR_AT, insn, op);
+        _db.row(OPERATOR_AT).col(insn).col(op).end();
     }
 
     protected void writeIf(String insn, int index, int indexTo, String methodId) {
-        _db.add(IF, insn, str(index), str(indexTo), methodId);
+        _db.row(IF).col(insn).col(index).col(indexTo).col(methodId).end();
     }
 
     protected void writeIfConstant(String insn, String branch, String cons) {
-        _db.add(IF_CONSTANT, insn, branch, cons);
+        _db.row(IF_CONSTANT).col(insn).col(branch).col(cons).end();
     }
 
     protected void writeIfVar(String insn, String branch, String local) {
-        _db.add(IF_VAR, insn, branch, local);
+        _db.row(IF_VAR).col(insn).col(branch).col(local).end();
     }
 
     protected void writeDummyIfVar(String insn, String local) {
-        _db.add(DUMMY_IF_VAR, insn, local);
+        _db.row(DUMMY_IF_VAR).col(insn).col(local).end();
     }
 
     protected void writeAssignBinop(String insn, int index, String local, String methodId) {
-        _db.add(ASSIGN_BINOP, insn, str(index), local, methodId);
+        _db.row(ASSIGN_BINOP).col(insn).col(index).col(local).col(methodId).end();
     }
 
     protected void writeAssignOperFrom(String insn, String branch, String local) {
-        _db.add(ASSIGN_OPER_FROM, insn, branch, local);
+        _db.row(ASSIGN_OPER_FROM).col(insn).col(branch).col(local).end();
     }
 
     protected void writeAssignOperFromConstant(String insn, String branch, String value) {
-        _db.add(ASSIGN_OPER_FROM_CONSTANT, insn, branch, value);
+        _db.row(ASSIGN_OPER_FROM_CONSTANT).col(insn).col(branch).col(value).end();
     }
 
     protected void writeInvokedynamic(String insn, int index, String bootSig, String dynName, String dynRetType, int dynArity, String dynParamTypes, int tag, String methodId) {
-        _db.add(DYNAMIC_METHOD_INV, insn, str(index), bootSig, dynName, dynRetType, str(dynArity), dynParamTypes, str(tag), methodId);
+        _db.row(DYNAMIC_METHOD_INV).col(insn).col(index).col(bootSig).col(dynName).col(dynRetType)
+            .col(dynArity).col(dynParamTypes).col(tag).col(methodId).end();
         // Make dynamic name and method type available to the analysis as string constants.
         writeStringConstant(dynName);
         writeStringConstant(dynRetType + dynParamTypes);
     }
 
     protected void writeInvokedynamicParameterType(String insn, int paramIndex, String type) {
-        _db.add(DYNAMIC_METHOD_INV_PARAM_TYPE, insn, str(paramIndex), type);
+        _db.row(DYNAMIC_METHOD_INV_PARAM_TYPE).col(insn).col(paramIndex).col(type).end();
     }
 
     protected void writeAssignLocal(String insn, int index, String from, String to, String methodId) {
-        _db.add(ASSIGN_LOCAL, insn, str(index), from, to, methodId);
+        _db.row(ASSIGN_LOCAL).col(insn).col(index).col(from).col(to).col(methodId).end();
     }
 
     protected void writeActualParam(int index, String invo, String var) {
-        _db.add(ACTUAL_PARAMETER, str(index), invo, var);
+        _db.row(ACTUAL_PARAMETER).col(index).col(invo).col(var).end();
     }
 
     /**
@@ -340,8 +351,8 @@ public abstract class JavaFactWriter {
         String mt = "(" + params + ")" + retType;
         int arity = paramTypes.length;
         for (int idx = 0; idx < arity; idx++)
-            _db.add(METHOD_TYPE_CONSTANT_PARAM, mt, str(idx), paramTypes[idx]);
-        _db.add(METHOD_TYPE_CONSTANT, mt, str(arity), retType, params);
+            _db.row(METHOD_TYPE_CONSTANT_PARAM).col(mt).col(idx).col(paramTypes[idx]).end();
+        _db.row(METHOD_TYPE_CONSTANT).col(mt).col(arity).col(retType).col(params).end();
     }
 
     protected String concatenate(String[] elems) {
@@ -375,30 +386,30 @@ public abstract class JavaFactWriter {
     }
 
     protected void writeMethodAnnotation(String method, String annotationType) {
-        _db.add(METHOD_ANNOTATION, method, annotationType);
+        _db.row(METHOD_ANNOTATION).col(method).col(annotationType).end();
     }
 
     protected void writeClassHeap(String heap, String className) {
-        _db.add(CLASS_HEAP, heap, className);
+        _db.row(CLASS_HEAP).col(heap).col(className).end();
         if (_extractMoreStrings)
             writeStringConstant(className);
     }
 
     protected void writeExceptionHandler(String insn, String method, int index,
                                          String type, int begin, int end) {
-        _db.add(EXCEPTION_HANDLER, insn, method, str(index), type, str(begin), str(end));
+        _db.row(EXCEPTION_HANDLER).col(insn).col(method).col(index).col(type).col(begin).col(end).end();
     }
 
     protected void writeExceptionHandlerFormal(String insn, String var) {
-        _db.add(EXCEPTION_HANDLER_FORMAL_PARAM, insn, var);
+        _db.row(EXCEPTION_HANDLER_FORMAL_PARAM).col(insn).col(var).end();
     }
 
     protected void writeExceptionHandlerPrevious(String currInsn, String prevInsn) {
-        _db.add(EXCEPT_HANDLER_PREV, currInsn, prevInsn);
+        _db.row(EXCEPT_HANDLER_PREV).col(currInsn).col(prevInsn).end();
     }
 
     public void writeAppPackage(String appPackage) {
-        _db.add(APP_PACKAGE, appPackage);
+        _db.row(APP_PACKAGE).col(appPackage).end();
     }
 
     public void writePhantomTypes(Iterable<String> phantomTypes) {
@@ -447,7 +458,7 @@ public abstract class JavaFactWriter {
             name = "-";
         if (value2 == null)
             value2 = "-";
-        _db.add(ANNOTATION_ELEMENT, annotationKind, annotatedElement, parentId, thisId, name, value1, value2);
+        _db.row(ANNOTATION_ELEMENT).col(annotationKind).col(annotatedElement).col(parentId).col(thisId).col(name).col(value1).col(value2).end();
     }
 
     /**
@@ -459,13 +470,13 @@ public abstract class JavaFactWriter {
      */
     public void writeNativeMethodId(String methodId, String type, String name) {
         String jniMethodId = "Java_" + type.replaceAll("\\.", "_") + "_" + name;
-        _db.add(NATIVE_METHOD_ID, methodId, jniMethodId);
+        _db.row(NATIVE_METHOD_ID).col(methodId).col(jniMethodId).end();
     }
 
     protected void writeMethod(String methodId, String simpleName,
                                String paramsSig, String declType,
                                String retType, String jvmSig, String arity) {
-        _db.add(METHOD, methodId, simpleName, paramsSig, declType, retType, jvmSig, arity);
+        _db.row(METHOD).col(methodId).col(simpleName).col(paramsSig).col(declType).col(retType).col(jvmSig).col(arity).end();
 
         // If flag is set, register name+sig for later use (native scanner).
         if (_regMethods) {
@@ -5,6 +5,30 @@ import java.util.regex.Pattern;
 public class JavaRepresentation {
 
     private final static Pattern qPat = Pattern.compile("'");
+    // If not null, method-local ids use short method prefixes.
+    private static volatile IdCompactor compactor = null;
+
+    /**
+     * Enable compact ids: the method signature that starts the ids of
+     * instructions, variables and heap allocations is replaced by a
+     * short id (recorded in CompactMethodId.facts).
+     *
+     * @param compactor   the compactor to use (null disables compact ids)
+     */
+    public static void setCompactor(IdCompactor compactor) {
+        JavaRepresentation.compactor = compactor;
+    }
+
+    /**
+     * Returns the prefix to use for the ids of the elements of a method.
+     *
+     * @param m   the method signature
+     * @return    the method signature or its compact id
+     */
+    public static String methodPrefix(String m) {
+        IdCompactor c = compactor;
+        return c == null ? m : c.methodPrefix(m);
+    }
 
     public static String classConstant(String className) {
         return "<class " + className + ">";
@@ -15,31 +39,40 @@ public class JavaRepresentation {
     }
 
     public static String nativeReturnVarOfMethod(String m) {
-        return m + "/@native-return";
+        return methodPrefix(m) + "/@native-return";
+    }
+
+    public static String thisVarId(String m) {
+        return methodPrefix(m) + "/@this";
+    }
+
+    public static String paramId(String m, int i) {
+        return methodPrefix(m) + "/@parameter" + i;
     }
 
     public static String instructionId(String m, String kind, int index) {
-        return m + "/" + kind + "/" + index;
+        return methodPrefix(m) + "/" + kind + "/" + index;
     }
 
     public static String numberedInstructionId(String pre, String mid, SessionCounter c) {
-        return instructionId(pre, mid, c.nextNumber(mid));
+        return c.idBuilder().append(methodPrefix(pre)).append('/').append(mid).append('/').append(c.nextNumber(mid)).toString();
     }
 
     protected static String unsupportedId(String m, String kind, String ins, int index) {
-        return m + "/unsupported " + kind + "/" + ins + "/" + index;
+        return methodPrefix(m) + "/unsupported " + kind + "/" + ins + "/" + index;
     }
 
     protected static String localId(String m, String l) {
-        return m + "/" + l;
+        return methodPrefix(m) + "/" + l;
     }
 
+    // The local id already starts with the method prefix.
     protected static String newLocalIntermediateId(String s, SessionCounter c) {
-        return numberedInstructionId(s, "intermediate", c);
+        return c.idBuilder().append(s).append("/intermediate/").append(c.nextNumber("intermediate")).toString();
     }
 
     public static String heapAllocId(String m, String s, SessionCounter c) {
-        return m + "/new " + s + "/" +  c.nextNumber(s);
+        return c.idBuilder().append(methodPrefix(m)).append("/new ").append(s).append('/').append(c.nextNumber(s)).toString();
     }
 
     public static String handlerMid(String excType) {
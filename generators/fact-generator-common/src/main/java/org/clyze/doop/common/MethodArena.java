@@ -0,0 +1,133 @@
+package org.clyze.doop.common;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * The per-method state of a fact generation worker thread: the session
+ * counter (with its primitive counters and id builder) and scratch
+ * collections. An arena is owned
+ * by a single thread (front ends keep one per thread, see {@link
+ * #perThread(Supplier)}) and is reset before each method, so that the
+ * same objects are reused for all methods processed by the thread,
+ * instead of allocating them again for every method.
+ *
+ * @param <S> the type of the session counter
+ */
+public final class MethodArena<S extends SessionCounter> {
+    // Scratch collections larger than this are not reused.
+    private static final int MAX_KEPT_SIZE = 1 << 14;
+    private static final AtomicLong nameCounter = new AtomicLong(0);
+    private static volatile String namePrefix = "";
+
+    private final S session;
+    private final Deque<List<Object>> freeLists = new ArrayDeque<>();
+    private final List<List<Object>> usedLists = new ArrayList<>();
+    private final Deque<Map<Object, Object>> freeMaps = new ArrayDeque<>();
+    private final List<Map<Object, Object>> usedMaps = new ArrayList<>();
+
+    private MethodArena(S session) {
+        this.session = session;
+    }
+
+    /**
+     * Create a thread-local arena.
+     *
+     * @param sessionFactory   the session counter factory of the front end
+     * @param <S>              the type of the session counter
+     * @return                 the thread-local arena
+     */
+    public static <S extends SessionCounter> ThreadLocal<MethodArena<S>> perThread(Supplier<S> sessionFactory) {
+        return ThreadLocal.withInitial(() -> new MethodArena<>(sessionFactory.get()));
+    }
+
+    /**
+     * Start a new method: forget the numbering of the previous method
+     * and take back all scratch collections.
+     *
+     * @return this arena
+     */
+    public MethodArena<S> reset() {
+        session.reset();
+        for (List<Object> l : usedLists)
+            if (l.size() <= MAX_KEPT_SIZE) {
+                l.clear();
+                freeLists.push(l);
+            }
+        usedLists.clear();
+        for (Map<Object, Object> m : usedMaps)
+            if (m.size() <= MAX_KEPT_SIZE) {
+                m.clear();
+                freeMaps.push(m);
+            }
+        usedMaps.clear();
+        return this;
+    }
+
+    public S session() {
+        return session;
+    }
+
+    /**
+     * Returns an empty list, valid until the next reset().
+     *
+     * @param <T>   the type of the elements
+     * @return      the list
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> list() {
+        List<Object> l = freeLists.isEmpty() ? new ArrayList<>() : freeLists.pop();
+        usedLists.add(l);
+        return (List<T>) l;
+    }
+
+    /**
+     * Returns an empty map, valid until the next reset().
+     *
+     * @param <K>   the type of the keys
+     * @param <V>   the type of the values
+     * @return      the map
+     */
+    @SuppressWarnings("unchecked")
+    public <K, V> Map<K, V> map() {
+        Map<Object, Object> m = freeMaps.isEmpty() ? new HashMap<>() : freeMaps.pop();
+        usedMaps.add(m);
+        return (Map<K, V>) m;
+    }
+
+    /**
+     * Returns a unique placeholder name (cheaper than a random UUID,
+     * which takes a lock on the shared random number generator).
+     *
+     * @param base   the base of the name
+     * @return       the unique name
+     */
+    public static String uniqueName(String base) {
+        return base + " " + namePrefix + nameCounter.getAndIncrement();
+    }
+
+    /**
+     * Set a prefix for the numbers of unique names, so that names do
+     * not clash with the names of an earlier run whose facts are kept.
+     *
+     * @param prefix   the prefix
+     */
+    public static void setUniqueNamePrefix(String prefix) {
+        namePrefix = prefix;
+    }
+
+    /**
+     * Restart the numbering of unique names, so that a new run in the
+     * same JVM produces the same names as a run in a fresh JVM.
+     */
+    public static void resetUniqueNames() {
+        namePrefix = "";
+        nameCounter.set(0);
+    }
+}
@@ -0,0 +1,222 @@
+package org.clyze.doop.common;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.clyze.scanner.NativeDatabaseConsumer;
+
+import static org.clyze.doop.common.PredicateFile.*;
+
+/**
+ * An on-disk cache of the facts found by scanning native libraries,
+ * so that libraries shipped unchanged in many inputs (such as the C++
+ * runtime or SQLite) are only scanned once. Results are keyed by the
+ * hash of the library and the scanner back end and options.
+ *
+ * The scanner matches the strings of a library against the method
+ * names and descriptors of the program. Since these change with every
+ * program, libraries are scanned for the cache as if every string was
+ * a method string (the scanner only asks if a string is contained in
+ * the set) and the name/descriptor candidates that are not method
+ * strings of the current program are dropped when the facts are written.
+ */
+public class NativeScanCache {
+    // Bump when the format or the contents of cached results change.
+    private static final int VERSION = 2;
+    private static final String SUFFIX = ".native.gz";
+
+    private final File dir;
+    private final String options;
+    private final Set<String> methodStrings;
+    // Scans for the cache are recorded through this database, which
+    // does not write facts (see record()).
+    private final Database scratch;
+    private final AtomicInteger hits = new AtomicInteger(0);
+    private final AtomicInteger misses = new AtomicInteger(0);
+
+    /**
+     * Create a cache object.
+     *
+     * @param dir           the cache directory (created if missing)
+     * @param options       the key of the scanner back end and options
+     * @param methodStrings the method strings of the program (null keeps all candidates)
+     * @throws IOException if the scratch database cannot be created
+     */
+    public NativeScanCache(File dir, String options, Set<String> methodStrings) throws IOException {
+        this.dir = dir;
+        this.options = options;
+        this.methodStrings = methodStrings;
+        this.scratch = new Database(dir.getPath(), false);
+    }
+
+    /**
+     * Compute the cache key of a native library.
+     *
+     * @param library   the contents of the library
+     * @return          the key
+     * @throws IOException if the library cannot be read
+     */
+    public String key(InputStream library) throws IOException {
+        MessageDigest md = PreprocessCache.newDigest();
+        md.update((VERSION + "\0" + options + '\0' + PreprocessCache.sha256(library)).getBytes(StandardCharsets.UTF_8));
+        return PreprocessCache.hex(md.digest());
+    }
+
+    /**
+     * Write the cached facts of a library.
+     *
+     * @param key   the cache key of the library
+     * @param db    the database to write the facts to
+     * @return      true if the facts were found in the cache
+     */
+    public boolean replay(String key, Database db) {
+        File f = new File(dir, key + SUFFIX);
+        if (!f.exists()) {
+            misses.incrementAndGet();
+            return false;
+        }
+        RecordedRows rows = new RecordedRows();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(f))))) {
+            if (in.readInt() != VERSION) {
+                misses.incrementAndGet();
+                return false;
+            }
+            rows.read(in);
+        } catch (IOException | IllegalArgumentException ex) {
+            // Unknown relations (from older versions) also end up here.
+            System.err.println("WARNING: ignoring invalid native scan cache entry " + f + ": " + ex.getMessage());
+            misses.incrementAndGet();
+            return false;
+        }
+        write(rows, db);
+        hits.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Scan a library, writing its facts to the database and the cache.
+     * The facts are recorded as they are written by the current thread,
+     * so the scan must not write facts from other threads.
+     *
+     * @param key    the cache key of the library
+     * @param db     the database to write the facts to
+     * @param scan   the scan
+     * @throws IOException if the scan fails (nothing is cached then)
+     */
+    public void record(String key, Database db, Scan scan) throws IOException {
+        RecordedRows rows = new RecordedRows();
+        scratch.startRecording(rows::record);
+        try {
+            scan.run(new DatabaseConnector(scratch), ALL_STRINGS);
+        } finally {
+            scratch.stopRecording();
+        }
+        store(key, rows);
+        write(rows, db);
+    }
+
+    // Write the facts of a library, keeping only the candidates (and
+    // the cross-references of candidate strings) that match method
+    // strings of the current program.
+    private void write(RecordedRows rows, Database db) {
+        if (methodStrings == null) {
+            rows.replay(db);
+            return;
+        }
+        Set<String> dropped = new HashSet<>();
+        rows.forEach(NATIVE_NAME_CANDIDATE, row -> dropCandidate(row, dropped));
+        rows.forEach(NATIVE_METHODTYPE_CANDIDATE, row -> dropCandidate(row, dropped));
+        rows.replay(db, (predicateFile, row) -> {
+                switch (predicateFile) {
+                    case NATIVE_NAME_CANDIDATE:
+                    case NATIVE_METHODTYPE_CANDIDATE:
+                        // Columns: library, function, name/descriptor, offset.
+                        return methodStrings.contains(RecordedRows.column(row, 2));
+                    case NATIVE_XREF:
+                        // Columns: string, library, function, address.
+                        return !dropped.contains(RecordedRows.column(row, 0));
+                    default:
+                        return true;
+                }
+            });
+    }
+
+    private void dropCandidate(String row, Set<String> dropped) {
+        String s = RecordedRows.column(row, 2);
+        if (!methodStrings.contains(s))
+            dropped.add(s);
+    }
+
+    // The cache file is written under a temporary name first, so that
+    // concurrent runs never read partial results.
+    private void store(String key, RecordedRows rows) {
+        File tmpFile = null;
+        try {
+            Files.createDirectories(dir.toPath());
+            tmpFile = File.createTempFile(key, ".tmp", dir);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tmpFile))))) {
+                out.writeInt(VERSION);
+                rows.write(out);
+            }
+            Files.move(tmpFile.toPath(), new File(dir, key + SUFFIX).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            System.err.println("WARNING: cannot write native scan cache entry " + key + ": " + ex.getMessage());
+            if (tmpFile != null && !tmpFile.delete())
+                tmpFile.deleteOnExit();
+        }
+    }
+
+    public void printStats() {
+        System.out.println("Native scan cache: " + hits.get() + " hits, " + misses.get() + " misses.");
+    }
+
+    // The method strings given to the scanner when scanning for the
+    // cache: every string is taken to be a method string.
+    private static final Set<String> ALL_STRINGS = new AbstractSet<String>() {
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof String;
+            }
+
+            @Override
+            public Iterator<String> iterator() {
+                return Collections.emptyIterator();
+            }
+
+            @Override
+            public int size() {
+                return 0;
+            }
+        };
+
+    /** A scan of a native library. */
+    @FunctionalInterface
+    public interface Scan {
+        /**
+         * Scan the library.
+         *
+         * @param dbc             the consumer of the facts
+         * @param methodStrings   the method strings to match the strings of the library against
+         * @throws IOException on scan error
+         */
+        void run(NativeDatabaseConsumer dbc, Set<String> methodStrings) throws IOException;
+    }
+}
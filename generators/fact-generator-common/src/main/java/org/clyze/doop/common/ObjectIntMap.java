@@ -0,0 +1,119 @@
+package org.clyze.doop.common;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from objects to primitive ints (open addressing, linear
+ * probing), to avoid boxing in per-method bookkeeping. Not thread-safe.
+ * Clearing keeps the table, so that a map can be reused across methods;
+ * tables that grew too large for a single method are dropped instead.
+ */
+public final class ObjectIntMap<K> {
+    private static final int INITIAL_CAPACITY = 64;
+    // Tables larger than this are not kept by clear().
+    private static final int MAX_KEPT_CAPACITY = 1 << 14;
+
+    private Object[] keys;
+    private int[] values;
+    private int size = 0;
+
+    public ObjectIntMap() {
+        alloc(INITIAL_CAPACITY);
+    }
+
+    private void alloc(int capacity) {
+        keys = new Object[capacity];
+        values = new int[capacity];
+    }
+
+    private int slot(Object key) {
+        int mask = keys.length - 1;
+        int h = key.hashCode() * 0x9E3779B9;
+        int i = (h ^ (h >>> 16)) & mask;
+        while (true) {
+            Object k = keys[i];
+            if (k == null || k == key || k.equals(key))
+                return i;
+            i = (i + 1) & mask;
+        }
+    }
+
+    /**
+     * Returns the value of a key.
+     *
+     * @param key            the key
+     * @param defaultValue   the value to return if the key is missing
+     * @return               the value of the key or the default value
+     */
+    public int get(K key, int defaultValue) {
+        int i = slot(key);
+        return keys[i] == null ? defaultValue : values[i];
+    }
+
+    public void put(K key, int value) {
+        int i = slot(key);
+        if (keys[i] == null) {
+            keys[i] = key;
+            if (++size * 2 > keys.length) {
+                values[i] = value;
+                rehash();
+                return;
+            }
+        }
+        values[i] = value;
+    }
+
+    /**
+     * Sets the value of a key, if the key is missing.
+     *
+     * @param key     the key
+     * @param value   the value to set
+     */
+    public void putIfAbsent(K key, int value) {
+        if (keys[slot(key)] == null)
+            put(key, value);
+    }
+
+    /**
+     * Increments the value of a key (missing keys start from zero).
+     *
+     * @param key   the key
+     * @return      the value before the increment
+     */
+    public int getAndIncrement(K key) {
+        int i = slot(key);
+        if (keys[i] == null) {
+            put(key, 1);
+            return 0;
+        }
+        return values[i]++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        if (size == 0)
+            return;
+        if (keys.length > MAX_KEPT_CAPACITY)
+            alloc(INITIAL_CAPACITY);
+        else
+            Arrays.fill(keys, null);
+        size = 0;
+    }
+
+    private void rehash() {
+        Object[] oldKeys = keys;
+        int[] oldValues = values;
+        alloc(oldKeys.length * 2);
+        for (int j = 0; j < oldKeys.length; j++) {
+            Object k = oldKeys[j];
+            if (k != null) {
+                int i = slot(k);
+                keys[i] = k;
+                values[i] = oldValues[j];
+            }
+        }
+    }
+}
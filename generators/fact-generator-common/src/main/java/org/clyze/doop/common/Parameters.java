@@ -6,6 +6,8 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
@@ -48,10 +50,19 @@ public class Parameters {
     public boolean _reportPhantoms = false;
     public boolean _dex = false;
     public boolean _legacyAndroidProcessing = false;
+    public boolean _shardedFacts = false;
+    public boolean _compressedFacts = false;
+    public int _writerThreads = 0;
+    public String _preprocessCacheDir = null;
+    public String _classFactCacheDir = null;
+    public String _nativeScanCacheDir = null;
+    public String _classFactOptions = "";
+    public boolean _compactIds = false;
+    private String _readableIdMethods = null;
     public String _main = null;
 
     public enum FactsSubSet {
-        APP, APP_N_DEPS, PLATFORM;
+        APP, APP_N_DEPS, DEPS, PLATFORM;
         public static Set<String> valueSet() {
             return Arrays.stream(values()).map(Enum::name).collect(Collectors.toSet());
         }
@@ -129,6 +140,16 @@ public class Parameters {
         return _dependencies;
     }
 
+    /**
+     * Returns the methods that keep readable ids in compact ids mode.
+     *
+     * @return the method signatures
+     * @throws IOException if the file given via --readable-id-methods cannot be read
+     */
+    public Collection<String> getReadableIdMethods() throws IOException {
+        return _readableIdMethods == null ? Collections.emptySet() : IdCompactor.readMethods(new File(_readableIdMethods));
+    }
+
     public void setDependencies(List<String> deps) {
         _dependencies = deps;
     }
@@ -256,6 +277,43 @@ public class Parameters {
         case "--legacy-android-processing":
             _legacyAndroidProcessing = true;
             break;
+        case "--sharded-facts":
+            _shardedFacts = true;
+            break;
+        case "--compressed-facts":
+            _compressedFacts = true;
+            break;
+        case "--compact-ids":
+            _compactIds = true;
+            break;
+        case "--readable-id-methods":
+            i = shift(args, i);
+            _readableIdMethods = args[i];
+            break;
+        case "--preprocess-cache-dir":
+            i = shift(args, i);
+            _preprocessCacheDir = args[i];
+            break;
+        case "--native-scan-cache":
+            i = shift(args, i);
+            _nativeScanCacheDir = args[i];
+            break;
+        case "--class-fact-cache":
+            i = shift(args, i);
+            _classFactCacheDir = args[i];
+            break;
+        case "--class-fact-options":
+            i = shift(args, i);
+            _classFactOptions = args[i];
+            break;
+        case "--writer-threads":
+            i = shift(args, i);
+            try {
+                _writerThreads = Integer.parseInt(args[i]);
+            } catch (NumberFormatException nfe) {
+                System.out.println("Invalid writer threads argument: " + args[i]);
+            }
+            break;
         default:
             return -1;
         }
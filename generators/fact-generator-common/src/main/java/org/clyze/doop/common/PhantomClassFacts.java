@@ -0,0 +1,174 @@
+package org.clyze.doop.common;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.clyze.doop.common.PreprocessCache.readString;
+import static org.clyze.doop.common.PreprocessCache.writeString;
+
+/**
+ * The facts of the classes that refer to phantoms, kept so that fact
+ * generation can be restarted with more classes (see the
+ * --generated-classes option of the Soot front end). Such facts
+ * depend on what is phantom in a run (for example, PhantomType,
+ * PhantomBasedMethod and AssignPhantomInvoke facts), so a restart
+ * removes them from the facts and processes these classes again.
+ */
+public class PhantomClassFacts {
+    // Bump when the format of the file changes.
+    private static final int VERSION = 1;
+
+    private final File file;
+    private final Map<String, RecordedRows> classes = new ConcurrentHashMap<>();
+
+    /**
+     * Create an object for the facts of the classes of a fact
+     * generation run that refer to phantoms.
+     *
+     * @param file   the file of these facts (shared by all runs)
+     */
+    public PhantomClassFacts(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Start recording the facts written by the current thread for a
+     * class. Recordings may be nested in other recordings.
+     *
+     * @param writer   the fact writer
+     * @return         the recording
+     */
+    public Recording startRecording(JavaFactWriter writer) {
+        Recording recording = new Recording();
+        writer._db.startRecording(recording.rows::record);
+        return recording;
+    }
+
+    /**
+     * Stop recording the facts of a class and keep them, if the class
+     * refers to phantoms.
+     *
+     * @param writer      the fact writer
+     * @param className   the name of the class
+     * @param recording   the recording of the facts of the class
+     */
+    public void stopRecording(JavaFactWriter writer, String className, Recording recording) {
+        writer._db.stopRecording();
+        if (recording.phantom)
+            classes.put(className, recording.rows);
+    }
+
+    /**
+     * Remove the facts of the classes that referred to phantoms in the
+     * earlier runs. Must be called before the facts are opened for
+     * writing.
+     *
+     * @param factsDir   the facts directory
+     * @return           the names of these classes (to be processed again)
+     * @throws IOException on read or write error
+     */
+    public Set<String> removeFacts(File factsDir) throws IOException {
+        Set<String> classNames = new HashSet<>();
+        if (!file.exists())
+            return classNames;
+        RecordedRows rows = new RecordedRows();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+            if (in.readInt() != VERSION)
+                throw new IOException("unknown format of " + file);
+            for (int i = in.readInt(); i > 0; i--) {
+                classNames.add(readString(in));
+                rows.read(in);
+            }
+        } catch (IllegalArgumentException ex) {
+            throw new IOException("unknown relation in " + file, ex);
+        }
+        for (PredicateFile predicateFile : PredicateFile.values()) {
+            Map<String, Integer> relationRows = new HashMap<>();
+            rows.forEach(predicateFile, row -> relationRows.merge(row, 1, Integer::sum));
+            if (!relationRows.isEmpty())
+                removeRows(Database.getFactsFile(factsDir, predicateFile.toString()), relationRows);
+        }
+        return classNames;
+    }
+
+    // Remove rows from a facts file. A row written more than once is
+    // only removed as many times as it was recorded, since the other
+    // copies come from other classes.
+    private static void removeRows(File factsFile, Map<String, Integer> rows) throws IOException {
+        if (!factsFile.exists())
+            return;
+        boolean compressed = factsFile.getName().endsWith(".gz");
+        File tmpFile = File.createTempFile(factsFile.getName(), ".tmp", factsFile.getParentFile());
+        try (BufferedReader reader = Database.newFactsReader(factsFile);
+             Writer writer = newWriter(new FileOutputStream(tmpFile), compressed)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String row = line + '\n';
+                Integer count = rows.get(row);
+                if (count == null)
+                    writer.write(row);
+                else if (count == 1)
+                    rows.remove(row);
+                else
+                    rows.put(row, count - 1);
+            }
+        }
+        Files.move(tmpFile.toPath(), factsFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static Writer newWriter(OutputStream out, boolean compressed) throws IOException {
+        if (compressed)
+            out = new GZIPOutputStream(out, 1 << 16);
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Write the facts of the classes of this run that refer to
+     * phantoms (replacing those of earlier runs, which have been
+     * removed by removeFacts() and processed again).
+     *
+     * @throws IOException on write error
+     */
+    public void save() throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file))))) {
+            out.writeInt(VERSION);
+            out.writeInt(classes.size());
+            for (Map.Entry<String, RecordedRows> entry : classes.entrySet()) {
+                writeString(out, entry.getKey());
+                entry.getValue().write(out);
+            }
+        }
+    }
+
+    /** The recorded facts of a class. */
+    public static final class Recording {
+        private final RecordedRows rows = new RecordedRows();
+        private boolean phantom = false;
+
+        /** The class refers to phantoms (its facts are kept). */
+        public void markPhantom() {
+            phantom = true;
+        }
+    }
+}
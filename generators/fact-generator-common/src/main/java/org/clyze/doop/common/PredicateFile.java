@@ -3,9 +3,12 @@ package org.clyze.doop.common;
 import org.apache.commons.io.FileUtils;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.util.zip.GZIPOutputStream;
 
 public enum PredicateFile
 {
@@ -48,6 +51,7 @@ public enum PredicateFile
     CLASS_HEAP("ClassHeap"),
     CLASS_TYPE("ClassType"),
     CLASS_MODIFIER("ClassModifier"),
+    COMPACT_METHOD_ID("CompactMethodId"),
     COMPONENT_TYPE("ComponentType"),
     CONTENT_PROVIDER("ContentProvider"),
     DEX_INSTR_ADDR_MAP("DexInstructionAddressMap"),
@@ -148,9 +152,20 @@ public enum PredicateFile
         return name;
     }
 
+    /**
+     * Returns a writer that appends to the facts file of this relation.
+     * If the suffix ends in ".gz", the writer appends a new gzip member
+     * to the file (concatenated members form a valid gzip file).
+     *
+     * @param directory   the directory of the facts file
+     * @param suffix      the facts file suffix (e.g. ".facts")
+     * @return            the writer
+     */
     public Writer getWriter(File directory, String suffix) throws IOException {
         File factsFile = new File(directory, name + suffix);
         FileUtils.touch(factsFile);
+        if (suffix.endsWith(".gz"))
+            return new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(factsFile, true), 1 << 16));
         return new FileWriter(factsFile, true);
     }
 }
@@ -0,0 +1,232 @@
+package org.clyze.doop.common;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An on-disk cache of archive preprocessing results: the class
+ * entries of the archive, its properties files and the facts of its
+ * XML entries. Results are keyed by the SHA-256 of the archive
+ * contents (and the archive name, which appears in the XML facts), so
+ * that unchanged archives (such as the platform or dependency JARs of
+ * nightly runs) can be replayed without opening them again.
+ */
+public class PreprocessCache {
+    // Bump when the format or the contents of cached results change.
+    private static final int VERSION = 3;
+    private static final String SUFFIX = ".pre.gz";
+
+    private final File dir;
+
+    /**
+     * Create a cache object.
+     *
+     * @param dir   the cache directory (created if missing)
+     */
+    public PreprocessCache(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Compute the cache key of an archive. The results of preprocessing
+     * also depend on the kind of the archive (e.g. XML entries are not
+     * read from APKs), so the kind is part of the key. The facts of
+     * XML entries contain the archive name, so the name is also part
+     * of the key (the directory of the archive is not).
+     *
+     * @param archive   the archive
+     * @param kind      the kind of the archive (e.g. its extension)
+     * @return          the key or null if the archive cannot be read
+     */
+    public String key(File archive, String kind) {
+        try (InputStream is = new FileInputStream(archive)) {
+            String nameHash = hex(newDigest().digest(archive.getName().getBytes(StandardCharsets.UTF_8)));
+            return sha256(is) + '.' + nameHash.substring(0, 16) + '.' + kind;
+        } catch (IOException ex) {
+            System.err.println("WARNING: cannot compute preprocessing cache key of " + archive + ": " + ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Read cached results.
+     *
+     * @param key   the cache key of the archive
+     * @return      the results or null if they are not in the cache
+     */
+    public Entry load(String key) {
+        File f = new File(dir, key + SUFFIX);
+        if (!f.exists())
+            return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(f))))) {
+            if (in.readInt() != VERSION)
+                return null;
+            Entry entry = new Entry();
+            for (int i = in.readInt(); i > 0; i--)
+                entry.classes.add(new ArtifactEntry(readString(in), readString(in), in.readInt(), readNullableString(in)));
+            for (int i = in.readInt(); i > 0; i--) {
+                String entryName = readString(in);
+                Properties properties = new Properties();
+                for (int j = in.readInt(); j > 0; j--)
+                    properties.setProperty(readString(in), readString(in));
+                entry.properties.put(entryName, properties);
+            }
+            entry.rows.read(in);
+            return entry;
+        } catch (IOException | IllegalArgumentException ex) {
+            // Unknown relations (from older versions) also end up here.
+            System.err.println("WARNING: ignoring invalid preprocessing cache entry " + f + ": " + ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Write results to the cache. The cache file is written under a
+     * temporary name first, so that concurrent runs never read
+     * partial results.
+     *
+     * @param key     the cache key of the archive
+     * @param entry   the results
+     */
+    public void store(String key, Entry entry) {
+        File tmpFile = null;
+        try {
+            Files.createDirectories(dir.toPath());
+            tmpFile = File.createTempFile(key, ".tmp", dir);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tmpFile))))) {
+                out.writeInt(VERSION);
+                out.writeInt(entry.classes.size());
+                for (ArtifactEntry ae : entry.classes) {
+                    writeString(out, ae.className);
+                    writeString(out, ae.subArtifact);
+                    out.writeInt(ae.size);
+                    writeNullableString(out, ae.hash);
+                }
+                out.writeInt(entry.properties.size());
+                for (Map.Entry<String, Properties> e : entry.properties.entrySet()) {
+                    writeString(out, e.getKey());
+                    Properties properties = e.getValue();
+                    out.writeInt(properties.stringPropertyNames().size());
+                    for (String name : properties.stringPropertyNames()) {
+                        writeString(out, name);
+                        writeString(out, properties.getProperty(name));
+                    }
+                }
+                entry.rows.write(out);
+            }
+            Files.move(tmpFile.toPath(), new File(dir, key + SUFFIX).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            System.err.println("WARNING: cannot write preprocessing cache entry " + key + ": " + ex.getMessage());
+            if (tmpFile != null && !tmpFile.delete())
+                tmpFile.deleteOnExit();
+        }
+    }
+
+    // DataOutputStream.writeUTF() is limited to 64K bytes, which
+    // XML data may exceed.
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeNullableString(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null)
+            writeString(out, s);
+    }
+
+    static String readNullableString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? readString(in) : null;
+    }
+
+    /**
+     * Returns the SHA-256 of some data, as a hex string.
+     *
+     * @param is   the data
+     * @return     the hash
+     * @throws IOException on read error
+     */
+    public static String sha256(InputStream is) throws IOException {
+        MessageDigest md = newDigest();
+        byte[] buf = new byte[1 << 16];
+        int n;
+        while ((n = is.read(buf)) > 0)
+            md.update(buf, 0, n);
+        return hex(md.digest());
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            // Every Java platform supports SHA-256.
+            throw new RuntimeException(ex);
+        }
+    }
+
+    static String hex(byte[] digest) {
+        StringBuilder sb = new StringBuilder(digest.length * 2);
+        for (byte b : digest)
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        return sb.toString();
+    }
+
+    /**
+     * The preprocessing results of an archive. Archive paths are not
+     * stored, since the same archive may appear under a different path
+     * in another run (the archive name is part of the cache key).
+     */
+    public static final class Entry {
+        /** The class entries (thread-safe, filled by parallel scans). */
+        public final Collection<ArtifactEntry> classes = new ConcurrentLinkedQueue<>();
+        /** The properties files, by entry name. */
+        public final Map<String, Properties> properties = new LinkedHashMap<>();
+        // The facts written while preprocessing (XML data).
+        private final RecordedRows rows = new RecordedRows();
+
+        /**
+         * Record a row written while preprocessing.
+         *
+         * @param predicateFile   the relation of the row
+         * @param row             the encoded row
+         */
+        public void record(PredicateFile predicateFile, String row) {
+            rows.record(predicateFile, row);
+        }
+
+        /**
+         * Write the recorded rows to a database.
+         *
+         * @param db   the database
+         */
+        void replayRows(Database db) {
+            rows.replay(db);
+        }
+    }
+}
@@ -2,15 +2,16 @@ package org.clyze.doop.common;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class PropertyProvider {
     private final Map<String, Properties> _properties;
 
     public PropertyProvider() {
-        _properties = new HashMap<>();
+        // Properties entries may be added by concurrent archive scans.
+        _properties = new ConcurrentHashMap<>();
     }
 
     /**
@@ -19,8 +20,9 @@ public class PropertyProvider {
      * @param stream     the InputStream of the properties entry
      * @param filePath   the path of the archive containing the
      *                   properties file
+     * @return           the properties read
      */
-    public void addProperties(InputStream stream, String filePath) throws IOException {
+    public Properties addProperties(InputStream stream, String filePath) throws IOException {
         Properties properties = new Properties();
 
         try {
@@ -45,6 +47,18 @@ public class PropertyProvider {
         }
 
         _properties.put(filePath, properties);
+        return properties;
+    }
+
+    /**
+     * Adds properties that have already been read (for example, from
+     * a preprocessing cache).
+     *
+     * @param filePath     the path of the properties file
+     * @param properties   the properties
+     */
+    public void addProperties(String filePath, Properties properties) {
+        _properties.put(filePath, properties);
     }
 
     public Map<String, Properties> getProperties() {
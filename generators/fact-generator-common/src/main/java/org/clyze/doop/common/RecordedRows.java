@@ -0,0 +1,93 @@
+package org.clyze.doop.common;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+
+import static org.clyze.doop.common.PreprocessCache.readString;
+import static org.clyze.doop.common.PreprocessCache.writeString;
+
+/**
+ * Rows recorded while facts were written (see
+ * Database.startRecording()), to be written again by a later run.
+ */
+final class RecordedRows {
+    private final List<PredicateFile> relations = new ArrayList<>();
+    private final List<String> rows = new ArrayList<>();
+
+    void record(PredicateFile predicateFile, String row) {
+        relations.add(predicateFile);
+        rows.add(row);
+    }
+
+    /**
+     * Call an action for each recorded row of a relation.
+     *
+     * @param predicateFile   the relation
+     * @param action          the action (takes the encoded row)
+     */
+    void forEach(PredicateFile predicateFile, Consumer<String> action) {
+        for (int i = 0; i < rows.size(); i++)
+            if (relations.get(i) == predicateFile)
+                action.accept(rows.get(i));
+    }
+
+    /**
+     * Write the recorded rows to a database.
+     *
+     * @param db   the database
+     */
+    void replay(Database db) {
+        replay(db, (predicateFile, row) -> true);
+    }
+
+    /**
+     * Write some of the recorded rows to a database.
+     *
+     * @param db     the database
+     * @param keep   selects the rows to write (takes the relation and the encoded row)
+     */
+    void replay(Database db, BiPredicate<PredicateFile, String> keep) {
+        for (int i = 0; i < rows.size(); i++)
+            if (keep.test(relations.get(i), rows.get(i)))
+                db.writeEncoded(relations.get(i), rows.get(i));
+    }
+
+    /**
+     * Returns a column of an encoded row.
+     *
+     * @param row     the encoded row
+     * @param index   the index of the column
+     * @return        the column, with the escaping of Database.Row.col() reversed
+     */
+    static String column(String row, int index) {
+        String[] cols = row.split("\t", -1);
+        String col = cols[index];
+        if (index == cols.length - 1 && col.endsWith("\n"))
+            col = col.substring(0, col.length() - 1);
+        if (col.indexOf('\\') < 0)
+            return col;
+        return col.replace("\\\\\"", "\"").replace("\\\\n", "\n").replace("\\\\t", "\t");
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            writeString(out, relations.get(i).name());
+            writeString(out, rows.get(i));
+        }
+    }
+
+    /**
+     * Read rows written by write(). Unknown relations (from older
+     * versions) throw IllegalArgumentException.
+     */
+    void read(DataInputStream in) throws IOException {
+        for (int i = in.readInt(); i > 0; i--)
+            record(PredicateFile.valueOf(readString(in)), readString(in));
+    }
+}
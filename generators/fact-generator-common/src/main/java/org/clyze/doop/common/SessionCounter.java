@@ -1,33 +1,31 @@
 package org.clyze.doop.common;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
+/**
+ * The numbering state of the method being processed. A session is
+ * only used by the thread processing the method, so it is not
+ * thread-safe; sessions are reused across methods (see {@link
+ * MethodArena}) and must be reset between them.
+ */
 public class SessionCounter {
 
     /**
      * Keep the current count of temporary vars of a certain kind,
      * identified by base name.
      */
-    private final Map<String, Integer> _tempVarMap = new ConcurrentHashMap<>();
+    private final ObjectIntMap<String> _tempVarMap = new ObjectIntMap<>();
     /**
      * Keeps the unique index of an instruction in the method. This cannot be
      * computed up front,because temporary variables (and assignments to them
      * from constants) will be inserted while the IR is being processed.
      */
-    private final Map<Object, Integer> _units = new ConcurrentHashMap<>();
+    private final ObjectIntMap<Object> _units = new ObjectIntMap<>();
     /** Instruction index counter. */
     private int index = 0;
+    /** Builder for the ids of the method elements. */
+    private final StringBuilder _idBuilder = new StringBuilder(128);
 
     public int nextNumber(String s) {
-        Integer x = _tempVarMap.get(s);
-
-        if (x == null)
-            x = 0;
-
-        _tempVarMap.put(s, x + 1);
-
-        return x;
+        return _tempVarMap.getAndIncrement(s);
     }
 
     public int calcInstructionIndex(Object u) {
@@ -36,11 +34,41 @@ public class SessionCounter {
         return index++;
     }
 
+    /**
+     * Returns a new instruction index that is not recorded for any
+     * unit (used for pseudo-instructions).
+     *
+     * @return the instruction index
+     */
+    public int nextInstructionIndex() {
+        return index++;
+    }
+
     public int getInstructionIndex(Object u) {
-        Integer result = _units.get(u);
-        if (result == null)
+        int result = _units.get(u, -1);
+        if (result < 0)
             throw new RuntimeException("No unit number available for '" + u + "'");
         return result;
     }
 
+    /**
+     * Returns the (emptied) id builder of this session. The builder
+     * must not be used again before its contents have been read.
+     *
+     * @return the builder
+     */
+    public StringBuilder idBuilder() {
+        _idBuilder.setLength(0);
+        return _idBuilder;
+    }
+
+    /**
+     * Forget all numbering, to process a new method.
+     */
+    public void reset() {
+        _tempVarMap.clear();
+        _units.clear();
+        index = 0;
+        _idBuilder.setLength(0);
+    }
 }
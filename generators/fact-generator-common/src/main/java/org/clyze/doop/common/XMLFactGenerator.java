@@ -1,9 +1,21 @@
 package org.clyze.doop.common;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Stack;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParserFactory;
 
@@ -21,6 +33,7 @@ import static org.clyze.doop.common.PredicateFile.XMLNode;
 import static org.clyze.doop.common.PredicateFile.XMLNodeAttribute;
 import static org.clyze.doop.common.PredicateFile.XMLNodeData;
 
+import org.apache.commons.io.IOUtils;
 import org.clyze.utils.JHelper;
 import org.xml.sax.helpers.DefaultHandler;
 
@@ -34,9 +47,13 @@ public class XMLFactGenerator extends DefaultHandler {
     @SuppressWarnings("FieldCanBeLocal")
     private final String LAYOUT_PREFIX = "@layout/";
 
+    // The parsers of the threads, reused for all the files they parse
+    // (parsers are not thread-safe); quiet parsers ignore errors.
+    private static final ThreadLocal<XMLReader> readers = ThreadLocal.withInitial(() -> newReader(false));
+    private static final ThreadLocal<XMLReader> quietReaders = ThreadLocal.withInitial(() -> newReader(true));
+
     private final boolean debug;
     private final Database db;
-    private final File xmlFile;
     private final String relativePath;
     private final Stack<Integer> parents = new Stack<>();
     // This should match the constant in the XML logic.
@@ -47,37 +64,63 @@ public class XMLFactGenerator extends DefaultHandler {
     // Contains the inner data of an element.
     private String xmlData = null;
 
-    private XMLFactGenerator(Database db, File xmlFile, String topDir, boolean debug) {
+    private XMLFactGenerator(Database db, String relativePath, boolean debug) {
         this.db = db;
-        this.xmlFile = xmlFile;
-        this.relativePath = trimXMLPath(topDir);
+        this.relativePath = relativePath;
         this.debug = debug;
     }
 
     /**
-     * Process a directory containing XML files. Also process subdirectories.
+     * Process a directory containing XML files. Also process
+     * subdirectories. Files are parsed in parallel.
      *
      * @param dir     the directory to process
      * @param db      the database object to use
      * @param debug   if true, print debugging information
      * @param topDir  the top directory to use when creating relative
      *                paths (a prefix of the directory path)
+     * @param cores   the number of threads to use
      */
-    public static void processDir(File dir, Database db, String topDir, boolean debug) {
+    public static void processDir(File dir, Database db, String topDir, boolean debug, int cores) {
+        List<File> xmlFiles = new ArrayList<>();
+        findXMLFiles(dir, xmlFiles);
+        if (xmlFiles.isEmpty())
+            return;
+        ExecutorService exec = Executors.newFixedThreadPool(Math.max(1, Math.min(cores, xmlFiles.size())));
+        try {
+            List<Future<?>> tasks = new ArrayList<>(xmlFiles.size());
+            for (File f : xmlFiles)
+                tasks.add(exec.submit(() -> {
+                    if (debug)
+                        System.out.println("Processing: " + f);
+                    processFile(f, db, topDir, debug);
+                }));
+            for (Future<?> task : tasks) {
+                try {
+                    task.get();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(ex);
+                } catch (ExecutionException ex) {
+                    throw new RuntimeException(ex.getCause());
+                }
+            }
+        } finally {
+            exec.shutdownNow();
+        }
+    }
+
+    private static void findXMLFiles(File dir, Collection<File> xmlFiles) {
         File[] files = dir.listFiles();
         if (files != null)
             for (File f : files) {
                 if (f.isDirectory())
-                    processDir(f, db, topDir, debug);
+                    findXMLFiles(f, xmlFiles);
                 else if (f.isFile()) {
                     String filePath = f.getAbsolutePath();
-                    if (filePath.toLowerCase().endsWith(".xml")) {
-                        if (debug)
-                            System.out.println("Processing: " + f);
-                        // Skip original AndroidManifest.xml (binary XML data).
-                        if (!f.getAbsolutePath().endsWith("/original/AndroidManifest.xml"))
-                            processFile(f, db, topDir, debug);
-                    }
+                    // Skip original AndroidManifest.xml (binary XML data).
+                    if (filePath.toLowerCase().endsWith(".xml") && !filePath.endsWith("/original/AndroidManifest.xml"))
+                        xmlFiles.add(f);
                 }
             }
     }
@@ -93,9 +136,9 @@ public class XMLFactGenerator extends DefaultHandler {
      */
     public static void processFile(File xmlFile, Database db, String topDir, boolean debug) {
         try {
-            XMLFactGenerator gen = new XMLFactGenerator(db, xmlFile, topDir, debug);
-            gen.parse(debug);
-        } catch (ParserConfigurationException | SAXException | IOException ex) {
+            XMLFactGenerator gen = new XMLFactGenerator(db, trimXMLPath(xmlFile, topDir), debug);
+            gen.parse(xmlFile);
+        } catch (SAXException | IOException ex) {
             String msg = ex.getMessage();
             if (debug)
                 System.err.println("Error parsing " + xmlFile + ": " + msg);
@@ -103,31 +146,89 @@ public class XMLFactGenerator extends DefaultHandler {
         }
     }
 
-    private void parse(boolean debug) throws IOException, SAXException, ParserConfigurationException {
-        SAXParserFactory spf = SAXParserFactory.newInstance();
-        spf.setNamespaceAware(true);
-        XMLReader xmlReader = spf.newSAXParser().getXMLReader();
+    /**
+     * Process one XML entry of an archive, reading it directly from
+     * the archive. The facts are written by the calling thread.
+     *
+     * @param zipFile  the archive
+     * @param entry    the XML entry to process
+     * @param path     the path of the entry to use in the facts
+     * @param db       the database object to use
+     * @param debug    if true, show debug messages
+     */
+    public static void processEntry(ZipFile zipFile, ZipEntry entry, String path, Database db, boolean debug) {
+        try {
+            byte[] bytes;
+            try (InputStream is = zipFile.getInputStream(entry)) {
+                bytes = IOUtils.toByteArray(is);
+            }
+            XMLFactGenerator gen = new XMLFactGenerator(db, path, debug);
+            gen.parse(bytes);
+        } catch (SAXException | IOException ex) {
+            if (debug)
+                System.err.println("Error parsing " + path + ": " + ex.getMessage());
+        }
+    }
+
+    private static XMLReader newReader(boolean quiet) {
+        try {
+            SAXParserFactory spf = SAXParserFactory.newInstance();
+            spf.setNamespaceAware(true);
+            XMLReader xmlReader = spf.newSAXParser().getXMLReader();
+            // If not in debug mode, replace verbose error handler with dummy one.
+            if (quiet)
+                xmlReader.setErrorHandler(new ErrorHandler() {
+                        public void error(SAXParseException exception) { }
+                        public void fatalError(SAXParseException exception) { }
+                        public void warning(SAXParseException exception) { }
+                });
+            return xmlReader;
+        } catch (ParserConfigurationException | SAXException ex) {
+            throw new RuntimeException("Cannot create XML parser: " + ex.getMessage(), ex);
+        }
+    }
+
+    private XMLReader reader() {
+        XMLReader xmlReader = (debug ? readers : quietReaders).get();
         xmlReader.setContentHandler(this);
-        // If not in debug mode, replace verbose error handler with dummy one.
-        if (!debug)
-            xmlReader.setErrorHandler(new ErrorHandler() {
-                    public void error(SAXParseException exception) { }
-                    public void fatalError(SAXParseException exception) { }
-                    public void warning(SAXParseException exception) { }
-            });
+        return xmlReader;
+    }
 
+    private void parse(File xmlFile) throws IOException, SAXException {
+        XMLReader xmlReader = reader();
         try (FileInputStream is1 = new FileInputStream(xmlFile)) {
             xmlReader.parse(new InputSource(is1));
         } catch (SAXParseException ex) {
-            if (debug)
-                System.err.println("XML processing may fail for " + xmlFile.getAbsolutePath() + ", trying automatic encoding conversion...");
-            JHelper.ensureUTF8(xmlFile.getAbsolutePath(), debug);
-            try (FileInputStream is2 = new FileInputStream(xmlFile)) {
-                xmlReader.parse(new InputSource(is2));
+            parseAsUTF8(xmlReader, xmlFile);
+        }
+    }
+
+    private void parse(byte[] bytes) throws IOException, SAXException {
+        XMLReader xmlReader = reader();
+        try {
+            xmlReader.parse(new InputSource(new ByteArrayInputStream(bytes)));
+        } catch (SAXParseException ex) {
+            // Encoding conversion works on files.
+            File tmpFile = File.createTempFile("xml-entry", ".xml");
+            try {
+                Files.write(tmpFile.toPath(), bytes);
+                parseAsUTF8(xmlReader, tmpFile);
+            } finally {
+                if (!tmpFile.delete())
+                    tmpFile.deleteOnExit();
             }
         }
     }
 
+    private void parseAsUTF8(XMLReader xmlReader, File xmlFile) throws IOException, SAXException {
+        if (debug)
+            System.err.println("XML processing may fail for " + relativePath + ", trying automatic encoding conversion...");
+        JHelper.ensureUTF8(xmlFile.getAbsolutePath(), debug);
+        try (FileInputStream is2 = new FileInputStream(xmlFile)) {
+            xmlReader.parse(new InputSource(is2));
+        }
+    }
+
     @Override
     public void startElement(String namespaceURI, String localName,
                              String qName, Attributes attrs) throws SAXException {
@@ -148,7 +249,7 @@ public class XMLFactGenerator extends DefaultHandler {
 
         if (lastStringNode != null) {
             if (xmlData != null)
-                db.add(XMLNodeData, lastStringNode.file, lastStringNode.nodeId, xmlData);
+                db.row(XMLNodeData).col(lastStringNode.file).col(lastStringNode.nodeId).col(xmlData).end();
             lastStringNode = null;
         }
     }
@@ -175,10 +276,11 @@ public class XMLFactGenerator extends DefaultHandler {
      * Convert the XML path to a local one (relative to topDir), so
      * that exchanged facts do not leak filesystem information.
      *
+     * @param xmlFile   the XML file
      * @param topDir    the top directory that is a prefix of the XML path
      * @return          a local XML path
      */
-    private String trimXMLPath(String topDir) {
+    private static String trimXMLPath(File xmlFile, String topDir) {
         topDir = new File(topDir).getAbsolutePath();
         String xmlPath = xmlFile.getAbsolutePath();
         if (xmlPath.startsWith(topDir)) {
@@ -200,7 +302,7 @@ public class XMLFactGenerator extends DefaultHandler {
      * @param qName          the qualified name of the node
      */
     private void writeXMLNode(String file, String nodeId, int parentNodeId, String namespaceURI, String localName, String qName) {
-        db.add(XMLNode, file, nodeId, str(parentNodeId), namespaceURI, localName, qName);
+        db.row(XMLNode).col(file).col(nodeId).col(parentNodeId).col(namespaceURI).col(localName).col(qName).end();
     }
 
     /**
@@ -213,13 +315,13 @@ public class XMLFactGenerator extends DefaultHandler {
      * @param value          the value of the attribute
      */
     private void writeXMLNodeAttribute(String file, String nodeId, int idx, String localName, String qName, String value) {
-        db.add(XMLNodeAttribute, file, nodeId, str(idx), localName, qName, value);
+        db.row(XMLNodeAttribute).col(file).col(nodeId).col(idx).col(localName).col(qName).col(value).end();
         // Register Android ids by extracting their labels.
         if (qName.equals("android:id")) {
             boolean handled = false;
             for (String prefix : ID_PREFIXES)
                 if (value.startsWith(prefix)) {
-                    db.add(ANDROID_ID, file, nodeId, value, prefix, value.substring(prefix.length()));
+                    db.row(ANDROID_ID).col(file).col(nodeId).col(value).col(prefix).col(value.substring(prefix.length())).end();
                     handled = true;
                 } else if (value.startsWith("@+id/") && debug) {
                     System.err.println("WARNING: non-constant id found in: " + value);
@@ -227,11 +329,11 @@ public class XMLFactGenerator extends DefaultHandler {
             if (!handled) {
                 if (debug)
                     System.err.println("WARNING: could not process Android id: " + value);
-                db.add(ANDROID_ID, file, nodeId, value, "-", value);
+                db.row(ANDROID_ID).col(file).col(nodeId).col(value).col("-").col(value).end();
             }
         } else if (qName.equals("layout")) {
             if (value.startsWith(LAYOUT_PREFIX)) {
-                db.add(ANDROID_INCLUDE_XML, file, nodeId, value.substring(LAYOUT_PREFIX.length()));
+                db.row(ANDROID_INCLUDE_XML).col(file).col(nodeId).col(value.substring(LAYOUT_PREFIX.length())).end();
             } else if (debug)
                 System.err.println("WARNING: ignoring layout=" + value);
         }
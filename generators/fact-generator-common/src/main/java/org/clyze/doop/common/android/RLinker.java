@@ -1,19 +1,24 @@
 package org.clyze.doop.common.android;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.clyze.utils.ContainerUtils;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
 
-import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.util.*;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
+import static org.objectweb.asm.Opcodes.*;
+
 /** A linker of R-class data.
  *
  *  Given a list of AAR files, this linker extracts R.txt from each
@@ -21,10 +26,8 @@ import java.util.zip.ZipFile;
  *  that Doop does not report them as phantom classes. This linker does
  *  not mimic the full logic of the aapt tool, it only generates code
  *  that is good enough for linking (in the form of a JAR file
- *  containing all R.java and R*.class files).
- *
- *  This code calls 'javac' and 'jar', so it may fail when these
- *  programs are not in the path.
+ *  containing all R*.class files). The classes are generated directly
+ *  as bytecode, so no Java compiler is needed.
  */
 public class RLinker {
 
@@ -34,16 +37,17 @@ public class RLinker {
     // ids. Used by lookupConst() and XML parsing for layout controls.
     private final Map<String, Map<String, Map<String, Integer> > > constants;
 
-    // A map from package names -> nested class -> set of text
-    // entries. Used for code generation.
-    private final Map<String, Map<String, Set<String> > > rs;
+    // A map from package names -> nested class -> field -> field
+    // data. Used for code generation (sorted, so that the generated
+    // code does not depend on the order of the inputs).
+    private final Map<String, Map<String, Map<String, RField> > > rs;
 
     // Singleton instance.
     private static RLinker instance;
 
     private RLinker() {
         this.constants = new HashMap<>();
-        this.rs = new HashMap<>();
+        this.rs = new TreeMap<>();
     }
 
     public static RLinker getInstance() {
@@ -52,6 +56,14 @@ public class RLinker {
         return instance;
     }
 
+    /**
+     * Drop the R data collected so far (such as the constants used by
+     * lookupConst()), so that the next run in the same JVM starts empty.
+     */
+    public static void reset() {
+        instance = null;
+    }
+
     Integer lookupConst(String packageName, String nestedName, String fld) {
         Map<String, Map<String, Integer> > pkgEntry = constants.get(packageName);
         if (pkgEntry != null) {
@@ -80,21 +92,39 @@ public class RLinker {
         if ((rDir == null) || rs.isEmpty()) {
             return null;
         } else {
-            final String tmpDir = ContainerUtils.createTmpDir(tmpDirs);
-            rs.forEach ((k, v) -> runProcess("javac " + genR(tmpDir, k, v)));
+            Map<String, byte[]> classes = new TreeMap<>();
+            rs.forEach ((k, v) -> classes.putAll(genR(k, v)));
 
-            // Compile JAR and optionally copy to output directory.
-            String tmpJarName = tmpDir + "/" + R_AUTOGEN_JAR;
-            runProcess("jar cf " + tmpJarName + " -C " + tmpDir + " .");
+            // Write JAR to the output directory (or to a temporary
+            // directory, if that fails).
             String outJarName = rDir + "/" + R_AUTOGEN_JAR;
             try {
-                FileUtils.copyFile(new File(tmpJarName), new File(outJarName));
+                writeJar(outJarName, classes);
                 return outJarName;
             } catch (IOException ex) {
-                System.err.println("Failed to copy " + tmpJarName + " to " + outJarName + " : " + ex.getMessage());
+                System.err.println("Failed to write " + outJarName + " : " + ex.getMessage());
+            }
+
+            String tmpJarName = ContainerUtils.createTmpDir(tmpDirs) + "/" + R_AUTOGEN_JAR;
+            try {
+                writeJar(tmpJarName, classes);
+                return tmpJarName;
+            } catch (IOException ex) {
+                System.err.println("Failed to write " + tmpJarName + " : " + ex.getMessage());
+                return null;
             }
+        }
+    }
 
-            return tmpJarName;
+    private static void writeJar(String jarName, Map<String, byte[]> classes) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        try (JarOutputStream jar = new JarOutputStream(new FileOutputStream(jarName), manifest)) {
+            for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                jar.putNextEntry(new JarEntry(entry.getKey()));
+                jar.write(entry.getValue());
+                jar.closeEntry();
+            }
         }
     }
 
@@ -123,8 +153,8 @@ public class RLinker {
     }
 
     /**
-     * Process each line in R.txt and (a) generate Java code for later
-     * use (in 'rs') and (b) remember constant ids (in 'constants').
+     * Process each line in R.txt and (a) record the R fields for later
+     * code generation (in 'rs') and (b) remember constant ids (in 'constants').
      *
      * @param ar    The path of the archive.
      * @param line  The line of text to be processed.
@@ -157,12 +187,14 @@ public class RLinker {
                 addConstant(pkg, nestedR, newParts[1], val);
             }
 
-            // Generate Java code.
-            Map<String, Set<String>> pkgEntry = rs.getOrDefault(pkg, new HashMap<>());
-            Set<String> set = pkgEntry.getOrDefault(nestedR, new HashSet<>());
-            set.add("        public static " + String.join(delim, newParts) + ";");
-            pkgEntry.put(nestedR, set);
-            rs.put(pkg, pkgEntry);
+            // Record field for code generation.
+            RField field = RField.parse(newParts);
+            if (field == null)
+                System.err.println("WARNING: ignoring R.txt line: " + line);
+            else
+                rs.computeIfAbsent(pkg, x -> new TreeMap<>())
+                    .computeIfAbsent(nestedR, x -> new TreeMap<>())
+                    .putIfAbsent(newParts[1], field);
         }
     }
 
@@ -181,52 +213,74 @@ public class RLinker {
         constants.put(packageName, packageEntry);
     }
 
-    private static void runProcess(String cmd) {
-        try {
-            ProcessBuilder pb = new ProcessBuilder(cmd.split(" "));
-            Process p = pb.start();
-            try (var in = p.getInputStream(); var err = p.getErrorStream()) {
-                in.transferTo(System.out);
-                err.transferTo(System.err);
-            }
-            int exitVal = p.exitValue();
-            if (exitVal != 0) {
-                System.err.println("Error invoking: " + cmd);
-                System.err.println("Exit code: " + exitVal);
-            }
-        } catch (Exception ex) {
-            System.err.println("Error invoking: " + cmd);
-            ex.printStackTrace();
-        }
+    /**
+     * Generate the R class of a package and its nested classes.
+     *
+     * @param pkg     the package name
+     * @param rData   the R data of the package
+     * @return        a map from class file names to bytecode
+     */
+    private static Map<String, byte[]> genR(String pkg, Map<String, Map<String, RField>> rData) {
+        System.out.println("Generating R class for package " + pkg);
+        String rName = pkg.replace('.', '/') + "/R";
+        Map<String, byte[]> classes = new TreeMap<>();
+
+        ClassWriter rWriter = new ClassWriter(0);
+        rWriter.visit(V1_8, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, rName, null, "java/lang/Object", null);
+        for (String nestedName : rData.keySet())
+            rWriter.visitInnerClass(rName + "$" + nestedName, rName, nestedName, ACC_PUBLIC | ACC_STATIC | ACC_FINAL);
+        genConstructor(rWriter);
+        rWriter.visitEnd();
+        classes.put(rName + ".class", rWriter.toByteArray());
+
+        rData.forEach ((k, v) -> classes.put(rName + "$" + k + ".class", genNestedR(rName, k, v)));
+        return classes;
     }
 
-    private static String genR(String tmpDir, String pkg, Map<String, Set<String>> rData) {
-        String subdir = tmpDir + File.separator + pkg.replaceAll("\\.", File.separator);
-        if (new File(subdir).mkdirs())
-            System.out.println("Created directory: " + subdir);
-        String rFile = subdir + "/R.java";
-        System.out.println("Generating " + rFile);
-        Collection<String> lines = new ArrayList<>();
-        lines.add("// Auto-generated R.java by Doop.\n");
-        lines.add("package " + pkg + ";\n");
-        lines.add("public final class R {");
-        rData.forEach ((k, v) -> genNestedR(k, v, lines));
-        lines.add("}");
+    private static byte[] genNestedR(String rName, String nestedName, Map<String, RField> fields) {
+        String className = rName + "$" + nestedName;
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(V1_8, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, className, null, "java/lang/Object", null);
+        cw.visitInnerClass(className, rName, nestedName, ACC_PUBLIC | ACC_STATIC | ACC_FINAL);
+        // The fields are not final (as in the R classes of libraries),
+        // so they are initialized in <clinit>.
+        fields.forEach((name, f) -> cw.visitField(ACC_PUBLIC | ACC_STATIC, name, f.array ? "[I" : "I", null, null).visitEnd());
+        genConstructor(cw);
 
-        try {
-            Files.write(Paths.get(rFile), lines, StandardCharsets.UTF_8);
-        } catch (IOException ex) {
-            System.err.println("Error generating R class for package: " + pkg);
-            ex.printStackTrace();
-            return null;
-        }
-        return rFile;
+        MethodVisitor mv = cw.visitMethod(ACC_STATIC, "<clinit>", "()V", null, null);
+        mv.visitCode();
+        fields.forEach((name, f) -> {
+                if (f.array) {
+                    mv.visitLdcInsn(f.values.length);
+                    mv.visitIntInsn(NEWARRAY, T_INT);
+                    for (int i = 0; i < f.values.length; i++) {
+                        mv.visitInsn(DUP);
+                        mv.visitLdcInsn(i);
+                        mv.visitLdcInsn(f.values[i]);
+                        mv.visitInsn(IASTORE);
+                    }
+                    mv.visitFieldInsn(PUTSTATIC, className, name, "[I");
+                } else {
+                    mv.visitLdcInsn(f.values[0]);
+                    mv.visitFieldInsn(PUTSTATIC, className, name, "I");
+                }
+            });
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
     }
 
-    private static void genNestedR(String nestedName, Collection<String> data, Collection<String> lines) {
-        lines.add("    public static final class " + nestedName + " {\n");
-        lines.addAll(data);
-        lines.add("    }\n");
+    private static void genConstructor(ClassWriter cw) {
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(1, 1);
+        mv.visitEnd();
     }
 
     private static String getZipEntry(ZipFile zip, String entryName) {
@@ -245,4 +299,49 @@ public class RLinker {
         }
         return null;
     }
+
+    /** A field of an R class: an int or an int[] constant. */
+    private static final class RField {
+        final boolean array;
+        final int[] values;
+
+        RField(boolean array, int[] values) {
+            this.array = array;
+            this.values = values;
+        }
+
+        /**
+         * Parse the parts of a field declaration (type, name, "=" and
+         * value tokens), such as "int foo = 0x7f010000" or
+         * "int[] Foo = { 0x7f010000, 0x7f010001 }".
+         *
+         * @param parts   the parts of the declaration
+         * @return        the field or null if it could not be parsed
+         */
+        static RField parse(String[] parts) {
+            String value = String.join(" ", Arrays.copyOfRange(parts, 3, parts.length)).trim();
+            try {
+                if (parts[0].equals("int") && !value.isEmpty())
+                    return new RField(false, new int[] { parseInt(value) });
+                else if (parts[0].equals("int[]") && value.startsWith("{") && value.endsWith("}")) {
+                    String elems = value.substring(1, value.length() - 1).trim();
+                    if (elems.isEmpty())
+                        return new RField(true, new int[0]);
+                    String[] nums = elems.split(",");
+                    int[] values = new int[nums.length];
+                    for (int i = 0; i < nums.length; i++)
+                        values[i] = parseInt(nums[i].trim());
+                    return new RField(true, values);
+                }
+            } catch (NumberFormatException ignored) {
+            }
+            return null;
+        }
+
+        private static int parseInt(String num) {
+            return num.startsWith("0x") ?
+                (int)(Long.parseLong(num.substring(2), 16)) :
+                Integer.parseInt(num);
+        }
+    }
 }
@@ -0,0 +1,57 @@
+package org.clyze.doop.common
+
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import static org.clyze.doop.common.PredicateFile.*
+
+class CHATest extends Specification {
+
+    @TempDir
+    File tmp
+
+    static void registerClasses(CHA cha) {
+        cha.registerSuperClass('a.Sub', 'a.Base')
+        cha.registerDefinedClassFields('a.Sub', [new FieldInfo('int', 'g', 'a.Sub')])
+        cha.registerSuperClass('a.Base', 'java.lang.Object')
+        cha.registerDefinedClassFields('a.Base', [new FieldInfo('int', 'f', 'a.Base')])
+        cha.registerDefinedClassFields('java.lang.Object', [])
+    }
+
+    static void queueOps(CHA cha, Database db) {
+        Collection<FieldOp> ops = ['f', 'g', 'h'].withIndex().collect { String name, int i ->
+            FieldInfo fi = new FieldInfo('int', name, 'a.Sub')
+            cha.registerReferencedField(fi)
+            new FieldOp(LOAD_INST_FIELD, 'i' + i, String.valueOf(i), 'to', 'base', fi, 'm')
+        }
+        cha.queueFieldOps(db, ops)
+    }
+
+    List<String> resolve(String name, boolean classesFirst) {
+        File dir = new File(tmp, name)
+        CHA cha = new CHA()
+        new Database(dir.path).withCloseable { Database db ->
+            if (classesFirst)
+                registerClasses(cha)
+            queueOps(cha, db)
+            if (!classesFirst)
+                registerClasses(cha)
+            cha.conclude(db, new JavaFactWriter(db, new Parameters()) { }, false)
+        }
+        return new File(dir, 'LoadInstanceField.facts').readLines().sort()
+    }
+
+    def "Field operations resolve to the same fields whether written early or at the end"() {
+        when:
+        List<String> early = resolve('early', true)
+        List<String> late = resolve('late', false)
+
+        then:
+        early == late
+        early == [
+            'i0\t0\tto\tbase\t<a.Base: int f>\tm',
+            'i1\t1\tto\tbase\t<a.Sub: int g>\tm',
+            'i2\t2\tto\tbase\t<a.Sub: int h>\tm'
+        ]
+    }
+}
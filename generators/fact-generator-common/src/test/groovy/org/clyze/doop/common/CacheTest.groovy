@@ -0,0 +1,124 @@
+package org.clyze.doop.common
+
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import static org.clyze.doop.common.PredicateFile.*
+
+class CacheTest extends Specification {
+
+    @TempDir
+    File tmp
+
+    static Map<String, List<String>> facts(File dir) {
+        dir.listFiles().findAll { it.name.endsWith('.facts') && it.length() > 0 }.collectEntries {
+            [(it.name): it.readLines()]
+        }
+    }
+
+    static JavaFactWriter writer(Database db, boolean scanNativeCode) {
+        return new JavaFactWriter(db, new Parameters(_scanNativeCode: scanNativeCode)) { }
+    }
+
+    static void writeClassFacts(Database db) {
+        db.row(CLASS_TYPE).col('a.A').end()
+        db.row(STRING_RAW).col('"tab\there"').col('x\ny').end()
+        db.row(METHOD).col('<a.A: void m(int)>').col('m').col('int').col('a.A').col('void').col('(I)V').col(1).end()
+    }
+
+    def "Replayed class facts are the facts written by the class"() {
+        given:
+        ClassFactCache cache = new ClassFactCache(new File(tmp, 'cache'), 'opts')
+        String key = cache.key('a.A', 'hash1')
+        File first = new File(tmp, 'first')
+        File second = new File(tmp, 'second')
+
+        when: 'the facts of a class are recorded and stored'
+        new Database(first.path).withCloseable { Database db ->
+            JavaFactWriter w = writer(db, false)
+            ClassFactCache.Fragment fragment = cache.startRecording(w)
+            writeClassFacts(db)
+            cache.stopRecording(w)
+            fragment.heapTypes << 'a.A'
+            fragment.superClass = 'java.lang.Object'
+            fragment.definedFields << new FieldInfo('int', 'f', 'a.A')
+            cache.store(key, fragment)
+            // Not recorded.
+            db.row(CLASS_TYPE).col('b.B').end()
+        }
+
+        and: 'they are loaded and replayed in another run'
+        ClassFactCache.Fragment cached = cache.load(key)
+        Set<String> methodStrings = null
+        new Database(second.path).withCloseable { Database db ->
+            JavaFactWriter w = writer(db, true)
+            cache.replay(cached, w)
+            methodStrings = w.methodStrings
+        }
+
+        then:
+        cached.heapTypes == ['a.A']
+        cached.superClass == 'java.lang.Object'
+        cached.definedFields*.fieldId == ['<a.A: int f>']
+        facts(second) == facts(first).collectEntries { name, rows -> [(name): rows - ['b.B']] }
+        methodStrings == ['m', '(I)V'] as Set
+        cache.load(cache.key('a.A', 'hash2')) == null
+        cache.load(new ClassFactCache(new File(tmp, 'cache'), 'other-opts').key('a.A', 'hash1')) == null
+    }
+
+    def "Uncacheable class facts are not stored"() {
+        given:
+        ClassFactCache cache = new ClassFactCache(new File(tmp, 'cache'), 'opts')
+        ClassFactCache.Fragment fragment = new ClassFactCache.Fragment()
+
+        when:
+        fragment.markUncacheable()
+        cache.store(cache.key('a.A', 'hash'), fragment)
+
+        then:
+        cache.load(cache.key('a.A', 'hash')) == null
+    }
+
+    def "Preprocessing results are replayed as they were recorded"() {
+        given:
+        PreprocessCache cache = new PreprocessCache(new File(tmp, 'cache'))
+        File archive = new File(tmp, 'lib.jar')
+        archive.bytes = [1, 2, 3] as byte[]
+        String key = cache.key(archive, 'jar')
+        PreprocessCache.Entry entry = new PreprocessCache.Entry()
+        entry.classes << new ArtifactEntry('a.A', 'lib.jar', 10, 'h')
+        entry.classes << new ArtifactEntry('b.B', 'lib.jar', 20)
+        Properties properties = new Properties()
+        properties.setProperty('k', 'v w')
+        entry.properties.put('p.properties', properties)
+        entry.record(ANDROID_APPLICATION, 'app\tx\n')
+
+        when:
+        cache.store(key, entry)
+        PreprocessCache.Entry cached = cache.load(key)
+        File out = new File(tmp, 'out')
+        new Database(out.path).withCloseable { Database db -> cached.replayRows(db) }
+
+        then:
+        cached.classes.collect { [it.className, it.subArtifact, it.size, it.hash] } == [['a.A', 'lib.jar', 10, 'h'], ['b.B', 'lib.jar', 20, null]]
+        cached.properties.get('p.properties').getProperty('k') == 'v w'
+        facts(out) == ['AndroidApplication.facts': ['app\tx']]
+    }
+
+    def "Preprocessing cache keys depend on the contents, name and kind of archives"() {
+        given:
+        PreprocessCache cache = new PreprocessCache(new File(tmp, 'cache'))
+        File a = new File(tmp, 'a.jar')
+        File b = new File(tmp, 'b.jar')
+        File c = new File(new File(tmp, 'dir').tap { mkdirs() }, 'a.jar')
+        a.bytes = [1] as byte[]
+        b.bytes = [1] as byte[]
+        c.bytes = [1] as byte[]
+
+        expect:
+        cache.key(a, 'jar') == cache.key(c, 'jar')
+        cache.key(a, 'jar') != cache.key(b, 'jar')
+        cache.key(a, 'jar') != cache.key(a, 'apk')
+        cache.load(cache.key(a, 'jar')) == null
+    }
+}
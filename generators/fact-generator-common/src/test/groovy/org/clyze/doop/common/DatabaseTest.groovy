@@ -0,0 +1,166 @@
+package org.clyze.doop.common
+
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import static org.clyze.doop.common.PredicateFile.*
+
+class DatabaseTest extends Specification {
+
+    @TempDir
+    File tmp
+
+    List<String> facts(PredicateFile predicateFile) {
+        Database.newFactsReader(Database.getFactsFile(tmp, predicateFile.toString())).withCloseable {
+            it.readLines()
+        }
+    }
+
+    def "Columns are escaped and integers are written in place"() {
+        when:
+        new Database(tmp.path).withCloseable { Database db ->
+            db.row(STRING_RAW).col('a"b').col('c\nd\te').end()
+            db.row(VAR_TYPE).col(0).col(-42).col(Long.MIN_VALUE).end()
+            db.add(CLASS_TYPE, 'x\ty')
+        }
+
+        then:
+        facts(STRING_RAW) == ['a\\\\"b\tc\\\\nd\\\\te']
+        facts(VAR_TYPE) == ["0\t-42\t${Long.MIN_VALUE}".toString()]
+        facts(CLASS_TYPE) == ['x\\\\ty']
+    }
+
+    def "Rows are reused and nested rows get their own buffers"() {
+        when:
+        List<Database.Row> rows = []
+        new Database(tmp.path).withCloseable { Database db ->
+            Database.Row outer = db.row(CLASS_TYPE)
+            rows << outer
+            outer.col(nested(db, rows, 'b.B')).end()
+            rows << db.row(CLASS_TYPE)
+            rows[-1].col('c.C').end()
+        }
+
+        then:
+        facts(CLASS_TYPE) == ['b.B', 'a.A', 'c.C']
+        !rows[0].is(rows[1])
+        rows[0].is(rows[2])
+    }
+
+    static String nested(Database db, List<Database.Row> rows, String s) {
+        Database.Row row = db.row(CLASS_TYPE)
+        rows << row
+        row.col(s).end()
+        return 'a.A'
+    }
+
+    def "Rows abandoned by exceptions are released"() {
+        given:
+        Database.Row first = null
+        Database.Row afterNested = null
+        Database.Row afterAdd = null
+        Database.Row afterRelease = null
+
+        when: 'rows are abandoned by exceptions'
+        new Database(tmp.path).withCloseable { Database db ->
+            Database.Row outer = db.row(CLASS_TYPE)
+            try {
+                failingNested(db)
+            } catch (IllegalStateException ignored) { }
+            outer.col('a.A').end()
+            afterNested = db.row(CLASS_TYPE)
+            afterNested.col('b.B').end()
+            // A null column fails, its row is released by add().
+            try {
+                db.add(CLASS_TYPE, null)
+            } catch (NullPointerException ignored) { }
+            afterAdd = db.row(CLASS_TYPE)
+            afterAdd.col('c.C').end()
+            // An abandoned top-level row is released by releaseRows().
+            db.row(CLASS_TYPE).col('d.D')
+            db.releaseRows()
+            afterRelease = db.row(CLASS_TYPE)
+            afterRelease.col('e.E').end()
+            first = outer
+        }
+
+        then:
+        facts(CLASS_TYPE) == ['a.A', 'b.B', 'c.C', 'e.E']
+        afterNested.is(first)
+        afterAdd.is(first)
+        afterRelease.is(first)
+    }
+
+    static String failingNested(Database db) {
+        db.row(CLASS_TYPE).col('x.X').col(fail())
+        return 'unreachable'
+    }
+
+    static String fail() {
+        throw new IllegalStateException('column failed')
+    }
+
+    // Write rows from several threads, so that every thread has its own shards.
+    static void writeConcurrently(Database db, String prefix) {
+        ExecutorService exec = Executors.newFixedThreadPool(4)
+        try {
+            exec.invokeAll((0..<4).collect { int t ->
+                ({
+                    (0..<1000).each { db.row(CLASS_TYPE).col("${prefix}${t}.C${it}".toString()).end() }
+                    return null
+                } as Callable<Void>)
+            }).each { it.get() }
+        } finally {
+            exec.shutdown()
+        }
+    }
+
+    static Set<String> rows(String prefix) {
+        (0..<4).collectMany { int t -> (0..<1000).collect { "${prefix}${t}.C${it}".toString() } } as Set<String>
+    }
+
+    def "Shards of all threads are merged into the facts files"() {
+        given:
+        String longRow = 'x' * 10000
+        int shardFiles = 0
+
+        when:
+        new Database(tmp.path, true, true, compressed).withCloseable { Database db ->
+            writeConcurrently(db, 'a')
+            db.row(VAR_TYPE).col('v').col('t').end()
+            db.row(STRING_RAW).col('s').col(longRow).end()
+            shardFiles = new File(tmp, '.shards').list().length
+        }
+
+        then: 'every thread wrote all its relations to a single shard'
+        shardFiles == 5
+        List<String> classTypes = facts(CLASS_TYPE)
+        classTypes.size() == 4000
+        classTypes as Set == rows('a')
+        facts(VAR_TYPE) == ['v\tt']
+        facts(STRING_RAW) == ['s\t' + longRow]
+        !new File(tmp, '.shards').exists()
+
+        where:
+        compressed << [false, true]
+    }
+
+    def "Later runs append to compressed facts as new gzip members"() {
+        when: 'a plain run is followed by a sharded run'
+        new Database(tmp.path, true, false, true).withCloseable { Database db ->
+            db.row(CLASS_TYPE).col('a.A').end()
+        }
+        new Database(tmp.path, true, true, true).withCloseable { Database db ->
+            writeConcurrently(db, 'b')
+        }
+
+        then:
+        Database.getFactsFile(tmp, CLASS_TYPE.toString()).name == 'ClassType.facts.gz'
+        facts(CLASS_TYPE).size() == 4001
+        facts(CLASS_TYPE) as Set == rows('b') + ['a.A']
+        facts(VAR_TYPE).isEmpty()
+    }
+}
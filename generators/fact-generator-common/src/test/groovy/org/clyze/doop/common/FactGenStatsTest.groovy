@@ -0,0 +1,37 @@
+package org.clyze.doop.common
+
+import spock.lang.Specification
+import spock.lang.TempDir
+
+class FactGenStatsTest extends Specification {
+
+    @TempDir
+    File tmp
+
+    def "Statistics are a header and rows of three columns"() {
+        given:
+        FactGenStats stats = new FactGenStats()
+        Database db = new Database(tmp.path)
+
+        when:
+        stats.recordClass('a.A', 2_000_000)
+        stats.recordMethod('<a.A: void m(int,int)>', 1_000_000)
+        stats.addErrors(1)
+        db.row(PredicateFile.CLASS_TYPE).col('a.A').end()
+        db.close()
+        stats.writeTo(db)
+        List<List<String>> rows = new File(tmp, FactGenStats.STATS_FILE).readLines()*.split('\t', -1)*.toList()
+
+        then:
+        rows[0] == ['statistic', 'element', 'value']
+        rows.every { it.size() == 3 }
+        rows.containsAll([
+            ['count', 'classes', '1'],
+            ['count', 'methods', '1'],
+            ['count', 'errors', '1'],
+            ['rows', 'ClassType', '1'],
+            ['class time (ms)', 'a.A', '2'],
+            ['method time (ms)', '<a.A: void m(int,int)>', '1']
+        ])
+    }
+}
@@ -0,0 +1,89 @@
+package org.clyze.doop.common
+
+import spock.lang.Specification
+import spock.lang.Timeout
+
+class FactWriterPipelineTest extends Specification {
+
+    static Map<PredicateFile, Writer> writers(Writer failing) {
+        Map<PredicateFile, Writer> writers = new EnumMap<>(PredicateFile)
+        PredicateFile.values().each { writers.put(it, new StringWriter()) }
+        writers.put(PredicateFile.ACTIVITY, failing)
+        return writers
+    }
+
+    def "Rows are written by the writer threads"() {
+        given:
+        Map<PredicateFile, Writer> writers = writers(new StringWriter())
+        FactWriterPipeline pipeline = new FactWriterPipeline(writers, 2)
+
+        when:
+        (0..<1000).each {
+            char[] row = "row${it}\n".toCharArray()
+            pipeline.write(PredicateFile.ACTIVITY, row, row.length)
+        }
+        pipeline.close()
+
+        then:
+        writers.get(PredicateFile.ACTIVITY).toString().readLines() == (0..<1000).collect { "row${it}".toString() }
+    }
+
+    @Timeout(60)
+    def "A failing writer does not block workers and its failure is thrown"() {
+        given:
+        Writer failing = new Writer() {
+            @Override
+            void write(char[] cbuf, int off, int len) { throw new IllegalStateException('broken writer') }
+            @Override
+            void flush() { }
+            @Override
+            void close() { }
+        }
+        FactWriterPipeline pipeline = new FactWriterPipeline(writers(failing), 1)
+        char[] row = ('x' * 1000 + '\n').toCharArray()
+
+        when: 'more batches than the queues can hold are written'
+        int written = 0
+        try {
+            for (; written < 10000; written++)
+                pipeline.write(PredicateFile.ACTIVITY, row, row.length)
+        } catch (RuntimeException ex) {
+            assert ex.cause instanceof IllegalStateException
+        }
+        pipeline.flush()
+
+        then:
+        RuntimeException flushEx = thrown()
+        flushEx.cause instanceof IllegalStateException
+
+        when:
+        pipeline.close()
+
+        then:
+        RuntimeException closeEx = thrown()
+        closeEx.cause instanceof IllegalStateException
+    }
+
+    @Timeout(60)
+    def "Writer I/O errors are thrown as I/O errors"() {
+        given:
+        Writer failing = new Writer() {
+            @Override
+            void write(char[] cbuf, int off, int len) { throw new IOException('disk full') }
+            @Override
+            void flush() { }
+            @Override
+            void close() { }
+        }
+        FactWriterPipeline pipeline = new FactWriterPipeline(writers(failing), 1)
+        char[] row = "row\n".toCharArray()
+
+        when:
+        pipeline.write(PredicateFile.ACTIVITY, row, row.length)
+        pipeline.close()
+
+        then:
+        IOException ex = thrown()
+        ex.cause.message == 'disk full'
+    }
+}
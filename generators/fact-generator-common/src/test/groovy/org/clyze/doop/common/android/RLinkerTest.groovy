@@ -0,0 +1,70 @@
+package org.clyze.doop.common.android
+
+import java.lang.reflect.Field
+import java.lang.reflect.Modifier
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+import spock.lang.Specification
+import spock.lang.TempDir
+
+class RLinkerTest extends Specification {
+
+    @TempDir
+    File tmp
+
+    File aar(String rText) {
+        File aar = new File(tmp, 'lib.aar')
+        new ZipOutputStream(new FileOutputStream(aar)).withCloseable { ZipOutputStream zip ->
+            zip.putNextEntry(new ZipEntry('R.txt'))
+            zip.write(rText.getBytes('UTF-8'))
+            zip.closeEntry()
+        }
+        return aar
+    }
+
+    def cleanup() {
+        RLinker.reset()
+    }
+
+    def "Generated R classes load and have the int and int[] fields of R.txt"() {
+        given:
+        File input = aar('int id button 0x7f010000\n' +
+                         'int string app_name 12\n' +
+                         'int[] styleable View { 0x7f020000, 0x7f020001 }\n' +
+                         'int[] styleable Empty { }\n' +
+                         'int styleable View_color 1\n')
+        RLinker.reset()
+        RLinker linker = RLinker.getInstance()
+        URLClassLoader loader = null
+
+        when:
+        linker.readRConstants(input.path, 'a.b')
+        String jar = linker.linkRs(tmp.path, new HashSet<>())
+        loader = new URLClassLoader([new File(jar).toURI().toURL()] as URL[], (ClassLoader) null)
+        Class<?> r = Class.forName('a.b.R', true, loader)
+        Class<?> id = Class.forName('a.b.R$id', true, loader)
+        Class<?> string = Class.forName('a.b.R$string', true, loader)
+        Class<?> styleable = Class.forName('a.b.R$styleable', true, loader)
+
+        then:
+        r.declaredClasses*.name as Set == ['a.b.R$id', 'a.b.R$string', 'a.b.R$styleable'] as Set
+        id.enclosingClass == r
+        field(id, 'button').type.name == 'int'
+        id.getField('button').get(null) == 0x7f010000
+        string.getField('app_name').get(null) == 12
+        field(styleable, 'View').type.name == '[I'
+        styleable.getField('View').get(null) == [0x7f020000, 0x7f020001] as int[]
+        styleable.getField('Empty').get(null) == [] as int[]
+        styleable.getField('View_color').get(null) == 1
+        linker.lookupConst('a.b', 'id', 'button') == 0x7f010000
+
+        cleanup:
+        loader?.close()
+    }
+
+    static Field field(Class<?> c, String name) {
+        Field f = c.getField(name)
+        assert Modifier.isPublic(f.modifiers) && Modifier.isStatic(f.modifiers)
+        return f
+    }
+}
@@ -1,8 +1,10 @@
 package org.clyze.doop.soot;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedList;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Predicate;
 import org.clyze.utils.TypeUtils;
 import soot.ArrayType;
 import soot.BooleanType;
@@ -26,8 +28,27 @@ import soot.jimple.InvokeExpr;
 import soot.jimple.InvokeStmt;
 
 class ClassHeapFinder {
-    private final Collection<String> recordedTypes = new LinkedList<>();
-    private final Collection<String> classHeapTypes = new LinkedList<>();
+    // Thread-safe, since classes may be scanned by fact generation threads.
+    private final Collection<String> recordedTypes = new ConcurrentLinkedQueue<>();
+    private final Collection<String> classHeapTypes = new ConcurrentLinkedQueue<>();
+    // The methods whose bodies are scanned.
+    private final Predicate<SootMethod> hasBody;
+    // If false, methods without an active body are skipped.
+    private final boolean retrieveBodies;
+
+    /**
+     * Create a class heap finder.
+     *
+     * @param hasBody          the methods whose bodies are scanned
+     * @param retrieveBodies   if true, missing bodies are retrieved; if false,
+     *                         methods without an active body are skipped (when
+     *                         classes are scanned right after fact generation,
+     *                         such methods have no body that can be built)
+     */
+    ClassHeapFinder(Predicate<SootMethod> hasBody, boolean retrieveBodies) {
+        this.hasBody = hasBody;
+        this.retrieveBodies = retrieveBodies;
+    }
 
     /**
      * Returns the heap types that appear in class constants.
@@ -35,24 +56,57 @@ class ClassHeapFinder {
      * @return the heap types
      */
     public Collection<String> getUnrecordedTypes(Iterable<SootClass> classes) {
-        scan(classes);
+        for (SootClass c : classes)
+            scan(c);
+        return getUnrecordedTypes();
+    }
+
+    /**
+     * Returns the heap types that appear in class constants of the
+     * classes scanned so far.
+     *
+     * @return the heap types
+     */
+    public Collection<String> getUnrecordedTypes() {
         Collection<String> ret = ConcurrentHashMap.<String>newKeySet();
         ret.addAll(classHeapTypes);
         ret.removeAll(recordedTypes);
         return ret;
     }
 
-    private void scan(Iterable<SootClass> classes) {
-        for (SootClass c : classes) {
-            recordedTypes.add(c.getName());
-            for (SootMethod m : c.getMethods())
-                if (!(m.isPhantom() || m.isAbstract() || m.isNative()))
-                    scan(m);
-        }
+    /**
+     * Scan the method bodies of a class. Used when bodies are released
+     * right after fact generation, so that they are not retrieved
+     * again for this check.
+     *
+     * @param c   the class to scan
+     * @return    the heap types found in the class
+     */
+    public Collection<String> scan(SootClass c) {
+        Collection<String> types = new ArrayList<>();
+        for (SootMethod m : c.getMethods())
+            if (!(m.isPhantom() || m.isAbstract() || m.isNative()) && hasBody.test(m))
+                scan(m, types);
+        record(c.getName(), types);
+        return types;
+    }
+
+    /**
+     * Record the heap types of a class that has been scanned before
+     * (for example, by an earlier run whose facts were reused).
+     *
+     * @param className   the class name
+     * @param types       the heap types of the class
+     */
+    public void record(String className, Collection<String> types) {
+        recordedTypes.add(className);
+        classHeapTypes.addAll(types);
     }
 
-    private void scan(SootMethod m) {
+    private void scan(SootMethod m, Collection<String> types) {
         if (!m.hasActiveBody()) {
+            if (!retrieveBodies)
+                return;
             m.retrieveActiveBody();
             System.err.println("Preprocessing: found method without active body: " + m.getSignature());
         }
@@ -60,22 +114,22 @@ class ClassHeapFinder {
             if (u instanceof AssignStmt) {
                 Value right = ((AssignStmt)u).getRightOp();
                 if (right instanceof ClassConstant)
-                    processClassConstant((ClassConstant)right);
+                    processClassConstant((ClassConstant)right, types);
                 else if (right instanceof InvokeExpr)
-                    processInvokeExpr((InvokeExpr)right);
+                    processInvokeExpr((InvokeExpr)right, types);
             } else if (u instanceof InvokeExpr)
-                processInvokeExpr((InvokeExpr)u);
+                processInvokeExpr((InvokeExpr)u, types);
             else if (u instanceof InvokeStmt)
-                processInvokeExpr(((InvokeStmt)u).getInvokeExpr());
+                processInvokeExpr(((InvokeStmt)u).getInvokeExpr(), types);
     }
 
-    private void processInvokeExpr(InvokeExpr invoke) {
+    private static void processInvokeExpr(InvokeExpr invoke, Collection<String> types) {
         for (Value arg : invoke.getArgs())
             if (arg instanceof ClassConstant)
-                processClassConstant((ClassConstant)arg);
+                processClassConstant((ClassConstant)arg, types);
     }
 
-    private void processClassConstant(ClassConstant constant) {
+    private static void processClassConstant(ClassConstant constant, Collection<String> types) {
         String s = TypeUtils.replaceSlashesWithDots(constant.getValue());
         char first = s.charAt(0);
         if (TypeUtils.isLowLevelType(first, s)) {
@@ -85,11 +139,11 @@ class ClassHeapFinder {
             if (actualType.endsWith("[]")) {
                 String elemType = actualType.substring(0, actualType.length() - 2);
                 if (!TypeUtils.isPrimitiveType(elemType))
-                    classHeapTypes.add(elemType);
+                    types.add(elemType);
             } else
-                classHeapTypes.add(actualType);
+                types.add(actualType);
         } else if (first != '(')   // Ignore method type constants
-            classHeapTypes.add(s);
+            types.add(s);
     }
 
     /**
@@ -195,6 +195,16 @@ public class DoopAddons {
         }
     }
 
+    /**
+     * Drop the references to the Soot singletons of the last run (and
+     * show warnings again), see initReflectiveAccess().
+     */
+    static void reset() {
+        pm = null;
+        wC = null;
+        polymorphicHandling_msg = false;
+    }
+
     private static boolean polymorphicHandling_msg = false;
     @SuppressWarnings("CatchMayIgnoreException")
     public static boolean polymorphicHandling(String declClass, String simpleName) {
@@ -7,7 +7,11 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import org.clyze.doop.common.ClassFactCache;
+import org.clyze.doop.common.FactGenStats;
 import org.clyze.doop.common.InstrInfo;
+import org.clyze.doop.common.MethodArena;
+import org.clyze.doop.common.PhantomClassFacts;
 import org.clyze.doop.common.Phantoms;
 import org.clyze.doop.common.SessionCounter;
 import soot.*;
@@ -26,6 +30,7 @@ import static org.clyze.doop.common.JavaRepresentation.numberedInstructionId;
 class FactGenerator implements Runnable {
 
     public static final AtomicInteger methodsWithoutActiveBodies = new AtomicInteger(0);
+    private static final ThreadLocal<MethodArena<SootSession>> arena = MethodArena.perThread(SootSession::new);
 
     private final FactWriter _writer;
     private final boolean _ssa;
@@ -33,6 +38,11 @@ class FactGenerator implements Runnable {
     private final Phantoms phantoms;
     private final SootParameters sootParameters;
     private final SootDriver _driver;
+    // The cached facts of the class being processed (null if not recorded).
+    private ClassFactCache.Fragment _fragment;
+    // The facts of the class being processed, kept if the class refers
+    // to phantoms (null if not recorded).
+    private PhantomClassFacts.Recording _recording;
 
     FactGenerator(FactWriter writer, Set<SootClass> sootClasses, SootDriver driver, SootParameters sootParameters, Phantoms phantoms)
     {
@@ -46,49 +56,132 @@ class FactGenerator implements Runnable {
 
     @Override
     public void run() {
+        FactGenStats stats = _driver.getStats();
+        ClassFactCache cache = _driver.getClassFactCache();
+        PhantomClassFacts phantomClassFacts = _driver.getPhantomClassFacts();
         for (SootClass _sootClass : _sootClasses) {
-            _writer.writeClassOrInterfaceType(_sootClass);
+            long classStart = System.nanoTime();
+            String cacheKey = cache == null ? null : _driver.classFactKey(_sootClass);
+            if (cacheKey != null) {
+                ClassFactCache.Fragment cached = cache.load(cacheKey);
+                if (cached != null) {
+                    cache.replay(cached, _writer);
+                    _driver.getClassHeapFinder().record(_sootClass.getName(), cached.heapTypes);
+                    stats.recordClass(_sootClass.getName(), System.nanoTime() - classStart);
+                    continue;
+                }
+                _fragment = cache.startRecording(_writer);
+            }
+            ClassFactCache.Fragment fragment = _fragment;
+            PhantomClassFacts.Recording recording = phantomClassFacts == null ? null : phantomClassFacts.startRecording(_writer);
+            _recording = recording;
+            try {
+                generate(_sootClass, stats);
+            } finally {
+                _recording = null;
+                if (recording != null)
+                    phantomClassFacts.stopRecording(_writer, _sootClass.getName(), recording);
+                _fragment = null;
+                if (fragment != null)
+                    cache.stopRecording(_writer);
+            }
+            // Scan the class heaps while the bodies are still loaded.
+            ClassHeapFinder classHeapFinder = _driver.getClassHeapFinder();
+            if (classHeapFinder != null) {
+                Collection<String> heapTypes = classHeapFinder.scan(_sootClass);
+                if (fragment != null) {
+                    fragment.heapTypes.addAll(heapTypes);
+                    cache.store(cacheKey, fragment);
+                }
+            }
+            stats.recordClass(_sootClass.getName(), System.nanoTime() - classStart);
+            if (sootParameters._lowMem)
+                release(_sootClass);
+        }
+    }
 
-            for (String mod : getModifiers(_sootClass.getModifiers(), false))
-                if (!mod.trim().equals(""))
-                    _writer.writeClassModifier(_sootClass, mod);
+    private void generate(SootClass _sootClass, FactGenStats stats) {
+        // Facts of phantom classes depend on the classes that refer to them.
+        if (_sootClass.isPhantom())
+            phantomFound();
+        _writer.writeClassOrInterfaceType(_sootClass);
 
-            // the isInterface condition prevents Object as superclass of interface
-            if (_sootClass.hasSuperclass() && !_sootClass.isInterface()) {
-                _writer.writeDirectSuperclass(_sootClass, _sootClass.getSuperclass());
-            }
+        for (String mod : getModifiers(_sootClass.getModifiers(), false))
+            if (!mod.trim().equals(""))
+                _writer.writeClassModifier(_sootClass, mod);
 
-            for (SootClass i : _sootClass.getInterfaces()) {
-                _writer.writeDirectSuperinterface(_sootClass, i);
-            }
+        // the isInterface condition prevents Object as superclass of interface
+        if (_sootClass.hasSuperclass() && !_sootClass.isInterface()) {
+            _writer.writeDirectSuperclass(_sootClass, _sootClass.getSuperclass());
+        }
 
-            _sootClass.getFields().forEach(this::generate);
-
-            for (SootMethod m : new ArrayList<>(_sootClass.getMethods())) {
-                SessionCounter session = new SessionCounter();
-                try {
-                    generate(m, session);
-                } catch (Throwable t) {
-                    // Map<Thread,StackTraceElement[]> liveThreads = Thread.getAllStackTraces();
-                    // for (Iterator<Thread> i = liveThreads.keySet().iterator(); i.hasNext(); ) {
-                    //     Thread key = i.next();
-                    //     System.err.println("Thread " + key.getName());
-                    //     StackTraceElement[] trace = liveThreads.getLibrary(key);
-                    //     for (int j = 0; j < trace.length; j++) {
-                    //         System.err.println("\tat " + trace[j]);
-                    //     }
-                    // }
-                    // Fact-gen errors are always tolerated: report the
-                    // un-buildable method, count it (for the end-of-run summary
-                    // warning), and continue with the next one.
-                    String msg = "Error while processing method: " + m + ": " + t.getMessage();
-                    System.err.println(msg);
-                    _driver.markError();
-                }
+        for (SootClass i : _sootClass.getInterfaces()) {
+            _writer.writeDirectSuperinterface(_sootClass, i);
+        }
+
+        _sootClass.getFields().forEach(this::generate);
+
+        for (SootMethod m : new ArrayList<>(_sootClass.getMethods())) {
+            SootSession session = arena.get().reset().session();
+            long methodStart = System.nanoTime();
+            try {
+                generate(m, session);
+                stats.recordMethod(m.getSignature(), System.nanoTime() - methodStart);
+            } catch (Throwable t) {
+                // Map<Thread,StackTraceElement[]> liveThreads = Thread.getAllStackTraces();
+                // for (Iterator<Thread> i = liveThreads.keySet().iterator(); i.hasNext(); ) {
+                //     Thread key = i.next();
+                //     System.err.println("Thread " + key.getName());
+                //     StackTraceElement[] trace = liveThreads.getLibrary(key);
+                //     for (int j = 0; j < trace.length; j++) {
+                //         System.err.println("\tat " + trace[j]);
+                //     }
+                // }
+                // Fact-gen errors are always tolerated: report the
+                // un-buildable method, count it (for the end-of-run summary
+                // warning), and continue with the next one.
+                String msg = "Error while processing method: " + m + ": " + t.getMessage();
+                System.err.println(msg);
+                _driver.markError();
+                _writer.releaseRows();
+                // Do not cache the partial facts of the class.
+                if (_fragment != null)
+                    _fragment.markUncacheable();
             }
         }
     }
 
+    /**
+     * Do not cache the facts of the current class, since they involve
+     * phantoms: phantom facts are only written by the first class that
+     * refers to a phantom, so they depend on other classes. For the
+     * same reason, a restart processes the class again.
+     */
+    private void phantomFound() {
+        if (_fragment != null)
+            _fragment.markUncacheable();
+        if (_recording != null)
+            _recording.markPhantom();
+    }
+
+    /**
+     * Release the memory held for a class whose facts have been
+     * written: cached representations and (if no IR is generated
+     * later) method bodies. The class heaps of the class must have
+     * been scanned before, since that needs the bodies.
+     *
+     * @param c   the class
+     */
+    private void release(SootClass c) {
+        _writer._rep.forget(c);
+        // The session of the last method refers to units of its body.
+        arena.get().reset();
+        if (!sootParameters._generateJimple)
+            for (SootMethod m : c.getMethods())
+                if (m.hasActiveBody())
+                    m.setActiveBody(null);
+    }
+
     private void generate(SootField f)
     {
         _writer.writeField(f);
@@ -136,8 +229,10 @@ class FactGenerator implements Runnable {
             else if (t instanceof ArrayType)
                 isPhantom = isPhantom(((ArrayType) t).getElementType());
         }
-        if (isPhantom)
+        if (isPhantom) {
+            phantomFound();
             _writer.writePhantomType(t);
+        }
         return isPhantom;
     }
 
@@ -163,10 +258,11 @@ class FactGenerator implements Runnable {
         return false;
     }
 
-    void generate(SootMethod m, SessionCounter session) {
+    void generate(SootMethod m, SootSession session) {
         String methodId = _writer.writeMethod(m);
 
         if (m.isPhantom()) {
+            phantomFound();
             _writer.writePhantomMethod(methodId);
             return;
         }
@@ -191,7 +287,8 @@ class FactGenerator implements Runnable {
         for(SootClass clazz: m.getExceptions())
             _writer.writeMethodDeclaresException(m, clazz);
 
-        if(!(m.isAbstract() || m.isNative())) {
+        // Unreachable library methods keep their signature facts only.
+        if(!(m.isAbstract() || m.isNative()) && _driver.needsBody(m)) {
             if(!m.hasActiveBody()) {
                 // This instruction is the bottleneck of
                 // soot-fact-generation.
@@ -238,7 +335,7 @@ class FactGenerator implements Runnable {
         return (u instanceof AssignStmt && ((AssignStmt)u).getRightOp() instanceof PhiExpr);
     }
 
-    private void generate(SootMethod m, Body b, SessionCounter session) {
+    private void generate(SootMethod m, Body b, SootSession session) {
         String methodId = _writer._rep.signature(m);
         for(Local l : b.getLocals())
             _writer.writeLocal(methodId, l);
@@ -329,6 +426,7 @@ class FactGenerator implements Runnable {
     }
 
     private void generatePhantom(Object cause) {
+        phantomFound();
         if (_writer.checkAndRegisterPhantom(cause))
             return;
 
@@ -343,14 +441,14 @@ class FactGenerator implements Runnable {
     /**
      * Assignment statement
      */
-    private void generate(SootMethod inMethod, AssignStmt stmt, InstrInfo ii, SessionCounter session) {
+    private void generate(SootMethod inMethod, AssignStmt stmt, InstrInfo ii, SootSession session) {
         if (stmt.getLeftOp() instanceof Local)
             generateAssignToLocal(inMethod, stmt, ii, session);
         else
             generateAssignToNonLocal(stmt, ii, session);
     }
 
-    private void generateAssignToLocal(SootMethod inMethod, AssignStmt stmt, InstrInfo ii, SessionCounter session) {
+    private void generateAssignToLocal(SootMethod inMethod, AssignStmt stmt, InstrInfo ii, SootSession session) {
         Local left = (Local) stmt.getLeftOp();
         Value right = stmt.getRightOp();
 
@@ -8,7 +8,6 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.StringJoiner;
-import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
@@ -17,6 +16,7 @@ import org.clyze.doop.common.BasicJavaSupport;
 import org.clyze.doop.common.Database;
 import org.clyze.doop.common.InstrInfo;
 import org.clyze.doop.common.JavaFactWriter;
+import org.clyze.doop.common.MethodArena;
 import org.clyze.doop.common.Phantoms;
 import org.clyze.doop.common.PredicateFile;
 import org.clyze.doop.common.SessionCounter;
@@ -188,7 +188,6 @@ class FactWriter extends JavaFactWriter {
     private final Map<String, Type> _varTypeMap = new ConcurrentHashMap<>();
     private final Phantoms phantoms;
     private final Collection<Object> seenPhantoms = ConcurrentHashMap.newKeySet();
-    private final Map<Unit, Collection<InstrInfo>> expandedPhiNodes = new ConcurrentHashMap<>();
 
     FactWriter(Database db, SootParameters params, Representation rep, Phantoms phantoms) {
         super(db, params);
@@ -211,7 +210,7 @@ class FactWriter extends JavaFactWriter {
         String methodId = methodSig(m, methodRaw);
         String arity = Integer.toString(m.getParameterCount());
 
-        _db.add(STRING_RAW, methodId, methodRaw);
+        _db.row(STRING_RAW).col(methodId).col(methodRaw).end();
         writeMethod(methodId, _rep.simpleName(m), Representation.params(m), writeType(m.getDeclaringClass()), writeType(m.getReturnType()), ASMBackendUtils.toTypeDesc(m.makeRef()), arity);
         if (m.getTag("VisibilityAnnotationTag") != null) {
             VisibilityAnnotationTag vTag = (VisibilityAnnotationTag) m.getTag("VisibilityAnnotationTag");
@@ -228,7 +227,7 @@ class FactWriter extends JavaFactWriter {
                 if (annList.get(i) != null)
                     for (AnnotationTag aTag : annList.get(i).getAnnotations()) {
                         String paramIdx = str(i);
-                        _db.add(PARAM_ANNOTATION, methodId, paramIdx, getAnnotationType(aTag));
+                        _db.row(PARAM_ANNOTATION).col(methodId).col(paramIdx).col(getAnnotationType(aTag)).end();
                         String paramId = methodId + "::parameter#" + paramIdx;
                         writeAnnotationElements("param", paramId, null, aTag.getElems());
                     }
@@ -238,7 +237,7 @@ class FactWriter extends JavaFactWriter {
     }
 
     void writeAndroidEntryPoint(SootMethod m) {
-        _db.add(ANDROID_ENTRY_POINT, _rep.signature(m));
+        _db.row(ANDROID_ENTRY_POINT).col(_rep.signature(m)).end();
     }
 
     void writeClassOrInterfaceType(SootClass c) {
@@ -247,16 +246,16 @@ class FactWriter extends JavaFactWriter {
             phantoms.reportPhantom("Interface", classStr);
             writePhantomType(c);
         }
-        _db.add(c.isInterface() ? INTERFACE_TYPE : CLASS_TYPE, classStr);
+        _db.row(c.isInterface() ? INTERFACE_TYPE : CLASS_TYPE).col(classStr).end();
         writeClassHeap(Representation.classConstant(c), classStr);
         if (c.getTag("VisibilityAnnotationTag") != null) {
             VisibilityAnnotationTag vTag = (VisibilityAnnotationTag) c.getTag("VisibilityAnnotationTag");
             for (AnnotationTag aTag : vTag.getAnnotations()) {
-                _db.add(TYPE_ANNOTATION, classStr, getAnnotationType(aTag));
+                _db.row(TYPE_ANNOTATION).col(classStr).col(getAnnotationType(aTag)).end();
                 writeAnnotationElements("type", classStr, null, aTag.getElems());
             }
         }
-        _db.add(TYPE_SIMPLENAME, classStr, c.getShortName());
+        _db.row(TYPE_SIMPLENAME).col(classStr).col(c.getShortName()).end();
     }
 
     /**
@@ -316,11 +315,11 @@ class FactWriter extends JavaFactWriter {
     }
 
     void writeDirectSuperclass(SootClass sub, SootClass sup) {
-        _db.add(DIRECT_SUPER_CLASS, writeType(sub), writeType(sup));
+        _db.row(DIRECT_SUPER_CLASS).col(writeType(sub)).col(writeType(sup)).end();
     }
 
     void writeDirectSuperinterface(SootClass clazz, SootClass iface) {
-        _db.add(DIRECT_SUPER_IFACE, writeType(clazz), writeType(iface));
+        _db.row(DIRECT_SUPER_IFACE).col(writeType(clazz)).col(writeType(iface)).end();
     }
 
     private String writeType(SootClass c) {
@@ -363,17 +362,17 @@ class FactWriter extends JavaFactWriter {
 
     void writePhantomBasedMethod(String sig) {
         phantoms.reportPhantomSignature(sig);
-        _db.add(PHANTOM_BASED_METHOD, sig);
+        _db.row(PHANTOM_BASED_METHOD).col(sig).end();
     }
 
     void writeEnterMonitor(InstrInfo ii, Local var) {
         String methodId = ii.methodId;
-        _db.add(ENTER_MONITOR, ii.insn, str(ii.index), _rep.local(methodId, var), methodId);
+        _db.row(ENTER_MONITOR).col(ii.insn).col(ii.index).col(_rep.local(methodId, var)).col(methodId).end();
     }
 
     void writeExitMonitor(InstrInfo ii, Local var) {
         String methodId = ii.methodId;
-        _db.add(EXIT_MONITOR, ii.insn, str(ii.index), _rep.local(methodId, var), methodId);
+        _db.row(EXIT_MONITOR).col(ii.insn).col(ii.index).col(_rep.local(methodId, var)).col(methodId).end();
     }
 
     void writeAssignLocal(InstrInfo ii, Local to, Local from) {
@@ -391,19 +390,19 @@ class FactWriter extends JavaFactWriter {
         writeAssignLocal(ii.insn, ii.index, _rep.param(methodId, ref.getIndex()), _rep.local(methodId, to), methodId);
     }
 
-    void writePhiAssign(String methodId, AssignStmt stmt, Local left, PhiExpr phiExpr, SessionCounter session) {
+    void writePhiAssign(String methodId, AssignStmt stmt, Local left, PhiExpr phiExpr, SootSession session) {
         Collection<InstrInfo> newAssignments = new ArrayList<>();
         for (Value alternative : (phiExpr).getValues()) {
             InstrInfo altInstrInfo = new InstrInfo(methodId, "phi-assign", session);
             writeAssignLocal(altInstrInfo, left, (Local) alternative);
             newAssignments.add(altInstrInfo);
         }
-        expandedPhiNodes.put(stmt, newAssignments);
+        session.putExpandedPhiNode(stmt, newAssignments);
     }
 
-    void writeWithPossiblePhiTarget(Unit target, SessionCounter session,
+    void writeWithPossiblePhiTarget(Unit target, SootSession session,
                                             Consumer<Integer> writerLambda) {
-        Collection<InstrInfo> phiNodes = expandedPhiNodes.get(target);
+        Collection<InstrInfo> phiNodes = session.getExpandedPhiNode(target);
         if (phiNodes == null) {
             session.calcInstructionIndex(target);
             int indexTo = session.getInstructionIndex(target);
@@ -417,25 +416,26 @@ class FactWriter extends JavaFactWriter {
 
     void writeAssignInvoke(SootMethod inMethod, Stmt stmt, InstrInfo ii, Local to, SessionCounter session) {
         String invokeInstructionId = writeInvoke(inMethod, stmt, ii, session);
-        _db.add(ASSIGN_RETURN_VALUE, invokeInstructionId, _rep.local(ii.methodId, to));
+        _db.row(ASSIGN_RETURN_VALUE).col(invokeInstructionId).col(_rep.local(ii.methodId, to)).end();
     }
 
     private void writeArraySize(InstrInfo ii, Value sizeVal, int pos, String heap) {
         if (sizeVal instanceof IntConstant) {
             IntConstant size = (IntConstant) sizeVal;
-            _db.add(ARRAY_ALLOC_CONST_SIZE, ii.insn, str(pos), str(size.value));
-            if(size.value == 0) _db.add(EMPTY_ARRAY, heap);
+            _db.row(ARRAY_ALLOC_CONST_SIZE).col(ii.insn).col(pos).col(size.value).end();
+            if(size.value == 0) _db.row(EMPTY_ARRAY).col(heap).end();
         }
         else if (sizeVal instanceof Local)
-            _db.add(ARRAY_ALLOC, ii.insn, str(pos), _rep.local(ii.methodId, (Local)sizeVal));
+            _db.row(ARRAY_ALLOC).col(ii.insn).col(pos).col(_rep.local(ii.methodId, (Local)sizeVal)).end();
     }
 
     void writeAssignHeapAllocation(Stmt stmt, InstrInfo ii, Local l, Value expr, SessionCounter session) {
         String methodId = ii.methodId;
         String heap = _rep.heapAlloc(methodId, expr, session);
 
-        _db.add(NORMAL_HEAP, heap, writeType(expr.getType()));
-        _db.add(ASSIGN_HEAP_ALLOC, ii.insn, str(ii.index), heap, _rep.local(methodId, l), methodId, ""+getLineNumberFromStmt(stmt));
+        _db.row(NORMAL_HEAP).col(heap).col(writeType(expr.getType())).end();
+        _db.row(ASSIGN_HEAP_ALLOC).col(ii.insn).col(ii.index).col(heap).col(_rep.local(methodId, l))
+            .col(methodId).col(getLineNumberFromStmt(stmt)).end();
 
         if (expr instanceof NewArrayExpr) {
             NewArrayExpr newArray = (NewArrayExpr) expr;
@@ -468,8 +468,8 @@ class FactWriter extends JavaFactWriter {
         String methodId = ii.methodId;
         String heap = _rep.heapMultiArrayAlloc(methodId, /* expr, */ arrayType, session);
 
-        _db.add(NORMAL_HEAP, heap, writeType(arrayType));
-        _db.add(ASSIGN_HEAP_ALLOC, ii.insn, str(ii.index), heap, assignTo, methodId, ""+getLineNumberFromStmt(stmt));
+        _db.row(NORMAL_HEAP).col(heap).col(writeType(arrayType)).end();
+        _db.row(ASSIGN_HEAP_ALLOC).col(ii.insn).col(ii.index).col(heap).col(assignTo).col(methodId).col(getLineNumberFromStmt(stmt)).end();
         if (pos < expr.getSizeCount())
             writeArraySize(ii, expr.getSize(pos), pos, heap);
 
@@ -479,9 +479,9 @@ class FactWriter extends JavaFactWriter {
             writeAssignNewMultiArrayExprHelper(stmt, new InstrInfo(ii.methodId, "assign-new-multi-array", session), l, childAssignTo, expr, (ArrayType) componentType, session, pos+1);
 
             String storeInsn = ii.insn;
-            _db.add(STORE_ARRAY_INDEX, storeInsn, str(ii.index), childAssignTo, assignTo, methodId);
+            _db.row(STORE_ARRAY_INDEX).col(storeInsn).col(ii.index).col(childAssignTo).col(assignTo).col(methodId).end();
             writeLocal(childAssignTo, writeType(componentType), methodId);
-            _db.add(ARRAY_INSN_INDEX, storeInsn, childAssignTo);
+            _db.row(ARRAY_INSN_INDEX).col(storeInsn).col(childAssignTo).end();
         }
     }
 
@@ -536,17 +536,18 @@ class FactWriter extends JavaFactWriter {
         String content = constant.substring(1, constant.length() - 1);
         String heapId = writeStringConstant(content);
         String methodId = ii.methodId;
-        _db.add(ASSIGN_HEAP_ALLOC, ii.insn, str(ii.index), heapId, _rep.local(methodId, l), methodId, ""+getLineNumberFromStmt(stmt));
+        _db.row(ASSIGN_HEAP_ALLOC).col(ii.insn).col(ii.index).col(heapId).col(_rep.local(methodId, l))
+            .col(methodId).col(getLineNumberFromStmt(stmt)).end();
     }
 
     void writeAssignNull(InstrInfo ii, Local l) {
         String methodId = ii.methodId;
-        _db.add(ASSIGN_NULL, ii.insn, str(ii.index), _rep.local(methodId, l), methodId);
+        _db.row(ASSIGN_NULL).col(ii.insn).col(ii.index).col(_rep.local(methodId, l)).col(methodId).end();
     }
 
     void writeAssignNumConstant(InstrInfo ii, Local l, NumericConstant constant) {
         String methodId = ii.methodId;
-        _db.add(ASSIGN_NUM_CONST, ii.insn, str(ii.index), constant.toString(), _rep.local(methodId, l), methodId);
+        _db.row(ASSIGN_NUM_CONST).col(ii.insn).col(ii.index).col(constant.toString()).col(_rep.local(methodId, l)).col(methodId).end();
     }
 
     private void writeAssignMethodHandleConstant(InstrInfo ii, Local l, MethodHandle constant) {
@@ -558,7 +559,7 @@ class FactWriter extends JavaFactWriter {
 
             writeMethodHandleConstant(heap, handleMethod, si.retType, si.paramTypes, si.arity);
             String methodId = ii.methodId;
-            _db.add(ASSIGN_HEAP_ALLOC, ii.insn, str(ii.index), heap, _rep.local(methodId, l), methodId, "0");
+            _db.row(ASSIGN_HEAP_ALLOC).col(ii.insn).col(ii.index).col(heap).col(_rep.local(methodId, l)).col(methodId).col("0").end();
         }
     }
 
@@ -572,7 +573,7 @@ class FactWriter extends JavaFactWriter {
         String params = concatenate(paramTypes);
         String mt = "<method type (" + params + ")" + retType + ">";
         String methodId = ii.methodId;
-        _db.add(ASSIGN_HEAP_ALLOC, ii.insn, str(ii.index), mt, _rep.local(methodId, l), methodId, "0");
+        _db.row(ASSIGN_HEAP_ALLOC).col(ii.insn).col(ii.index).col(mt).col(_rep.local(methodId, l)).col(methodId).col("0").end();
     }
 
     void writeAssignClassConstant(InstrInfo ii, Local l, ClassConstant constant) {
@@ -587,12 +588,13 @@ class FactWriter extends JavaFactWriter {
 
         // REVIEW: the class object is not explicitly written. Is this always ok?
         String methodId = ii.methodId;
-        _db.add(ASSIGN_HEAP_ALLOC, ii.insn, str(ii.index), info.heap, _rep.local(methodId, l), methodId, "0");
+        _db.row(ASSIGN_HEAP_ALLOC).col(ii.insn).col(ii.index).col(info.heap).col(_rep.local(methodId, l)).col(methodId).col("0").end();
     }
 
     void writeAssignCast(InstrInfo ii, Local to, Local from, Type t) {
         String methodId = ii.methodId;
-        _db.add(ASSIGN_CAST, ii.insn, str(ii.index), _rep.local(methodId, from), _rep.local(methodId, to), writeType(t), methodId);
+        _db.row(ASSIGN_CAST).col(ii.insn).col(ii.index).col(_rep.local(methodId, from))
+            .col(_rep.local(methodId, to)).col(writeType(t)).col(methodId).end();
     }
 
     void writeAssignCastNumericConstant(InstrInfo ii, Local to, NumericConstant constant, Type t) {
@@ -606,12 +608,12 @@ class FactWriter extends JavaFactWriter {
             else
                 System.err.println("WARNING: arithmetic constant is not long/int: " + constant);
         }
-        _db.add(ASSIGN_CAST_NUM_CONST, ii.insn, str(ii.index), val, _rep.local(methodId, to), writeType(t), methodId);
+        _db.row(ASSIGN_CAST_NUM_CONST).col(ii.insn).col(ii.index).col(val).col(_rep.local(methodId, to)).col(writeType(t)).col(methodId).end();
     }
 
     void writeAssignCastNull(InstrInfo ii, Local to, Type t) {
         String methodId = ii.methodId;
-        _db.add(ASSIGN_CAST_NULL, ii.insn, str(ii.index), _rep.local(methodId, to), writeType(t), methodId);
+        _db.row(ASSIGN_CAST_NULL).col(ii.insn).col(ii.index).col(_rep.local(methodId, to)).col(writeType(t)).col(methodId).end();
     }
 
     void writeStoreInstanceField(InstrInfo ii, SootField f, Local base, Local from) {
@@ -626,7 +628,8 @@ class FactWriter extends JavaFactWriter {
         String methodId = ii.methodId;
         String fieldId = writeField(f);
         if (fieldId != null)
-            _db.add(storeOrLoadInstField, ii.insn, str(ii.index), _rep.local(methodId, var), _rep.local(methodId, base), fieldId, methodId);
+            _db.row(storeOrLoadInstField).col(ii.insn).col(ii.index).col(_rep.local(methodId, var))
+                .col(_rep.local(methodId, base)).col(fieldId).col(methodId).end();
     }
 
     void writeStoreStaticField(InstrInfo ii, SootField f, Local from) {
@@ -641,7 +644,7 @@ class FactWriter extends JavaFactWriter {
         String methodId = ii.methodId;
         String fieldId = writeField(f);
         if (fieldId != null)
-            _db.add(staticFieldFacts, ii.insn, str(ii.index), _rep.local(methodId, var), fieldId, methodId);
+            _db.row(staticFieldFacts).col(ii.insn).col(ii.index).col(_rep.local(methodId, var)).col(fieldId).col(methodId).end();
     }
 
     void writeLoadArrayIndex(Stmt stmt, InstrInfo ii, Local base, Local to, Value arrIndex) {
@@ -655,18 +658,18 @@ class FactWriter extends JavaFactWriter {
     private void writeLoadOrStoreArrayIndex(Stmt stmt, InstrInfo ii, Local base, Local var, Value arrIndex, PredicateFile predicateFile) {
         String methodId = ii.methodId;
         String insn = ii.insn;
-        _db.add(predicateFile, insn, str(ii.index), _rep.local(methodId, var), _rep.local(methodId, base), methodId);
+        _db.row(predicateFile).col(insn).col(ii.index).col(_rep.local(methodId, var)).col(_rep.local(methodId, base)).col(methodId).end();
 
         if (arrIndex instanceof Local)
-            _db.add(ARRAY_INSN_INDEX, insn, _rep.local(methodId, (Local) arrIndex));
+            _db.row(ARRAY_INSN_INDEX).col(insn).col(_rep.local(methodId, (Local) arrIndex)).end();
         else if (arrIndex instanceof IntConstant)
-            _db.add(ARRAY_NUM_INDEX, insn, str(((IntConstant) arrIndex).value));
+            _db.row(ARRAY_NUM_INDEX).col(insn).col(((IntConstant) arrIndex).value).end();
         else
             throw new RuntimeException("Cannot handle assignment: " + stmt + " (index: " + arrIndex.getClass() + ")");
     }
 
     private void writeApplicationClass(SootClass application) {
-        _db.add(APP_CLASS, writeType(application));
+        _db.row(APP_CLASS).col(writeType(application)).end();
     }
 
     String writeField(SootField f) {
@@ -675,11 +678,12 @@ class FactWriter extends JavaFactWriter {
             return null;
         }
         String fieldId = _rep.signature(f);
-        _db.add(FIELD_SIGNATURE, fieldId, writeType(f.getDeclaringClass()), Representation.simpleName(f), writeType(f.getType()));
+        _db.row(FIELD_SIGNATURE).col(fieldId).col(writeType(f.getDeclaringClass()))
+            .col(Representation.simpleName(f)).col(writeType(f.getType())).end();
         if (f.getTag("VisibilityAnnotationTag") != null) {
             VisibilityAnnotationTag vTag = (VisibilityAnnotationTag) f.getTag("VisibilityAnnotationTag");
             for (AnnotationTag aTag : vTag.getAnnotations()) {
-                _db.add(FIELD_ANNOTATION, fieldId, getAnnotationType(aTag));
+                _db.row(FIELD_ANNOTATION).col(fieldId).col(getAnnotationType(aTag)).end();
                 writeAnnotationElements("field", fieldId, null, aTag.getElems());
             }
         }
@@ -688,7 +692,7 @@ class FactWriter extends JavaFactWriter {
 
     void writeFieldModifier(SootField f, String modifier) {
         String fieldId = _rep.signature(f);
-        _db.add(FIELD_MODIFIER, modifier, fieldId);
+        _db.row(FIELD_MODIFIER).col(modifier).col(fieldId).end();
     }
 
     void writeClassModifier(SootClass c, String modifier) {
@@ -696,16 +700,16 @@ class FactWriter extends JavaFactWriter {
     }
 
     void writeMethodModifier(String methodId, String modifier) {
-        _db.add(METHOD_MODIFIER, modifier, methodId);
+        _db.row(METHOD_MODIFIER).col(modifier).col(methodId).end();
     }
 
     void writeReturn(InstrInfo ii, Local l) {
         String methodId = ii.methodId;
-        _db.add(RETURN, ii.insn, str(ii.index), _rep.local(methodId, l), methodId);
+        _db.row(RETURN).col(ii.insn).col(ii.index).col(_rep.local(methodId, l)).col(methodId).end();
     }
 
     void writeReturnVoid(InstrInfo ii) {
-        _db.add(RETURN_VOID, ii.insn, str(ii.index), ii.methodId);
+        _db.row(RETURN_VOID).col(ii.insn).col(ii.index).col(ii.methodId).end();
     }
 
     // The return var of native methods is exceptional, in that it does not
@@ -713,14 +717,14 @@ class FactWriter extends JavaFactWriter {
     void writeNativeReturnVar(String methodId, Type returnType) {
         if (!(returnType instanceof VoidType)) {
             String var = _rep.nativeReturnVar(methodId);
-            _db.add(NATIVE_RETURN_VAR, var, methodId);
+            _db.row(NATIVE_RETURN_VAR).col(var).col(methodId).end();
             writeLocal(var, writeType(returnType), methodId);
         }
     }
 
-    void writeGoto(GotoStmt stmt, InstrInfo ii, SessionCounter session) {
+    void writeGoto(GotoStmt stmt, InstrInfo ii, SootSession session) {
         session.calcInstructionIndex(stmt);
-        writeWithPossiblePhiTarget(stmt.getTarget(), session, (indexTo -> _db.add(GOTO, ii.insn, str(ii.index), str(indexTo), ii.methodId)));
+        writeWithPossiblePhiTarget(stmt.getTarget(), session, (indexTo -> _db.row(GOTO).col(ii.insn).col(ii.index).col(indexTo).col(ii.methodId).end()));
     }
 
     /**
@@ -772,7 +776,7 @@ class FactWriter extends JavaFactWriter {
         }
     }
 
-    void writeTableSwitch(TableSwitchStmt stmt, InstrInfo ii, SessionCounter session) {
+    void writeTableSwitch(TableSwitchStmt stmt, InstrInfo ii, SootSession session) {
         String methodId = ii.methodId;
         Value v = writeImmediate(stmt, methodId, stmt.getKey(), null, session);
         if(!(v instanceof Local))
@@ -780,23 +784,23 @@ class FactWriter extends JavaFactWriter {
 
         Local l = (Local) v;
         String insn = ii.insn;
-        _db.add(TABLE_SWITCH, insn, str(ii.index), _rep.local(methodId, l), methodId);
+        _db.row(TABLE_SWITCH).col(insn).col(ii.index).col(_rep.local(methodId, l)).col(methodId).end();
 
         writeTableSwitchTarget(stmt, session, insn);
 
         session.calcInstructionIndex(stmt.getDefaultTarget());
         int defaultIndex = session.getInstructionIndex(stmt.getDefaultTarget());
-        _db.add(TABLE_SWITCH_DEFAULT, insn, str(defaultIndex));
+        _db.row(TABLE_SWITCH_DEFAULT).col(insn).col(defaultIndex).end();
     }
 
-    private void writeTableSwitchTarget(TableSwitchStmt stmt, SessionCounter session, String insn) {
+    private void writeTableSwitchTarget(TableSwitchStmt stmt, SootSession session, String insn) {
         for (int tgIndex = stmt.getLowIndex(), i = 0; tgIndex <= stmt.getHighIndex(); tgIndex++, i++) {
             String tgIndexStr = str(tgIndex);
-            writeWithPossiblePhiTarget(stmt.getTarget(i), session, (indexTo -> _db.add(TABLE_SWITCH_TARGET, insn, tgIndexStr, str(indexTo))));
+            writeWithPossiblePhiTarget(stmt.getTarget(i), session, (indexTo -> _db.row(TABLE_SWITCH_TARGET).col(insn).col(tgIndexStr).col(indexTo).end()));
         }
     }
 
-    void writeLookupSwitch(LookupSwitchStmt stmt, InstrInfo ii, SessionCounter session) {
+    void writeLookupSwitch(LookupSwitchStmt stmt, InstrInfo ii, SootSession session) {
         String methodId = ii.methodId;
         int stmtIndex = session.getInstructionIndex(stmt);
 
@@ -808,26 +812,26 @@ class FactWriter extends JavaFactWriter {
         Local l = (Local) v;
         String insn = ii.insn;
 
-        _db.add(LOOKUP_SWITCH, insn, str(stmtIndex), _rep.local(methodId, l), methodId);
+        _db.row(LOOKUP_SWITCH).col(insn).col(stmtIndex).col(_rep.local(methodId, l)).col(methodId).end();
 
         writeLookupSwitchTarget(stmt, session, insn);
 
         session.calcInstructionIndex(stmt.getDefaultTarget());
         int defaultIndex = session.getInstructionIndex(stmt.getDefaultTarget());
 
-        _db.add(LOOKUP_SWITCH_DEFAULT, insn, str(defaultIndex));
+        _db.row(LOOKUP_SWITCH_DEFAULT).col(insn).col(defaultIndex).end();
     }
 
-    private void writeLookupSwitchTarget(LookupSwitchStmt stmt, SessionCounter session, String insn) {
+    private void writeLookupSwitchTarget(LookupSwitchStmt stmt, SootSession session, String insn) {
         for (int i = 0, end = stmt.getTargetCount(); i < end; i++) {
             int tgIndex = stmt.getLookupValue(i);
-            writeWithPossiblePhiTarget(stmt.getTarget(i), session, (indexTo -> _db.add(LOOKUP_SWITCH_TARGET, insn, str(tgIndex), str(indexTo))));
+            writeWithPossiblePhiTarget(stmt.getTarget(i), session, (indexTo -> _db.row(LOOKUP_SWITCH_TARGET).col(insn).col(tgIndex).col(indexTo).end()));
         }
     }
 
     void writeUnsupported(Unit unit, InstrInfo ii, SessionCounter session) {
         int index = session.calcInstructionIndex(unit);
-        _db.add(UNSUPPORTED_INSTRUCTION, ii.insn, str(index), ii.methodId);
+        _db.row(UNSUPPORTED_INSTRUCTION).col(ii.insn).col(index).col(ii.methodId).end();
     }
 
     /**
@@ -836,21 +840,21 @@ class FactWriter extends JavaFactWriter {
     void writeThrow(String methodId, Unit unit, Local l, SessionCounter session) {
         int index = session.calcInstructionIndex(unit);
         String insn = _rep.throwLocal(methodId, l, session);
-        _db.add(THROW, insn, str(index), _rep.local(methodId, l), methodId);
+        _db.row(THROW).col(insn).col(index).col(_rep.local(methodId, l)).col(methodId).end();
     }
 
     /**
      * Throw null
      */
     void writeThrowNull(InstrInfo ii) {
-        _db.add(THROW_NULL, ii.insn, str(ii.index), ii.methodId);
+        _db.row(THROW_NULL).col(ii.insn).col(ii.index).col(ii.methodId).end();
     }
 
-    void writeExceptionHandlerPrevious(String methodId, Trap current, Trap previous, SessionCounter counter) {
+    void writeExceptionHandlerPrevious(String methodId, Trap current, Trap previous, SootSession counter) {
         writeExceptionHandlerPrevious(_rep.handler(methodId, current, counter), _rep.handler(methodId, previous, counter));
     }
 
-    void writeExceptionHandler(String methodId, Trap handler, SessionCounter session) {
+    void writeExceptionHandler(String methodId, Trap handler, SootSession session) {
         SootClass exc = handler.getException();
 
         Local caught;
@@ -905,7 +909,7 @@ class FactWriter extends JavaFactWriter {
         }
 
         writeLocal(local, writeType(type), methodId);
-        _db.add(VAR_SIMPLENAME, local, l.getName());
+        _db.row(VAR_SIMPLENAME).col(local).col(l.getName()).end();
     }
 
     private Local freshLocal(String inMethod, String basename, Type type, SessionCounter session) {
@@ -1034,7 +1038,7 @@ class FactWriter extends JavaFactWriter {
                     Value vConst = writeActualParam(stmt, ii, expr, session, v, j);
                     if (vConst instanceof Local) {
                         Local l = (Local) vConst;
-                        _db.add(BOOTSTRAP_PARAMETER, str(j), invokeExprRepr, _rep.local(methodId, l));
+                        _db.row(BOOTSTRAP_PARAMETER).col(j).col(invokeExprRepr).col(_rep.local(methodId, l)).end();
                     } else
                         throw new RuntimeException("Unknown actual parameter: " + v + " of type " + v.getClass().getName());
                 } else
@@ -1059,7 +1063,7 @@ class FactWriter extends JavaFactWriter {
 
         LineNumberTag tag = (LineNumberTag) stmt.getTag("LineNumberTag");
         if (tag != null)
-            _db.add(METHOD_INV_LINE, insn, str(tag.getLineNumber()));
+            _db.row(METHOD_INV_LINE).col(insn).col(tag.getLineNumber()).end();
 
         String methodId = ii.methodId;
         if (expr instanceof DynamicInvokeExpr)
@@ -1067,11 +1071,13 @@ class FactWriter extends JavaFactWriter {
         else {
             String methodSig = invokeMethodSig(insn, declClass, simpleName, exprMethodRef, expr);
             if (expr instanceof StaticInvokeExpr)
-                _db.add(STATIC_METHOD_INV, insn, str(ii.index), methodSig, methodId);
+                _db.row(STATIC_METHOD_INV).col(insn).col(ii.index).col(methodSig).col(methodId).end();
             else if (expr instanceof VirtualInvokeExpr || expr instanceof InterfaceInvokeExpr)
-                _db.add(VIRTUAL_METHOD_INV, insn, str(ii.index), methodSig, _rep.local(methodId, (Local) ((InstanceInvokeExpr) expr).getBase()), methodId);
+                _db.row(VIRTUAL_METHOD_INV).col(insn).col(ii.index).col(methodSig)
+                    .col(_rep.local(methodId, (Local) ((InstanceInvokeExpr) expr).getBase())).col(methodId).end();
             else if (expr instanceof SpecialInvokeExpr)
-                _db.add(SPECIAL_METHOD_INV, insn, str(ii.index), methodSig, _rep.local(methodId, (Local) ((InstanceInvokeExpr) expr).getBase()), methodId);
+                _db.row(SPECIAL_METHOD_INV).col(insn).col(ii.index).col(methodSig)
+                    .col(_rep.local(methodId, (Local) ((InstanceInvokeExpr) expr).getBase())).col(methodId).end();
             else
                 throw new RuntimeException("Cannot handle invoke expr: " + expr);
         }
@@ -1082,7 +1088,7 @@ class FactWriter extends JavaFactWriter {
     // Special handling for polymorphic-signature methods.
     private String invokeMethodSig(String insn, String declClass, String simpleName, SootMethodRef exprMethodRef, InvokeExpr expr) {
         if (!simpleName.equals("<init>") && DoopAddons.polymorphicHandling(declClass, simpleName)) {
-            _db.add(POLYMORPHIC_INVOCATION, insn, simpleName);
+            _db.row(POLYMORPHIC_INVOCATION).col(insn).col(simpleName).end();
             return Representation.signature(exprMethodRef);
         } else
             return _rep.signature(expr.getMethod());
@@ -1093,7 +1099,7 @@ class FactWriter extends JavaFactWriter {
         if (bootstrapMeth.getDeclaringClass().isPhantom()) {
             String bootstrapSig = Representation.signature(bootstrapMeth);
             phantoms.reportPhantom("Bootstrap method", bootstrapSig);
-            _db.add(PHANTOM_METHOD, bootstrapSig);
+            _db.row(PHANTOM_METHOD).col(bootstrapSig).end();
             return bootstrapSig;
         } else
             return _rep.signature(bootstrapMeth.resolve());
@@ -1198,15 +1204,16 @@ class FactWriter extends JavaFactWriter {
 
     void writeAssignInstanceOf(InstrInfo ii, Local to, Local from, Type t) {
         String methodId = ii.methodId;
-        _db.add(ASSIGN_INSTANCE_OF, ii.insn, str(ii.index), _rep.local(methodId, from), _rep.local(methodId, to), writeType(t), methodId);
+        _db.row(ASSIGN_INSTANCE_OF).col(ii.insn).col(ii.index).col(_rep.local(methodId, from))
+            .col(_rep.local(methodId, to)).col(writeType(t)).col(methodId).end();
     }
 
     void writeAssignPhantomInvoke(InstrInfo ii) {
-        _db.add(ASSIGN_PHANTOM_INVOKE, ii.insn, str(ii.index), ii.methodId);
+        _db.row(ASSIGN_PHANTOM_INVOKE).col(ii.insn).col(ii.index).col(ii.methodId).end();
     }
 
     void writeBreakpointStmt(InstrInfo ii) {
-        _db.add(BREAKPOINT_STMT, ii.insn, str(ii.index), ii.methodId);
+        _db.row(BREAKPOINT_STMT).col(ii.insn).col(ii.index).col(ii.methodId).end();
     }
 
     void writeFieldInitialValue(SootField f) {
@@ -1215,7 +1222,7 @@ class FactWriter extends JavaFactWriter {
         for (Tag tag : tagList)
             if (tag instanceof ConstantValueTag) {
                 String val = ((ConstantValueTag)tag).getConstant().toString();
-                _db.add(FIELD_INITIAL_VALUE, fieldId, val);
+                _db.row(FIELD_INITIAL_VALUE).col(fieldId).col(val).end();
                 // Put constant in appropriate "raw" input facts.
                 String tagType = null;
                 if (tag instanceof IntegerConstantValueTag)
@@ -1241,10 +1248,14 @@ class FactWriter extends JavaFactWriter {
 
     public void writePreliminaryFacts(Collection<SootClass> classes,
                                       BasicJavaSupport java, boolean debug) {
-        classes.stream().filter(SootClass::isApplicationClass).forEachOrdered(this::writeApplicationClass);
+        writeApplicationClasses(classes);
         writePreliminaryFacts(java, debug);
     }
 
+    public void writeApplicationClasses(Collection<SootClass> classes) {
+        classes.stream().filter(SootClass::isApplicationClass).forEachOrdered(this::writeApplicationClass);
+    }
+
     boolean checkAndRegisterPhantom(Object phantom) {
         if (seenPhantoms.contains(phantom))
             return true;
@@ -1274,7 +1285,7 @@ class FactWriter extends JavaFactWriter {
             if (ref !=null )
                 this.retType = ref.getReturnType().toString();
             else
-                this.retType = "Null return type "  + UUID.randomUUID();
+                this.retType = MethodArena.uniqueName("Null return type");
 
             StringJoiner joiner = new StringJoiner(",");
             paramTypes.forEach(p -> joiner.add(p.toString()));
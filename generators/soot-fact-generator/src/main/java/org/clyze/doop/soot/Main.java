@@ -1,9 +1,15 @@
 package org.clyze.doop.soot;
 
+import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.lang.management.ManagementFactory;
 import java.lang.management.RuntimeMXBean;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -11,13 +17,22 @@ import java.util.function.Predicate;
 import org.apache.log4j.Logger;
 import org.clyze.doop.common.ArtifactEntry;
 import org.clyze.doop.common.ArtifactScanner;
+import org.clyze.doop.common.ClassFactCache;
 import org.clyze.doop.common.Database;
 import org.clyze.doop.common.DoopErrorCodeException;
+import org.clyze.doop.common.FactGenDaemon;
+import org.clyze.doop.common.IdCompactor;
+import org.clyze.doop.common.JavaRepresentation;
+import org.clyze.doop.common.MethodArena;
+import org.clyze.doop.common.PhantomClassFacts;
 import org.clyze.doop.common.Phantoms;
+import org.clyze.doop.common.android.RLinker;
 import org.clyze.doop.soot.android.AndroidSupport_Soot;
 import org.clyze.utils.JHelper;
+import soot.G;
 import soot.Scene;
 import soot.SootClass;
+import soot.SootField;
 import soot.SootMethod;
 import soot.options.Options;
 
@@ -107,9 +122,33 @@ public class Main {
             android = null;
         }
 
+        // When fact generation is restarted, the classes processed by
+        // earlier runs are skipped and their facts are kept.
+        Set<String> generatedClasses = readGeneratedClasses(sootParameters._generatedClassesFile);
+        boolean restart = !generatedClasses.isEmpty();
+        // The facts of classes that refer to phantoms depend on the
+        // classes that could not be resolved, so a restart removes
+        // them and processes these classes again.
+        PhantomClassFacts phantomClassFacts = sootParameters._generatedClassesFile == null ? null : new PhantomClassFacts(new File(sootParameters._generatedClassesFile + ".phantoms"));
+        if (restart) {
+            MethodArena.setUniqueNamePrefix(generatedClasses.size() + ":");
+            Set<String> phantomBased = phantomClassFacts.removeFacts(new File(outDir));
+            generatedClasses.removeAll(phantomBased);
+            System.out.println("Restarting fact generation, keeping the facts of " + generatedClasses.size() + " classes (" + phantomBased.size() + " classes that refer to phantoms are processed again).");
+        }
+        // Facts about the inputs (such as XML data) are not written in
+        // class-facts-only mode or again when restarting.
+        boolean inputFacts = !sootParameters._classFactsOnly && !restart;
+
         boolean writeFacts = !sootParameters.noFacts();
-        try (Database db = new Database(outDir, writeFacts)) {
-            java.preprocessInputs(db, tmpDirs);
+        try (Database db = new Database(outDir, writeFacts, sootParameters._shardedFacts, sootParameters._compressedFacts, sootParameters._writerThreads)) {
+            if (sootParameters._compactIds) {
+                IdCompactor compactor = new IdCompactor(db, sootParameters.getReadableIdMethods());
+                if (restart)
+                    compactor.resume();
+                JavaRepresentation.setCompactor(compactor);
+            }
+            java.preprocessInputs(inputFacts ? db : new Database(outDir, false), tmpDirs);
 
             AtomicInteger errors = new AtomicInteger(0);
             if (android != null)
@@ -119,7 +158,7 @@ public class Main {
             SootData sootData = new SootData();
             java.getExecutor().execute(() -> {
                     try {
-                        invokeSoot(sootParameters, db, tmpDirs, sootData, java, android, scene, writeFacts);
+                        invokeSoot(sootParameters, db, tmpDirs, sootData, java, android, scene, writeFacts, generatedClasses, phantomClassFacts, inputFacts);
                     } catch (Throwable t) {
                         t.printStackTrace();
                         errors.incrementAndGet();
@@ -137,7 +176,7 @@ public class Main {
                 System.err.println("WARNING: fact generation ignored " + numErrors + " top-level error(s); continuing with the facts produced.");
             }
 
-            if (writeFacts && sootParameters._scanNativeCode)
+            if (writeFacts && sootParameters._scanNativeCode && inputFacts)
 		ArtifactScanner.scanNativeCode(db, sootParameters, sootData.writer.getMethodStrings());
 
             if (sootParameters._generateJimple)
@@ -155,6 +194,8 @@ public class Main {
                 System.out.println("Done.");
             }
         } finally {
+            JavaRepresentation.setCompactor(null);
+            MethodArena.setUniqueNamePrefix("");
             // Clean up any temporary directories used for WAR/AAR extraction.
             JHelper.cleanUp(tmpDirs);
         }
@@ -164,7 +205,7 @@ public class Main {
      * This is the part of Soot that can run in parallel with other
      * (pre)processing tasks.
      */
-    private static void invokeSoot(SootParameters sootParameters, Database db, Set<String> tmpDirs, SootData sootData, BasicJavaSupport_Soot java, AndroidSupport_Soot android, Scene scene, boolean writeFacts) throws DoopErrorCodeException, IOException {
+    private static void invokeSoot(SootParameters sootParameters, Database db, Set<String> tmpDirs, SootData sootData, BasicJavaSupport_Soot java, AndroidSupport_Soot android, Scene scene, boolean writeFacts, Set<String> generatedClasses, PhantomClassFacts phantomClassFacts, boolean inputFacts) throws DoopErrorCodeException, IOException {
         if (debug != null)
             showPacks();
 
@@ -210,6 +251,11 @@ public class Main {
             classAdder.addDepClasses(classes, scene);
             // Add library classes, to be pruned later.
             classAdder.addLibClasses(classes, scene);
+        } else if (sootParameters._factsSubSet == SootParameters.FactsSubSet.DEPS) {
+            System.out.println("WARNING: only dependency classes will be used.");
+            classAdder.addDepClasses(classes, scene);
+            // Add library classes, to be pruned later.
+            classAdder.addLibClasses(classes, scene);
         } else if (sootParameters._factsSubSet == SootParameters.FactsSubSet.PLATFORM) {
             System.out.println("WARNING: only platform classes will be used.");
             classAdder.addLibClasses(classes, scene);
@@ -249,14 +295,38 @@ public class Main {
                 case APP_N_DEPS:
                     deleteClassesFailingCheck(classes, classAdder::isAppOrDepClass);
                     break;
+                case DEPS:
+                    deleteClassesFailingCheck(classes, c -> classAdder.isAppOrDepClass(c) && !classAdder.isAppClass(c));
+                    break;
                 case PLATFORM:
                     deleteClassesFailingCheck(classes, classAdder::isLibClass);
                     break;
             }
         }
 
-        // Skip "retrieve all bodies" step for Android apps.
-        if (android == null) {
+        // Classes processed by earlier runs stay in the Scene (for the
+        // hierarchy) but their facts are not generated again.
+        if (!generatedClasses.isEmpty()) {
+            int allClasses = classes.size();
+            classes.removeIf(c -> generatedClasses.contains(c.getName()));
+            System.out.println("Skipping " + (allClasses - classes.size()) + " classes processed by earlier runs, " + classes.size() + " new classes.");
+        }
+
+        // Only retrieve the bodies of library methods that may be reached.
+        ReachableMethods reachableMethods = null;
+        if (sootParameters._demandBodies) {
+            long time1 = System.currentTimeMillis();
+            reachableMethods = ReachableMethods.compute(scene, classes, sootParameters._cores);
+            long time2 = System.currentTimeMillis();
+            System.out.println("Reachable methods (CHA): " + reachableMethods.size() + " (time: " + ((time2 - time1)/1000) + ")");
+        }
+
+        // Skip "retrieve all bodies" step for Android apps. When streaming,
+        // each fact generation thread retrieves the bodies of its classes.
+        // Bodies are also retrieved per class when class facts are cached
+        // or when restarting, since the bodies of the other classes are
+        // not needed (and on demand, by the reachability analysis).
+        if (android == null && !sootParameters._streamBodies && sootParameters._classFactCacheDir == null && generatedClasses.isEmpty() && reachableMethods == null) {
             long time1 = System.currentTimeMillis();
             try {
                 DoopAddons.retrieveAllSceneClassesBodies(sootParameters._cores);
@@ -288,15 +358,24 @@ public class Main {
 
         Phantoms phantoms = new Phantoms(reportPhantoms);
         FactWriter writer = new FactWriter(db, sootParameters, rep, phantoms);
-        SootDriver driver = new SootDriver(classes.size(), sootParameters._cores, writer, sootParameters, phantoms);
+        SootDriver driver = new SootDriver(classes.size(), sootParameters._cores, writer, sootParameters, phantoms, reachableMethods, java.getArtifactScanner());
+        ClassFactCache classFactCache = null;
+        if (sootParameters._classFactCacheDir != null) {
+            classFactCache = new ClassFactCache(new File(sootParameters._classFactCacheDir), sootParameters._classFactOptions);
+            driver.setClassFactCache(classFactCache, sceneHash(scene));
+        }
+        driver.setPhantomClassFacts(phantomClassFacts);
 
         if (writeFacts) {
 
-            writer.writePreliminaryFacts(classes, java, sootParameters._debug);
-            db.flush();
+            if (inputFacts) {
+                writer.writePreliminaryFacts(classes, java, sootParameters._debug);
+                db.flush();
 
-            if (android != null && sootParameters._legacyAndroidProcessing)
-                android.writeComponents(writer);
+                if (android != null && sootParameters._legacyAndroidProcessing)
+                    android.writeComponents(writer);
+            } else if (!sootParameters._classFactsOnly)
+                writer.writeApplicationClasses(classes);
 
             scene.getOrMakeFastHierarchy();
 
@@ -305,7 +384,16 @@ public class Main {
             driver.generateInParallel(classes);
 
             logDebug(logger, "Checking class heaps for missing types...");
-            Collection<String> unrecorded = new ClassHeapFinder().getUnrecordedTypes(classes);
+            ClassHeapFinder classHeapFinder = driver.getClassHeapFinder();
+            if (classHeapFinder == null) {
+                classHeapFinder = new ClassHeapFinder(driver::needsBody, true);
+                for (SootClass c : classes)
+                    classHeapFinder.scan(c);
+            }
+            // Classes processed by earlier runs have been checked already.
+            for (String c : generatedClasses)
+                classHeapFinder.record(c, Collections.emptyList());
+            Collection<String> unrecorded = classHeapFinder.getUnrecordedTypes();
             if (!unrecorded.isEmpty()) {
                 // If option is set (--thorough-fact-gen), fail and notify the
                 // caller that fact generation must run again with these classes
@@ -325,7 +413,16 @@ public class Main {
                     logWarn(logger, "WARNING: some classes were not resolved, consider using --thorough-fact-gen: " + Arrays.toString(unrecorded.toArray()));
             }
 
-            writer.writeLastFacts(java);
+            if (inputFacts) {
+                writer.writeLastFacts(java);
+                driver.getStats().writeTo(db);
+            }
+            if (classFactCache != null)
+                classFactCache.printStats();
+            if (sootParameters._generatedClassesFile != null) {
+                recordGeneratedClasses(sootParameters._generatedClassesFile, classes);
+                phantomClassFacts.save();
+            }
         }
 
         // Communicate data structures to next stages of the pipeline.
@@ -334,6 +431,74 @@ public class Main {
         sootData.writer = writer;
     }
 
+    /**
+     * Compute a hash of the signatures of all Scene classes: names,
+     * phantom status, supertypes, modifiers, fields and methods.
+     *
+     * @param scene   the Scene
+     * @return        the hash
+     */
+    private static String sceneHash(Scene scene) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex);
+        }
+        List<SootClass> sceneClasses = new ArrayList<>(scene.getClasses());
+        sceneClasses.sort(Comparator.comparing(SootClass::getName));
+        StringBuilder sb = new StringBuilder();
+        for (SootClass c : sceneClasses) {
+            sb.setLength(0);
+            sb.append(c.getName()).append(c.isPhantom() ? " phantom " : " ").append(c.getModifiers());
+            if (c.hasSuperclass())
+                sb.append(" extends ").append(c.getSuperclass().getName());
+            for (SootClass i : c.getInterfaces())
+                sb.append(" implements ").append(i.getName());
+            sb.append('\n');
+            for (SootField f : c.getFields())
+                sb.append(f.getModifiers()).append(' ').append(f.getSignature()).append('\n');
+            for (SootMethod m : c.getMethods()) {
+                sb.append(m.getModifiers()).append(' ').append(m.getSignature());
+                for (SootClass e : m.getExceptions())
+                    sb.append(" throws ").append(e.getName());
+                sb.append('\n');
+            }
+            md.update(sb.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        return String.format("%064x", new BigInteger(1, md.digest()));
+    }
+
+    /**
+     * Read the classes processed by earlier fact generation runs.
+     *
+     * @param file   the file of the processed classes (may be null)
+     * @return       the class names
+     * @throws IOException on read error
+     */
+    private static Set<String> readGeneratedClasses(String file) throws IOException {
+        Set<String> ret = new HashSet<>();
+        if (file != null && new File(file).exists())
+            for (String line : Files.readAllLines(new File(file).toPath(), StandardCharsets.UTF_8))
+                if (!line.isEmpty())
+                    ret.add(line);
+        return ret;
+    }
+
+    /**
+     * Add the processed classes to the classes of earlier runs.
+     *
+     * @param file      the file of the processed classes
+     * @param classes   the classes processed by this run
+     * @throws IOException on write error
+     */
+    private static void recordGeneratedClasses(String file, Collection<SootClass> classes) throws IOException {
+        try (FileWriter fWriter = new FileWriter(file, true)) {
+            for (SootClass c : classes)
+                fWriter.write(c.getName() + '\n');
+        }
+    }
+
     private static void deleteClassesFailingCheck(Collection<SootClass> classes, Predicate<String> check) {
         Collection<SootClass> typesToDelete = new LinkedList<>();
         classes.forEach((SootClass sc) -> {
@@ -376,6 +541,35 @@ public class Main {
         }
     }
 
+    /**
+     * Runs the front end as a daemon that serves fact generation jobs
+     * (see {@link FactGenDaemon}). The Soot Scene is reset between jobs.
+     */
+    public static class Daemon {
+        public static void main(String[] args) throws Exception {
+            if (args.length != 1) {
+                System.err.println("Usage: soot-fact-generator-daemon <port>");
+                return;
+            }
+            FactGenDaemon.serve(Integer.parseInt(args[0]), Standalone::main, Main::reset);
+        }
+    }
+
+    /**
+     * Reset the global state of Soot and of the front end, so that
+     * the next run starts from a clean state in the same JVM.
+     */
+    private static void reset() {
+        G.reset();
+        sootClassPathFirstElement = true;
+        FactGenerator.methodsWithoutActiveBodies.set(0);
+        DoopAddons.reset();
+        DoopConventions.setSeparatorFailed = false;
+        RLinker.reset();
+        JavaRepresentation.setCompactor(null);
+        MethodArena.resetUniqueNames();
+    }
+
     private static void showPacks() {
         for (soot.Pack pack : soot.PackManager.v().allPacks())
             System.out.println("Pack: " + pack.getPhaseName());
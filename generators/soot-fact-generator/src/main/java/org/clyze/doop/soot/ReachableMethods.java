@@ -0,0 +1,234 @@
+package org.clyze.doop.soot;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import soot.FastHierarchy;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.SootMethodRef;
+import soot.Unit;
+import soot.Value;
+import soot.ValueBox;
+import soot.jimple.DynamicInvokeExpr;
+import soot.jimple.InstanceInvokeExpr;
+import soot.jimple.InvokeExpr;
+import soot.jimple.MethodHandle;
+import soot.jimple.NewExpr;
+import soot.jimple.SpecialInvokeExpr;
+import soot.jimple.StaticFieldRef;
+import soot.jimple.StaticInvokeExpr;
+
+/**
+ * A cheap class hierarchy analysis that finds the methods reachable
+ * from the application classes, so that only the bodies of these
+ * library methods are retrieved (and their instructions written).
+ * All methods of application classes are reachable; calls are
+ * resolved over all subtypes of their receiver type in the Scene.
+ *
+ * Code reached only through reflection or native code (other than the
+ * few native callbacks modeled below) is not found, so this is meant
+ * for quick analyses of small programs over large platforms.
+ */
+class ReachableMethods {
+    // Methods invoked by the JVM (see implicit-reachable.dl).
+    private static final String[] IMPLICIT_METHODS = new String[] {
+        "<java.lang.System: void initializeSystemClass()>",
+        "<java.lang.Thread: void <init>(java.lang.ThreadGroup,java.lang.Runnable)>",
+        "<java.lang.Thread: void <init>(java.lang.ThreadGroup,java.lang.String)>",
+        "<java.lang.ThreadGroup: void <init>()>",
+        "<java.lang.Thread: void exit()>",
+        "<java.lang.ThreadGroup: void uncaughtException(java.lang.Thread,java.lang.Throwable)>",
+        "<java.lang.ClassLoader: void <init>()>",
+        "<java.lang.ClassLoader: java.lang.Class loadClassInternal(java.lang.String)>",
+        "<java.lang.ClassLoader: void checkPackageAccess(java.lang.Class,java.security.ProtectionDomain)>",
+        "<java.lang.ClassLoader: void addClass(java.lang.Class)>",
+        "<java.lang.ClassLoader: long findNative(java.lang.ClassLoader,java.lang.String)>",
+        "<java.security.PrivilegedActionException: void <init>(java.lang.Exception)>",
+    };
+    // Methods that call back into Java code from native code: method
+    // signature -> {type, subsignature} of the callback.
+    private static final Map<String, String[]> NATIVE_CALLBACKS = new HashMap<>();
+    static {
+        NATIVE_CALLBACKS.put("<java.lang.Thread: void start()>", new String[] { "java.lang.Runnable", "void run()" });
+        String[] action = new String[] { "java.security.PrivilegedAction", "java.lang.Object run()" };
+        String[] exceptionAction = new String[] { "java.security.PrivilegedExceptionAction", "java.lang.Object run()" };
+        NATIVE_CALLBACKS.put("<java.security.AccessController: java.lang.Object doPrivileged(java.security.PrivilegedAction)>", action);
+        NATIVE_CALLBACKS.put("<java.security.AccessController: java.lang.Object doPrivileged(java.security.PrivilegedAction,java.security.AccessControlContext)>", action);
+        NATIVE_CALLBACKS.put("<java.security.AccessController: java.lang.Object doPrivileged(java.security.PrivilegedExceptionAction)>", exceptionAction);
+        NATIVE_CALLBACKS.put("<java.security.AccessController: java.lang.Object doPrivileged(java.security.PrivilegedExceptionAction,java.security.AccessControlContext)>", exceptionAction);
+    }
+
+    private final Scene scene;
+    private final FastHierarchy hierarchy;
+    private final Set<SootMethod> reachable = ConcurrentHashMap.newKeySet();
+    private final Set<SootClass> initialized = ConcurrentHashMap.newKeySet();
+    // The methods found in the current round, whose bodies are scanned next.
+    private List<SootMethod> next = new ArrayList<>();
+
+    private ReachableMethods(Scene scene) {
+        this.scene = scene;
+        this.hierarchy = scene.getOrMakeFastHierarchy();
+    }
+
+    /**
+     * Compute the methods reachable from the application classes. The
+     * bodies of the reachable methods are retrieved in parallel, one
+     * round of newly reachable methods at a time.
+     *
+     * @param scene     the Scene
+     * @param classes   the classes to process
+     * @param cores     the number of threads to use (null to run sequentially)
+     * @return          the reachable methods
+     */
+    static ReachableMethods compute(Scene scene, Collection<SootClass> classes, Integer cores) {
+        ReachableMethods ret = new ReachableMethods(scene);
+        for (SootClass c : classes)
+            if (c.isApplicationClass())
+                for (SootMethod m : c.getMethods())
+                    ret.add(m);
+        for (String sig : IMPLICIT_METHODS) {
+            SootMethod m = scene.grabMethod(sig);
+            if (m != null)
+                ret.add(m);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(cores == null ? 1 : cores);
+        try {
+            while (!ret.next.isEmpty()) {
+                List<Future<Refs>> scanned = new ArrayList<>();
+                for (SootMethod m : ret.next)
+                    scanned.add(executor.submit(() -> scan(m)));
+                ret.next = new ArrayList<>();
+                // Resolve in this thread, since the hierarchy is not thread-safe.
+                for (Future<Refs> f : scanned)
+                    ret.resolve(f.get());
+            }
+        } catch (InterruptedException | ExecutionException ex) {
+            throw new RuntimeException("Could not compute reachable methods: " + ex.getMessage(), ex);
+        } finally {
+            executor.shutdown();
+        }
+        return ret;
+    }
+
+    boolean contains(SootMethod m) {
+        return reachable.contains(m);
+    }
+
+    int size() {
+        return reachable.size();
+    }
+
+    private void add(SootMethod m) {
+        if (m.isConcrete() && !m.isPhantom() && reachable.add(m))
+            next.add(m);
+        initialize(m.getDeclaringClass());
+    }
+
+    // Static initializers run when a class (or a subclass) is first used.
+    private void initialize(SootClass c) {
+        while (c != null && initialized.add(c)) {
+            SootMethod clinit = c.getMethodUnsafe("void <clinit>()");
+            if (clinit != null)
+                add(clinit);
+            c = c.hasSuperclass() ? c.getSuperclass() : null;
+        }
+    }
+
+    private void addHandle(SootMethodRef ref) {
+        SootMethod m = ref == null ? null : ref.tryResolve();
+        if (m != null)
+            add(m);
+    }
+
+    private void addDispatch(SootClass type, SootMethod m) {
+        try {
+            for (SootMethod target : hierarchy.resolveAbstractDispatch(type, m))
+                add(target);
+        } catch (RuntimeException ex) {
+            // Phantom types cannot be resolved.
+            add(m);
+        }
+    }
+
+    private void resolve(Refs refs) {
+        for (SootClass c : refs.classes)
+            initialize(c);
+        for (SootMethodRef ref : refs.handles)
+            addHandle(ref);
+        for (InvokeExpr invoke : refs.invokes) {
+            if (invoke instanceof DynamicInvokeExpr) {
+                // Lambdas: the implementation methods are bootstrap arguments.
+                for (Value arg : ((DynamicInvokeExpr) invoke).getBootstrapArgs())
+                    if (arg instanceof MethodHandle)
+                        addHandle(((MethodHandle) arg).getMethodRef());
+                continue;
+            }
+            SootMethodRef ref = invoke.getMethodRef();
+            SootMethod m = ref.tryResolve();
+            if (m == null)
+                continue;
+            if (invoke instanceof InstanceInvokeExpr && !(invoke instanceof SpecialInvokeExpr))
+                addDispatch(ref.getDeclaringClass(), m);
+            else
+                add(m);
+            String[] callback = NATIVE_CALLBACKS.get(m.getSignature());
+            if (callback != null) {
+                SootClass type = scene.getSootClassUnsafe(callback[0]);
+                SootMethod cbMethod = type == null ? null : type.getMethodUnsafe(callback[1]);
+                if (cbMethod != null)
+                    addDispatch(type, cbMethod);
+            }
+        }
+    }
+
+    /**
+     * Find the calls and the class initializations of a method body.
+     * Called by worker threads, so it does not touch the hierarchy.
+     *
+     * @param m   the method
+     * @return    the references of the method body
+     */
+    private static Refs scan(SootMethod m) {
+        Refs refs = new Refs();
+        try {
+            if (!m.hasActiveBody())
+                m.retrieveActiveBody();
+        } catch (RuntimeException ex) {
+            System.err.println("WARNING: could not retrieve body of reachable method " + m.getSignature() + ": " + ex.getMessage());
+            return refs;
+        }
+        for (Unit u : m.getActiveBody().getUnits())
+            for (ValueBox vb : u.getUseAndDefBoxes()) {
+                Value v = vb.getValue();
+                if (v instanceof InvokeExpr) {
+                    refs.invokes.add((InvokeExpr) v);
+                    if (v instanceof StaticInvokeExpr)
+                        refs.classes.add(((StaticInvokeExpr) v).getMethodRef().getDeclaringClass());
+                } else if (v instanceof NewExpr)
+                    refs.classes.add(((NewExpr) v).getBaseType().getSootClass());
+                else if (v instanceof StaticFieldRef)
+                    refs.classes.add(((StaticFieldRef) v).getFieldRef().declaringClass());
+                else if (v instanceof MethodHandle)
+                    refs.handles.add(((MethodHandle) v).getMethodRef());
+            }
+        return refs;
+    }
+
+    // The references found in a method body.
+    private static final class Refs {
+        final Collection<InvokeExpr> invokes = new ArrayList<>();
+        final Collection<SootClass> classes = new ArrayList<>();
+        final Collection<SootMethodRef> handles = new ArrayList<>();
+    }
+}
@@ -1,18 +1,25 @@
 package org.clyze.doop.soot;
 
 import java.util.Map;
-import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 import org.clyze.doop.common.JavaRepresentation;
+import org.clyze.doop.common.MethodArena;
 import org.clyze.doop.common.SessionCounter;
 import org.clyze.persistent.model.jvm.JvmDynamicMethodInvocation;
 import soot.*;
 import soot.jimple.*;
 
 class Representation extends JavaRepresentation {
+    /**
+     * The maximum size of each cache. Full caches are emptied (most
+     * lookups are for the methods and fields of the class being
+     * processed, so the entries are soon recomputed).
+     */
+    private static final int MAX_CACHE_SIZE = 1 << 16;
+
     private final Map<SootMethod, String> _methodSigRepr = new ConcurrentHashMap<>();
     private final Map<SootField, String> _fieldSigRepr = new ConcurrentHashMap<>();
-    private final Map<Trap, String> _trapRepr = new ConcurrentHashMap<>();
     private final Map<SootMethod, String> methodNames = new ConcurrentHashMap<>();
 
     static String classConstant(SootClass c) {
@@ -23,39 +30,49 @@ class Representation extends JavaRepresentation {
         return classConstant(t.toString());
     }
 
-    String signature(SootMethod m) {
-        String result = _methodSigRepr.get(m);
+    private static <K> String cached(Map<K, String> cache, K key, Function<K, String> f) {
+        String result = cache.get(key);
         if (result == null) {
-            result = stripQuotes(m.getSignature());
-            _methodSigRepr.put(m, result);
+            result = f.apply(key);
+            if (cache.size() >= MAX_CACHE_SIZE)
+                cache.clear();
+            cache.put(key, result);
         }
-
         return result;
     }
 
-    String signature(SootField f) {
-        String result = _fieldSigRepr.get(f);
-        if (result == null) {
-            result = stripQuotes(f.getSignature());
-            _fieldSigRepr.put(f, result);
+    /**
+     * Drop the cached representations of the members of a class,
+     * after its facts have been written.
+     *
+     * @param c   the class
+     */
+    void forget(SootClass c) {
+        for (SootMethod m : c.getMethods()) {
+            _methodSigRepr.remove(m);
+            methodNames.remove(m);
         }
-        return result;
+        for (SootField f : c.getFields())
+            _fieldSigRepr.remove(f);
+    }
+
+    String signature(SootMethod m) {
+        return cached(_methodSigRepr, m, m0 -> stripQuotes(m0.getSignature()));
+    }
+
+    String signature(SootField f) {
+        return cached(_fieldSigRepr, f, f0 -> stripQuotes(f0.getSignature()));
     }
 
     static String signature(SootMethodRef mRef) {
         if (mRef != null)
             return stripQuotes(mRef.toString());
         else
-            return "Null method " + UUID.randomUUID();
+            return MethodArena.uniqueName("Null method");
     }
 
     String simpleName(SootMethod m) {
-        String result = methodNames.get(m);
-        if (result == null) {
-            result = stripQuotes(m.getName());
-            methodNames.put(m, result);
-        }
-        return result;
+        return cached(methodNames, m, m0 -> stripQuotes(m0.getName()));
     }
 
     public static String unescapeSimpleName(String n) {
@@ -83,7 +100,7 @@ class Representation extends JavaRepresentation {
     }
 
     String thisVar(String methodId) {
-        return methodId + "/@this";
+        return thisVarId(methodId);
     }
 
     String nativeReturnVar(String methodId) {
@@ -91,7 +108,7 @@ class Representation extends JavaRepresentation {
     }
 
     String param(String methodId, int i) {
-        return methodId + "/@parameter" + i;
+        return paramId(methodId, i);
     }
 
     String local(String m, Local l) {
@@ -102,14 +119,14 @@ class Representation extends JavaRepresentation {
         return newLocalIntermediateId(local(m, l), counter);
     }
 
-    String handler(String methodId, Trap trap, SessionCounter counter) {
-        String result = _trapRepr.get(trap);
+    String handler(String methodId, Trap trap, SootSession session) {
+        String result = session.getHandler(trap);
 
         if(result == null)
         {
             String name = handlerMid(trap.getException().getName());
-            result = numberedInstructionId(methodId, name, counter);
-            _trapRepr.put(trap, result);
+            result = numberedInstructionId(methodId, name, session);
+            session.putHandler(trap, result);
         }
 
         return result;
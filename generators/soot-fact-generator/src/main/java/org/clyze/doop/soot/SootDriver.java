@@ -1,21 +1,124 @@
 package org.clyze.doop.soot;
 
+import org.clyze.doop.common.ArtifactScanner;
+import org.clyze.doop.common.ClassFactCache;
 import org.clyze.doop.common.Driver;
+import org.clyze.doop.common.PhantomClassFacts;
 import org.clyze.doop.common.Phantoms;
 import soot.SootClass;
+import soot.SootMethod;
 
 class SootDriver extends Driver<SootClass> {
+    // A rough number of bytecode bytes per Jimple unit, to estimate the
+    // size of classes whose bodies are not loaded yet.
+    private static final int BYTES_PER_UNIT = 8;
+
     private final FactWriter factWriter;
     private final SootParameters sootParameters;
     private final Phantoms phantoms;
+    // Scans classes before their bodies are released (in low-memory
+    // mode) or while their facts are cached.
+    private final ClassHeapFinder classHeapFinder;
+    // The methods whose bodies are processed (null for all methods).
+    private final ReachableMethods reachableMethods;
+    // The scanner that registered the sizes and hashes of the classes.
+    private final ArtifactScanner artifactScanner;
+    // The cache of class facts (optional) and the Scene part of its keys.
+    private ClassFactCache classFactCache = null;
+    private String sceneHash;
+    // The facts of classes that refer to phantoms (kept for restarts, optional).
+    private PhantomClassFacts phantomClassFacts = null;
 
     SootDriver(int totalClasses, Integer cores,
                FactWriter factWriter, SootParameters sootParameters,
-               Phantoms phantoms) {
+               Phantoms phantoms, ReachableMethods reachableMethods,
+               ArtifactScanner artifactScanner) {
         super(totalClasses, cores);
         this.factWriter = factWriter;
         this.sootParameters = sootParameters;
         this.phantoms = phantoms;
+        this.reachableMethods = reachableMethods;
+        this.artifactScanner = artifactScanner;
+        this.classHeapFinder = (sootParameters._lowMem || sootParameters._classFactCacheDir != null) ? new ClassHeapFinder(this::needsBody, false) : null;
+    }
+
+    ClassHeapFinder getClassHeapFinder() {
+        return classHeapFinder;
+    }
+
+    /**
+     * Check if the body of a method is processed (with --demand-bodies,
+     * only the bodies of reachable methods are processed).
+     *
+     * @param m   the method
+     * @return    true if the body of the method is needed
+     */
+    boolean needsBody(SootMethod m) {
+        return reachableMethods == null || reachableMethods.contains(m);
+    }
+
+    /**
+     * Reuse cached class facts. The facts of a class also depend on the
+     * rest of the Scene (e.g., on the hierarchy, for typing the bodies),
+     * so the keys of the cache include a hash of the Scene signatures.
+     *
+     * @param cache             the class facts cache
+     * @param sceneHash         the hash of the Scene signatures
+     */
+    void setClassFactCache(ClassFactCache cache, String sceneHash) {
+        this.classFactCache = cache;
+        this.sceneHash = sceneHash;
+    }
+
+    ClassFactCache getClassFactCache() {
+        return classFactCache;
+    }
+
+    void setPhantomClassFacts(PhantomClassFacts phantomClassFacts) {
+        this.phantomClassFacts = phantomClassFacts;
+    }
+
+    PhantomClassFacts getPhantomClassFacts() {
+        return phantomClassFacts;
+    }
+
+    /**
+     * Returns the key of the cached facts of a class.
+     *
+     * @param c   the class
+     * @return    the key or null if the class has no known bytecode hash
+     */
+    String classFactKey(SootClass c) {
+        String classHash = artifactScanner.getClassHash(c.getName());
+        if (classHash == null)
+            return null;
+        return classFactCache.key(c.getName(), classHash, sceneHash, String.valueOf(c.isApplicationClass()));
+    }
+
+    /**
+     * Estimates the size of a class by the units of its method bodies.
+     * Bodies are not loaded yet when they are retrieved during fact
+     * generation (or not at all, for classes with cached facts), so the
+     * size of the methods without bodies is estimated from the bytecode
+     * size of the class.
+     */
+    @Override
+    protected long estimateSize(SootClass sootClass) {
+        long size = 0;
+        int methods = 0, withoutBody = 0;
+        for (SootMethod m : sootClass.getMethods()) {
+            methods++;
+            if (m.hasActiveBody())
+                size += m.getActiveBody().getUnits().size();
+            else
+                withoutBody++;
+        }
+        if (withoutBody > 0) {
+            int classSize = artifactScanner.getClassSize(sootClass.getName());
+            long estimate = classSize < 0 ? 0 : (long) classSize / BYTES_PER_UNIT * withoutBody / methods;
+            size += Math.max(estimate, withoutBody);
+        }
+        return size;
     }
 
     @Override
@@ -16,9 +16,13 @@ public class SootParameters extends Parameters {
     boolean _generateJimple = false;
     boolean _ignoreWrongStaticness = false;
     String _missingClassesOut = null;
+    String _generatedClassesFile = null;
     String _androidJars = null;
     private boolean _toStdout = false;
     public boolean _lowMem = false;
+    boolean _streamBodies = false;
+    boolean _classFactsOnly = false;
+    boolean _demandBodies = false;
     private final Collection<String> extraClassesToResolve = new ArrayList<>();
 
     public boolean isApplicationClass(SootClass klass) {
@@ -67,9 +71,24 @@ public class SootParameters extends Parameters {
             i = shift(args, i);
             _missingClassesOut = args[i];
             break;
+        case "--generated-classes":
+            i = shift(args, i);
+            _generatedClassesFile = args[i];
+            break;
         case "--lowMem":
             _lowMem = true;
             break;
+        case "--stream-bodies":
+            // Bodies are released per class, as in low-memory mode.
+            _streamBodies = true;
+            _lowMem = true;
+            break;
+        case "--class-facts-only":
+            _classFactsOnly = true;
+            break;
+        case "--demand-bodies":
+            _demandBodies = true;
+            break;
         case "-h":
         case "--help":
         case "-help":
@@ -96,10 +115,22 @@ public class SootParameters extends Parameters {
         System.err.println("  --also-resolve <class>                Force resolution of class that may not be found automatically.");
         System.err.println("  --facts-subset <subset>               Produce facts only for a subset of the given classes " + Arrays.asList(Parameters.FactsSubSet.values()) + ".");
         System.err.println("  --failOnMissingClasses <file>         Terminate if classes are missing (and record them to <file>).");
+        System.err.println("  --generated-classes <file>            Record processed classes to <file>; classes already in <file> are skipped and their facts kept (to restart fact generation).");
         System.err.println("  --legacy-android-processing           Enable legacy Android XML processing.");
         System.err.println("  --no-facts                            Don't generate facts (just empty files -- used for debugging).");
         System.err.println("  --ignore-wrong-staticness             Ignore \"wrong static-ness\" errors in Soot.");
         System.err.println("  --lowMem                              Consume less memory.");
+        System.err.println("  --stream-bodies                       Retrieve method bodies per class during fact generation (implies --lowMem).");
+        System.err.println("  --demand-bodies                       Only process the bodies of library methods reachable (by CHA) from application classes.");
+        System.err.println("  --class-facts-only                    Only write the facts of the classes in the facts subset, no facts about the inputs (for shared fact layers).");
+        System.err.println("  --sharded-facts                       Write facts to per-thread buffered shards (merged at the end); keeps one shard file open per thread.");
+        System.err.println("  --compressed-facts                    Write gzip-compressed facts (.facts.gz files).");
+        System.err.println("  --writer-threads N                    Write facts from N dedicated threads (pipelined mode).");
+        System.err.println("  --preprocess-cache-dir <dir>          Cache archive preprocessing results in <dir> (keyed by archive hash).");
+        System.err.println("  --class-fact-cache <dir>              Reuse the facts of unchanged classes, cached in <dir>.");
+        System.err.println("  --class-fact-options <key>            The options key of cached class facts (facts of other options are not reused).");
+        System.err.println("  --compact-ids                         Use short method ids in instruction/variable/heap ids (see CompactMethodId.facts).");
+        System.err.println("  --readable-id-methods <file>          Methods (one per line) that keep readable ids with --compact-ids.");
         System.err.println("  --debug                               Enable debug mode (verbose output).");
         System.err.println("  --log-dir <dir>                       Write logs in directory <dir>.");
         System.err.println("  --args-file <file>                    Read command-line arguments from <file> (one per line).");
@@ -111,6 +142,7 @@ public class SootParameters extends Parameters {
         System.err.println("  --android-jars <archive>              The main Android library JAR (for Android APK inputs). The same jar should be provided in the -l option.");
         System.err.println("  --decode-apk                          Decompress APK input in facts directory.");
         System.err.println("  --scan-native-code                    Scan native code found in JAR/APK inputs.");
+        System.err.println("  --native-scan-cache <dir>             Cache the results of scanning native libraries in <dir>.");
         System.err.println("  --R-out-dir <directory>               Specify where to generate R code (when linking AAR inputs).");
         System.err.println();
         System.err.println("Supported input archive formats: AAR, APK, JAR, ZIP");
@@ -0,0 +1,44 @@
+package org.clyze.doop.soot;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import org.clyze.doop.common.InstrInfo;
+import org.clyze.doop.common.SessionCounter;
+import soot.Trap;
+import soot.Unit;
+
+/**
+ * The session of the method being processed by the Soot front end.
+ * Besides numbering, it keeps the ids of the exception handlers and the
+ * expanded phi nodes of the method, so that traps and body units are
+ * only referenced while their method is being processed.
+ */
+class SootSession extends SessionCounter {
+    private final Map<Trap, String> _handlers = new HashMap<>();
+    // The assignments that replace each phi node (in SSA mode).
+    private final Map<Unit, Collection<InstrInfo>> _expandedPhiNodes = new HashMap<>();
+
+    String getHandler(Trap trap) {
+        return _handlers.get(trap);
+    }
+
+    void putHandler(Trap trap, String id) {
+        _handlers.put(trap, id);
+    }
+
+    Collection<InstrInfo> getExpandedPhiNode(Unit phiNode) {
+        return _expandedPhiNodes.get(phiNode);
+    }
+
+    void putExpandedPhiNode(Unit phiNode, Collection<InstrInfo> assignments) {
+        _expandedPhiNodes.put(phiNode, assignments);
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        _handlers.clear();
+        _expandedPhiNodes.clear();
+    }
+}
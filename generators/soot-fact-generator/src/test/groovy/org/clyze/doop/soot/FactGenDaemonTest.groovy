@@ -0,0 +1,51 @@
+package org.clyze.doop.soot
+
+import spock.lang.Specification
+import spock.lang.TempDir
+import spock.lang.Timeout
+
+import static org.clyze.doop.soot.FactGenTestUtils.*
+
+class FactGenDaemonTest extends Specification {
+
+    @TempDir
+    File tmp
+
+    String userHome
+
+    def setup() {
+        // Keep the token file of the test daemon out of the real home.
+        userHome = System.getProperty('user.home')
+        System.setProperty('user.home', new File(tmp, 'home').canonicalPath)
+    }
+
+    def cleanup() {
+        System.setProperty('user.home', userHome)
+    }
+
+    File submit(int port, File input, String name) {
+        File out = new File(tmp, name)
+        out.mkdirs()
+        run(port, ['-i', input.path, '-d', out.path])
+        return out
+    }
+
+    @Timeout(600)
+    def "Consecutive jobs of a daemon do not see the state of earlier jobs"() {
+        given:
+        File jarA = jar(tmp, 'a', 'a.A', 'package a; public class A { int f; public int get() { return f + 1; } }')
+        File jarB = jar(tmp, 'b', 'b.B', 'package b; public class B { String s; public String get() { return s + "!"; } }')
+        int port = startDaemon()
+
+        when:
+        Map<String, List<String>> factsA1 = facts(submit(port, jarA, 'out-a1'))
+        Map<String, List<String>> factsB = facts(submit(port, jarB, 'out-b'))
+        Map<String, List<String>> factsA2 = facts(submit(port, jarA, 'out-a2'))
+
+        then:
+        factsA1.get('ClassType.facts').contains('a.A')
+        factsA1 == factsA2
+        factsB.get('ClassType.facts').contains('b.B')
+        factsB.values().flatten().every { !it.toString().contains('a.A') }
+    }
+}
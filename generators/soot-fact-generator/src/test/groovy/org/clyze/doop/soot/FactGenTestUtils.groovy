@@ -0,0 +1,86 @@
+package org.clyze.doop.soot
+
+import java.util.jar.JarEntry
+import java.util.jar.JarOutputStream
+import javax.tools.JavaCompiler
+import javax.tools.ToolProvider
+import org.clyze.doop.common.FactGenDaemon
+
+/** Helpers for tests that run the front end on small generated inputs. */
+class FactGenTestUtils {
+
+    /**
+     * Compile a class and package it as a JAR.
+     *
+     * @param dir         the directory to use
+     * @param name        the name of the JAR (without extension)
+     * @param className   the name of the class
+     * @param source      the source of the class
+     * @param classpath   the classpath to compile against (or null)
+     * @return            the JAR
+     */
+    static File jar(File dir, String name, String className, String source, String classpath = null) {
+        File srcDir = new File(dir, "${name}-src")
+        File classesDir = new File(dir, "${name}-classes")
+        File srcFile = new File(srcDir, className.replace('.', '/') + '.java')
+        srcFile.parentFile.mkdirs()
+        classesDir.mkdirs()
+        srcFile.text = source
+        JavaCompiler javac = ToolProvider.systemJavaCompiler
+        List<String> args = ['--release', '8', '-d', classesDir.path]
+        if (classpath != null)
+            args += ['-cp', classpath]
+        assert javac.run(null, null, null, (args + [srcFile.path]) as String[]) == 0
+
+        File jarFile = new File(dir, "${name}.jar")
+        new JarOutputStream(new FileOutputStream(jarFile)).withCloseable { out ->
+            classesDir.eachFileRecurse { File f ->
+                if (f.isFile()) {
+                    out.putNextEntry(new JarEntry(classesDir.toPath().relativize(f.toPath()).toString().replace(File.separatorChar, '/' as char)))
+                    out.write(f.bytes)
+                    out.closeEntry()
+                }
+            }
+        }
+        return jarFile
+    }
+
+    /**
+     * Read the facts of a directory.
+     *
+     * @param dir   the facts directory
+     * @return      the sorted rows of each facts file, by file name
+     */
+    static Map<String, List<String>> facts(File dir) {
+        Map<String, List<String>> facts = new TreeMap<>()
+        dir.eachFileMatch(~/.*\.facts/) { File f -> facts.put(f.name, f.readLines().sort()) }
+        return facts
+    }
+
+    /**
+     * Start a fact generation daemon in this JVM. The user home must
+     * point to a temporary directory, since the daemon writes its
+     * token file there.
+     *
+     * @return   the port of the daemon
+     */
+    static int startDaemon() {
+        int port = new ServerSocket(0).withCloseable { it.localPort }
+        Thread daemon = new Thread({ Main.Daemon.main([port as String] as String[]) })
+        daemon.daemon = true
+        daemon.start()
+        while (!FactGenDaemon.tokenFile(port).exists())
+            Thread.sleep(100)
+        return port
+    }
+
+    /**
+     * Run the front end in a daemon.
+     *
+     * @param port   the port of the daemon
+     * @param args   the front end arguments
+     */
+    static void run(int port, List<String> args) {
+        assert FactGenDaemon.submit(port, (args + ['--allow-phantom', '--fact-gen-cores', '1']) as String[], { }) >= 0
+    }
+}
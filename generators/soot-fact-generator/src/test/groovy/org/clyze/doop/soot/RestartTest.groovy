@@ -0,0 +1,59 @@
+package org.clyze.doop.soot
+
+import spock.lang.Specification
+import spock.lang.TempDir
+import spock.lang.Timeout
+
+import static org.clyze.doop.soot.FactGenTestUtils.*
+
+class RestartTest extends Specification {
+
+    // The relations that depend on what is phantom.
+    static final List<String> RELATIONS = [
+        'PhantomType', 'PhantomMethod', 'PhantomBasedMethod', 'AssignPhantomInvoke',
+        'AssignReturnValue', 'VirtualMethodInvocation', 'SpecialMethodInvocation',
+        'StaticMethodInvocation', 'Method', 'ClassType'
+    ]
+
+    @TempDir
+    File tmp
+
+    String userHome
+
+    def setup() {
+        userHome = System.getProperty('user.home')
+        System.setProperty('user.home', new File(tmp, 'home').canonicalPath)
+    }
+
+    def cleanup() {
+        System.setProperty('user.home', userHome)
+    }
+
+    static Map<String, Set<String>> relations(File dir) {
+        Map<String, List<String>> facts = facts(dir)
+        return RELATIONS.collectEntries { [(it): new TreeSet<>(facts.get(it + '.facts') ?: [])] }
+    }
+
+    @Timeout(600)
+    def "A restart that resolves phantoms produces the facts of a full run"() {
+        given:
+        File jarC = jar(tmp, 'c', 'c.C', 'package c; public class C { public int m() { return 1; } }')
+        File jarA = jar(tmp, 'a', 'a.A', 'package a; public class A { public int run() { return new c.C().m(); } }', jarC.path)
+        File full = new File(tmp, 'full')
+        File restarted = new File(tmp, 'restarted')
+        [full, restarted]*.mkdirs()
+        String generatedClasses = new File(tmp, 'generated-classes').path
+        int port = startDaemon()
+
+        when: 'the first run does not find c.C, the restart does'
+        run(port, ['-i', jarA.path, '-l', jarC.path, '-d', full.path])
+        run(port, ['-i', jarA.path, '--generated-classes', generatedClasses, '-d', restarted.path])
+        Map<String, Set<String>> firstRun = relations(restarted)
+        run(port, ['-i', jarA.path, '-l', jarC.path, '--generated-classes', generatedClasses, '-d', restarted.path])
+
+        then:
+        firstRun.get('PhantomType').contains('c.C')
+        !relations(full).get('PhantomType').contains('c.C')
+        relations(restarted) == relations(full)
+    }
+}
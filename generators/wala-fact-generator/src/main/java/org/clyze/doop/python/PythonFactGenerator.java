@@ -95,11 +95,11 @@ class PythonFactGenerator implements Runnable{
 
                 String clRepr = _writer.writeClassOrInterfaceType(iClass);
                 iClass.getAllFields().forEach(this::generate);
-                System.out.println("Adding Class " + clRepr);
+                logger.debug("Adding Class " + clRepr);
 
                 if (iClass.getSuperclass() != null && !iClass.isInterface()) {//Currently all seem to have object as a superclass, something not working on WALA's part
                     _writer.writeDirectSuperclass(iClass, iClass.getSuperclass());
-                    System.out.println("Class " + className +" extends " + iClass.getSuperclass().getName().toString().substring(1));
+                    logger.debug("Class " + className +" extends " + iClass.getSuperclass().getName().toString().substring(1));
                 }
 
             }else if (iClass instanceof CAstAbstractModuleLoader.DynamicCodeBody) {
@@ -125,7 +125,7 @@ class PythonFactGenerator implements Runnable{
 
     private void generate(IField f) {
         String fieldRepr = _writer.writeField(f);
-        System.out.println("Added Field: " + fieldRepr);
+        logger.debug("Added Field: " + fieldRepr);
     }
 
     private void generate(IMethod m, Session session) {
@@ -299,7 +299,7 @@ class PythonFactGenerator implements Runnable{
         int gotoTarget = instruction.getTarget();
         if(gotoTarget < 0)
         {
-            System.out.println("goto " + instruction.getTarget() + " for instr " + instruction.toString());
+            logger.debug("goto " + instruction.getTarget() + " for instr " + instruction.toString());
             gotoTarget = 0;
         }
 
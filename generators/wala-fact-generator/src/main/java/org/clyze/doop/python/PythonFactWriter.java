@@ -39,6 +39,7 @@ import org.clyze.doop.wala.Local;
 import org.clyze.doop.wala.Session;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedSet;
@@ -152,6 +153,32 @@ class PythonFactWriter {
         }
     }
 
+    /**
+     * Returns the signatures of the methods of some classes, by the
+     * name they are registered under (see registerMethods()).
+     *
+     * @param classes   the classes
+     * @return          a map from method names to signatures
+     */
+    static Map<String, String> methodSignatures(Iterable<IClass> classes) {
+        Map<String, String> signatures = new HashMap<>();
+        for (IClass iClass : classes)
+            for (IMethod m : iClass.getDeclaredMethods())
+                signatures.putIfAbsent(PythonRepresentation.nameOf(m), PythonRepresentation.signatureOf(m));
+        return signatures;
+    }
+
+    /**
+     * Register method signatures, so that other files can refer to
+     * them (see PythonRepresentation.getSigByName()). The first
+     * signature registered for a name wins.
+     *
+     * @param signatures   a map from method names to signatures
+     */
+    void registerMethods(Map<String, String> signatures) {
+        signatures.forEach(_rep::registerSignature);
+    }
+
     void writeMethod(IMethod m) {
         String result = _rep.signature(m);
         String simpleName = _rep.simpleName(m);
@@ -176,17 +203,17 @@ class PythonFactWriter {
 //                String declaringClass = classNameParts[1];
 //                String methodName = classNameParts[2];
 //                logger.info("Adding Method <" + declaringModule + ":" + declaringClass + ":" + methodName + ">");
-                logger.info("Adding Method " + result);
+                logger.debug("Adding Method " + result);
             }else{
 //                String outerFunct = classNameParts[1];
 //                String methodName = classNameParts[2];
 //                logger.info("Adding Inner Function <" + declaringModule + ":" + outerFunct + ":" + methodName + ">");
-                logger.info("Adding Inner Function " + result);
+                logger.debug("Adding Inner Function " + result);
             }
         }
         else{
 //            logger.info("Adding Function  <" + declaringModule + ":" +  classNameParts[classNameParts.length - 1] + ">");
-            logger.info("Adding Function " + result);
+            logger.debug("Adding Function " + result);
         }
 
         _db.add(STRING_RAW, result, result);
@@ -208,7 +235,7 @@ class PythonFactWriter {
         _db.add(GLOBAL_FUNCTION, funOrFileRep);
         _db.add(FILE_DECLAREDING_PACKAGE, funOrFileRep, fileName, fileDeclaredInFolder);
 
-        logger.info("PACKAGE " + fileDeclaredInFolder + " RESULT " + packageExists(fileDeclaredInFolder));
+        logger.debug("PACKAGE " + fileDeclaredInFolder + " RESULT " + packageExists(fileDeclaredInFolder));
         if(! packageExists(fileDeclaredInFolder)){
             addPackage(fileDeclaredInFolder);
             String declFolderDeclFolder = fileDeclaredInFolder.substring(0, fileDeclaredInFolder.lastIndexOf("/")).concat(">");
@@ -396,7 +423,7 @@ class PythonFactWriter {
             String walaFormalIndex = globalName.substring(globalName.lastIndexOf('_') + 1);
             String functionSig = methodId.replace(">", ":" + functionName +">");
             int formalIndex = Integer.parseInt(walaFormalIndex) - 1;
-            logger.info(functionSig + " | " + formalIndex + " | " + _rep.local(m, from));
+            logger.debug(functionSig + " | " + formalIndex + " | " + _rep.local(m, from));
             _db.add(FORMAL_PARAM_DEFAULT_VAR, functionSig, str(formalIndex), _rep.local(m, from));
         }
         _db.add(GLOBAL_WRITE, insn, str(index), globalName, _rep.local(m, from), methodId);
@@ -13,7 +13,13 @@ import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.clyze.doop.common.DoopErrorCodeException;
 import org.clyze.doop.python.utils.PythonDatabase;
@@ -44,63 +50,118 @@ public class PythonInvoker {
     {
         PythonDatabase db = new PythonDatabase(new File(parameters.getOutputDir()));
         PythonFactWriter factWriter = new PythonFactWriter(db);
-        int numOfFailures = 0;
-        int numOfEmptyCha = 0;
+        AtomicInteger numOfFailures = new AtomicInteger(0);
+        AtomicInteger numOfEmptyCha = new AtomicInteger(0);
         PythonCAstToIRTranslator.setSingleFileAnalysis(parameters._singleFileAnalysis);
-        for(String inputFile: parameters.getInputs()) {
-            try{
-                int numOfClassesInCha = 0;
-                //PythonIREngine pythonIREngine = new PythonIREngine(parameters._inputs);
-                List<String> singleInputList= new ArrayList<>(1);
-                singleInputList.add(inputFile);
-                PythonIREngine pythonIREngine = new PythonIREngine(singleInputList);
-                pythonIREngine.buildAnalysisScope();
-                IClassHierarchy cha = pythonIREngine.buildClassHierarchy();
 
-                IAnalysisCacheView cache = pythonIREngine.getAnalysisCache();
-                Iterator<IClass> classes = cha.iterator();
-                Set<IClass> classSet = new HashSet<>();
-                while (classes.hasNext()) {
-                    numOfClassesInCha++;
-                    IClass klass = classes.next();
-                    classSet.add(klass);
-                    String sourceFileName = "";
-                    try {
-                        sourceFileName = klass.getSourceFileName();
-                    } catch (NullPointerException ex) {
-                        System.err.println("Error reading " + klass + " source file name:" + ex.getMessage());
-                    }
-                    //System.out.println("class: " + klass.toString() + " in file: " + sourceFileName);
-                    Collection<? extends IMethod> methods = klass.getDeclaredMethods();
-                    for (IMethod m : methods) {
-                        try {
-                            m.getName();
-                            //System.out.println("\t" + m.getSignature());
-                            IR ir = cache.getIR(m);
-                            System.out.println(ir.toString());
-                        } catch (Exception ex) {
-                            System.err.println("ERROR: cannot get IR for method: " + m);
-                            ex.printStackTrace();
-                        }
-                    }
-                }
-                Runnable pythonFactGenerator = new PythonFactGenerator(factWriter, classSet, parameters.getOutputDir(), cache);
-                pythonFactGenerator.run();
-                if(numOfClassesInCha == 6) {
-                    numOfEmptyCha++;
-                    factWriter.writeError(PythonPredicateFile.EMPTY_CHA, inputFile);
-                }
-            }catch (Throwable t){
-                t.printStackTrace();
-                numOfFailures++;
-
-                factWriter.writeError(PythonPredicateFile.ERROR_OR_EXCEPTON, inputFile, t.toString());
+        // Every file gets its own engine (scope, class hierarchy and IR
+        // cache), used only by the thread that processes the file, so
+        // files are processed in parallel; only the fact writer is shared.
+        int cores = parameters._cores == null ? Runtime.getRuntime().availableProcessors() : parameters._cores;
+        ExecutorService executor = Executors.newFixedThreadPool(cores);
+        try {
+            // Facts refer to functions of other files by signature and the
+            // first signature registered for a name wins, so signatures are
+            // registered before any facts are generated, in input order.
+            // Only the signatures of a file are kept until then: its class
+            // hierarchy is built again when its facts are generated.
+            List<Future<Map<String, String>>> scans = new ArrayList<>();
+            for (String inputFile : parameters.getInputs())
+                scans.add(executor.submit(() -> scan(inputFile, factWriter, numOfFailures)));
+            List<String> inputs = new ArrayList<>();
+            for (int i = 0; i < scans.size(); i++) {
+                Map<String, String> signatures = scans.get(i).get();
+                if (signatures == null)
+                    continue;
+                factWriter.registerMethods(signatures);
+                inputs.add(parameters.getInputs().get(i));
             }
+            scans.clear();
+            List<Future<?>> files = new ArrayList<>();
+            for (String inputFile : inputs)
+                files.add(executor.submit(() -> process(parameters, inputFile, factWriter, numOfFailures, numOfEmptyCha)));
+            for (Future<?> f : files)
+                f.get();
+        } catch (InterruptedException | ExecutionException ex) {
+            throw new RuntimeException("Python fact generation failed: " + ex.getMessage(), ex);
+        } finally {
+            executor.shutdown();
         }
         factWriter.writeRootFolder();
-        System.out.println("Failed for " + numOfFailures + " out of " + parameters.getInputs().size() + " python script files.");
-        System.out.println("Empty Class Hierarchy for " + numOfEmptyCha + " out of " + parameters.getInputs().size() + " python script files.");
+        System.out.println("Failed for " + numOfFailures.get() + " out of " + parameters.getInputs().size() + " python script files.");
+        System.out.println("Empty Class Hierarchy for " + numOfEmptyCha.get() + " out of " + parameters.getInputs().size() + " python script files.");
 
         db.close();
     }
+
+    // Build the engine of a file and return its class hierarchy.
+    private static Set<IClass> loadClasses(PythonIREngine pythonIREngine) {
+        pythonIREngine.buildAnalysisScope();
+        IClassHierarchy cha = pythonIREngine.buildClassHierarchy();
+        Iterator<IClass> classes = cha.iterator();
+        Set<IClass> classSet = new HashSet<>();
+        while (classes.hasNext())
+            classSet.add(classes.next());
+        return classSet;
+    }
+
+    private static PythonIREngine newEngine(String inputFile) {
+        List<String> singleInputList= new ArrayList<>(1);
+        singleInputList.add(inputFile);
+        return new PythonIREngine(singleInputList);
+    }
+
+    // Return the method signatures of a file (null on failure).
+    private static Map<String, String> scan(String inputFile, PythonFactWriter factWriter,
+                                            AtomicInteger numOfFailures) {
+        try{
+            return PythonFactWriter.methodSignatures(loadClasses(newEngine(inputFile)));
+        }catch (Throwable t){
+            failed(inputFile, t, factWriter, numOfFailures);
+            return null;
+        }
+    }
+
+    private static void process(PythonParameters parameters, String inputFile, PythonFactWriter factWriter,
+                                AtomicInteger numOfFailures, AtomicInteger numOfEmptyCha) {
+        try{
+            PythonIREngine pythonIREngine = newEngine(inputFile);
+            Set<IClass> classSet = loadClasses(pythonIREngine);
+            IAnalysisCacheView cache = pythonIREngine.getAnalysisCache();
+            if (parameters._generateIR)
+                printIR(classSet, cache);
+            Runnable pythonFactGenerator = new PythonFactGenerator(factWriter, classSet, parameters.getOutputDir(), cache);
+            pythonFactGenerator.run();
+            if(classSet.size() == 6) {
+                numOfEmptyCha.incrementAndGet();
+                factWriter.writeError(PythonPredicateFile.EMPTY_CHA, inputFile);
+            }
+        }catch (Throwable t){
+            failed(inputFile, t, factWriter, numOfFailures);
+        }
+    }
+
+    private static void failed(String inputFile, Throwable t, PythonFactWriter factWriter, AtomicInteger numOfFailures) {
+        t.printStackTrace();
+        numOfFailures.incrementAndGet();
+
+        factWriter.writeError(PythonPredicateFile.ERROR_OR_EXCEPTON, inputFile, t.toString());
+    }
+
+    // Print the IRs of a file at once, so that they are not interleaved
+    // with the IRs of the files processed by other threads.
+    private static void printIR(Collection<IClass> classes, IAnalysisCacheView cache) {
+        StringBuilder sb = new StringBuilder();
+        for (IClass klass : classes)
+            for (IMethod m : klass.getDeclaredMethods()) {
+                try {
+                    IR ir = cache.getIR(m);
+                    sb.append(ir.toString()).append('\n');
+                } catch (Exception ex) {
+                    System.err.println("ERROR: cannot get IR for method: " + m);
+                    ex.printStackTrace();
+                }
+            }
+        System.out.print(sb);
+    }
 }
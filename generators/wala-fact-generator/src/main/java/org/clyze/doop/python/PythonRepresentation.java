@@ -124,13 +124,27 @@ class PythonRepresentation {
     }
 
     String signature(IMethod m) {
+        String methSig = signatureOf(m);
+        _methodSigRepr.putIfAbsent(nameOf(m), methSig);
+        return methSig;
+    }
+
+    // The signature of a method, without registering it.
+    static String signatureOf(IMethod m) {
         //return signature(m.getReference());
         String sourceFileName = m.getDeclaringClass().getSourceFileName();
         String sourceFolderName = sourceFileName.substring(0, sourceFileName.lastIndexOf("/") + 1);
-        String functionName = m.getDeclaringClass().getName().toString().substring(1).replaceFirst("script ","").replace("/",":");
-        String methSig = "<" + sourceFolderName + functionName + ">";
-        _methodSigRepr.putIfAbsent(m.getDeclaringClass().getName().toString().substring(1), methSig);
-        return methSig;
+        String functionName = nameOf(m).replaceFirst("script ","").replace("/",":");
+        return "<" + sourceFolderName + functionName + ">";
+    }
+
+    // The name under which the signature of a method is registered.
+    static String nameOf(IMethod m) {
+        return m.getDeclaringClass().getName().toString().substring(1);
+    }
+
+    void registerSignature(String name, String methSig) {
+        _methodSigRepr.putIfAbsent(name, methSig);
     }
 
     String getSigByName(String name){
@@ -0,0 +1,44 @@
+package org.clyze.doop.wala;
+
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.ipa.callgraph.impl.Everywhere;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.IRFactory;
+import com.ibm.wala.ssa.SSAOptions;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The IRs of the methods of the class being processed by a fact
+ * generation thread. IRs are built on demand (and shared by the IR
+ * printer and the fact generator) and dropped when the facts of the
+ * class have been written, so that only the IRs of the classes being
+ * processed are alive at any time. Not thread-safe: each thread uses
+ * its own object.
+ */
+class ClassIRs {
+    private final IRFactory<IMethod> factory;
+    private final SSAOptions options;
+    private final Map<IMethod, IR> irs = new HashMap<>();
+
+    ClassIRs(IRFactory<IMethod> factory, SSAOptions options) {
+        this.factory = factory;
+        this.options = options;
+    }
+
+    IR get(IMethod m) {
+        IR ir = irs.get(m);
+        if (ir == null) {
+            ir = factory.makeIR(m, Everywhere.EVERYWHERE, options);
+            if (ir == null)
+                throw new RuntimeException("Could not create IR for method " + m);
+            irs.put(m, ir);
+        }
+        return ir;
+    }
+
+    void clear() {
+        irs.clear();
+    }
+}
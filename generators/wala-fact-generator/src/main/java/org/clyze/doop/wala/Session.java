@@ -1,8 +1,7 @@
 package org.clyze.doop.wala;
 
 import com.ibm.wala.ssa.SSAInstruction;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import org.clyze.doop.common.ObjectIntMap;
 import org.clyze.doop.common.SessionCounter;
 
 public class Session extends SessionCounter {
@@ -21,8 +20,8 @@ public class Session extends SessionCounter {
      * In general, it is very important to understand how to correctly use Session when applying changes to the WALA front end
      * Unnecessary calls to calcInstructionIndex() (in contrast with the SOOT front end where they do not affect the facts) can create wrong facts.
      */
-    private final Map<SSAInstruction, Integer> _instructions = new ConcurrentHashMap<>();
-    private final Map<SSAInstruction, Integer> _instructionsMaxIndex = new ConcurrentHashMap<>();
+    private final ObjectIntMap<SSAInstruction> _instructions = new ObjectIntMap<>();
+    private final ObjectIntMap<SSAInstruction> _instructionsMaxIndex = new ObjectIntMap<>();
     private int index = 0;
 
     /**
@@ -40,8 +39,8 @@ public class Session extends SessionCounter {
 
     public int getInstructionNumber(SSAInstruction instruction)
     {
-        Integer result = _instructions.get(instruction);
-        if(result == null) {
+        int result = _instructions.get(instruction, -1);
+        if(result < 0) {
             throw new RuntimeException("No unit number available for '" + instruction + "'");
         }
 
@@ -50,13 +49,20 @@ public class Session extends SessionCounter {
 
     public int getMaxInstructionNumber(SSAInstruction instruction)
     {
-        Integer result = _instructionsMaxIndex.get(instruction);
-        if(result == null) {
+        int result = _instructionsMaxIndex.get(instruction, -1);
+        if(result < 0) {
             throw new RuntimeException("No unit number available for '" + instruction + "'");
         }
 
         return result;
     }
 
+    @Override
+    public void reset() {
+        super.reset();
+        _instructions.clear();
+        _instructionsMaxIndex.clear();
+        index = 0;
+    }
 }
 
@@ -1,28 +1,51 @@
 package org.clyze.doop.wala;
 
+import com.ibm.wala.classLoader.IBytecodeMethod;
 import com.ibm.wala.classLoader.IClass;
-import com.ibm.wala.ipa.callgraph.IAnalysisCacheView;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.shrikeCT.InvalidClassFileException;
+import com.ibm.wala.ssa.IRFactory;
+import com.ibm.wala.ssa.SSAOptions;
 import org.clyze.doop.common.Driver;
 
 class WalaDriver extends Driver<IClass> {
-    private final IAnalysisCacheView _cache;
+    private final IRFactory<IMethod> _irFactory;
+    private final SSAOptions _ssaOptions;
     private final WalaFactWriter _factWriter;
     private final String _outDir;
     private final boolean _android;
 
-    WalaDriver(int totalClasses, Integer cores, IAnalysisCacheView cache,
+    WalaDriver(int totalClasses, Integer cores,
+               IRFactory<IMethod> irFactory, SSAOptions ssaOptions,
                WalaFactWriter factWriter,
                String outDir, boolean isAndroidAnalysis) {
         super(totalClasses, cores);
-        _cache = cache;
+        _irFactory = irFactory;
+        _ssaOptions = ssaOptions;
         _factWriter = factWriter;
         _outDir = outDir;
         _android = isAndroidAnalysis;
     }
 
+    @Override
+    protected long estimateSize(IClass iClass) {
+        long size = 0;
+        for (IMethod m : iClass.getDeclaredMethods()) {
+            size++;
+            if (m instanceof IBytecodeMethod) {
+                try {
+                    size += ((IBytecodeMethod<?>) m).getInstructions().length;
+                } catch (InvalidClassFileException ignored) {
+                    // The method will be reported during fact generation.
+                }
+            }
+        }
+        return size;
+    }
+
     @Override
     protected Runnable getFactGenRunnable() {
-        return new WalaFactGenerator(_factWriter, _tmpClassGroup, _outDir, _android, _cache);
+        return new WalaFactGenerator(_factWriter, _tmpClassGroup, _outDir, _android, _irFactory, _ssaOptions, getStats());
     }
 
     @Override
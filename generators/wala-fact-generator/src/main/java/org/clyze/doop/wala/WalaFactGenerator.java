@@ -8,12 +8,11 @@ import com.ibm.wala.classLoader.IMethod;
 import com.ibm.wala.dalvik.analysis.typeInference.DalvikTypeInference;
 import com.ibm.wala.dalvik.classLoader.DexIMethod;
 import com.ibm.wala.ipa.callgraph.AnalysisOptions;
-import com.ibm.wala.ipa.callgraph.IAnalysisCacheView;
-import com.ibm.wala.ipa.callgraph.impl.Everywhere;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
 import com.ibm.wala.shrikeCT.InvalidClassFileException;
 import com.ibm.wala.ssa.ConstantValue;
 import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.IRFactory;
 import com.ibm.wala.ssa.SSAArrayLengthInstruction;
 import com.ibm.wala.ssa.SSAArrayLoadInstruction;
 import com.ibm.wala.ssa.SSAArrayStoreInstruction;
@@ -30,6 +29,7 @@ import com.ibm.wala.ssa.SSAInstruction;
 import com.ibm.wala.ssa.SSAInvokeInstruction;
 import com.ibm.wala.ssa.SSALoadMetadataInstruction;
 import com.ibm.wala.ssa.SSAMonitorInstruction;
+import com.ibm.wala.ssa.SSAOptions;
 import com.ibm.wala.ssa.SSANewInstruction;
 import com.ibm.wala.ssa.SSAPhiInstruction;
 import com.ibm.wala.ssa.SSAPiInstruction;
@@ -42,6 +42,8 @@ import com.ibm.wala.ssa.SymbolTable;
 import com.ibm.wala.ssa.Value;
 import com.ibm.wala.types.TypeReference;
 import org.apache.log4j.Logger;
+import org.clyze.doop.common.FactGenStats;
+import org.clyze.doop.common.MethodArena;
 
 import java.util.Iterator;
 import java.util.Set;
@@ -59,28 +61,32 @@ import static org.clyze.doop.wala.WalaUtils.getNextNonNullInstruction;
 class WalaFactGenerator implements Runnable {
 
     private final Logger logger = Logger.getLogger(getClass());
+    private static final ThreadLocal<MethodArena<Session>> arena = MethodArena.perThread(Session::new);
 
     private final WalaFactWriter _writer;
     private final Set<IClass> _iClasses;
     private AnalysisOptions options;
     private final boolean _android;
-    private final IAnalysisCacheView cache;
+    // The IRs of the current class (built on demand).
+    private final ClassIRs irs;
     private final WalaIRPrinter IRPrinter;
+    private final FactGenStats _stats;
 
-    WalaFactGenerator(WalaFactWriter writer, Set<IClass> iClasses, String outDir, boolean androidAnalysis, IAnalysisCacheView analysisCache)
+    WalaFactGenerator(WalaFactWriter writer, Set<IClass> iClasses, String outDir, boolean androidAnalysis, IRFactory<IMethod> irFactory, SSAOptions ssaOptions, FactGenStats stats)
     {
         this._writer = writer;
         this._iClasses = iClasses;
+        this._stats = stats;
         //options = new AnalysisOptions();
         //options.getSSAOptions().setPiNodePolicy(SSAOptions.getAllBuiltInPiNodes()); //CURRENTLY these are not active
         _android = androidAnalysis;
-        cache = analysisCache;
+        irs = new ClassIRs(irFactory, ssaOptions);
 //        if(androidAnalysis)
 //            cache = new AnalysisCacheImpl(new DexIRFactory());
 //        else
 //            cache = new AnalysisCacheImpl();                //Without the SSaOptions -- piNodes
         //cache = new AnalysisCacheImpl(new DefaultIRFactory(), options.getSSAOptions()); //Change to this to make the IR according to the SSAOptions -- to include piNodes
-        IRPrinter = new WalaIRPrinter(cache,outDir);
+        IRPrinter = new WalaIRPrinter(irs,outDir);
     }
 
 
@@ -88,44 +94,57 @@ class WalaFactGenerator implements Runnable {
     public void run() {
 
         for (IClass iClass : _iClasses) {
-            IRPrinter.printIR(iClass);
-            _writer.writeClassOrInterfaceType(iClass);
-            //TODO: Handling of Arrays?
-            if(iClass.isAbstract())
-                _writer.writeClassModifier(iClass, "abstract");
+            long classStart = System.nanoTime();
+            try {
+                generate(iClass);
+            } finally {
+                // The IRs of the class are not needed any more.
+                irs.clear();
+            }
+            _stats.recordClass(iClass.getName().toString(), System.nanoTime() - classStart);
+        }
+    }
+
+    private void generate(IClass iClass) {
+        IRPrinter.printIR(iClass);
+        _writer.writeClassOrInterfaceType(iClass);
+        //TODO: Handling of Arrays?
+        if(iClass.isAbstract())
+            _writer.writeClassModifier(iClass, "abstract");
 //            if(Modifier.isFinal(modifiers))
 //                _writer.writeClassModifier(iClass, "final");
-            if(iClass.isPublic())
-                _writer.writeClassModifier(iClass, "public");
-            if(iClass.isPrivate())
-                _writer.writeClassModifier(iClass, "private");
-
-            // the isInterface condition prevents Object as superclass of interface
-            if (iClass.getSuperclass() != null && !iClass.isInterface()) {
-                _writer.writeDirectSuperclass(iClass, iClass.getSuperclass());
-            }
+        if(iClass.isPublic())
+            _writer.writeClassModifier(iClass, "public");
+        if(iClass.isPrivate())
+            _writer.writeClassModifier(iClass, "private");
 
-            for (IClass i : iClass.getAllImplementedInterfaces()) {
-                _writer.writeDirectSuperinterface(iClass, i);
-            }
+        // the isInterface condition prevents Object as superclass of interface
+        if (iClass.getSuperclass() != null && !iClass.isInterface()) {
+            _writer.writeDirectSuperclass(iClass, iClass.getSuperclass());
+        }
 
-            iClass.getDeclaredInstanceFields().forEach(this::generate);
-            try {
-                iClass.getDeclaredStaticFields().forEach(this::generate);
-            } catch (NullPointerException exc) { //For some reason in DexClasses .getDeclaredStaticFields() can throw a NullPointerException
-                System.err.println("Ignoring null exception when reading static fields");
-            }
+        for (IClass i : iClass.getAllImplementedInterfaces()) {
+            _writer.writeDirectSuperinterface(iClass, i);
+        }
+
+        iClass.getDeclaredInstanceFields().forEach(this::generate);
+        try {
+            iClass.getDeclaredStaticFields().forEach(this::generate);
+        } catch (NullPointerException exc) { //For some reason in DexClasses .getDeclaredStaticFields() can throw a NullPointerException
+            System.err.println("Ignoring null exception when reading static fields");
+        }
 
 
-            for (IMethod m : iClass.getDeclaredMethods()) {
-                Session session = new org.clyze.doop.wala.Session();
-                try {
-                    generate(m, session);
-                } catch (Exception exc) {
-                    System.err.println("Error while processing method: " + m + " of class " + m.getDeclaringClass());
-                    exc.printStackTrace();
-                    throw exc;
-                }
+        for (IMethod m : iClass.getDeclaredMethods()) {
+            Session session = arena.get().reset().session();
+            long methodStart = System.nanoTime();
+            try {
+                generate(m, session);
+                _stats.recordMethod(m.getSignature(), System.nanoTime() - methodStart);
+            } catch (Exception exc) {
+                System.err.println("Error while processing method: " + m + " of class " + m.getDeclaringClass());
+                exc.printStackTrace();
+                throw exc;
             }
         }
     }
@@ -232,10 +251,11 @@ class WalaFactGenerator implements Runnable {
         if(!(m.isAbstract() || m.isNative()))
         {
             try {
-                IR ir = cache.getIR(m, Everywhere.EVERYWHERE);
+                IR ir = irs.get(m);
                 generate(m, ir, session);
             } catch (Throwable t){
                 System.err.println("Ignoring exception: " + t.getMessage());
+                _writer.releaseRows();
             }
         }
     }
@@ -167,7 +167,7 @@ class WalaFactWriter extends JavaFactWriter {
         if(m.isStatic())
             arity = Integer.toString(m.getNumberOfParameters());
 
-        _db.add(STRING_RAW, result, result);
+        _db.row(STRING_RAW).col(result).col(result).end();
         writeMethod(result, WalaRepresentation.simpleName(m.getReference()), WalaRepresentation.params(m.getReference()), writeType(m.getReference().getDeclaringClass()), writeType(m.getReturnType()), m.getDescriptor().toUnicodeString(), arity);
         for (Annotation annotation : m.getAnnotations()) {
             writeMethodAnnotation(result, fixTypeString(annotation.getType().toString()));
@@ -209,10 +209,10 @@ class WalaFactWriter extends JavaFactWriter {
     void writeClassOrInterfaceType(IClass c) {
         String classStr = fixTypeString(c.getName().toString());
         if (c.isInterface()) {
-            _db.add(INTERFACE_TYPE, classStr);
+            _db.row(INTERFACE_TYPE).col(classStr).end();
         }
         else {
-            _db.add(CLASS_TYPE, classStr);
+            _db.row(CLASS_TYPE).col(classStr).end();
         }
         writeClassHeap(WalaRepresentation.classConstant(c), classStr);
 
@@ -220,19 +220,19 @@ class WalaFactWriter extends JavaFactWriter {
             Collection<Annotation> annotations = c.getAnnotations();
             if (annotations != null) {
                 for (Annotation annotation : annotations) {
-                    _db.add(TYPE_ANNOTATION, classStr, fixTypeString(annotation.getType().toString()));
+                    _db.row(TYPE_ANNOTATION).col(classStr).col(fixTypeString(annotation.getType().toString())).end();
                 }
             }
         }
-        _db.add(TYPE_SIMPLENAME, c.getName().getClassName().toString());
+        _db.row(TYPE_SIMPLENAME).col(c.getName().getClassName().toString()).end();
     }
 
     void writeDirectSuperclass(IClass sub, IClass sup) {
-        _db.add(DIRECT_SUPER_CLASS, writeType(sub.getReference()), writeType(sup.getReference()));
+        _db.row(DIRECT_SUPER_CLASS).col(writeType(sub.getReference())).col(writeType(sup.getReference())).end();
     }
 
     void writeDirectSuperinterface(IClass clazz, IClass iface) {
-        _db.add(DIRECT_SUPER_IFACE, writeType(clazz.getReference()), writeType(iface.getReference()));
+        _db.row(DIRECT_SUPER_IFACE).col(writeType(clazz.getReference())).col(writeType(iface.getReference())).end();
     }
 
     private String writeType(IClass c) {
@@ -284,7 +284,7 @@ class WalaFactWriter extends JavaFactWriter {
             //System.out.println("Method " + sig + " is phantom.");
             _phantomMethod.put(sig,"");
             writePhantomMethod(sig);
-            _db.add(STRING_RAW, sig, sig);
+            _db.row(STRING_RAW).col(sig).col(sig).end();
             String arity = Integer.toString(m.getNumberOfParameters());
             writeMethod(sig, WalaRepresentation.simpleName(m), WalaRepresentation.params(m), writeType(m.getDeclaringClass()), writeType(m.getReturnType()), m.getDescriptor().toUnicodeString(), arity);
         }
@@ -295,7 +295,7 @@ class WalaFactWriter extends JavaFactWriter {
         //System.out.println("Method signature " + sig + " contains phantom types.");
         if(_phantomBasedMethod.get(sig) == null) {
             _phantomBasedMethod.put(sig,"");
-            _db.add(PHANTOM_BASED_METHOD, sig);
+            _db.row(PHANTOM_BASED_METHOD).col(sig).end();
         }
 //        _db.add(STRING_RAW, sig, sig);
 //        String arity = Integer.toString(m.getNumberOfParameters());
@@ -307,7 +307,7 @@ class WalaFactWriter extends JavaFactWriter {
         String insn = _rep.instruction(m, instruction, index);
         String methodId = _rep.signature(m);
 
-        _db.add(ENTER_MONITOR, insn, str(index), _rep.local(m, var), methodId);
+        _db.row(ENTER_MONITOR).col(insn).col(index).col(_rep.local(m, var)).col(methodId).end();
     }
 
     void writeExitMonitor(IMethod m, SSAMonitorInstruction instruction, Local var, Session session) {
@@ -315,7 +315,7 @@ class WalaFactWriter extends JavaFactWriter {
         String insn = _rep.instruction(m, instruction, index);
         String methodId = _rep.signature(m);
 
-        _db.add(EXIT_MONITOR, insn, str(index), _rep.local(m, var), methodId);
+        _db.row(EXIT_MONITOR).col(insn).col(index).col(_rep.local(m, var)).col(methodId).end();
     }
 
     void writeAssignLocal(IMethod m, SSAInstruction instruction, Local to, Local from, Session session) {
@@ -329,7 +329,7 @@ class WalaFactWriter extends JavaFactWriter {
         String heap = _rep.heapAlloc(m, instruction, session);
 
 
-        _db.add(NORMAL_HEAP, heap, writeType(instruction.getConcreteType()));
+        _db.row(NORMAL_HEAP).col(heap).col(writeType(instruction.getConcreteType())).end();
 
         if (instruction.getNewSite().getDeclaredType().isArrayType()) {
             int arrayLengthVar = instruction.getUse(0);
@@ -338,14 +338,15 @@ class WalaFactWriter extends JavaFactWriter {
                 int arrayLength = symbolTable.getIntValue(arrayLengthVar);
 
                 if(arrayLength == 0)
-                    _db.add(EMPTY_ARRAY, heap);
+                    _db.row(EMPTY_ARRAY).col(heap).end();
             }
         }
 
         int index = session.calcInstructionNumber(instruction);
         String insn = _rep.instruction(m, instruction, index);
         String methodId = _rep.signature(m);
-        _db.add(ASSIGN_HEAP_ALLOC, insn, str(index), heap, _rep.local(m, l), methodId, ""+getLineNumberFromInstruction(ir, instruction));
+        _db.row(ASSIGN_HEAP_ALLOC).col(insn).col(index).col(heap).col(_rep.local(m, l)).col(methodId)
+            .col(getLineNumberFromInstruction(ir, instruction)).end();
     }
 
     //Sifis: This information is not correct for StringConstants as we take the index of
@@ -389,8 +390,9 @@ class WalaFactWriter extends JavaFactWriter {
 
         String methodId = writeMethod(m);
 
-        _db.add(NORMAL_HEAP, heap, writeType(arrayType));
-        _db.add(ASSIGN_HEAP_ALLOC, insn, str(index), heap, assignTo, methodId, ""+getLineNumberFromInstruction(ir, instruction));
+        _db.row(NORMAL_HEAP).col(heap).col(writeType(arrayType)).end();
+        _db.row(ASSIGN_HEAP_ALLOC).col(insn).col(index).col(heap).col(assignTo).col(methodId)
+            .col(getLineNumberFromInstruction(ir, instruction)).end();
 
         TypeReference componentType = getComponentType(arrayType);
         if (componentType.isArrayType()) {
@@ -399,7 +401,7 @@ class WalaFactWriter extends JavaFactWriter {
             int storeInsnIndex = session.calcInstructionNumber(instruction);
             String storeInsn = _rep.instruction(m, instruction, storeInsnIndex);
 
-            _db.add(STORE_ARRAY_INDEX, storeInsn, str(storeInsnIndex), childAssignTo, assignTo, methodId);
+            _db.row(STORE_ARRAY_INDEX).col(storeInsn).col(storeInsnIndex).col(childAssignTo).col(assignTo).col(methodId).end();
             writeLocal(childAssignTo, writeType(componentType), methodId);
         }
     }
@@ -458,7 +460,8 @@ class WalaFactWriter extends JavaFactWriter {
         String insn = _rep.signature(m) + "/assign/" + index; // Not using _rep.instruction() because we do not want to be identified by our instr
         String methodId = _rep.signature(m);
 
-        _db.add(ASSIGN_HEAP_ALLOC, insn, str(index), heapId, _rep.local(m, l), methodId, ""+getLineNumberFromInstruction(ir, instruction));
+        _db.row(ASSIGN_HEAP_ALLOC).col(insn).col(index).col(heapId).col(_rep.local(m, l)).col(methodId)
+            .col(getLineNumberFromInstruction(ir, instruction)).end();
     }
 
     private void writeAssignNull(IMethod m, SSAInstruction instruction, Local l, Session session) {
@@ -466,7 +469,7 @@ class WalaFactWriter extends JavaFactWriter {
         String insn = _rep.signature(m) + "/assign/" + index; // Not using _rep.instruction() because we do not want to be identified by our instr
         String methodId = _rep.signature(m);
 
-        _db.add(ASSIGN_NULL, insn, str(index), _rep.local(m, l), methodId);
+        _db.row(ASSIGN_NULL).col(insn).col(index).col(_rep.local(m, l)).col(methodId).end();
     }
 
     private void writeAssignNumConstant(IMethod m, SSAInstruction instruction, Local l, ConstantValue constant, Session session) {
@@ -474,7 +477,7 @@ class WalaFactWriter extends JavaFactWriter {
         String insn = _rep.signature(m) + "/assign/" + index; // Not using _rep.instruction() because we do not want to be identified by our instr
         String methodId = _rep.signature(m);
 
-        _db.add(ASSIGN_NUM_CONST, insn, str(index), constant.toString().substring(1), _rep.local(m, l), methodId);
+        _db.row(ASSIGN_NUM_CONST).col(insn).col(index).col(constant.toString().substring(1)).col(_rep.local(m, l)).col(methodId).end();
     }
 
     private void writeAssignMethodTypeConstant(IMethod m, SSAInstruction instr, Local l, ConstantValue constant, Session session) {
@@ -485,7 +488,7 @@ class WalaFactWriter extends JavaFactWriter {
         String methodId = _rep.signature(m);
 
         writeMethodTypeConstant(heap);
-        _db.add(ASSIGN_HEAP_ALLOC, insn, str(index), heap, _rep.local(m, l), methodId, "0");
+        _db.row(ASSIGN_HEAP_ALLOC).col(insn).col(index).col(heap).col(_rep.local(m, l)).col(methodId).col("0").end();
     }
 
     private void writeAssignMethodHandleConstant(IMethod m, SSAInstruction instr, Local l, ConstantValue constant, Session session) {
@@ -509,7 +512,7 @@ class WalaFactWriter extends JavaFactWriter {
         String params = bh.substring(bh.indexOf('(') + 1, bh.indexOf(')'));
         writeMethodHandleConstant(heap, handleName, retType, params, arity);
 
-        _db.add(ASSIGN_HEAP_ALLOC, insn, str(index), heap, _rep.local(m, l), methodId, "0");
+        _db.row(ASSIGN_HEAP_ALLOC).col(insn).col(index).col(heap).col(_rep.local(m, l)).col(methodId).col("0").end();
     }
 
     private void writeAssignClassConstant(IMethod m, SSAInstruction instruction, Local l, ConstantValue constant, Session session) {
@@ -539,7 +542,7 @@ class WalaFactWriter extends JavaFactWriter {
         String methodId = _rep.signature(m);
 
         // REVIEW: the class object is not explicitly written. Is this always ok?
-        _db.add(ASSIGN_HEAP_ALLOC, insn, str(index), heap, _rep.local(m, l), methodId, "0");
+        _db.row(ASSIGN_HEAP_ALLOC).col(insn).col(index).col(heap).col(_rep.local(m, l)).col(methodId).col("0").end();
     }
 
     //Parameter is SSAInstruction because both SSAConversionInstruction and SSACheckCastInstruction are cast instructions
@@ -548,7 +551,7 @@ class WalaFactWriter extends JavaFactWriter {
         String insn = _rep.instruction(m, instruction, index);
         String methodId = _rep.signature(m);
 
-        _db.add(ASSIGN_CAST, insn, str(index), _rep.local(m, from), _rep.local(m, to), writeType(t), methodId);
+        _db.row(ASSIGN_CAST).col(insn).col(index).col(_rep.local(m, from)).col(_rep.local(m, to)).col(writeType(t)).col(methodId).end();
     }
 
     void writeAssignCastNumericConstant(IMethod m, SSAInstruction instruction, Local to, Local from, TypeReference t, Session session) {
@@ -560,7 +563,7 @@ class WalaFactWriter extends JavaFactWriter {
         String value = from.getValue();
         if (type.equals("int") || type.equals("long"))
             writeNumConstantRaw(value, type);
-        _db.add(ASSIGN_CAST_NUM_CONST, insn, str(index), value, _rep.local(m, to), writeType(t), methodId);
+        _db.row(ASSIGN_CAST_NUM_CONST).col(insn).col(index).col(value).col(_rep.local(m, to)).col(writeType(t)).col(methodId).end();
     }
 
     void writeAssignCastNull(IMethod m, SSAInstruction instruction, Local to, TypeReference t, Session session) {
@@ -568,7 +571,7 @@ class WalaFactWriter extends JavaFactWriter {
         String insn = _rep.instruction(m, instruction, index);
         String methodId = _rep.signature(m);
 
-        _db.add(ASSIGN_CAST_NULL, insn, str(index), _rep.local(m, to), writeType(t), methodId);
+        _db.row(ASSIGN_CAST_NULL).col(insn).col(index).col(_rep.local(m, to)).col(writeType(t)).col(methodId).end();
     }
 
     void writeStoreInstanceField(IMethod m, SSAInstruction instruction, FieldReference f, Local base, Local from, Session session) {
@@ -586,7 +589,7 @@ class WalaFactWriter extends JavaFactWriter {
 
         TypeReference declaringClass = getCorrectFieldDeclaringClass(f, m.getClassHierarchy());
         String fieldId = WalaRepresentation.signature(f, declaringClass);
-        _db.add(predicateFile, insn, str(index), _rep.local(m, var), _rep.local(m, base), fieldId, methodId);
+        _db.row(predicateFile).col(insn).col(index).col(_rep.local(m, var)).col(_rep.local(m, base)).col(fieldId).col(methodId).end();
     }
 
     void writeStoreStaticField(IMethod m, SSAInstruction instruction, FieldReference f, Local from, Session session) {
@@ -604,7 +607,7 @@ class WalaFactWriter extends JavaFactWriter {
 
         TypeReference declaringClass = getCorrectFieldDeclaringClass(f, m.getClassHierarchy());
         String fieldId = WalaRepresentation.signature(f, declaringClass);
-        _db.add(predicateFile, insn, str(index), _rep.local(m, var), fieldId, methodId);
+        _db.row(predicateFile).col(insn).col(index).col(_rep.local(m, var)).col(fieldId).col(methodId).end();
     }
 
     void writeLoadArrayIndex(IMethod m, SSAInstruction  instruction, Local base, Local to, Local arrIndex, Session session) {
@@ -620,14 +623,14 @@ class WalaFactWriter extends JavaFactWriter {
         String insn = _rep.instruction(m, instruction, index);
         String methodId = _rep.signature(m);
 
-        _db.add(predicateFile, insn, str(index), _rep.local(m, var), _rep.local(m, base), methodId);
+        _db.row(predicateFile).col(insn).col(index).col(_rep.local(m, var)).col(_rep.local(m, base)).col(methodId).end();
 
         if (arrIndex != null)
-            _db.add(ARRAY_INSN_INDEX, insn, _rep.local(m, arrIndex));
+            _db.row(ARRAY_INSN_INDEX).col(insn).col(_rep.local(m, arrIndex)).end();
     }
 
     void writeApplicationClass(IClass application) {
-        _db.add(APP_CLASS, writeType(application.getReference()));
+        _db.row(APP_CLASS).col(writeType(application.getReference())).end();
     }
 
     //To be used instead of IClass.getAllFields()to avoid NullPointerExceptions in Android
@@ -685,12 +688,13 @@ class WalaFactWriter extends JavaFactWriter {
 
     public void writeField(IField f) {
         String fieldId = WalaRepresentation.signature(f);
-        _db.add(FIELD_SIGNATURE, fieldId, writeType(f.getReference().getDeclaringClass()), WalaRepresentation.simpleName(f), writeType(f.getFieldTypeReference()));
+        _db.row(FIELD_SIGNATURE).col(fieldId).col(writeType(f.getReference().getDeclaringClass()))
+            .col(WalaRepresentation.simpleName(f)).col(writeType(f.getFieldTypeReference())).end();
         if(f instanceof FieldImpl) { //Currently annotations do not work on android and are disabled
             Collection<Annotation> annotations = f.getAnnotations();
             if (annotations != null) {
                 for (Annotation annotation : annotations) {
-                    _db.add(FIELD_ANNOTATION, fieldId, fixTypeString(annotation.getType().toString()));
+                    _db.row(FIELD_ANNOTATION).col(fieldId).col(fixTypeString(annotation.getType().toString())).end();
                 }
             }
         }
@@ -699,7 +703,7 @@ class WalaFactWriter extends JavaFactWriter {
 
     void writeFieldModifier(IField f, String modifier) {
         String fieldId = WalaRepresentation.signature(f);
-        _db.add(FIELD_MODIFIER, modifier, fieldId);
+        _db.row(FIELD_MODIFIER).col(modifier).col(fieldId).end();
     }
 
     void writeClassModifier(IClass c, String modifier) {
@@ -708,7 +712,7 @@ class WalaFactWriter extends JavaFactWriter {
 
     void writeMethodModifier(IMethod m, String modifier) {
         String methodId = _rep.signature(m);
-        _db.add(METHOD_MODIFIER, modifier, methodId);
+        _db.row(METHOD_MODIFIER).col(modifier).col(methodId).end();
     }
 
 
@@ -717,7 +721,7 @@ class WalaFactWriter extends JavaFactWriter {
         String insn = _rep.instruction(m, instruction, index);
         String methodId = _rep.signature(m);
 
-        _db.add(RETURN, insn, str(index), _rep.local(m, l), methodId);
+        _db.row(RETURN).col(insn).col(index).col(_rep.local(m, l)).col(methodId).end();
     }
 
     void writeReturnVoid(IMethod m, SSAInstruction instruction, Session session) {
@@ -725,7 +729,7 @@ class WalaFactWriter extends JavaFactWriter {
         String insn = _rep.instruction(m, instruction, index);
         String methodId = _rep.signature(m);
 
-        _db.add(RETURN_VOID, insn, str(index), methodId);
+        _db.row(RETURN_VOID).col(insn).col(index).col(methodId).end();
     }
 
     // The return var of native methods is exceptional, in that it does not
@@ -734,7 +738,7 @@ class WalaFactWriter extends JavaFactWriter {
         String methodId = _rep.signature(m);
 
         String var = _rep.nativeReturnVar(m);
-        _db.add(NATIVE_RETURN_VAR, var, methodId);
+        _db.row(NATIVE_RETURN_VAR).col(var).col(methodId).end();
         writeLocal(var, writeType(m.getReturnType()), methodId);
     }
 
@@ -751,7 +755,7 @@ class WalaFactWriter extends JavaFactWriter {
         String insn = _rep.instruction(m, instruction, index);
         String methodId = _rep.signature(m);
 
-        _db.add(GOTO, insn, str(index), str(indexTo), methodId);
+        _db.row(GOTO).col(insn).col(index).col(indexTo).col(methodId).end();
     }
 
     /**
@@ -808,7 +812,7 @@ class WalaFactWriter extends JavaFactWriter {
         String insn = _rep.instruction(inMethod, instruction, instrIndex);
         String methodId = _rep.signature(inMethod);
 
-        _db.add(LOOKUP_SWITCH, insn, str(instrIndex), _rep.local(inMethod, switchVar), methodId);
+        _db.row(LOOKUP_SWITCH).col(insn).col(instrIndex).col(_rep.local(inMethod, switchVar)).col(methodId).end();
 
         int[] casesAndLabels = instruction.getCasesAndLabels();
         SSAInstruction[] instructions = ir.getInstructions();
@@ -833,7 +837,7 @@ class WalaFactWriter extends JavaFactWriter {
             else
                 targetIndex = session.getInstructionNumber(instructions[targetWALAIndex]);
 
-            _db.add(LOOKUP_SWITCH_TARGET, insn, str(tgIndex), str(targetIndex));
+            _db.row(LOOKUP_SWITCH_TARGET).col(insn).col(tgIndex).col(targetIndex).end();
         }
 
         defaultWALAIndex = instruction.getDefault();
@@ -855,7 +859,7 @@ class WalaFactWriter extends JavaFactWriter {
             defaultIndex = session.getInstructionNumber(instructions[defaultWALAIndex]);
 
 
-        _db.add(LOOKUP_SWITCH_DEFAULT, insn, str(defaultIndex));
+        _db.row(LOOKUP_SWITCH_DEFAULT).col(insn).col(defaultIndex).end();
     }
 
     void writeUnsupported(IMethod m, IR ir, SSAInstruction instruction, Session session) {
@@ -863,7 +867,7 @@ class WalaFactWriter extends JavaFactWriter {
         String insn = _rep.unsupported(m, ir, instruction, index);
         String methodId = _rep.signature(m);
 
-        _db.add(UNSUPPORTED_INSTRUCTION, insn, str(index), methodId);
+        _db.row(UNSUPPORTED_INSTRUCTION).col(insn).col(index).col(methodId).end();
     }
 
     /**
@@ -874,7 +878,7 @@ class WalaFactWriter extends JavaFactWriter {
         String insn = _rep.throwLocal(m, l, session);
         String methodId = _rep.signature(m);
 
-        _db.add(THROW, insn, str(index), _rep.local(m, l), methodId);
+        _db.row(THROW).col(insn).col(index).col(_rep.local(m, l)).col(methodId).end();
     }
 
     /**
@@ -885,7 +889,7 @@ class WalaFactWriter extends JavaFactWriter {
         String insn = _rep.instruction(m, instruction, index);
         String methodId = _rep.signature(m);
 
-        _db.add(THROW_NULL, insn, str(index), methodId);
+        _db.row(THROW_NULL).col(insn).col(index).col(methodId).end();
     }
 
     void writeExceptionHandlerPrevious(IMethod m, SSACFG.ExceptionHandlerBasicBlock current, SSACFG.ExceptionHandlerBasicBlock previous, SessionCounter counter) {
@@ -1039,7 +1043,7 @@ class WalaFactWriter extends JavaFactWriter {
 
                 //Local l = createLocal(ir, instruction, arg); //TODO: TypeInference for bootstrap parameters??
                 Local l = bootstrapParamHelper(ir, inMethod, invokedynamic, j, session);
-                _db.add(BOOTSTRAP_PARAMETER, str(j), invokeExprRepr, _rep.local(inMethod, l));
+                _db.row(BOOTSTRAP_PARAMETER).col(j).col(invokeExprRepr).col(_rep.local(inMethod, l)).end();
 
             }
         }
@@ -1123,7 +1127,7 @@ class WalaFactWriter extends JavaFactWriter {
     void writeInvoke(IMethod inMethod, IR ir, SSAInvokeInstruction instruction, Local to, Session session, TypeInference typeInference) {
         String insn = writeInvokeHelper(inMethod, ir, instruction, session, typeInference);
         if(to != null)
-            _db.add(ASSIGN_RETURN_VALUE, insn, _rep.local(inMethod, to));
+            _db.row(ASSIGN_RETURN_VALUE).col(insn).col(_rep.local(inMethod, to)).end();
     }
 
     private String writeInvokeHelper(IMethod inMethod, IR ir, SSAInvokeInstruction instruction, Session session, TypeInference typeInference) {
@@ -1213,7 +1217,7 @@ class WalaFactWriter extends JavaFactWriter {
         int index = session.calcInstructionNumber(instruction);
 
         if(sourceLineNum != -1)
-            _db.add(METHOD_INV_LINE, insn, str(sourceLineNum));
+            _db.row(METHOD_INV_LINE).col(insn).col(sourceLineNum).end();
 
         String simpleName = targetRef.getName().toString();
         if (instruction instanceof SSAInvokeDynamicInstruction) { //Had to put these first because wala considers them static
@@ -1233,17 +1237,17 @@ class WalaFactWriter extends JavaFactWriter {
         } else {
             // Mark polymorphic invocations.
             if (JavaFactWriter.polymorphicHandling(fixTypeString(declClassRef.toString()), simpleName))
-                _db.add(POLYMORPHIC_INVOCATION, insn, simpleName);
+                _db.row(POLYMORPHIC_INVOCATION).col(insn).col(simpleName).end();
             if (instruction.isStatic()) {
-                _db.add(STATIC_METHOD_INV, insn, str(index), _rep.signature(targetRef), methodId);
+                _db.row(STATIC_METHOD_INV).col(insn).col(index).col(_rep.signature(targetRef)).col(methodId).end();
                 //_db.add(STATIC_METHOD_INV, insn, _rep.signature(targetRef), methodId);
             } else if (instruction.isDispatch()) {
                 Local l = createLocal(ir, instruction, instruction.getReceiver(),typeInference);
-                _db.add(VIRTUAL_METHOD_INV, insn, str(index), _rep.signature(targetRef), _rep.local(inMethod, l), methodId);
+                _db.row(VIRTUAL_METHOD_INV).col(insn).col(index).col(_rep.signature(targetRef)).col(_rep.local(inMethod, l)).col(methodId).end();
                 //_db.add(VIRTUAL_METHOD_INV, insn, _rep.signature(targetRef), methodId);
             } else if (instruction.isSpecial()) {
                 Local l = createLocal(ir, instruction, instruction.getReceiver(),typeInference);
-                _db.add(SPECIAL_METHOD_INV, insn, str(index), _rep.signature(targetRef), _rep.local(inMethod, l), methodId);
+                _db.row(SPECIAL_METHOD_INV).col(insn).col(index).col(_rep.signature(targetRef)).col(_rep.local(inMethod, l)).col(methodId).end();
                 //_db.add(SPECIAL_METHOD_INV, insn, _rep.signature(targetRef), methodId);
             } else
                 throw new RuntimeException("Cannot handle invoke instruction: " + instruction);
@@ -1255,7 +1259,7 @@ class WalaFactWriter extends JavaFactWriter {
     private void addFactsForSignaturePolymorphic(MethodReference m, List<String> declaredExceptions)
     {
         String sig = _rep.signature(m);
-        _db.add(STRING_RAW, sig, sig);
+        _db.row(STRING_RAW).col(sig).col(sig).end();
         String arity = Integer.toString(m.getNumberOfParameters());
         writeMethod(sig, WalaRepresentation.simpleName(m), WalaRepresentation.params(m), writeType(m.getDeclaringClass()), writeType(m.getReturnType()), m.getDescriptor().toUnicodeString(), arity);
         //addMockExceptionThrows(m, declaredExceptions);
@@ -1279,14 +1283,14 @@ class WalaFactWriter extends JavaFactWriter {
             var = methodSig + "/" + varBase + i;
             writeLocal(var, declaredExc, methodSig);
             heap = methodSig + "/new " + declaredExc + "/0";
-            _db.add(NORMAL_HEAP, heap, declaredExc);
+            _db.row(NORMAL_HEAP).col(heap).col(declaredExc).end();
             newInstr = methodSig + "/assign/" + str(i);
-            _db.add(ASSIGN_HEAP_ALLOC, newInstr, str(i), heap, var, methodSig, "0");
+            _db.row(ASSIGN_HEAP_ALLOC).col(newInstr).col(i).col(heap).col(var).col(methodSig).col("0").end();
             specInvInstr = methodSig +"/" + declaredExc +".<init>/0" ;
             targetRef = "<" + declaredExc + ":  void <init>()>";
-            _db.add(SPECIAL_METHOD_INV, specInvInstr, str(i+1), targetRef, var, methodSig);
+            _db.row(SPECIAL_METHOD_INV).col(specInvInstr).col(i+1).col(targetRef).col(var).col(methodSig).end();
             throwInstr = methodSig + "/throw " +varBase + i + "/0";
-            _db.add(THROW, throwInstr, str(i+2),var, methodSig);
+            _db.row(THROW).col(throwInstr).col(i+2).col(var).col(methodSig).end();
         }
     }
 
@@ -1323,8 +1327,8 @@ class WalaFactWriter extends JavaFactWriter {
 
         writeAssignBinop(insn, index, _rep.local(m, left), methodId);
 
-        _db.add(ASSIGN_OPER_FROM, insn, _rep.local(m, op1));
-        _db.add(ASSIGN_OPER_FROM, insn, _rep.local(m, op2));
+        _db.row(ASSIGN_OPER_FROM).col(insn).col(_rep.local(m, op1)).end();
+        _db.row(ASSIGN_OPER_FROM).col(insn).col(_rep.local(m, op2)).end();
 
     }
 
@@ -1335,8 +1339,8 @@ class WalaFactWriter extends JavaFactWriter {
 
         writeAssignBinop(insn, index, _rep.local(m, left), methodId);
 
-        _db.add(ASSIGN_OPER_FROM, insn, _rep.local(m, op1));
-        _db.add(ASSIGN_OPER_FROM, insn, _rep.local(m, op2));
+        _db.row(ASSIGN_OPER_FROM).col(insn).col(_rep.local(m, op1)).end();
+        _db.row(ASSIGN_OPER_FROM).col(insn).col(_rep.local(m, op2)).end();
 
     }
     //
@@ -1346,7 +1350,7 @@ class WalaFactWriter extends JavaFactWriter {
         String methodId = _rep.signature(m);
 
         writeAssignUnop(insn, index, _rep.local(m, to), methodId);
-        _db.add(ASSIGN_OPER_FROM, insn, _rep.local(m, from));
+        _db.row(ASSIGN_OPER_FROM).col(insn).col(_rep.local(m, from)).end();
     }
 
     void writeAssignArrayLength(IMethod m, SSAArrayLengthInstruction instruction, Local to, Local from, Session session) {
@@ -1354,8 +1358,8 @@ class WalaFactWriter extends JavaFactWriter {
         String insn = _rep.instruction(m, instruction, index);
         String methodId = _rep.signature(m);
 
-        _db.add(ASSIGN_UNOP, insn, str(index), _rep.local(m, to), methodId);
-        _db.add(ASSIGN_OPER_FROM, insn, _rep.local(m, from));
+        _db.row(ASSIGN_UNOP).col(insn).col(index).col(_rep.local(m, to)).col(methodId).end();
+        _db.row(ASSIGN_OPER_FROM).col(insn).col(_rep.local(m, from)).end();
     }
 
     void writeAssignInstanceOf(IMethod m, SSAInstanceofInstruction instruction, Local to, Local from, TypeReference t, Session session) {
@@ -1363,7 +1367,7 @@ class WalaFactWriter extends JavaFactWriter {
         String insn = _rep.instruction(m, instruction, index);
         String methodId = _rep.signature(m);
 
-        _db.add(ASSIGN_INSTANCE_OF, insn, str(index), _rep.local(m, from), _rep.local(m, to), writeType(t), methodId);
+        _db.row(ASSIGN_INSTANCE_OF).col(insn).col(index).col(_rep.local(m, from)).col(_rep.local(m, to)).col(writeType(t)).col(methodId).end();
     }
 
 //    void writeAssignPhantomInvoke(IMethod m, Stmt stmt, Session session) {
@@ -5,8 +5,6 @@ import com.ibm.wala.classLoader.BytecodeClass;
 import com.ibm.wala.classLoader.IClass;
 import com.ibm.wala.classLoader.IField;
 import com.ibm.wala.classLoader.IMethod;
-import com.ibm.wala.ipa.callgraph.IAnalysisCacheView;
-import com.ibm.wala.ipa.callgraph.impl.Everywhere;
 import com.ibm.wala.ssa.IR;
 import com.ibm.wala.ssa.SSACFG;
 import com.ibm.wala.ssa.SSAInstruction;
@@ -25,13 +23,13 @@ import static org.clyze.doop.wala.WalaUtils.fixTypeString;
 
 class WalaIRPrinter {
 
-    private final IAnalysisCacheView _cache;
+    private final ClassIRs _irs;
     private final String _outputDir;
 
-    WalaIRPrinter(IAnalysisCacheView cache, String outputDir)
+    WalaIRPrinter(ClassIRs irs, String outputDir)
     {
         _outputDir = outputDir;
-        _cache = cache;
+        _irs = irs;
     }
 
     void printIR(IClass cl)
@@ -131,7 +129,7 @@ class WalaIRPrinter {
     {
         IR ir;
         try {
-            ir = _cache.getIR(m, Everywhere.EVERYWHERE);
+            ir = _irs.get(m);
         }catch(Throwable t){
             writer.write(" Error " + t +" creating IR for method " + m);
             return;
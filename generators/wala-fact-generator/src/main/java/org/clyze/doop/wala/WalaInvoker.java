@@ -3,13 +3,14 @@ package org.clyze.doop.wala;
 import com.ibm.wala.classLoader.IClass;
 import com.ibm.wala.classLoader.IMethod;
 import com.ibm.wala.dalvik.classLoader.DexIRFactory;
-import com.ibm.wala.ipa.callgraph.AnalysisCacheImpl;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
 import com.ibm.wala.ipa.callgraph.AnalysisScope;
-import com.ibm.wala.ipa.callgraph.IAnalysisCacheView;
 import com.ibm.wala.ipa.cha.ClassHierarchy;
 import com.ibm.wala.ipa.cha.ClassHierarchyException;
 import com.ibm.wala.ipa.cha.ClassHierarchyFactory;
 import com.ibm.wala.shrikeCT.InvalidClassFileException;
+import com.ibm.wala.ssa.DefaultIRFactory;
+import com.ibm.wala.ssa.IRFactory;
 import com.ibm.wala.types.TypeReference;
 import com.ibm.wala.types.annotations.Annotation;
 import org.apache.log4j.Logger;
@@ -91,7 +92,7 @@ class WalaInvoker {
         String outputDir = walaParameters.getOutputDir();
 
         Set<String> tmpDirs = new HashSet<>();
-        try (Database db = new Database(outputDir)) {
+        try (Database db = new Database(outputDir, true, walaParameters._shardedFacts, walaParameters._compressedFacts, walaParameters._writerThreads)) {
             WalaRepresentation rep = new WalaRepresentation();
             WalaFactWriter walaFactWriter = new WalaFactWriter(db, walaParameters, rep);
 
@@ -101,11 +102,9 @@ class WalaInvoker {
             }
             System.out.println("Number of classes: " + cha.getNumberOfClasses());
 
-            IAnalysisCacheView cache;
-            if (walaParameters._android)
-                cache = new AnalysisCacheImpl(new DexIRFactory());
-            else
-                cache = new AnalysisCacheImpl();
+            // IRs are built by the fact generation threads, one class at
+            // a time (with the default SSA options of an analysis cache).
+            IRFactory<IMethod> irFactory = walaParameters._android ? new DexIRFactory() : new DefaultIRFactory();
 
             java.preprocessInputs(db, tmpDirs);
             walaFactWriter.writePreliminaryFacts(java, walaParameters._debug);
@@ -120,20 +119,12 @@ class WalaInvoker {
                     walaFactWriter.writeApplicationClass(klass);
                 }
                 classesSet.add(klass);
-                for (IMethod m : klass.getDeclaredMethods()) {
+                for (IMethod m : klass.getDeclaredMethods())
                     addIfSignaturePolymorphic(m, signaturePolymorphicMethods);
-                    //System.out.println(m.toString());
-                    try {
-                        cache.getIR(m);
-                    } catch (Throwable e) {
-                        System.out.println("Error while creating IR for method: " + m.getReference() + "\n" + e);
-                        e.printStackTrace();
-                    }
-                }
             }
             walaFactWriter.setSignaturePolyMorphicMethods(signaturePolymorphicMethods);
 
-            WalaDriver driver = new WalaDriver(cha.getNumberOfClasses(), walaParameters._cores, cache, walaFactWriter, outputDir, walaParameters._android);
+            WalaDriver driver = new WalaDriver(cha.getNumberOfClasses(), walaParameters._cores, irFactory, new AnalysisOptions().getSSAOptions(), walaFactWriter, outputDir, walaParameters._android);
             driver.generateInParallel(classesSet);
 
             if (walaFactWriter.getNumberOfPhantomTypes() > 0)
@@ -147,6 +138,7 @@ class WalaInvoker {
 		        ArtifactScanner.scanNativeCode(db, walaParameters, null);
 
             walaFactWriter.writeLastFacts(java);
+            driver.getStats().writeTo(db);
 
             db.flush();
         } finally {
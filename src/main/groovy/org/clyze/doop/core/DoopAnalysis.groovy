@@ -1,13 +1,17 @@
 package org.clyze.doop.core
 
+import groovy.io.FileType
 import groovy.util.logging.Log4j
 import heapdl.core.MemoryAnalyser
 import org.apache.commons.io.FilenameUtils
 import org.apache.log4j.Logger
 import org.clyze.analysis.Analysis
 import org.clyze.analysis.AnalysisOption
+import org.clyze.analysis.InputType
 import org.clyze.doop.common.CHA
+import org.clyze.doop.common.Database
 import org.clyze.doop.common.DoopErrorCodeException
+import org.clyze.doop.common.FactGenDaemon
 import org.clyze.doop.util.ClassPathHelper
 import org.clyze.doop.util.Resource
 import org.clyze.doop.utils.CPreprocessor
@@ -20,6 +24,7 @@ import java.lang.reflect.InvocationTargetException
 import java.nio.file.Files
 import java.nio.file.Path
 import java.nio.file.StandardCopyOption
+import java.util.zip.GZIPOutputStream
 
 import static org.apache.commons.io.FileUtils.*
 
@@ -64,6 +69,24 @@ abstract class DoopAnalysis extends Analysis implements Runnable {
      */
     static final String INFORMATION_FLOW_SUFFIX = "-sources-and-sinks"
 
+    /**
+     * Options that do not affect the facts of platform and dependency
+     * classes (they only affect facts about the application or facts
+     * that are not written in fact layers).
+     */
+    static final Collection<String> LAYER_INDEPENDENT_OPTIONS = [
+        "MAIN_CLASS", "APP_REGEX", "AUTO_APP_REGEX_MODE", "X_FACTS_SUBSET",
+        "DECODE_APK", "GENERATE_ARTIFACTS_MAP", "SCAN_NATIVE_CODE",
+        "NATIVE_CODE_BACKEND", "ONLY_PRECISE_NATIVE_STRINGS",
+        "INFORMATION_FLOW_EXTRA_CONTROLS", "UNIQUE_FACTS"
+    ]
+
+    /**
+     * If true, the front end only writes the facts of classes (used
+     * when generating fact layers).
+     */
+    private boolean classFactsOnly = false
+
     @Override
     String getId() { options.USER_SUPPLIED_ID.value as String }
 
@@ -104,7 +127,7 @@ abstract class DoopAnalysis extends Analysis implements Runnable {
         database.mkdirs()
 
         factsDir = database
-        gen0 = new FactGenerator0(factsDir)
+        gen0 = new FactGenerator0(factsDir, options.COMPRESSED_FACTS.value as boolean)
 
         executor = new Executor(outDir, commandsEnvironment)
         cpp = new CPreprocessor(this, executor)
@@ -206,7 +229,9 @@ abstract class DoopAnalysis extends Analysis implements Runnable {
     protected void initFactsDir() {
         deleteQuietly(factsDir)
         factsDir.mkdirs()
-        generateFacts0()
+        // Fact layers (see runLayeredFrontEnd()) only contain class facts.
+        if (factsDir == database)
+            generateFacts0()
     }
 
     protected void generateFacts() throws DoopErrorCodeException {
@@ -259,6 +284,8 @@ abstract class DoopAnalysis extends Analysis implements Runnable {
                     // // done in Datalog, either as merged output in step 4 or
                     // // with extra support in import-facts.dl.
                     // // ...
+                } else if (options.X_LAYERED_FACTS.value) {
+                    runLayeredFrontEnd(tmpDirs)
                 } else {
                     runFrontEnd(tmpDirs, FrontEnd.SOOT, null)
                 }
@@ -272,11 +299,12 @@ abstract class DoopAnalysis extends Analysis implements Runnable {
 
             if (options.UNIQUE_FACTS.value) {
                 def timing = Helper.timing {
-                    factsDir.eachFileMatch(~/.*.facts/) { file ->
-                        def uniqueLines = file.readLines() as SortedSet<String>
+                    factsDir.eachFileMatch(~/.*\.facts(\.gz)?/) { File file ->
+                        def uniqueLines = Database.newFactsReader(file).readLines() as SortedSet<String>
                         uniqueLines.sort()
                         def tmp = new File(factsDir, "${file.name}.tmp")
-                        tmp.withWriter { w -> uniqueLines.each { w.writeLine(it) } }
+                        def out = file.name.endsWith(".gz") ? new GZIPOutputStream(new FileOutputStream(tmp)) : new FileOutputStream(tmp)
+                        out.withWriter { w -> uniqueLines.each { w.writeLine(it) } }
                         tmp.renameTo(file)
                     }
                 }
@@ -325,7 +353,8 @@ abstract class DoopAnalysis extends Analysis implements Runnable {
 
 
     private static List<String> flattenArgs(List<File> files, String opt) {
-        return files.collect() { File f -> [opt, f.toString()] }.flatten() as List<String>
+        // Absolute paths, since a fact generation daemon may run in another directory.
+        return files.collect() { File f -> [opt, f.absolutePath] }.flatten() as List<String>
     }
 
     protected void runFrontEnd(Set<String> tmpDirs, FrontEnd frontEnd, CHA cha) {
@@ -369,6 +398,10 @@ abstract class DoopAnalysis extends Analysis implements Runnable {
             params += ["--facts-subset", options.X_FACTS_SUBSET.value.toString()]
         }
 
+        if (classFactsOnly) {
+            params += ["--class-facts-only"]
+        }
+
         if (options.EXTRACT_MORE_STRINGS.value) {
             params += ["--extract-more-strings"]
         }
@@ -378,7 +411,7 @@ abstract class DoopAnalysis extends Analysis implements Runnable {
         }
 
         if (options.X_R_OUT_DIR.value) {
-            params += ["--R-out-dir", options.X_R_OUT_DIR.value.toString()]
+            params += ["--R-out-dir", new File(options.X_R_OUT_DIR.value.toString()).absolutePath]
         }
 
         if (options.DECODE_APK.value) {
@@ -399,6 +432,8 @@ abstract class DoopAnalysis extends Analysis implements Runnable {
             check(options.X_DEX_FACT_GEN)
             check(options.WALA_FACT_GEN)
             params += ["--scan-native-code"]
+            if (options.X_NATIVE_SCAN_CACHE.value)
+                params += ["--native-scan-cache", new File(Doop.doopCache, "native").absolutePath]
         }
 
         String nativeBackend = options.NATIVE_CODE_BACKEND.value
@@ -423,9 +458,34 @@ abstract class DoopAnalysis extends Analysis implements Runnable {
             params += ["--legacy-android-processing"]
         }
 
-        params.addAll(["--log-dir", Doop.doopLog])
-        params.addAll(["-d", factsDir.toString()] + inputArgs)
-        deps.addAll(platforms.collect { lib -> ["-l", lib.toString()] }.flatten() as Collection<String>)
+        if (options.X_SHARDED_FACTS.value) {
+            params += ["--sharded-facts"]
+        }
+
+        if (options.COMPRESSED_FACTS.value) {
+            params += ["--compressed-facts"]
+        }
+
+        if (options.X_FACT_WRITER_THREADS.value) {
+            params += ["--writer-threads", options.X_FACT_WRITER_THREADS.value.toString()]
+        }
+
+        if (options.X_PREPROCESS_CACHE.value) {
+            params += ["--preprocess-cache-dir", new File(Doop.doopCache, "preprocess").absolutePath]
+        }
+
+        if (options.X_INCREMENTAL_FACTS.value) {
+            params += ["--class-fact-cache", new File(Doop.doopCache, "classes").absolutePath,
+                       "--class-fact-options", classFactOptionsKey(frontEnd)]
+        }
+
+        if (options.X_COMPACT_IDS.value) {
+            params += ["--compact-ids", "--readable-id-methods", writeReadableIdMethods().canonicalPath]
+        }
+
+        params.addAll(["--log-dir", new File(Doop.doopLog).absolutePath])
+        params.addAll(["-d", factsDir.absolutePath] + inputArgs)
+        deps.addAll(flattenArgs(platforms, '-l'))
         params.addAll(deps)
 
         if (frontEnd == FrontEnd.SOOT) {
@@ -439,6 +499,144 @@ abstract class DoopAnalysis extends Analysis implements Runnable {
         }
     }
 
+    /**
+     * Returns a key of the options that affect the facts of single
+     * classes. Inputs are not part of the key, since cached class facts
+     * are keyed by the contents of each class.
+     *
+     * @param frontEnd   the front end that generates the facts
+     */
+    protected String classFactOptionsKey(FrontEnd frontEnd) {
+        return factOptionsKey(frontEnd, [InputType.INPUT, InputType.LIBRARY, InputType.HEAPDL], [])
+    }
+
+    private String factOptionsKey(FrontEnd frontEnd, Collection<InputType> inputTypes, Collection<String> excludedOptions) {
+        Collection<String> components = options.values()
+            .findAll { it.forCacheID && !(it.argInputType in inputTypes) && !(it.id in excludedOptions) }
+            .collect { it as String }
+            .sort()
+        return CheckSum.checksum(([frontEnd as String] + components).join('-'), DoopAnalysisFactory.HASH_ALGO)
+    }
+
+    /**
+     * Runs the Soot front end with fact layers. The facts of the platform
+     * and of the dependencies are cached apart from the application facts,
+     * keyed by the platform/dependency contents and the options that affect
+     * them, so that they are shared by the analyses of different
+     * applications. Missing layers are generated first, then the
+     * application classes are processed and the layers are appended to
+     * their facts.
+     *
+     * @param tmpDirs   the temporary directories to clean up
+     */
+    protected void runLayeredFrontEnd(Set<String> tmpDirs) {
+        String optionsKey = factOptionsKey(FrontEnd.SOOT, InputType.values() as List<InputType>, LAYER_INDEPENDENT_OPTIONS)
+        List<File> platforms = options.PLATFORMS.value as List<File>
+        String platformId = CheckSum.checksum((["platform", optionsKey] + platforms.collect { CheckSum.checksum(it, DoopAnalysisFactory.HASH_ALGO) }).join('-'), DoopAnalysisFactory.HASH_ALGO)
+        List<File> layers = [factLayer("platform", platformId, "PLATFORM", tmpDirs)]
+        if (libraryFiles) {
+            // Dependency facts are resolved against the platform.
+            String depsId = CheckSum.checksum((["deps", platformId] + libraryFiles.collect { CheckSum.checksum(it, DoopAnalysisFactory.HASH_ALGO) }).join('-'), DoopAnalysisFactory.HASH_ALGO)
+            layers << factLayer("deps", depsId, "DEPS", tmpDirs)
+        }
+
+        def origSubset = options.X_FACTS_SUBSET.value
+        options.X_FACTS_SUBSET.value = libraryFiles ? "APP" : "APP_N_DEPS"
+        try {
+            runFrontEnd(tmpDirs, FrontEnd.SOOT, null)
+        } finally {
+            options.X_FACTS_SUBSET.value = origSubset
+        }
+        layers.each { File layerDir ->
+            log.info "Adding facts from layer ${layerDir}"
+            appendFacts(layerDir)
+        }
+    }
+
+    /**
+     * Returns the directory of a fact layer, generating the layer if it
+     * is not in the Doop cache. Layers only contain the facts of the
+     * classes in their subset (no facts about the inputs, which are
+     * written by the application run).
+     *
+     * @param name      the name of the layer
+     * @param id        the cache id of the layer
+     * @param subset    the facts subset of the layer
+     * @param tmpDirs   the temporary directories to clean up
+     * @return          the layer directory
+     */
+    private File factLayer(String name, String id, String subset, Set<String> tmpDirs) {
+        File layerDir = new File("${Doop.doopCache}/layers/${name}-${id}")
+        if (layerDir.exists()) {
+            log.info "Using cached ${name} fact layer: ${layerDir}"
+            return layerDir
+        }
+
+        log.info "Generating ${name} fact layer: ${layerDir}"
+        // Generate under a temporary name, so that concurrent runs never
+        // use partial layers.
+        File tmpLayerDir = new File("${layerDir}.${UUID.randomUUID()}.tmp")
+        File origFactsDir = factsDir
+        def origSubset = options.X_FACTS_SUBSET.value
+        try {
+            factsDir = tmpLayerDir
+            factsDir.mkdirs()
+            options.X_FACTS_SUBSET.value = subset
+            classFactsOnly = true
+            runFrontEnd(tmpDirs, FrontEnd.SOOT, null)
+        } finally {
+            factsDir = origFactsDir
+            options.X_FACTS_SUBSET.value = origSubset
+            classFactsOnly = false
+        }
+
+        try {
+            Files.move(tmpLayerDir.toPath(), layerDir.toPath(), StandardCopyOption.ATOMIC_MOVE)
+        } catch (IOException ex) {
+            if (!layerDir.exists()) {
+                log.warn "WARNING: Could not cache ${name} fact layer: ${ex.message}"
+                tmpDirs << tmpLayerDir.canonicalPath
+                return tmpLayerDir
+            }
+            // Another run cached the layer first.
+            deleteQuietly(tmpLayerDir)
+        }
+        return layerDir
+    }
+
+    /**
+     * Appends the facts of a directory to the facts directory. Compressed
+     * facts are appended as new gzip members.
+     *
+     * @param fromDir   the directory to read
+     */
+    protected void appendFacts(File fromDir) {
+        fromDir.eachFileMatch(~/.*\.facts(\.gz)?/) { File file ->
+            new FileOutputStream(new File(factsDir, file.name), true).withStream { OutputStream out ->
+                file.withInputStream { InputStream is -> out << is }
+            }
+        }
+    }
+
+    /**
+     * Writes the methods whose variables or allocations are named verbatim
+     * in the analysis logic (such as the parameters of some natively
+     * modeled JDK methods). In compact ids mode, these methods keep
+     * readable ids.
+     *
+     * @return the file containing the method signatures (one per line)
+     */
+    protected File writeReadableIdMethods() {
+        Set<String> methods = new TreeSet<>()
+        new File(Doop.souffleLogicPath).eachFileRecurse(FileType.FILES) { File f ->
+            if (f.name.endsWith(".dl"))
+                (f.text =~ /"(<[^"]+?>)\/[^"]*"/).each { List<String> m -> methods << m[1] }
+        }
+        File out = new File(factsDir, "ReadableIdMethods.txt")
+        out.text = methods.join("\n")
+        return out
+    }
+
     protected void runSoot(String platform, Collection<String> deps, List<File> platforms, Collection<String> params) {
         params += [ "--full" ]
 
@@ -478,6 +676,13 @@ abstract class DoopAnalysis extends Analysis implements Runnable {
             missingClasses = File.createTempFile("fact-gen-missing-classes", ".tmp")
             missingClasses.deleteOnExit()
             params += ["--failOnMissingClasses", missingClasses.absolutePath ]
+            // Restarts only generate facts for the classes that were not
+            // processed by earlier runs.
+            File generatedClasses = File.createTempFile("fact-gen-classes", ".tmp")
+            generatedClasses.deleteOnExit()
+            // Written by the front end next to the file of generated classes.
+            new File(generatedClasses.absolutePath + ".phantoms").deleteOnExit()
+            params += ["--generated-classes", generatedClasses.absolutePath ]
             // Restarting on fact generation error can only happen reliably in isolated mode.
             if (!options.X_ISOLATE_FACTGEN.value) {
                 log.warn "WARNING: Option --${options.THOROUGH_FACT_GEN.name} turns on --${options.X_ISOLATE_FACTGEN.name}"
@@ -489,6 +694,14 @@ abstract class DoopAnalysis extends Analysis implements Runnable {
             params += ["--lowMem"]
         }
 
+        if (options.X_STREAM_FACT_GEN.value) {
+            params += ["--stream-bodies"]
+        }
+
+        if (options.X_DEMAND_BODIES.value) {
+            params += ["--demand-bodies"]
+        }
+
         log.debug "Params of soot: ${params.join(' ')}"
 
         factGenTime = Helper.timing {
@@ -541,7 +754,9 @@ abstract class DoopAnalysis extends Analysis implements Runnable {
                     if (missingClasses != null && missingClasses.exists()) {
                         String[] extraClasses = missingClasses.readLines() as String[]
                         if (extraClasses.length > 0) {
-                            // Retry with classes reported by the front-end.
+                            // Retry with classes reported by the front-end. The facts
+                            // of the classes processed so far are kept (ids do not
+                            // depend on the run), so the new run only adds facts.
                             if (factGenRun >= MAX_FACTGEN_RUNS)
                                 System.err.println("Too many fact generation restarts, classes still not resolved: " + Arrays.toString(extraClasses))
                             else {
@@ -565,13 +780,6 @@ abstract class DoopAnalysis extends Analysis implements Runnable {
                     // continue. (The missing-classes restart above is a separate,
                     // resolution-driven retry.) Genuinely fatal errors are rethrown.
                     println "Non-fatal fact generation error; continuing with the facts produced."
-                } finally {
-                    // Restarting cannot add to current facts: non-deterministic names
-                    // from different runs blow up relations (e.g., VarPointsTo).
-                    if (redo) {
-                        println "Reset facts directory: ${factsDir}"
-                        initFactsDir()
-                    }
                 }
             }
         }
@@ -818,6 +1026,15 @@ abstract class DoopAnalysis extends Analysis implements Runnable {
         args.addAll([ "--args-file", argsFile ])
         String[] args0 = args as String[]
 
+        if (options.X_FACT_GEN_DAEMON.value && generator == Resource.SOOT_FACT_GENERATOR) {
+            long jobTime = FactGenDaemon.submit(options.X_FACT_GEN_DAEMON.value as int, args0, { String line -> println "[${TAG}] ${line}" })
+            if (jobTime >= 0) {
+                log.info "Fact generation daemon job time: ${jobTime} ms"
+                return
+            }
+            log.warn "WARNING: No fact generation daemon on port ${options.X_FACT_GEN_DAEMON.value}, starting the fact generator."
+        }
+
         if ((!main) || options.X_ISOLATE_FACTGEN.value) {
             invokeExtFactGenerator(TAG, jvmArgs, generator, args0)
         } else {
@@ -409,6 +409,32 @@ class DoopAnalysisFactory implements AnalysisFactory<DoopAnalysis> {
 		throwIfBothSet(options.INPUT_ID, options.FACTS_ONLY)
 		throwIfBothSet(options.INPUT_ID, options.CACHE)
 		throwIfBothSet(options.KEEP_SPEC, options.X_SYMLINK_INPUT_FACTS)
+		// Compressed facts are only read by Souffle and the Java/Android front ends.
+		throwIfBothSet(options.COMPRESSED_FACTS, options.VIA_DDLOG)
+		throwIfBothSet(options.COMPRESSED_FACTS, options.PYTHON)
+		throwIfBothSet(options.COMPRESSED_FACTS, options.X_LB3)
+		// Compact ids are only generated by the Soot front end and are
+		// not understood by the logic that builds ids from dynamic facts.
+		[options.WALA_FACT_GEN, options.X_DEX_FACT_GEN, options.PYTHON, options.TAMIFLEX, options.IMPORT_DYNAMIC_FACTS].each {
+			throwIfBothSet(options.X_COMPACT_IDS, it)
+		}
+		// Class facts are only cached by the Soot and Dex front ends. With
+		// compact ids, the facts of a class depend on the order in which
+		// methods were numbered.
+		[options.WALA_FACT_GEN, options.PYTHON, options.X_COMPACT_IDS].each {
+			throwIfBothSet(options.X_INCREMENTAL_FACTS, it)
+		}
+		// Fact layers are generated with the Soot front end, as facts
+		// subsets. Compact ids are numbered per run, so they cannot be
+		// shared.
+		[options.WALA_FACT_GEN, options.X_DEX_FACT_GEN, options.PYTHON, options.X_FACTS_SUBSET, options.X_COMPACT_IDS].each {
+			throwIfBothSet(options.X_LAYERED_FACTS, it)
+		}
+		// With demand-driven bodies, library facts depend on the
+		// application, so they cannot be shared.
+		[options.WALA_FACT_GEN, options.X_DEX_FACT_GEN, options.PYTHON, options.X_INCREMENTAL_FACTS, options.X_LAYERED_FACTS].each {
+			throwIfBothSet(options.X_DEMAND_BODIES, it)
+		}
 
 		String maxMemory = options.MAX_MEMORY.value
 		if (maxMemory) {
@@ -516,6 +542,10 @@ class DoopAnalysisFactory implements AnalysisFactory<DoopAnalysis> {
 			options.MUST_AFTER_MAY.value = true
 		}
 
+		if (options.X_STREAM_FACT_GEN.value) {
+			options.X_LOW_MEM.value = true
+		}
+
 		if (options.X_LOW_MEM.value) {
 			options.X_SERIALIZE_FACTGEN_COMPILATION.value = true
 		}
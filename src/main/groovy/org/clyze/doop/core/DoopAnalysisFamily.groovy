@@ -366,6 +366,12 @@ class DoopAnalysisFamily implements AnalysisFamily {
 					forCacheID: true,
 					forPreprocessor: true
 			),
+			new BooleanAnalysisOption(
+					id: "X_NATIVE_SCAN_CACHE",
+					name: "Xnative-scan-cache",
+					group: GROUP_NATIVE,
+					description: "Cache the results of scanning native libraries in the Doop cache, keyed by library contents and scanner options."
+			),
 			new BooleanAnalysisOption(
 					id: "DACAPO",
 					name: "dacapo",
@@ -1050,12 +1056,78 @@ class DoopAnalysisFamily implements AnalysisFamily {
 					group: GROUP_EXPERIMENTAL,
 					description: "Use less memory. Does not support all options."
 			),
+			new BooleanAnalysisOption(
+					id: "X_STREAM_FACT_GEN",
+					name: "Xstream-fact-gen",
+					group: GROUP_FACTS,
+					description: "Retrieve method bodies class by class during fact generation and release them when the facts of each class are written, instead of loading all bodies first. Only for the Soot front end; implies --Xlow-mem."
+			),
+			new BooleanAnalysisOption(
+					id: "X_SHARDED_FACTS",
+					name: "Xsharded-facts",
+					group: GROUP_FACTS,
+					description: "Write facts to per-thread buffered shards, merged when fact generation ends (avoids lock contention on many cores). Keeps one shard file open per fact generation thread, in addition to one file per relation."
+			),
+			new IntegerAnalysisOption(
+					id: "X_FACT_WRITER_THREADS",
+					name: "Xfact-writer-threads",
+					group: GROUP_FACTS,
+					description: "Write facts from this number of dedicated threads, so that fact generation does not block on disk writes.",
+					argName: "NUMBER"
+			),
+			new BooleanAnalysisOption(
+					id: "X_PREPROCESS_CACHE",
+					name: "Xpreprocess-cache",
+					group: GROUP_FACTS,
+					description: "Cache the preprocessing results of input archives (classes, properties, XML facts) in the Doop cache, keyed by archive contents."
+			),
+			new BooleanAnalysisOption(
+					id: "X_DEMAND_BODIES",
+					name: "Xdemand-driven-bodies",
+					group: GROUP_FACTS,
+					description: "Only generate instruction facts for the library methods reachable (by a class hierarchy analysis) from the application; other library methods only get signature facts. Code only reached through reflection or native code is missed. Only for the Soot front end.",
+					forCacheID: true
+			),
+			new BooleanAnalysisOption(
+					id: "X_LAYERED_FACTS",
+					name: "Xlayered-facts",
+					group: GROUP_FACTS,
+					description: "Cache the facts of the platform and of the dependencies as separate layers in the Doop cache, shared by the analyses of different applications. Only the missing layers and the application facts are generated. Only for the Soot front end."
+			),
+			new BooleanAnalysisOption(
+					id: "X_INCREMENTAL_FACTS",
+					name: "Xincremental-facts",
+					group: GROUP_FACTS,
+					description: "Cache the facts of each class in the Doop cache, keyed by class contents, and reuse the facts of unchanged classes in later runs. Only for the Soot and Dex front ends."
+			),
+			new BooleanAnalysisOption(
+					id: "X_COMPACT_IDS",
+					name: "Xcompact-ids",
+					group: GROUP_FACTS,
+					description: "Use short method ids in the ids of instructions, variables and heap allocations (mapped back to signatures by CompactMethodId). Only for the Soot front end.",
+					forCacheID: true
+			),
+			new BooleanAnalysisOption(
+					id: "COMPRESSED_FACTS",
+					name: "compressed-facts",
+					group: GROUP_FACTS,
+					description: "Write gzip-compressed facts (.facts.gz files). Requires a Souffle build with zlib support.",
+					forCacheID: true,
+					forPreprocessor: true
+			),
 			new BooleanAnalysisOption(
 					id: "X_ISOLATE_FACTGEN",
 					name: "Xisolate-fact-generation",
 					group: GROUP_EXPERIMENTAL,
 					description: "Isolate invocations to the fact generator."
 			),
+			new IntegerAnalysisOption(
+					id: "X_FACT_GEN_DAEMON",
+					name: "Xfact-gen-daemon",
+					group: GROUP_EXPERIMENTAL,
+					argName: "PORT",
+					description: "Run Soot fact generation in a daemon listening on this local port (started with 'gradlew sootDaemon'), instead of a new JVM. Falls back to a new JVM if no daemon is running."
+			),
 			new BooleanAnalysisOption(
 					id: "X_SERIALIZE_FACTGEN_COMPILATION",
 					name: "Xserialize-factgen-compilation",
@@ -10,7 +10,6 @@ import org.clyze.doop.common.CHA
 import org.clyze.doop.common.Database
 import org.clyze.doop.common.FieldInfo
 import org.clyze.doop.common.PredicateFile
-import org.clyze.utils.Helper
 import static org.clyze.doop.core.FactGenerator0.PredicateFile0.*
 
 // This fact generator handles facts that do not need front-end/IR information.
@@ -21,6 +20,8 @@ class FactGenerator0 {
     private static final int KEEP_SPEC_COLUMNS = 5
 
     private File factsDir
+    // If true, front-end relations (see PredicateFile) are compressed.
+    private boolean compressed
 
     private enum PredicateFile0 {
         DACAPO("Dacapo"),
@@ -42,11 +43,16 @@ class FactGenerator0 {
     // A map from rule-hash to (type, number-of-matches). Used to detect bad 'keep' input.
     private Map<String, Map<String, Integer> > ruleCounts = new HashMap<String, Map<String, Integer> >()
 
-    FactGenerator0(File factsDir) {
+    FactGenerator0(File factsDir, boolean compressed) {
         this.factsDir = factsDir
+        this.compressed = compressed
     }
 
-    private File factsFile(String s) { new File(factsDir, s + ".facts") }
+    private File factsFile(String s) { new File(factsDir, s + Database.FACTS_SUFFIX) }
+
+    private Writer appendWriter(PredicateFile predicateFile) {
+        return predicateFile.getWriter(factsDir, compressed ? Database.COMPRESSED_FACTS_SUFFIX : Database.FACTS_SUFFIX)
+    }
 
     void writeMainClassFacts(def mainClass) {
         if (mainClass) {
@@ -81,17 +87,17 @@ class FactGenerator0 {
     }
 
     private void fillCHAFromSootFacts(CHA cha) {
-		String supFile = "${factsDir}/${PredicateFile.DIRECT_SUPER_CLASS.toString()}.facts"
+		File supFile = Database.getFactsFile(factsDir, PredicateFile.DIRECT_SUPER_CLASS.toString())
 		log.info "Importing non-dex class type hierarchy from ${supFile}"
-		Helper.forEachLineIn(supFile, { String line ->
+		Database.newFactsReader(supFile).eachLine({ String line ->
 			def parts = line.tokenize('\t')
 			cha.registerSuperClass(parts[0], parts[1])
 		})
 
-		String fieldFile = "${factsDir}/${PredicateFile.FIELD_SIGNATURE.toString()}.facts"
+		File fieldFile = Database.getFactsFile(factsDir, PredicateFile.FIELD_SIGNATURE.toString())
 		log.info "Importing non-dex fields from ${fieldFile}"
 		Map<String, List<FieldInfo> > fields = [:].withDefault { [] }
-		Helper.forEachLineIn(fieldFile, { String line ->
+		Database.newFactsReader(fieldFile).eachLine({ String line ->
 			def parts = line.tokenize('\t')
 			String declType = parts[1]
 			String name = parts[2]
@@ -124,7 +130,7 @@ class FactGenerator0 {
                 String typeId = parts[i+1].trim()
                 long parentId = Long.parseLong(parts[i+2])
                 log.info "Adding sensitive layout control: ${control}"
-                factsFile(PredicateFile.SENSITIVE_LAYOUT_CONTROL.toString()).withWriterAppend { w ->
+                appendWriter(PredicateFile.SENSITIVE_LAYOUT_CONTROL).withWriter { w ->
                     w << controlId + "\t" + typeId + "\t" + parentId + "\n"
                 }
             } catch (Exception ex) {
@@ -147,7 +153,7 @@ class FactGenerator0 {
             Files.lines(Paths.get(specPath)).withCloseable { Stream<String> stream ->
                 try {
 
-                    Database db = new Database(factsDir.canonicalPath)
+                    Database db = new Database(factsDir.canonicalPath, true, false, compressed)
                     stream.forEach ({ String s -> processKeepSpecLine(db, s) } as java.util.function.Consumer<String>)
                     db.flush()
                     db.close()
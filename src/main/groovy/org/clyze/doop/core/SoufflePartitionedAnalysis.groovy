@@ -81,7 +81,7 @@ class SoufflePartitionedAnalysis extends SouffleAnalysis {
 	            childOutDir.mkdirs()
 	            childFactsDir.mkdirs()
 
-                factsDir.eachFileMatch FILES, ~/.*\.facts/, { File factsFile ->
+                factsDir.eachFileMatch FILES, ~/.*\.facts(\.gz)?/, { File factsFile ->
 	                def link = new File(childFactsDir, factsFile.name).toPath()
 	                Files.createSymbolicLink(link, factsFile.toPath())
                 }
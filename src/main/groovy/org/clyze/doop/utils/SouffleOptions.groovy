@@ -26,6 +26,8 @@ class SouffleOptions {
     String maxMemory
     /** Number of jobs to use. */
     int jobs
+    /** Read gzip-compressed front-end facts. */
+    boolean compressedFacts
 
     SouffleOptions() {}
 
@@ -40,5 +42,6 @@ class SouffleOptions {
         this.useFunctors = options.SOUFFLE_USE_FUNCTORS?.value as boolean
         this.maxMemory = options.MAX_MEMORY?.value as String
         this.jobs = options.SOUFFLE_JOBS?.value as int
+        this.compressedFacts = options.COMPRESSED_FACTS?.value as boolean
     }
 }
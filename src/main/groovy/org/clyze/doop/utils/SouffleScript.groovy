@@ -7,7 +7,11 @@ import java.nio.file.Files
 import java.nio.file.FileSystems
 import java.nio.file.Path
 import java.nio.file.StandardCopyOption
+import java.util.regex.Matcher
+import java.util.regex.Pattern
+import org.clyze.doop.common.Database
 import org.clyze.doop.common.DoopErrorCodeException
+import org.clyze.doop.common.PredicateFile
 import org.clyze.doop.core.DoopAnalysisFactory
 import org.clyze.doop.core.DoopAnalysisFamily
 import org.clyze.doop.util.Resource
@@ -23,6 +27,7 @@ class SouffleScript {
 	static final String EXE_NAME = "analysis-binary"
 	protected static final String TIME_UTIL = "/usr/bin/time"
 	protected static final String CHPST_UTIL = '/usr/bin/chpst'
+	protected static final Pattern FACTS_INPUT = ~/filename="([^"\/]+)\.facts"/
 
 	Executor executor
 	File cacheDir
@@ -76,6 +81,10 @@ class SouffleScript {
 
 		setScriptFileViaCPP(origScriptFile, outDir)
 
+		if (options.compressedFacts) {
+			useCompressedFacts(scriptFile)
+		}
+
 		if (options.useFunctors) {
 			detectFunctors(outDir)
 		}
@@ -231,6 +240,9 @@ class SouffleScript {
 
 		setScriptFileViaCPP(origScriptFile, outDir)
 
+		if (options.compressedFacts)
+			useCompressedFacts(scriptFile)
+
 	    def db = new File(outDir, "database")
 
         if (options.removeContexts)
@@ -301,6 +313,27 @@ class SouffleScript {
 		}
 	}
 
+	/**
+	 * Makes the input directives of front-end relations read their
+	 * compressed facts files (".facts.gz"). Souffle decompresses such
+	 * inputs transparently, when built with zlib support. Other inputs
+	 * (such as user-provided facts) are left unchanged.
+	 *
+	 * @param scriptFile  the (preprocessed) script file to rewrite
+	 */
+	private static void useCompressedFacts(File scriptFile) {
+		Set<String> relations = PredicateFile.values().collect { it.toString() } as Set<String>
+		Matcher m = FACTS_INPUT.matcher(scriptFile.text)
+		StringBuffer sb = new StringBuffer()
+		while (m.find()) {
+			String relation = m.group(1)
+			String replacement = relations.contains(relation) ? "filename=\"${relation}${Database.COMPRESSED_FACTS_SUFFIX}\"" as String : m.group(0)
+			m.appendReplacement(sb, Matcher.quoteReplacement(replacement))
+		}
+		m.appendTail(sb)
+		scriptFile.text = sb.toString()
+	}
+
 	private static void removeContexts(File scriptFile) {
 		def backupFile = new File("${scriptFile}.backup")
 		Files.copy(scriptFile.toPath(), backupFile.toPath(), StandardCopyOption.COPY_ATTRIBUTES)
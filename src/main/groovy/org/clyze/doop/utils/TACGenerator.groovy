@@ -1,95 +1,102 @@
 package org.clyze.doop.utils
 
+import org.clyze.doop.common.Database
+
 class TACGenerator {
+	// Iterates over the lines of a facts file (plain or compressed).
+	static void eachFact(File runDir, String relation, Closure closure) {
+		Database.newFactsReader(Database.getFactsFile(runDir, relation)).eachLine(closure)
+	}
+
 	static void run(File runDir, File outFile) {
 		def appClass = []
-		new File("$runDir/ApplicationClass.facts").eachLine {appClass << it }
+		eachFact(runDir, "ApplicationClass") {appClass << it }
 
 		def methods = []
 		def method2Stmt = [:]
 
 		def formals = [:].withDefault { [] }
-		new File("$runDir/FormalParam.facts").eachLine {
+		eachFact(runDir, "FormalParam") {
 			def (pos, m, param) = it.split("\t")
 			formals[m][pos as int] = V(param)
 		}
 		def isNative = []
-		new File("$runDir/NativeMethodId.facts").eachLine {
+		eachFact(runDir, "NativeMethodId") {
 			def (m, name) = it.split("\t")
 			isNative << m
 		}
-		new File("$runDir/Method.facts").eachLine {
+		eachFact(runDir, "Method") {
 			def (m, name, params, declT, retT, jvmDesc, arity) = it.split("\t")
 			methods << m
 			method2Stmt[m] = [:] as TreeMap
 		}
 
-		new File("$runDir/AssignNumConstant.facts").eachLine {
+		eachFact(runDir, "AssignNumConstant") {
 			def (stmt, index, value, to, inmethod) = it.split("\t")
 			method2Stmt[inmethod][index as int] = INS(index, stmt, "${V(to)} = $value")
 		}
-		new File("$runDir/AssignLocal.facts").eachLine {
+		eachFact(runDir, "AssignLocal") {
 			def (stmt, index, from, to, inmethod) = it.split("\t")
 			method2Stmt[inmethod][index as int] = INS(index, stmt, "${V(to)} = ${V(from)}")
 		}
-		new File("$runDir/AssignCast.facts").eachLine {
+		eachFact(runDir, "AssignCast") {
 			def (stmt, index, from, to, type, inmethod) = it.split("\t")
 			method2Stmt[inmethod][index as int] = INS(index, stmt, "${V(to)} = ($type) ${V(from)}")
 		}
-		new File("$runDir/LoadInstanceField.facts").eachLine {
+		eachFact(runDir, "LoadInstanceField") {
 			def (stmt, index, to, base, fld, inmethod) = it.split("\t")
 			method2Stmt[inmethod][index as int] = INS(index, stmt, "${V(to)} = ${V(base)}.$fld")
 		}
-		new File("$runDir/StoreInstanceField.facts").eachLine {
+		eachFact(runDir, "StoreInstanceField") {
 			def (stmt, index, from, base, fld, inmethod) = it.split("\t")
 			method2Stmt[inmethod][index as int] = INS(index, stmt, "${V(base)}.$fld = ${V(from)}")
 		}
-		new File("$runDir/LoadStaticField.facts").eachLine {
+		eachFact(runDir, "LoadStaticField") {
 			def (stmt, index, to, fld, inmethod) = it.split("\t")
 			method2Stmt[inmethod][index as int] = INS(index, stmt, "${V(to)} = $fld")
 		}
-		new File("$runDir/StoreStaticField.facts").eachLine {
+		eachFact(runDir, "StoreStaticField") {
 			def (stmt, index, from, fld, inmethod) = it.split("\t")
 			method2Stmt[inmethod][index as int] = INS(index, stmt, "$fld = ${V(from)}")
 		}
-		new File("$runDir/Return.facts").eachLine {
+		eachFact(runDir, "Return") {
 			def (stmt, index, var, inmethod) = it.split("\t")
 			method2Stmt[inmethod][index as int] = INS(index, stmt, "return ${V(var)}")
 		}
-		new File("$runDir/ReturnVoid.facts").eachLine {
+		eachFact(runDir, "ReturnVoid") {
 			def (stmt, index, inmethod) = it.split("\t")
 			method2Stmt[inmethod][index as int] = INS(index, stmt, "return")
 		}
-		new File("$runDir/Goto.facts").eachLine {
+		eachFact(runDir, "Goto") {
 			def (stmt, index, label, inmethod) = it.split("\t")
 			method2Stmt[inmethod][index as int] = INS(index, stmt, "goto $label")
 		}
 
 		def switchDef = [:], switchCases = [:].withDefault { [:] }
-		new File("$runDir/TableSwitch-Default.facts").eachLine {
+		eachFact(runDir, "TableSwitch-Default") {
 			def (stmt, target) = it.split("\t")
 			switchDef[stmt] = target
 		}
-		new File("$runDir/LookupSwitch-Default.facts").eachLine {
+		eachFact(runDir, "LookupSwitch-Default") {
 			def (stmt, target) = it.split("\t")
 			switchDef[stmt] = target
 		}
-		new File("$runDir/TableSwitch-Target.facts").eachLine {
+		eachFact(runDir, "TableSwitch-Target") {
 			def (stmt, value, index) = it.split("\t")
 			switchCases[stmt][value] = index
 		}
-		new File("$runDir/LookupSwitch-Target.facts").eachLine {
+		eachFact(runDir, "LookupSwitch-Target") {
 			def (stmt, value, index) = it.split("\t")
 			switchCases[stmt][value] = index
 		}
-		new File("$runDir/TableSwitch.facts").eachLine {
+		eachFact(runDir, "TableSwitch") {
 			def (stmt, index, key, inmethod) = it.split("\t")
 			def line1 = INS(index, stmt, "tableSwitch (${V(key)})")
 			def line2 = "\tdefault: goto ${switchDef[stmt]}"
 			def lines = switchCases[stmt].collect { value, i -> "\tcase $value: goto $i" }.join("\n")
 			method2Stmt[inmethod][index as int] = "$line1\n$line2\n$lines"
 		}
-		new File("$runDir/LookupSwitch.facts").eachLine {
+		eachFact(runDir, "LookupSwitch") {
 			def (stmt, index, key, inmethod) = it.split("\t")
 			def line1 = INS(index, stmt, "lookupSwitch (${V(key)})")
 			def line2 = "\tdefault: goto ${switchDef[stmt]}"
@@ -97,35 +104,35 @@ class TACGenerator {
 			method2Stmt[inmethod][index as int] = "$line1\n$line2\n$lines"
 		}
 
-		new File("$runDir/EnterMonitor.facts").eachLine {
+		eachFact(runDir, "EnterMonitor") {
 			def (stmt, index, var, inmethod) = it.split("\t")
 			method2Stmt[inmethod][index as int] = INS(index, stmt, "enterMonitor ${V(var)}")
 		}
-		new File("$runDir/ExitMonitor.facts").eachLine {
+		eachFact(runDir, "ExitMonitor") {
 			def (stmt, index, var, inmethod) = it.split("\t")
 			method2Stmt[inmethod][index as int] = INS(index, stmt, "exitMonitor ${V(var)}")
 		}
 
 		def ret = [:], params = [:].withDefault { [] }
-		new File("$runDir/AssignReturnValue.facts").eachLine {
+		eachFact(runDir, "AssignReturnValue") {
 			def (stmt, var) = it.split("\t")
 			ret[stmt] = V(var)
 		}
-		new File("$runDir/ActualParam.facts").eachLine {
+		eachFact(runDir, "ActualParam") {
 			def (pos, stmt, param) = it.split("\t")
 			params[stmt][pos as int] = V(param)
 		}
-		new File("$runDir/VirtualMethodInvocation.facts").eachLine {
+		eachFact(runDir, "VirtualMethodInvocation") {
 			def (stmt, index, method, base, inmethod) = it.split("\t")
 			def p = params[stmt].join(", ")
 			method2Stmt[inmethod][index as int] = INS(index, stmt, "${ret[stmt] ? "${ret[stmt]} = " : ""}${V(base)}.$method($p)")
 		}
-		new File("$runDir/SpecialMethodInvocation.facts").eachLine {
+		eachFact(runDir, "SpecialMethodInvocation") {
 			def (stmt, index, method, base, inmethod) = it.split("\t")
 			def p = params[stmt].join(", ")
 			method2Stmt[inmethod][index as int] = INS(index, stmt, "${ret[stmt] ? "${ret[stmt]} = " : ""}${V(base)}.$method($p)")
 		}
-		new File("$runDir/StaticMethodInvocation.facts").eachLine {
+		eachFact(runDir, "StaticMethodInvocation") {
 			def (stmt, index, method, inmethod) = it.split("\t")
 			def p = params[stmt].join(", ")
 			method2Stmt[inmethod][index as int] = INS(index, stmt, "${ret[stmt] ? "${ret[stmt]} = " : ""}$method($p)")
@@ -134,35 +141,35 @@ class TACGenerator {
 		params = null
 
 		def oper = [:], operand = [:].withDefault { [] }
-		new File("$runDir/OperatorAt.facts").eachLine {
+		eachFact(runDir, "OperatorAt") {
 			def (stmt, op) = it.split("\t")
 			oper[stmt] = op
 		}
-		new File("$runDir/AssignOperFrom.facts").eachLine {
+		eachFact(runDir, "AssignOperFrom") {
 			def (stmt, pos, from) = it.split("\t")
 			operand[stmt][pos as int] = V(from)
 		}
-		new File("$runDir/AssignOperFromConstant.facts").eachLine {
+		eachFact(runDir, "AssignOperFromConstant") {
 			def (stmt, pos, from) = it.split("\t")
 			operand[stmt][pos as int] = from
 		}
-		new File("$runDir/IfVar.facts").eachLine {
+		eachFact(runDir, "IfVar") {
 			def (stmt, pos, from) = it.split("\t")
 			operand[stmt][pos as int] = V(from)
 		}
-		new File("$runDir/IfConstant.facts").eachLine {
+		eachFact(runDir, "IfConstant") {
 			def (stmt, pos, from) = it.split("\t")
 			operand[stmt][pos as int] = V(from)
 		}
-		new File("$runDir/AssignUnop.facts").eachLine {
+		eachFact(runDir, "AssignUnop") {
 			def (stmt, index, to, inmethod) = it.split("\t")
 			method2Stmt[inmethod][index as int] = INS(index, stmt, "${V(to)} = ${oper[stmt]} ${operand[stmt][1]}")
 		}
-		new File("$runDir/AssignBinop.facts").eachLine {
+		eachFact(runDir, "AssignBinop") {
 			def (stmt, index, to, inmethod) = it.split("\t")
 			method2Stmt[inmethod][index as int] = INS(index, stmt, "${V(to)} = ${operand[stmt][1]} ${oper[stmt]} ${operand[stmt][2]}")
 		}
-		new File("$runDir/If.facts").eachLine {
+		eachFact(runDir, "If") {
 			def (stmt, index, label, inmethod) = it.split("\t")
 			method2Stmt[inmethod][index as int] = INS(index, stmt, "if (${operand[stmt][1]} ${oper[stmt]} ${operand[stmt][2]}) goto $label")
 		}
@@ -170,32 +177,32 @@ class TACGenerator {
 		operand = null
 
 		def idx = [:]
-		new File("$runDir/ArrayInsnIndex.facts").eachLine {
+		eachFact(runDir, "ArrayInsnIndex") {
 			def (stmt, indexVar) = it.split("\t")
 			idx[stmt] = V(indexVar)
 		}
-		new File("$runDir/ArrayNumIndex.facts").eachLine {
+		eachFact(runDir, "ArrayNumIndex") {
 			def (stmt, index) = it.split("\t")
 			idx[stmt] = index
 		}
-		new File("$runDir/LoadArrayIndex.facts").eachLine {
+		eachFact(runDir, "LoadArrayIndex") {
 			def (stmt, index, to, arr, inmethod) = it.split("\t")
 			method2Stmt[inmethod][index as int] = INS(index, stmt, "${V(to)} = ${V(arr)}[${idx[stmt]}]")
 		}
-		new File("$runDir/StoreArrayIndex.facts").eachLine {
+		eachFact(runDir, "StoreArrayIndex") {
 			def (stmt, index, from, arr, inmethod) = it.split("\t")
 			method2Stmt[inmethod][index as int] = INS(index, stmt, "${V(arr)}[${idx[stmt]}] = ${V(from)}")
 		}
 		idx = null
 
 		def arraySize = [:], isStr = [], isEmpty = []
-		new File("$runDir/ArrayAllocation.facts").eachLine {
+		eachFact(runDir, "ArrayAllocation") {
 			def (stmt, sizeVar) = it.split("\t")
 			arraySize[stmt] = V(sizeVar)
 		}
-		new File("$runDir/StringConstant.facts").eachLine {isStr << it }
-		new File("$runDir/EmptyArray.facts").eachLine {isEmpty << it }
-		new File("$runDir/AssignHeapAllocation.facts").eachLine {
+		eachFact(runDir, "StringConstant") {isStr << it }
+		eachFact(runDir, "EmptyArray") {isEmpty << it }
+		eachFact(runDir, "AssignHeapAllocation") {
 			def (stmt, index, heap, to, inmethod, line) = it.split("\t")
 			def alloc = "new $heap"
 			if (heap in isStr) alloc = "\"$heap\""
@@ -205,35 +212,35 @@ class TACGenerator {
 		}
 
 
-		new File("$runDir/AssignCastNumConstant.facts").eachLine {
+		eachFact(runDir, "AssignCastNumConstant") {
 			def (stmt, index, val, to, type, inmethod) = it.split("\t")
 			method2Stmt[inmethod][index as int] = INS(index, stmt, "${V(to)} = ($type) $val")
 		}
-		new File("$runDir/AssignCastNull.facts").eachLine {
+		eachFact(runDir, "AssignCastNull") {
 			def (stmt, index, to, type, inmethod) = it.split("\t")
 			method2Stmt[inmethod][index as int] = INS(index, stmt, "${V(to)} = ($type) NULL")
 		}
-		new File("$runDir/AssignNull.facts").eachLine {
+		eachFact(runDir, "AssignNull") {
 			def (stmt, index, to, inmethod) = it.split("\t")
 			method2Stmt[inmethod][index as int] = INS(index, stmt, "${V(to)} = NULL")
 		}
-		new File("$runDir/Throw.facts").eachLine {
+		eachFact(runDir, "Throw") {
 			def (stmt, index, var, inmethod) = it.split("\t")
 			method2Stmt[inmethod][index as int] = INS(index, stmt, "throw $var")
 		}
-		new File("$runDir/ThrowNull.facts").eachLine {
+		eachFact(runDir, "ThrowNull") {
 			def (stmt, index, inmethod) = it.split("\t")
 			method2Stmt[inmethod][index as int] = INS(index, stmt, "throw NULL")
 		}
-		new File("$runDir/AssignInstanceOf.facts").eachLine {
+		eachFact(runDir, "AssignInstanceOf") {
 			def (stmt, index, from, to, type, inmethod) = it.split("\t")
 			method2Stmt[inmethod][index as int] = INS(index, stmt, "${V(to)} = ${V(from)} instanceof $type")
 		}
-		new File("$runDir/AssignPhantomInvoke.facts").eachLine {
+		eachFact(runDir, "AssignPhantomInvoke") {
 			def (stmt, index, inmethod) = it.split("\t")
 			method2Stmt[inmethod][index as int] = INS(index, stmt, "UNSUPPORTED <<phantom invoke>>")
 		}
-		new File("$runDir/UnsupportedInstruction.facts").eachLine {
+		eachFact(runDir, "UnsupportedInstruction") {
 			def (stmt, index, inmethod) = it.split("\t")
 			method2Stmt[inmethod][index as int] = INS(index, stmt, "UNSUPPORTED <<??>>")
 		}